@@ -0,0 +1,119 @@
+/*
+ * 智能托管脚本执行桥
+ *
+ * 每个页面建立一条到浏览器原生端的端口，原生端发来 {type:'eval', id, code}，
+ * 在页面上下文中执行后按 id 回传结果；结果为 Promise 时等待其完成。
+ * 序列化后的结果超过 CHUNK_SIZE 时分块发送（chunk ... end），不经过 alert 提示框。
+ * 原生端超时或取消时发来 {type:'cancel', id}，之后完成的结果直接丢弃；结果已发出后才到达的取消直接忽略。
+ * {type:'model', id, op, args} 交给 page_model.js 维护的页面模型处理，结果同样按 id 回传。
+ */
+(function () {
+    'use strict';
+
+    var NATIVE_APP = 'manorBridge';
+    var CHUNK_SIZE = 256 * 1024;
+
+    var port = browser.runtime.connectNative(NATIVE_APP);
+    /* 已收到、结果尚未发出的请求；只有其中的 id 才记入 cancelled，两个集合都不会无限增长 */
+    var pending = new Set();
+    var cancelled = new Set();
+
+    function post(message) {
+        try {
+            port.postMessage(message);
+        } catch (e) {
+            // 端口已断开（页面正在卸载）
+        }
+    }
+
+    function send(id, text) {
+        pending.delete(id);
+        if (cancelled.delete(id)) return;
+        if (text.length <= CHUNK_SIZE) {
+            post({ type: 'result', id: id, value: text });
+            return;
+        }
+        var count = Math.ceil(text.length / CHUNK_SIZE);
+        for (var i = 0; i < count; i++) {
+            if (cancelled.delete(id)) return;
+            post({ type: 'chunk', id: id, seq: i, data: text.substr(i * CHUNK_SIZE, CHUNK_SIZE) });
+        }
+        post({ type: 'end', id: id, count: count });
+    }
+
+    function sendError(id, error) {
+        var message = error && error.message !== undefined ? error.message : String(error);
+        send(id, JSON.stringify('error:' + message));
+    }
+
+    /* 在页面上下文中执行，脚本可以访问页面自身的全局变量；页面 CSP 禁止 eval 时退回内容脚本沙箱 */
+    function evaluate(code) {
+        var page = window.wrappedJSObject;
+        try {
+            return { value: page.eval(code), page: true };
+        } catch (e) {
+            if (!(e instanceof EvalError) && String(e).indexOf('Content Security Policy') < 0) throw e;
+        }
+        return { value: (0, eval)(code), page: false };
+    }
+
+    function serialize(outcome) {
+        var json = outcome.page
+            ? window.wrappedJSObject.JSON.stringify(outcome.value)
+            : JSON.stringify(outcome.value);
+        return json === undefined ? 'null' : json;
+    }
+
+    function run(id, code) {
+        var outcome;
+        try {
+            outcome = evaluate(code);
+        } catch (e) {
+            sendError(id, e);
+            return;
+        }
+        var value = outcome.value;
+        if (value !== null && (typeof value === 'object' || typeof value === 'function') && typeof value.then === 'function') {
+            var resolve = function (resolved) {
+                try {
+                    send(id, serialize({ value: resolved, page: outcome.page }));
+                } catch (e) {
+                    sendError(id, e);
+                }
+            };
+            var reject = function (reason) {
+                sendError(id, reason);
+            };
+            if (outcome.page) {
+                // 传给页面 Promise 的回调需要导出到页面作用域
+                value.then(exportFunction(resolve, window), exportFunction(reject, window));
+            } else {
+                value.then(resolve, reject);
+            }
+            return;
+        }
+        try {
+            send(id, serialize(outcome));
+        } catch (e) {
+            sendError(id, e);
+        }
+    }
+
+    port.onMessage.addListener(function (message) {
+        if (!message || message.id === undefined) return;
+        if (message.type === 'eval') {
+            pending.add(message.id);
+            run(message.id, message.code);
+        } else if (message.type === 'model') {
+            pending.add(message.id);
+            // 页面模型操作在内容脚本中完成，不经过页面的 eval，也不受页面 CSP 限制
+            try {
+                send(message.id, JSON.stringify(ManorPageModel.handle(message.op, message.args)));
+            } catch (e) {
+                sendError(message.id, e);
+            }
+        } else if (message.type === 'cancel') {
+            if (pending.delete(message.id)) cancelled.add(message.id);
+        }
+    });
+})();
@@ -0,0 +1,309 @@
+/*
+ * 智能托管页面模型
+ *
+ * 首次被请求时才建立（普通浏览不产生任何开销）：给页面中的交互元素分配稳定 ID（同一文档内不变），
+ * 之后由 MutationObserver 只记录发生变化的子树与元素，下次请求时只重新扫描这些子树、
+ * 集中读取一次布局，并按版本号返回增量（changed / removed），
+ * 不再每次都 querySelectorAll + getBoundingClientRect 扫描整个页面。
+ *
+ * 坐标为文档坐标（不随滚动变化，滚动不会产生增量），快照附带当前滚动位置与视口尺寸。
+ * 由 bridge.js 在收到 {type:'model', id, op, args} 消息时调用 handle(op, args)。
+ */
+var ManorPageModel = (function () {
+    'use strict';
+
+    var SELECTOR = 'a[href],button,input:not([type=hidden]),select,textarea,summary,' +
+        '[role=button],[role=link],[role=checkbox],[role=radio],[role=tab],[role=menuitem],[role=option],[role=switch],' +
+        '[onclick],[contenteditable=""],[contenteditable=true]';
+    var WATCHED_ATTRIBUTES = ['class', 'style', 'hidden', 'href', 'disabled', 'value', 'type', 'role',
+        'aria-label', 'aria-hidden', 'aria-expanded', 'aria-checked', 'placeholder', 'title', 'open', 'contenteditable'];
+    var MAX_TEXT = 80;
+    var MAX_REMOVED_LOG = 4096;
+    var DEFAULT_FIND_LIMIT = 20;
+
+    /* 文档标识：页面重新加载后标识改变，客户端据此知道旧的 ID 与版本号已失效 */
+    var docToken = Date.now().toString(36) + Math.random().toString(36).slice(2, 8);
+    var ids = new WeakMap();         // 元素 -> ID，元素移出后再插回仍使用原 ID
+    var entries = new Map();         // ID -> {el, data, json, ver, present}
+    var nextId = 1;
+    var version = 0;
+    var removedLog = [];             // [{id, ver}]，按版本递增
+    var logFloor = 0;                // 早于该版本的删除记录已丢弃，更早的 since 只能返回全量
+    var observer = null;
+    var dirtyRoots = new Set();      // 需要重新扫描的子树根
+    var dirtyElements = new Set();   // 需要重新描述的已登记元素（文字变化等）
+    var pruneNeeded = false;         // 有节点被移除，需要检查登记的元素是否还在文档中
+    var relayout = false;            // 视口尺寸变化，需要重新测量全部元素
+
+    function start() {
+        if (observer) return;
+        observer = new MutationObserver(onMutations);
+        observer.observe(document.documentElement, {
+            childList: true,
+            subtree: true,
+            characterData: true,
+            attributes: true,
+            attributeFilter: WATCHED_ATTRIBUTES
+        });
+        window.addEventListener('resize', function () { relayout = true; }, { passive: true });
+        dirtyRoots.add(document.documentElement);
+    }
+
+    /* 回调里只记录变化位置，不读取布局 */
+    function onMutations(records) {
+        for (var i = 0; i < records.length; i++) {
+            var record = records[i];
+            if (record.type === 'childList') {
+                var added = record.addedNodes;
+                for (var j = 0; j < added.length; j++) {
+                    if (added[j].nodeType === Node.ELEMENT_NODE) dirtyRoots.add(added[j]);
+                }
+                if (record.removedNodes.length) pruneNeeded = true;
+                markAncestors(record.target);
+            } else if (record.type === 'characterData') {
+                markAncestors(record.target.parentElement);
+            } else {
+                // class / style 等变化可能影响整个子树的可见性
+                dirtyRoots.add(record.target);
+            }
+        }
+    }
+
+    /* 文字变化会改变包含它的已登记元素（例如按钮里的 span）的描述 */
+    function markAncestors(node) {
+        for (var el = node; el && el.nodeType === Node.ELEMENT_NODE; el = el.parentElement) {
+            if (ids.has(el)) dirtyElements.add(el);
+        }
+    }
+
+    function isField(tag) {
+        return tag === 'input' || tag === 'textarea' || tag === 'select';
+    }
+
+    /* 生成元素的描述；不可见或没有可用信息时返回 null */
+    function describe(el, rect, scrollX, scrollY) {
+        if (rect.width < 2 || rect.height < 2) return null;
+        var tag = el.tagName.toLowerCase();
+        var field = isField(tag);
+        var source = field
+            ? (el.type === 'password' ? '' : el.value) || el.placeholder || el.getAttribute('aria-label') || el.title
+            : el.innerText || el.getAttribute('aria-label') || el.title;
+        var text = (source || '').replace(/\s+/g, ' ').trim().substring(0, MAX_TEXT);
+        var href = typeof el.href === 'string' && el.href ? el.href : null;
+        if (!text && !href && !field) return null;
+        var data = {
+            tag: tag,
+            text: text,
+            x: Math.round(rect.left + scrollX),
+            y: Math.round(rect.top + scrollY),
+            w: Math.round(rect.width),
+            h: Math.round(rect.height)
+        };
+        var role = el.getAttribute('role');
+        if (role) data.role = role;
+        if (href) data.href = href;
+        if (field) {
+            data.type = el.type;
+            if (el.name) data.name = el.name;
+            if (el.type === 'checkbox' || el.type === 'radio') data.checked = el.checked;
+        }
+        if (el.disabled) data.disabled = true;
+        return data;
+    }
+
+    function logRemoval(id) {
+        removedLog.push({ id: id, ver: version + 1 });
+        if (removedLog.length > MAX_REMOVED_LOG) logFloor = removedLog.shift().ver;
+    }
+
+    /* 处理积累的变化：先收集要更新的元素，再集中读取布局（只触发一次布局计算），最后比较描述 */
+    function flush(remeasureAll) {
+        var touched = new Set();
+        dirtyRoots.forEach(function (root) {
+            if (!root.isConnected) return;
+            if (root.matches(SELECTOR)) touched.add(root);
+            var found = root.querySelectorAll(SELECTOR);
+            for (var i = 0; i < found.length; i++) touched.add(found[i]);
+        });
+        dirtyElements.forEach(function (el) {
+            if (el.isConnected) touched.add(el);
+        });
+        var changed = false;
+        if (pruneNeeded) {
+            entries.forEach(function (entry, id) {
+                if (entry.el.isConnected) return;
+                if (entry.present) logRemoval(id);
+                entries.delete(id);
+                changed = true;
+            });
+        }
+        if (remeasureAll || relayout) {
+            entries.forEach(function (entry) { touched.add(entry.el); });
+        }
+        dirtyRoots.clear();
+        dirtyElements.clear();
+        pruneNeeded = false;
+        relayout = false;
+
+        var list = Array.from(touched);
+        var rects = list.map(function (el) { return el.getBoundingClientRect(); });
+        var scrollX = window.scrollX, scrollY = window.scrollY;
+        for (var i = 0; i < list.length; i++) {
+            var el = list[i];
+            var data = describe(el, rects[i], scrollX, scrollY);
+            var id = ids.get(el);
+            var entry = id !== undefined ? entries.get(id) : undefined;
+            if (!data) {
+                if (entry && entry.present) {
+                    entry.present = false;
+                    logRemoval(id);
+                    changed = true;
+                }
+                continue;
+            }
+            if (id === undefined) {
+                id = nextId++;
+                ids.set(el, id);
+            }
+            data.id = id;
+            var json = JSON.stringify(data);
+            if (!entry) {
+                entry = { el: el, json: null, present: false, ver: 0 };
+                entries.set(id, entry);
+            }
+            if (entry.present && entry.json === json) continue;
+            entry.data = data;
+            entry.json = json;
+            entry.present = true;
+            entry.ver = version + 1;
+            changed = true;
+        }
+        if (changed) version++;
+    }
+
+    function byPosition(a, b) {
+        return a.y - b.y || a.x - b.x;
+    }
+
+    /*
+     * 快照：args.doc 与 args.since 为上次快照返回的 doc 与 version。
+     * 文档已变化、since 缺省或早于保留的删除记录时返回全量（full:true）。
+     */
+    function snapshot(args) {
+        start();
+        flush(args.full === true);
+        var since = args.doc === docToken && args.since > 0 ? args.since : 0;
+        var full = since === 0 || since < logFloor;
+        var changed = [];
+        var count = 0;
+        entries.forEach(function (entry) {
+            if (!entry.present) return;
+            count++;
+            if (full || entry.ver > since) changed.push(entry.data);
+        });
+        var removed = [];
+        if (!full) {
+            for (var i = 0; i < removedLog.length; i++) {
+                var record = removedLog[i];
+                if (record.ver <= since) continue;
+                var entry = entries.get(record.id);
+                // 删除后又重新出现的元素只出现在 changed 中
+                if (entry && entry.present) continue;
+                if (removed.indexOf(record.id) < 0) removed.push(record.id);
+            }
+        }
+        changed.sort(byPosition);
+        return {
+            doc: docToken,
+            version: version,
+            full: full,
+            count: count,
+            scroll_x: Math.round(window.scrollX),
+            scroll_y: Math.round(window.scrollY),
+            viewport_w: window.innerWidth,
+            viewport_h: window.innerHeight,
+            changed: changed,
+            removed: removed
+        };
+    }
+
+    /* 在模型中按文字查找，不再扫描 DOM */
+    function find(args) {
+        start();
+        flush(false);
+        var text = String(args.text || '').toLowerCase();
+        var tag = args.tag ? String(args.tag).toLowerCase() : null;
+        var limit = args.limit > 0 ? args.limit : DEFAULT_FIND_LIMIT;
+        var results = [];
+        entries.forEach(function (entry) {
+            if (!entry.present || results.length >= limit) return;
+            if (tag && entry.data.tag !== tag) return;
+            if (text && entry.data.text.toLowerCase().indexOf(text) < 0
+                && (!entry.data.href || entry.data.href.toLowerCase().indexOf(text) < 0)) return;
+            results.push(entry.data);
+        });
+        results.sort(byPosition);
+        return { doc: docToken, version: version, results: results };
+    }
+
+    function resolve(args) {
+        if (args.doc && args.doc !== docToken) throw new Error('stale document');
+        var entry = entries.get(args.element);
+        if (!entry || !entry.el.isConnected) throw new Error('stale element ' + args.element);
+        return entry;
+    }
+
+    /* 操作后元素状态（checked、value 等属性）可能变化但不触发 MutationObserver，主动标记 */
+    function markActed(entry, result) {
+        dirtyElements.add(entry.el);
+        result.id = entry.data.id;
+        result.tag = entry.data.tag;
+        return result;
+    }
+
+    function click(args) {
+        var entry = resolve(args);
+        entry.el.click();
+        return markActed(entry, { action: 'clicked' });
+    }
+
+    function setValue(args) {
+        var entry = resolve(args);
+        var el = entry.el;
+        var value = args.value === undefined || args.value === null ? '' : String(args.value);
+        el.focus();
+        if (isField(entry.data.tag)) {
+            el.value = value;
+        } else {
+            el.textContent = value;
+        }
+        el.dispatchEvent(new Event('input', { bubbles: true }));
+        el.dispatchEvent(new Event('change', { bubbles: true }));
+        return markActed(entry, { action: 'set' });
+    }
+
+    function scrollIntoView(args) {
+        var entry = resolve(args);
+        entry.el.scrollIntoView({ block: 'center', inline: 'nearest' });
+        var rect = entry.el.getBoundingClientRect();
+        return markActed(entry, {
+            action: 'scrolled',
+            viewport_x: Math.round(rect.left),
+            viewport_y: Math.round(rect.top)
+        });
+    }
+
+    function handle(op, args) {
+        args = args || {};
+        switch (op) {
+            case 'snapshot': return snapshot(args);
+            case 'find': return find(args);
+            case 'click': return click(args);
+            case 'set_value': return setValue(args);
+            case 'scroll_into_view': return scrollIntoView(args);
+            default: throw new Error('unknown model op: ' + op);
+        }
+    }
+
+    return { handle: handle };
+})();
@@ -0,0 +1,135 @@
+/*
+ * 内置子资源拦截扩展的后台脚本
+ *
+ * 启动后连接原生端（manorContentBlocker）并报告已持有的规则版本；原生端在规则列表变化（或版本不同）时
+ * 推送 {type:'rules', version, rules}，领主模式开关变化时推送 {type:'enabled', value}。
+ * 页面发起的脚本、图片、XHR 等子资源请求在 webRequest.onBeforeRequest 中按规则拦截，
+ * 顶层导航与弹窗仍由原生端的 onLoadRequest / onNewSession 处理。
+ * 每个标签页累计拦截次数与节省的字节数（按资源类型估算），合并后经该页的内容脚本（stats.js）转交原生端。
+ */
+(function () {
+    'use strict';
+
+    var NATIVE_APP = 'manorContentBlocker';
+    var STATS_DELAY_MS = 1000;
+    var TYPE_OTHER = 1 << 11;
+    /* 与 FilterEngine.TYPE_* 对应 */
+    var TYPE_BITS = {
+        sub_frame: 1 << 1,
+        script: 1 << 3,
+        image: 1 << 4,
+        imageset: 1 << 4,
+        stylesheet: 1 << 5,
+        xmlhttprequest: 1 << 6,
+        media: 1 << 7,
+        font: 1 << 8,
+        websocket: 1 << 9,
+        ping: 1 << 10,
+        beacon: 1 << 10
+    };
+    /* 被拦截的请求没有实际下载，节省的字节数按各类型资源的常见传输大小估算 */
+    var ESTIMATED_BYTES = {
+        sub_frame: 40000,
+        script: 25000,
+        image: 12000,
+        imageset: 12000,
+        stylesheet: 10000,
+        xmlhttprequest: 3000,
+        media: 200000,
+        font: 30000,
+        websocket: 1000,
+        ping: 500,
+        beacon: 500
+    };
+    var DEFAULT_BYTES = 4000;
+
+    var ruleSet = null;
+    var version = null;
+    var enabled = false;
+    var port = null;
+    var tabStats = new Map(); // tabId -> {blocked, bytes, timer}
+
+    function onNativeMessage(message) {
+        if (!message) return;
+        if (message.type === 'rules') {
+            ruleSet = new ManorMatcher.RuleSet(message.rules || []);
+            version = message.version;
+        } else if (message.type === 'enabled') {
+            enabled = message.value === true;
+        }
+    }
+
+    function connect() {
+        port = browser.runtime.connectNative(NATIVE_APP);
+        port.onMessage.addListener(onNativeMessage);
+        port.onDisconnect.addListener(function () {
+            port = null;
+        });
+        port.postMessage({ type: 'hello', version: version });
+    }
+
+    function hostOf(url) {
+        if (!url) return null;
+        try {
+            return new URL(url).hostname || null;
+        } catch (e) {
+            return null;
+        }
+    }
+
+    function statsFor(tabId) {
+        var stats = tabStats.get(tabId);
+        if (!stats) tabStats.set(tabId, stats = { blocked: 0, bytes: 0, timer: 0 });
+        return stats;
+    }
+
+    /* 合并一段时间内的变化再发送，避免每拦截一次就发一条消息 */
+    function scheduleReport(tabId, stats) {
+        if (stats.timer) return;
+        stats.timer = setTimeout(function () {
+            stats.timer = 0;
+            browser.tabs.sendMessage(tabId, { type: 'blockStats', blocked: stats.blocked, bytes: stats.bytes })
+                .catch(function () {
+                    // 页面还没有内容脚本（正在加载或无法注入），下一次拦截时再发送
+                });
+        }, STATS_DELAY_MS);
+    }
+
+    function onBeforeRequest(details) {
+        if (!enabled || !ruleSet || details.tabId < 0) return {};
+        var host = hostOf(details.url);
+        if (!host) return {};
+        var originHost = hostOf(details.documentUrl || details.originUrl);
+        var type = TYPE_BITS[details.type] || TYPE_OTHER;
+        if (!ruleSet.shouldBlock(details.url, host, originHost, type)) return {};
+        var stats = statsFor(details.tabId);
+        stats.blocked++;
+        stats.bytes += ESTIMATED_BYTES[details.type] || DEFAULT_BYTES;
+        scheduleReport(details.tabId, stats);
+        return { cancel: true };
+    }
+
+    /* 新的顶层导航开始时清零该标签页的计数 */
+    function onNavigation(details) {
+        var stats = tabStats.get(details.tabId);
+        if (!stats || (stats.blocked === 0 && stats.bytes === 0)) return;
+        stats.blocked = 0;
+        stats.bytes = 0;
+        scheduleReport(details.tabId, stats);
+    }
+
+    var SUBRESOURCE_TYPES = ['sub_frame', 'script', 'image', 'imageset', 'stylesheet', 'xmlhttprequest', 'media',
+        'font', 'websocket', 'ping', 'beacon', 'object', 'other'];
+    browser.webRequest.onBeforeRequest.addListener(onBeforeRequest,
+        { urls: ['<all_urls>'], types: SUBRESOURCE_TYPES }, ['blocking']);
+    browser.webRequest.onBeforeRequest.addListener(onNavigation, { urls: ['<all_urls>'], types: ['main_frame'] });
+    if (browser.tabs.onRemoved) {
+        browser.tabs.onRemoved.addListener(function (tabId) {
+            var stats = tabStats.get(tabId);
+            if (stats && stats.timer) clearTimeout(stats.timer);
+            tabStats.delete(tabId);
+        });
+    }
+
+    connect();
+})();
@@ -0,0 +1,173 @@
+/*
+ * 子资源过滤规则的匹配
+ *
+ * 规则由原生端的 FilterEngine 导出，每条为 [flags, typeMask, host, pattern, include, exclude]：
+ * flags 见下方 F_* 常量；host 非空时规则挂在域名表上，pattern 从域名结束处开始匹配。
+ * 只有域名之后紧跟分隔符的 ||host 规则才带 host；||ads. 或不带 ^ 的 ||example.com 这类可匹配部分域名的规则
+ * host 为空、带 F_ANCHOR_HOST，从任一级域名的开头匹配；
+ * include / exclude 为以 | 分隔的来源域名列表。pattern 中 * 为任意串、^ 为分隔符。
+ *
+ * 域名规则按请求域名的各级后缀查表；其余规则按模式中两侧都有分隔的字母数字片段（token）建立索引，
+ * URL 切成 token 后只验证索引命中的规则；找不到合适 token 的规则对每个请求都验证。
+ */
+var ManorMatcher = (function () {
+    'use strict';
+
+    var F_EXCEPTION = 1;
+    var F_ANCHOR_START = 2;
+    var F_ANCHOR_HOST = 4;
+    var F_ANCHOR_END = 8;
+    var F_MATCH_CASE = 16;
+    var F_THIRD_PARTY = 32;
+    var F_FIRST_PARTY = 64;
+
+    var TOKEN = /[a-z0-9]+/g;
+
+    function globToRegExp(pattern, prefix, anchorEnd, matchCase) {
+        var source = prefix;
+        for (var i = 0; i < pattern.length; i++) {
+            var c = pattern.charAt(i);
+            if (c === '*') source += '.*';
+            else if (c === '^') source += '(?:[^\\w.%\\u0080-\\uffff-]|$)';
+            else source += c.replace(/[.+?${}()|[\]\\\/]/g, '\\$&');
+        }
+        if (anchorEnd) source += '$';
+        return new RegExp(source, matchCase ? '' : 'i');
+    }
+
+    function compileRule(raw) {
+        var flags = raw[0];
+        var prefix = '';
+        if (raw[2]) prefix = '^';
+        else if (flags & F_ANCHOR_START) prefix = '^';
+        else if (flags & F_ANCHOR_HOST) prefix = '^[a-z][a-z0-9+.-]*:\\/\\/(?:[^\\/?#]*@)?(?:[^\\/?#]*\\.)?';
+        return {
+            exception: (flags & F_EXCEPTION) !== 0,
+            matchCase: (flags & F_MATCH_CASE) !== 0,
+            party: flags & F_THIRD_PARTY ? 1 : flags & F_FIRST_PARTY ? -1 : 0,
+            types: raw[1],
+            include: raw[4] ? raw[4].split('|') : null,
+            exclude: raw[5] ? raw[5].split('|') : null,
+            re: globToRegExp(raw[3], prefix, (flags & F_ANCHOR_END) !== 0, (flags & F_MATCH_CASE) !== 0)
+        };
+    }
+
+    /* 选出两侧都有分隔（或锚定）的最长 token，没有时返回 null */
+    function bestToken(pattern, flags) {
+        var best = null;
+        var match;
+        TOKEN.lastIndex = 0;
+        while ((match = TOKEN.exec(pattern)) !== null) {
+            var start = match.index;
+            var end = start + match[0].length;
+            var before = start === 0 ? (flags & (F_ANCHOR_START | F_ANCHOR_HOST) ? '/' : '*') : pattern.charAt(start - 1);
+            var after = end === pattern.length ? (flags & F_ANCHOR_END ? '/' : '*') : pattern.charAt(end);
+            if (before === '*' || after === '*') continue;
+            if (match[0].length >= 2 && (best === null || match[0].length > best.length)) best = match[0];
+        }
+        return best;
+    }
+
+    function RuleSet(rawRules) {
+        this.hostRules = new Map();
+        this.tokenRules = new Map();
+        this.genericRules = [];
+        for (var i = 0; i < rawRules.length; i++) {
+            var raw = rawRules[i];
+            var rule = compileRule(raw);
+            var list;
+            if (raw[2]) {
+                list = this.hostRules.get(raw[2]);
+                if (!list) this.hostRules.set(raw[2], list = []);
+            } else {
+                var token = bestToken(raw[3].toLowerCase(), raw[0]);
+                if (token) {
+                    list = this.tokenRules.get(token);
+                    if (!list) this.tokenRules.set(token, list = []);
+                } else {
+                    list = this.genericRules;
+                }
+            }
+            list.push(rule);
+        }
+    }
+
+    function hostMatches(host, domain) {
+        return host === domain || (host.length > domain.length
+            && host.charAt(host.length - domain.length - 1) === '.' && host.endsWith(domain));
+    }
+
+    function siteOf(host) {
+        var parts = host.split('.');
+        if (parts.length <= 2) return host;
+        var take = parts[parts.length - 1].length === 2 && parts[parts.length - 2].length <= 3 ? 3 : 2;
+        return parts.slice(-take).join('.');
+    }
+
+    /* 返回 1 例外命中，-1 拦截命中，0 未命中 */
+    function evaluate(rule, request, subject) {
+        if ((rule.types & request.type) === 0) return 0;
+        if (!rule.re.test(subject)) return 0;
+        if (rule.party !== 0) {
+            if (!request.originHost) return 0;
+            var third = siteOf(request.host) !== siteOf(request.originHost);
+            if ((rule.party > 0) !== third) return 0;
+        }
+        if (rule.include || rule.exclude) {
+            if (!request.originHost) return 0;
+            var i;
+            if (rule.exclude) {
+                for (i = 0; i < rule.exclude.length; i++) if (hostMatches(request.originHost, rule.exclude[i])) return 0;
+            }
+            if (rule.include) {
+                var included = false;
+                for (i = 0; i < rule.include.length && !included; i++) included = hostMatches(request.originHost, rule.include[i]);
+                if (!included) return 0;
+            }
+        }
+        return rule.exception ? 1 : -1;
+    }
+
+    function scan(rules, request, subject, state) {
+        for (var i = 0; i < rules.length; i++) {
+            var rule = rules[i];
+            var verdict = evaluate(rule, request, rule.matchCase ? subject.original : subject.lower);
+            if (verdict > 0) return true;
+            if (verdict < 0) state.blocked = true;
+        }
+        return false;
+    }
+
+    /*
+     * url 请求地址；host 请求域名（小写）；originHost 来源页面域名，未知时为 null；type 为 FilterEngine.TYPE_* 位
+     */
+    RuleSet.prototype.shouldBlock = function (url, host, originHost, type) {
+        var request = { host: host, originHost: originHost, type: type };
+        var lower = url.toLowerCase();
+        var state = { blocked: false };
+        // 域名规则的模式从域名结束处开始匹配
+        var hostStart = lower.indexOf(host, lower.indexOf('//') + 2);
+        var rest = { original: url.slice(hostStart + host.length), lower: lower.slice(hostStart + host.length) };
+        for (var i = 0; ;) {
+            var list = this.hostRules.get(host.slice(i));
+            if (list && scan(list, request, rest, state)) return false;
+            var dot = host.indexOf('.', i);
+            if (dot < 0) break;
+            i = dot + 1;
+        }
+        var whole = { original: url, lower: lower };
+        var tokens = lower.match(TOKEN) || [];
+        var seen = new Set();
+        for (var t = 0; t < tokens.length; t++) {
+            if (seen.has(tokens[t])) continue;
+            seen.add(tokens[t]);
+            var rules = this.tokenRules.get(tokens[t]);
+            if (rules && scan(rules, request, whole, state)) return false;
+        }
+        if (scan(this.genericRules, request, whole, state)) return false;
+        return state.blocked;
+    };
+
+    return { RuleSet: RuleSet };
+})();
+
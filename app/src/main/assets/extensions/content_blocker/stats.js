@@ -0,0 +1,11 @@
+/*
+ * 把后台脚本统计的本页拦截数据转交给原生端。
+ * 内容脚本发出的原生消息按所在会话投递，原生端据此把计数对应到标签页。
+ */
+browser.runtime.onMessage.addListener(function (message) {
+    if (message && message.type === 'blockStats') {
+        browser.runtime.sendNativeMessage('manorContentBlocker', message).catch(function () {
+            // 原生端尚未注册消息代理
+        });
+    }
+});
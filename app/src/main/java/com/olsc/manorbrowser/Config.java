@@ -49,6 +49,14 @@ public class Config {
     public static final String PREF_KEY_LOCATION_RESTRICTED_SITES = "location_restricted_sites";
     /** SSL 证书受信任（已绕过警告）的网站列表 (Set<String>) */
     public static final String PREF_KEY_SSL_OVERRIDE_SITES = "ssl_override_sites";
+    /** 同时保持活跃的 GeckoSession 数量上限 (int) */
+    public static final String PREF_KEY_MAX_LIVE_SESSIONS = "max_live_sessions";
+    /** 内置下载器仅在 Wi-Fi 下下载 (boolean) */
+    public static final String PREF_KEY_DOWNLOAD_WIFI_ONLY = "download_wifi_only";
+    /** 内置下载器仅在充电时下载 (boolean) */
+    public static final String PREF_KEY_DOWNLOAD_CHARGING_ONLY = "download_charging_only";
+    /** 内置下载器全局限速，单位 KB/s，0 表示不限速 (int) */
+    public static final String PREF_KEY_DOWNLOAD_SPEED_LIMIT = "download_speed_limit";
 
     // --- 按钮功能值 ---
     public static final String FUNC_HOME = "home";
@@ -117,4 +125,10 @@ public class Config {
     // --- 默认数值 ---
     /** 默认纯色背景颜色 (曼诺绿) */
     public static final int DEFAULT_SOLID_BG_COLOR = 0xFF00FF99;
+    /** 默认活跃会话上限：恢复标签时最多预先创建这么多个 GeckoSession；超过时按 LRU 回收后台标签的会话 */
+    public static final int DEFAULT_MAX_LIVE_SESSIONS = 3;
+    /** 内置下载器同时进行的下载任务数，其余任务排队 */
+    public static final int DEFAULT_MAX_ACTIVE_DOWNLOADS = 3;
+    /** 同一主机同时打开的下载连接数上限（所有任务的分段合计） */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 6;
 }
\ No newline at end of file
@@ -22,6 +22,10 @@ public class ManorBrowserApp extends Application {
     public void onCreate() {
         super.onCreate();
         instance = this;
+        // 后台预加载书签索引，首次访问书签时无需同步读盘
+        com.olsc.manorbrowser.data.BookmarkStore.preload(this);
+        // 恢复内置下载队列，上次进程退出时未完成的任务从分段进度继续
+        com.olsc.manorbrowser.utils.DownloadScheduler.get(this).restore();
     }
 
     /**
@@ -88,6 +88,15 @@ public class BookmarkActivity extends AppCompatActivity {
             }
         });
         recyclerView.setAdapter(adapter);
+        // 冷启动时书签可能仍在后台加载，主线程不等待，加载完成后再刷新
+        BookmarkStorage.whenLoaded(this, () -> {
+            if (isFinishing() || isDestroyed()) return;
+            rootList = BookmarkStorage.loadBookmarks(this);
+            if (!folderStack.isEmpty()) {
+                rebuildStack();
+            }
+            refreshList();
+        });
         findViewById(R.id.fab_add_folder).setOnClickListener(v -> showAddFolderDialog());
 
         getOnBackPressedDispatcher().addCallback(this, new androidx.activity.OnBackPressedCallback(true) {
@@ -149,10 +158,11 @@ public class BookmarkActivity extends AppCompatActivity {
                     BookmarkItem folder = new BookmarkItem(title);
                     if (folderStack.isEmpty()) {
                         rootList.add(folder);
+                        BookmarkStorage.addBookmarkToFolder(this, folder, -1);
                     } else {
                         folderStack.peek().children.add(folder);
+                        BookmarkStorage.addBookmarkToFolder(this, folder, folderStack.peek().id);
                     }
-                    saveAll();
                     refreshList();
                 }
             })
@@ -231,7 +241,7 @@ public class BookmarkActivity extends AppCompatActivity {
                     }
                 }
                 
-                saveAll();
+                BookmarkStorage.updateBookmark(this, item.id, item.title, item.url);
                 refreshList();
                 Toast.makeText(this, R.string.msg_bookmark_updated, Toast.LENGTH_SHORT).show();
             })
@@ -314,15 +324,12 @@ public class BookmarkActivity extends AppCompatActivity {
                 } else {
                     folderStack.peek().children.remove(item);
                 }
-                saveAll();
+                BookmarkStorage.removeBookmark(this, item.id);
                 refreshList();
             })
             .setNegativeButton(android.R.string.cancel, null)
             .show();
     }
-    private void saveAll() {
-        BookmarkStorage.saveBookmarks(this, rootList);
-    }
     @Override
     public boolean onOptionsItemSelected(@NonNull MenuItem item) {
         if (item.getItemId() == android.R.id.home) {
@@ -22,18 +22,23 @@ import com.olsc.manorbrowser.Config;
 import com.olsc.manorbrowser.adapter.DownloadAdapter;
 import com.olsc.manorbrowser.data.DownloadInfo;
 import com.olsc.manorbrowser.utils.DownloadHelper;
+import com.olsc.manorbrowser.utils.DownloadProgressBus;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
-public class DownloadsActivity extends AppCompatActivity {
+public class DownloadsActivity extends AppCompatActivity implements DownloadProgressBus.Listener {
+    /** 排队等待时长的刷新间隔，仅在存在排队任务时运行 */
+    private static final long QUEUE_TICK_MS = 1000;
     private RecyclerView recyclerView;
     private DownloadAdapter adapter;
-    private List<DownloadInfo> downloadList = new ArrayList<>();
     private Handler handler;
-    private Runnable refreshRunnable;
+    private Runnable queueTickRunnable;
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    /** 是否有整表加载正在进行 / 加载期间又收到了刷新请求 */
+    private boolean loading;
+    private boolean reloadRequested;
     @Override
     protected void attachBaseContext(android.content.Context newBase) {
         super.attachBaseContext(com.olsc.manorbrowser.utils.LocaleHelper.onAttach(newBase));
@@ -67,42 +72,117 @@ public class DownloadsActivity extends AppCompatActivity {
         });
         recyclerView = findViewById(R.id.rv_downloads);
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
-        adapter = new DownloadAdapter(this, downloadList);
+        adapter = new DownloadAdapter(this);
         recyclerView.setAdapter(adapter);
         handler = new Handler(Looper.getMainLooper());
-        refreshRunnable = new Runnable() {
+        queueTickRunnable = new Runnable() {
             @Override
             public void run() {
-                loadDownloads();
-                handler.postDelayed(this, 1000);
+                // 只重绘排队中的行，更新其已等待时长
+                List<DownloadInfo> items = adapter.getItems();
+                for (int i = 0; i < items.size(); i++) {
+                    DownloadInfo info = items.get(i);
+                    if (info.isInternal && info.status == 0) adapter.notifyItemChanged(i, DownloadAdapter.PAYLOAD_PROGRESS);
+                }
+                handler.postDelayed(this, QUEUE_TICK_MS);
             }
         };
     }
     @Override
     protected void onResume() {
         super.onResume();
+        // 不再定时轮询：进度与状态变化由总线按帧推送
+        DownloadProgressBus.get(this).register(this);
         loadDownloads();
-        handler.post(refreshRunnable);
     }
     @Override
     protected void onPause() {
         super.onPause();
-        handler.removeCallbacks(refreshRunnable);
+        DownloadProgressBus.get(this).unregister(this);
+        handler.removeCallbacks(queueTickRunnable);
+    }
+
+    @Override
+    public void onDownloadsChanged(List<DownloadInfo> changed) {
+        List<DownloadInfo> items = new ArrayList<>(adapter.getItems());
+        java.util.Map<Long, Integer> positions = new java.util.HashMap<>();
+        for (int i = 0; i < items.size(); i++) positions.put(items.get(i).id, i);
+        for (DownloadInfo info : changed) {
+            Integer position = positions.get(info.id);
+            if (position == null) {
+                // 新出现的任务：整表加载一次以确定其位置
+                loadDownloads();
+                return;
+            }
+            items.set(position, info);
+        }
+        showDownloads(items);
+    }
+
+    @Override
+    public void onDownloadsInvalidated() {
+        loadDownloads();
     }
+
+    /**
+     * 在后台整表加载（存储 + 活跃任务 + 系统下载器）；加载期间的再次请求合并为加载完成后的一次
+     */
     private void loadDownloads() {
+        if (loading) {
+            reloadRequested = true;
+            return;
+        }
+        loading = true;
         executor.execute(() -> {
             List<DownloadInfo> info = DownloadHelper.getDownloads(this);
-            if (info != null) {
-                handler.post(() -> {
-                    downloadList.clear();
-                    downloadList.addAll(info);
-                    adapter.notifyDataSetChanged();
-                    findViewById(R.id.rv_downloads).setVisibility(downloadList.isEmpty() ? View.GONE : View.VISIBLE);
-                });
-            }
+            // 活跃任务对象会被下载线程持续修改，列表中只保存快照
+            List<DownloadInfo> snapshot = new ArrayList<>(info.size());
+            for (DownloadInfo item : info) snapshot.add(item.copy());
+            handler.post(() -> {
+                loading = false;
+                if (isFinishing() || isDestroyed()) return;
+                showDownloads(snapshot);
+                if (reloadRequested) {
+                    reloadRequested = false;
+                    loadDownloads();
+                }
+            });
         });
     }
 
+    private void showDownloads(List<DownloadInfo> items) {
+        adapter.submitList(items);
+        updateQueueSummary();
+        recyclerView.setVisibility(items.isEmpty() ? View.GONE : View.VISIBLE);
+    }
+
+    /**
+     * 在标题栏副标题显示内置下载的运行数、排队数与总速度
+     */
+    private void updateQueueSummary() {
+        int running = 0, queued = 0;
+        long speed = 0;
+        for (DownloadInfo info : adapter.getItems()) {
+            if (!info.isInternal) continue;
+            if (info.status == 1) {
+                running++;
+                speed += info.speed;
+            } else if (info.status == 0) {
+                queued++;
+            }
+        }
+        // 有排队任务时才需要每秒刷新等待时长，否则空闲时不做任何工作
+        handler.removeCallbacks(queueTickRunnable);
+        if (queued > 0 && getLifecycle().getCurrentState().isAtLeast(androidx.lifecycle.Lifecycle.State.RESUMED)) handler.postDelayed(queueTickRunnable, QUEUE_TICK_MS);
+        if (getSupportActionBar() == null) return;
+        if (running == 0 && queued == 0) {
+            getSupportActionBar().setSubtitle(null);
+        } else {
+            getSupportActionBar().setSubtitle(getString(R.string.downloads_queue_summary, running, queued,
+                    android.text.format.Formatter.formatFileSize(this, speed)));
+        }
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
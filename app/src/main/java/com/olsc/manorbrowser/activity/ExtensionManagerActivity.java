@@ -81,7 +81,14 @@ public class ExtensionManagerActivity extends AppCompatActivity {
     private void loadExtensions() {
         if (MainActivity.sRuntime != null) {
             MainActivity.sRuntime.getWebExtensionController().list().accept(
-                extensions -> {
+                installed -> {
+                    // 内置扩展（脚本执行桥等）不在列表中展示
+                    final java.util.List<org.mozilla.geckoview.WebExtension> extensions = new java.util.ArrayList<>();
+                    if (installed != null) {
+                        for (org.mozilla.geckoview.WebExtension ext : installed) {
+                            if (!ext.isBuiltIn) extensions.add(ext);
+                        }
+                    }
                     runOnUiThread(() -> {
                         if (extensions == null || extensions.isEmpty()) {
                             tvEmpty.setVisibility(View.VISIBLE);
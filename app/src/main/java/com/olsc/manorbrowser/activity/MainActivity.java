@@ -140,7 +140,6 @@ public class MainActivity extends AppCompatActivity {
     
     // --- 远程控制 ---
     private BrowserCommandServer commandServer;
-    private volatile BrowserCommandServer.EvalCallback pendingJsCallback = null;
     private volatile String pendingJsOriginalTitle = null;
     private boolean isLordMode = false;
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
@@ -149,6 +148,7 @@ public class MainActivity extends AppCompatActivity {
     private androidx.cardview.widget.CardView recommendationsContainer;
     private RecyclerView rvRecommendations;
     private com.olsc.manorbrowser.adapter.RecommendationAdapter recommendationAdapter;
+    private com.olsc.manorbrowser.utils.SuggestionEngine suggestionEngine;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -259,6 +259,7 @@ public class MainActivity extends AppCompatActivity {
                 hideKeyboard();
             });
             rvRecommendations.setAdapter(recommendationAdapter);
+            suggestionEngine = new com.olsc.manorbrowser.utils.SuggestionEngine(this);
         }
         
         // 4. 应用窗口 Insets 监听 (解决刘海屏、导航栏遮挡)
@@ -423,6 +424,8 @@ public class MainActivity extends AppCompatActivity {
             sRuntime = GeckoRuntime.create(getApplicationContext(), builder.build());
             sRuntime.setAutocompleteStorageDelegate(mAutocompleteStorageDelegate);
             sRuntime.getWebExtensionController().setPromptDelegate(new com.olsc.manorbrowser.utils.ExtensionPromptDelegate(this));
+            com.olsc.manorbrowser.utils.JsEvalBridge.get().install(sRuntime);
+            com.olsc.manorbrowser.utils.ContentBlocker.get().install(sRuntime, this);
         } else {
             // Runtime 已存在
         }
@@ -527,29 +530,143 @@ public class MainActivity extends AppCompatActivity {
         // 增加触发刷新的拉动距离，防止在全屏模式下误触
         swipeRefresh.setDistanceToTriggerSync(400); 
     }
-    @SuppressLint("NotifyDataSetChanged")
     private void restoreTabsOrInit() {
+        long start = android.os.SystemClock.elapsedRealtime();
         List<TabInfo> savedTabs = TabStorage.loadTabs(this, currentTabGroup);
         if (savedTabs != null && !savedTabs.isEmpty()) {
             tabs.clear();
-            tabs.addAll(savedTabs);
-            for (TabInfo tab : tabs) {
-                initializeSessionForTab(tab);
-            }
-            if (tabSwitcherAdapter != null) {
-                tabSwitcherAdapter.notifyDataSetChanged();
-            }
-            switchToTab(tabs.size() - 1);
-            updateBottomTabCounter();
+            showRestoredTabs(savedTabs);
         } else {
             createNewTab(Config.URL_BLANK);
         }
+        logSessionMetrics("restore", android.os.SystemClock.elapsedRealtime() - start);
+    }
+
+    /**
+     * 展示从磁盘恢复的标签列表。
+     * 恢复的标签仅作为占位（URL、标题、缩略图），不创建 GeckoSession；
+     * 只有切换到的标签会立即创建会话并加载，其余最近使用的标签稍后按上限预取。
+     */
+    @SuppressLint("NotifyDataSetChanged")
+    private void showRestoredTabs(List<TabInfo> savedTabs) {
+        tabs.addAll(savedTabs);
+        if (tabSwitcherAdapter != null) {
+            tabSwitcherAdapter.notifyDataSetChanged();
+        }
+        switchToTab(tabs.size() - 1);
+        updateBottomTabCounter();
+        schedulePrefetch();
+    }
+
+    /** 恢复标签后等待首屏加载一段时间再预取，避免与当前页争抢网络和内容进程 */
+    private static final long PREFETCH_DELAY_MS = 3000;
+    private final Runnable prefetchRunnable = this::prefetchRecentTabs;
+
+    private void schedulePrefetch() {
+        mainHandler.removeCallbacks(prefetchRunnable);
+        mainHandler.postDelayed(prefetchRunnable, PREFETCH_DELAY_MS);
+    }
+
+    /**
+     * 按最近使用顺序（列表末尾最近）为占位标签创建会话，直到活跃会话数达到上限
+     */
+    private void prefetchRecentTabs() {
+        if (isFinishing() || isDestroyed()) return;
+        int max = getMaxLiveSessions();
+        for (int i = tabs.size() - 1; i >= 0 && countLiveSessions() < max; i--) {
+            TabInfo tab = tabs.get(i);
+            if (tab.session != null || tab.url == null || Config.URL_BLANK.equals(tab.url)) continue;
+            initializeSessionForTab(tab);
+        }
+        logSessionMetrics("prefetch", 0);
+    }
+
+    /** 当前持有 GeckoSession 的标签数 */
+    private int countLiveSessions() {
+        int count = 0;
+        for (TabInfo tab : tabs) {
+            if (tab.session != null) count++;
+        }
+        return count;
+    }
+
+    /**
+     * 按 LRU 回收后台标签的会话，使活跃会话数不超过 keep。
+     * 当前标签永不回收；被回收的标签保留 SessionState，再次切换到时恢复。
+     */
+    private void trimLiveSessions(int keep) {
+        TabInfo current = getCurrentTab();
+        List<TabInfo> candidates = new ArrayList<>();
+        for (TabInfo tab : tabs) {
+            if (tab.session != null && tab != current) candidates.add(tab);
+        }
+        int excess = candidates.size() + (current != null && current.session != null ? 1 : 0) - keep;
+        if (excess <= 0) return;
+        // lastActiveTime 相同（如从未切换过的预取标签）时按列表顺序，越靠前越久未使用
+        java.util.Collections.sort(candidates, (a, b) -> {
+            int byTime = Long.compare(a.lastActiveTime, b.lastActiveTime);
+            return byTime != 0 ? byTime : Integer.compare(tabs.indexOf(a), tabs.indexOf(b));
+        });
+        for (int i = 0; i < excess && i < candidates.size(); i++) {
+            hibernateTab(candidates.get(i));
+        }
+        logSessionMetrics("trim", 0);
+    }
+
+    /**
+     * 关闭标签的会话使其退化为占位标签，释放对应的内容进程内存
+     */
+    private void hibernateTab(TabInfo tab) {
+        GeckoSession session = tab.session;
+        if (session == null) return;
+        cancelPageLoadTimeout(tab);
+        mainHandler.removeCallbacksAndMessages(session);
+        session.setProgressDelegate(null);
+        session.setContentDelegate(null);
+        session.close();
+        tab.session = null;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // UI_HIDDEN 仅表示界面不可见，并非内存紧张，不回收
+        if (level == android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+                || level >= android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            // 内存紧张时只保留当前标签的会话，并释放缩略图内存层
+            trimLiveSessions(1);
+            com.olsc.manorbrowser.data.ThumbnailCache.get(this).trimMemory();
+        }
+    }
+
+    /** 活跃会话上限，可通过偏好设置调整，至少为 1（当前标签） */
+    private int getMaxLiveSessions() {
+        android.content.SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+        return Math.max(1, prefs.getInt(Config.PREF_KEY_MAX_LIVE_SESSIONS, Config.DEFAULT_MAX_LIVE_SESSIONS));
+    }
+
+    /**
+     * 记录标签恢复耗时、会话数与内存占用，用于对比延迟恢复前后的启动开销。
+     * 内容进程的内存不在本进程堆内，活跃会话数即可反映其规模。
+     */
+    private void logSessionMetrics(String stage, long elapsedMs) {
+        Runtime rt = Runtime.getRuntime();
+        long javaHeapKb = (rt.totalMemory() - rt.freeMemory()) / 1024;
+        long nativeHeapKb = android.os.Debug.getNativeHeapAllocatedSize() / 1024;
+        android.util.Log.i("MainActivity", stage + ": tabs=" + tabs.size()
+                + " liveSessions=" + countLiveSessions()
+                + " elapsed=" + elapsedMs + "ms"
+                + " javaHeap=" + javaHeapKb + "KB"
+                + " nativeHeap=" + nativeHeapKb + "KB");
     }
     private void initializeSessionForTab(TabInfo tab) {
         if (tab.session != null) return;
         GeckoSession session = new GeckoSession();
         session.open(sRuntime);
         tab.session = session; 
+        com.olsc.manorbrowser.utils.JsEvalBridge.get().attach(session);
+        com.olsc.manorbrowser.utils.ContentBlocker.get().attach(session);
         applyThemeToSession(session);
         
         if (Config.URL_BLANK.equals(tab.url)) {
@@ -560,6 +677,7 @@ public class MainActivity extends AppCompatActivity {
             public void onPageStart(@NonNull GeckoSession session, @NonNull String url) {
                // 导航开始时，清除该 session 所有的待处理 JS 摘要提取任务，防止延迟注入到新页面或导致引擎状态冲突
                mainHandler.removeCallbacksAndMessages(session);
+               com.olsc.manorbrowser.utils.PageLoadTracker.get().onPageStart(session, url);
                updateTabInfo(session, url, null);
                // 页面重新加载时，清除该 session 的自动填充弹出记录，使刷新后可再次弹出
                mPromptedAutofillUrls.removeIf(key -> key.startsWith(session.hashCode() + "_"));
@@ -593,6 +711,7 @@ public class MainActivity extends AppCompatActivity {
             }
             @Override
             public void onProgressChange(@NonNull GeckoSession session, int progress) {
+                com.olsc.manorbrowser.utils.PageLoadTracker.get().onProgressChange(session, progress);
                 TabInfo currentTab = null;
                 for (TabInfo t : tabs) {
                     if (t.session == session) {
@@ -635,6 +754,7 @@ public class MainActivity extends AppCompatActivity {
             }
             @Override
             public void onPageStop(@NonNull GeckoSession session, boolean success) {
+               com.olsc.manorbrowser.utils.PageLoadTracker.get().onPageStop(session, success);
                updateTabInfo(session, null, null);
                
                // 页面停止加载后，提取摘要 (比在 onTitleChange 中提取更稳定，避开渲染高峰期)
@@ -671,7 +791,11 @@ public class MainActivity extends AppCompatActivity {
                });
             }
             
-            @Override public void onSessionStateChange(@NonNull GeckoSession session, @NonNull GeckoSession.SessionState sessionState) {}
+            @Override
+            public void onSessionStateChange(@NonNull GeckoSession session, @NonNull GeckoSession.SessionState sessionState) {
+                // 保存最新状态，会话被回收或应用重启后据此恢复历史与滚动位置
+                tab.sessionState = sessionState;
+            }
         });
         
         session.setContentDelegate(new GeckoSession.ContentDelegate() {
@@ -787,7 +911,7 @@ public class MainActivity extends AppCompatActivity {
                         try { contentLength = Long.parseLong(cl.trim()); } catch (NumberFormatException ignored) {}
                     }
                     com.olsc.manorbrowser.utils.BrowserDownloader.downloadFromStream(
-                        MainActivity.this, url, mimeType, filename, contentLength, geckoResponse.body
+                        MainActivity.this, url, mimeType, filename, contentLength, geckoResponse.headers, geckoResponse.body
                     );
                     return;
                 }
@@ -932,25 +1056,8 @@ public class MainActivity extends AppCompatActivity {
                     String textToCopy = message.substring("COPY_TEXT:".length());
                     runOnUiThread(() -> copyToClipboard(textToCopy));
                     return GeckoResult.fromValue(prompt.dismiss());
-                } else if (message != null && message.startsWith("READER_MODE:")) {
-                    String data = message.substring("READER_MODE:".length());
-                    String[] parts = data.split("\\|\\|\\|", 2);
-                    String title = parts.length > 0 ? parts[0] : "";
-                    String content = parts.length > 1 ? parts[1] : "";
-                    if (content.trim().isEmpty()) {
-                        runOnUiThread(() -> Toast.makeText(MainActivity.this, R.string.msg_reader_mode_failed, Toast.LENGTH_SHORT).show());
-                    } else {
-                        runOnUiThread(() -> openReaderActivity(title, content));
-                    }
-                    return GeckoResult.fromValue(prompt.dismiss());
-                } else if (message != null && message.startsWith("__JSRESULT__:")) {
-                    // JS 桥接调用拦截
-                    String resultData = message.substring("__JSRESULT__:".length());
-                    BrowserCommandServer.EvalCallback cb = pendingJsCallback;
-                    pendingJsCallback = null;
-                    if (cb != null) {
-                        cb.onResult(resultData);
-                    }
+                } else if (com.olsc.manorbrowser.utils.JsEvalBridge.get().handleAlert(message)) {
+                    // JS 桥接调用拦截（扩展端口不可用时的退回方式）
                     return GeckoResult.fromValue(prompt.dismiss());
                 } else if (message != null && message.startsWith("HISTORY_SNIPPET:")) {
                     // 历史记录摘要回传
@@ -1261,9 +1368,11 @@ public class MainActivity extends AppCompatActivity {
 
             @Override
             public void onLocationChange(@NonNull GeckoSession session, @Nullable String url, @NonNull java.util.List<org.mozilla.geckoview.GeckoSession.PermissionDelegate.ContentPermission> permissions, @NonNull Boolean hasUserGesture) {
+                com.olsc.manorbrowser.utils.PageLoadTracker.get().onLocationChange(session, url);
                 if (url != null) {
                     // 同步 URL 状态到内存中的标签模型
                     tab.url = url;
+                    journalTabUpdate(tab);
                     // 如果是当前活动标签，更新地址栏
                     runOnUiThread(() -> {
                         if (session == getCurrentSession()) {
@@ -1281,7 +1390,7 @@ public class MainActivity extends AppCompatActivity {
                 }
                 
                 // 2. 黑名单过滤
-                if (isLordMode && isAdUri(uri)) {
+                if (isLordMode && isAdUri(uri, tab.url, com.olsc.manorbrowser.utils.FilterEngine.TYPE_POPUP)) {
                     return GeckoResult.fromValue(null);
                 }
                 
@@ -1304,17 +1413,12 @@ public class MainActivity extends AppCompatActivity {
                 return GeckoResult.fromValue(null);
             }
 
-            private boolean isAdUri(String uri) {
+            /**
+             * 按内置过滤规则判断是否拦截（见 ContentFilter），originUrl 为发起请求的页面地址
+             */
+            private boolean isAdUri(String uri, String originUrl, int type) {
                 if (uri == null || uri.isEmpty()) return true;
-                String lower = uri.toLowerCase();
-                return lower.contains("popads") || lower.contains("onclickads") || 
-                       lower.contains("onclickperformance") || lower.contains("clksite") || 
-                       lower.contains("cpm") || lower.contains("adsterra") || 
-                       lower.contains("doubleclick") || lower.contains("googleadservices") ||
-                       lower.contains("affiliate") || lower.contains("/ad/") || 
-                       lower.contains("clk") || lower.contains("redirect") ||
-                       lower.contains("track") || lower.contains("analytic") ||
-                       lower.contains("popcash") || lower.contains("exoclick");
+                return com.olsc.manorbrowser.utils.ContentFilter.get(MainActivity.this).shouldBlock(uri, originUrl, type);
             }
 
             @Override
@@ -1350,7 +1454,9 @@ public class MainActivity extends AppCompatActivity {
                     e.printStackTrace();
                 }
                 
-                if (isLordMode && isAdUri(uri)) {
+                int requestType = request.target == GeckoSession.NavigationDelegate.TARGET_WINDOW_NEW
+                        ? com.olsc.manorbrowser.utils.FilterEngine.TYPE_POPUP : com.olsc.manorbrowser.utils.FilterEngine.TYPE_DOCUMENT;
+                if (isLordMode && isAdUri(uri, request.triggerUri, requestType)) {
                     return GeckoResult.fromValue(AllowOrDeny.DENY);
                 }
                 
@@ -1385,7 +1491,10 @@ public class MainActivity extends AppCompatActivity {
                 }
             }
         });
-        if (tab.url != null && !tab.url.isEmpty() && !Config.URL_BLANK.equals(tab.url)) {
+        if (tab.sessionState != null) {
+            // 曾被回收或从磁盘恢复的标签：还原前进后退历史与滚动位置，而不是重新打开单个 URL
+            session.restoreState(tab.sessionState);
+        } else if (tab.url != null && !tab.url.isEmpty() && !Config.URL_BLANK.equals(tab.url)) {
             session.loadUri(tab.url);
         }
     }
@@ -1393,6 +1502,8 @@ public class MainActivity extends AppCompatActivity {
     protected void onResume() {
         super.onResume();
         refreshBackgroundEffect();
+        // 从历史/书签页返回时数据可能已变化，地址栏前缀树需重建
+        if (suggestionEngine != null) suggestionEngine.invalidate();
         
         // 重新应用桌面模式设置到所有session
         for (TabInfo tab : tabs) {
@@ -1549,14 +1660,16 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onStop() {
         super.onStop();
-        // 传递副本以确保后台线程保存时的线程安全
-        TabStorage.saveTabs(this, currentTabGroup, new ArrayList<>(tabs));
+        // 标签列表的变化已实时写入增量日志，这里只落盘有变化的会话状态与缩略图（传递副本以确保线程安全）
+        TabStorage.flush(this, currentTabGroup, new ArrayList<>(tabs));
         
-        // 触发闲时历史整理
+        // 提交合并窗口内尚未落盘的访问记录，再触发闲时历史整理
+        com.olsc.manorbrowser.data.HistoryStorage.flushPendingWrites(this);
         com.olsc.manorbrowser.data.HistoryStorage.runIdleOrganization(this);
     }
     @Override
     protected void onDestroy() {
+        mainHandler.removeCallbacks(prefetchRunnable);
         for (TabInfo tab : tabs) {
             if (tab.session != null) {
                 cancelPageLoadTimeout(tab);
@@ -1569,6 +1682,10 @@ public class MainActivity extends AppCompatActivity {
         if (commandServer != null) {
             commandServer = null;
         }
+        if (suggestionEngine != null) {
+            suggestionEngine.shutdown();
+            suggestionEngine = null;
+        }
         super.onDestroy();
     }
     private void setupTabSwitcher() {
@@ -1648,10 +1765,12 @@ public class MainActivity extends AppCompatActivity {
             if (hasFocus) {
                 // 获得焦点时，重置为第一次点击状态并展示候选列表
                 urlInputFirstClick = true;
+                if (suggestionEngine != null) suggestionEngine.warmUp();
                 updateRecommendations(urlInput.getText().toString());
             } else {
                 // 失去焦点时，延迟隐藏（给列表点击留出响应时间）
                 urlInputFirstClick = true;
+                if (suggestionEngine != null) suggestionEngine.cancel();
                 mainHandler.postDelayed(() -> recommendationsContainer.setVisibility(View.GONE), 200);
             }
         });
@@ -1859,6 +1978,10 @@ public class MainActivity extends AppCompatActivity {
                 if (isProcessingAction) return false;
                 android.content.Intent intent = new android.content.Intent(this, DownloadsActivity.class);
                 startActivity(intent);
+            } else if (id == R.id.nav_saved_articles) {
+                if (isProcessingAction) return false;
+                android.content.Intent intent = new android.content.Intent(this, SavedArticlesActivity.class);
+                startActivity(intent);
             } else if (id == R.id.nav_add_bookmark) {
                 showAddBookmarkDialog();
             } else if (id == R.id.nav_bookmarks) {
@@ -1953,6 +2076,7 @@ public class MainActivity extends AppCompatActivity {
             info.title = getString(R.string.title_new_tab);
         }
         tabs.add(info);
+        TabStorage.recordAdded(this, currentTabGroup, info);
         initializeSessionForTab(info);
         if (tabSwitcherAdapter != null) {
             tabSwitcherAdapter.notifyItemInserted(tabs.size() - 1);
@@ -1961,11 +2085,19 @@ public class MainActivity extends AppCompatActivity {
         updateBottomTabCounter();
         return info.session;
     }
+    /** 标签 URL 或标题变化后追加到增量日志（已关闭的标签忽略） */
+    private void journalTabUpdate(TabInfo tab) {
+        if (tabs.contains(tab)) {
+            TabStorage.recordUpdated(this, currentTabGroup, tab);
+        }
+    }
+
     private void updateTabInfo(GeckoSession session, String url, String title) {
         for (int i = 0; i < tabs.size(); i++) {
             if (tabs.get(i).session == session) {
                 if (url != null) tabs.get(i).url = url;
                 if (title != null) tabs.get(i).title = title;
+                journalTabUpdate(tabs.get(i));
                 final int index = i;
                 runOnUiThread(() -> {
                     if (tabSwitcherAdapter != null) {
@@ -2113,6 +2245,7 @@ public class MainActivity extends AppCompatActivity {
             if (index != tabs.size() - 1) {
                 TabInfo t = tabs.remove(index);
                 tabs.add(t);
+                TabStorage.recordMoved(this, currentTabGroup, t, tabs.size() - 1);
                 if (tabSwitcherAdapter != null) {
                     tabSwitcherAdapter.notifyItemMoved(index, tabs.size() - 1);
                     tabSwitcherAdapter.notifyItemRangeChanged(0, tabs.size());
@@ -2128,11 +2261,13 @@ public class MainActivity extends AppCompatActivity {
             }
             
             TabInfo tab = tabs.get(targetIndex);
-            if (tab.session != null) {
-                if (geckoView.getSession() != tab.session) {
-                    geckoView.setSession(tab.session);
-                }
+            tab.lastActiveTime = System.currentTimeMillis();
+            // 占位标签在切换到时才创建会话并加载
+            initializeSessionForTab(tab);
+            if (geckoView.getSession() != tab.session) {
+                geckoView.setSession(tab.session);
             }
+            trimLiveSessions(getMaxLiveSessions());
             
             if (swipeRefresh != null) {
                 swipeRefresh.setEnabled(tab.scrollY <= 0);
@@ -2209,10 +2344,8 @@ public class MainActivity extends AppCompatActivity {
             mainHandler.removeCallbacksAndMessages(tab.session);
             tab.session.close();
         }
-        if (tab.thumbnail != null && !tab.thumbnail.isRecycled()) {
-            tab.thumbnail.recycle();
-            tab.thumbnail = null;
-        }
+        com.olsc.manorbrowser.data.ThumbnailCache.get(this).remove(tab.id);
+        TabStorage.recordClosed(this, currentTabGroup, tab);
         tabs.remove(position);
         
         if (tabs.isEmpty()) {
@@ -2223,14 +2356,7 @@ public class MainActivity extends AppCompatActivity {
                 
                 List<TabInfo> savedTabs = TabStorage.loadTabs(this, null);
                 if (savedTabs != null && !savedTabs.isEmpty()) {
-                    tabs.addAll(savedTabs);
-                    for (TabInfo t : tabs) {
-                        initializeSessionForTab(t);
-                    }
-                    if (tabSwitcherAdapter != null) {
-                        tabSwitcherAdapter.notifyDataSetChanged();
-                    }
-                    switchToTab(tabs.size() - 1);
+                    showRestoredTabs(savedTabs);
                 } else {
                     createNewTab(Config.URL_BLANK);
                 }
@@ -2383,7 +2509,7 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void switchToGroup(String newGroup) {
-        TabStorage.saveTabs(this, currentTabGroup, new ArrayList<>(tabs));
+        TabStorage.flush(this, currentTabGroup, new ArrayList<>(tabs));
         
         for (TabInfo tab : tabs) {
             if (tab.session != null) {
@@ -2397,15 +2523,7 @@ public class MainActivity extends AppCompatActivity {
         
         List<TabInfo> savedTabs = TabStorage.loadTabs(this, currentTabGroup);
         if (savedTabs != null && !savedTabs.isEmpty()) {
-            tabs.addAll(savedTabs);
-            for (TabInfo tab : tabs) {
-                initializeSessionForTab(tab);
-            }
-            if (tabSwitcherAdapter != null) {
-                tabSwitcherAdapter.notifyDataSetChanged();
-            }
-            switchToTab(tabs.size() - 1);
-            updateBottomTabCounter();
+            showRestoredTabs(savedTabs);
         } else {
             createNewTab(Config.URL_BLANK);
         }
@@ -2447,14 +2565,7 @@ public class MainActivity extends AppCompatActivity {
             
             List<TabInfo> savedTabs = TabStorage.loadTabs(this, null);
             if (savedTabs != null && !savedTabs.isEmpty()) {
-                tabs.addAll(savedTabs);
-                for (TabInfo t : tabs) {
-                    initializeSessionForTab(t);
-                }
-                if (tabSwitcherAdapter != null) {
-                    tabSwitcherAdapter.notifyDataSetChanged();
-                }
-                switchToTab(tabs.size() - 1);
+                showRestoredTabs(savedTabs);
             } else {
                 createNewTab(Config.URL_BLANK);
             }
@@ -2606,6 +2717,14 @@ public class MainActivity extends AppCompatActivity {
         }
         
         TabInfo tab = tabs.get(currentTabIndex);
+        com.olsc.manorbrowser.data.ThumbnailCache thumbnails = com.olsc.manorbrowser.data.ThumbnailCache.get(this);
+        // 缩略图在后台转换完成后刷新对应卡片（此时标签可能已移动位置）
+        Runnable onThumbnailReady = () -> {
+            int index = tabs.indexOf(tab);
+            if (index >= 0 && tabSwitcherAdapter != null) {
+                tabSwitcherAdapter.notifyItemChanged(index);
+            }
+        };
         
         // 逻辑A：非主页（GeckoView 渲染内容）的截图
         if (!Config.URL_BLANK.equals(tab.url) && geckoView.getVisibility() == View.VISIBLE && geckoView.getWidth() > 0 && geckoView.getHeight() > 0) {
@@ -2613,20 +2732,19 @@ public class MainActivity extends AppCompatActivity {
                 int viewWidth = geckoView.getWidth();
                 int viewHeight = geckoView.getHeight();
                 
-                // 内存优化：1/3 比例
+                // 内存优化：1/3 比例；目标位图从缓冲池复用
                 int targetWidth = Math.max(1, viewWidth / 3);
                 int targetHeight = Math.max(1, viewHeight / 3);
                 
-                android.graphics.Bitmap bitmap = android.graphics.Bitmap.createBitmap(
-                        targetWidth, targetHeight, android.graphics.Bitmap.Config.ARGB_8888);
+                android.graphics.Bitmap bitmap = thumbnails.obtainCaptureBuffer(targetWidth, targetHeight);
                 
                 android.view.SurfaceView surfaceView = findSurfaceView(geckoView);
                 if (surfaceView != null) {
                     android.view.PixelCopy.request(surfaceView, bitmap, copyResult -> {
                         if (copyResult == android.view.PixelCopy.SUCCESS) {
-                            validateAndSetThumbnail(tab, bitmap);
+                            thumbnails.putCapture(tab.id, bitmap, onThumbnailReady);
                         } else {
-                            bitmap.recycle();
+                            thumbnails.releaseCaptureBuffer(bitmap);
                         }
                         handleScreenshotResult(onComplete);
                     }, new android.os.Handler(android.os.Looper.getMainLooper()));
@@ -2643,9 +2761,9 @@ public class MainActivity extends AppCompatActivity {
                         bitmap,
                         copyResult -> {
                             if (copyResult == android.view.PixelCopy.SUCCESS) {
-                                validateAndSetThumbnail(tab, bitmap);
+                                thumbnails.putCapture(tab.id, bitmap, onThumbnailReady);
                             } else {
-                                bitmap.recycle();
+                                thumbnails.releaseCaptureBuffer(bitmap);
                             }
                             handleScreenshotResult(onComplete);
                         },
@@ -2664,12 +2782,13 @@ public class MainActivity extends AppCompatActivity {
                 try {
                     int w = Math.max(1, layoutHome.getWidth() / 3);
                     int h = Math.max(1, layoutHome.getHeight() / 3);
-                    android.graphics.Bitmap bitmap = android.graphics.Bitmap.createBitmap(
-                            w, h, android.graphics.Bitmap.Config.ARGB_8888);
+                    android.graphics.Bitmap bitmap = thumbnails.obtainCaptureBuffer(w, h);
+                    // 缩略图以 RGB_565 存储不含透明通道，先铺底色以免透明区域变黑
+                    bitmap.eraseColor(androidx.core.content.ContextCompat.getColor(this, R.color.background_main));
                     android.graphics.Canvas canvas = new android.graphics.Canvas(bitmap);
                     canvas.scale(1/3f, 1/3f);
                     layoutHome.draw(canvas);
-                    validateAndSetThumbnail(tab, bitmap);
+                    thumbnails.putCapture(tab.id, bitmap, onThumbnailReady);
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
@@ -2761,30 +2880,6 @@ public class MainActivity extends AppCompatActivity {
             if (onComplete != null) onComplete.run();
         });
     }
-    private void validateAndSetThumbnail(TabInfo tab, android.graphics.Bitmap bitmap) {
-        if (bitmap == null) return;
-        int w = bitmap.getWidth();
-        int h = bitmap.getHeight();
-        int[] points = {
-            bitmap.getPixel(w / 2, h / 2),      
-            bitmap.getPixel(10, 10),            
-            bitmap.getPixel(w - 10, 10),        
-            bitmap.getPixel(10, h - 10),        
-            bitmap.getPixel(w - 10, h - 10)     
-        };
-        boolean allWhite = true;
-        for (int p : points) {
-            if (p != 0xFFFFFFFF) {
-                allWhite = false;
-                break;
-            }
-        }
-        if (allWhite && tab.thumbnail != null) {
-            return;
-        }
-        tab.thumbnail = bitmap;
-    }
-
     private void applyThemeToSession(GeckoSession session) {
         if (sRuntime == null || session == null) return;
         android.content.SharedPreferences prefs = getSharedPreferences(Config.PREF_NAME_THEME, MODE_PRIVATE);
@@ -3362,100 +3457,51 @@ public class MainActivity extends AppCompatActivity {
                 if (!newTitle.isEmpty()) {
                     tab.title = newTitle;
                     tabSwitcherAdapter.notifyItemChanged(position);
-                    TabStorage.saveTabs(this, currentTabGroup, tabs);
+                    TabStorage.recordUpdated(this, currentTabGroup, tab);
                     Toast.makeText(this, R.string.msg_tab_updated, Toast.LENGTH_SHORT).show();
                 }
             })
             .setNegativeButton(android.R.string.cancel, null)
             .show();
     }
+    /** 阅读模式提取出的正文少于该长度时视为失败 */
+    private static final int READER_MIN_TEXT = 50;
+
     private void enableReaderMode() {
         GeckoSession session = getCurrentSession();
         if (session != null) {
             Toast.makeText(this, R.string.msg_reader_mode_loading, Toast.LENGTH_SHORT).show();
-            
-            // 改进的内容提取脚本，提取更完整的网页文字
-            String script = "javascript:(function(){" +
-                "var content = '';" +
-                "var title = document.title;" +
-                
-                // 尝试找到主要内容区域
-                "var article = document.querySelector('article') || " +
-                "              document.querySelector('[role=\"main\"]') || " +
-                "              document.querySelector('main') || " +
-                "              document.querySelector('.content') || " +
-                "              document.querySelector('.article') || " +
-                "              document.querySelector('#content') || " +
-                "              document.body;" +
-                
-                // 递归提取文本的函数
-                "function extractText(node) {" +
-                "  if (!node) return;" +
-                "  if (node.nodeType === Node.TEXT_NODE) {" +
-                "    var text = node.textContent.trim();" +
-                "    if (text.length > 0) {" +
-                "      content += text + ' ';" +
-                "    }" +
-                "  } else if (node.nodeType === Node.ELEMENT_NODE) {" +
-                "    var tag = node.tagName.toLowerCase();" +
-                "    var style = window.getComputedStyle(node);" +
-                
-                // 跳过隐藏元素和不需要的标签
-                "    if (style.display === 'none' || style.visibility === 'hidden') return;" +
-                "    if (tag === 'script' || tag === 'style' || tag === 'noscript' || " +
-                "        tag === 'iframe' || tag === 'nav' || tag === 'header' || " +
-                "        tag === 'footer' || tag === 'aside') return;" +
-                
-                // 跳过广告和导航相关的class
-                "    var className = node.className || '';" +
-                "    if (typeof className === 'string' && " +
-                "        (className.includes('ad') || className.includes('nav') || " +
-                "         className.includes('menu') || className.includes('sidebar') || " +
-                "         className.includes('comment'))) return;" +
-                
-                // 处理标题
-                "    if (tag === 'h1' || tag === 'h2' || tag === 'h3' || tag === 'h4' || tag === 'h5' || tag === 'h6') {" +
-                "      content += '\\n\\n=== ' + node.textContent.trim() + ' ===\\n\\n';" +
-                "      return;" +
-                "    }" +
-                
-                // 处理段落和列表
-                "    if (tag === 'p' || tag === 'li' || tag === 'blockquote') {" +
-                "      for (var i = 0; i < node.childNodes.length; i++) {" +
-                "        extractText(node.childNodes[i]);" +
-                "      }" +
-                "      content += '\\n\\n';" +
-                "      return;" +
-                "    }" +
-                
-                // 处理换行
-                "    if (tag === 'br') {" +
-                "      content += '\\n';" +
-                "      return;" +
-                "    }" +
-                
-                // 递归处理子节点
-                "    for (var i = 0; i < node.childNodes.length; i++) {" +
-                "      extractText(node.childNodes[i]);" +
-                "    }" +
-                "  }" +
-                "}" +
-                
-                "extractText(article);" +
-                
-                // 清理多余的空白
-                "content = content.replace(/\\n{3,}/g, '\\n\\n').trim();" +
-                
-                "alert('READER_MODE:' + title + '|||' + content);" +
-                "})()";
-            
-            session.loadUri(script);
+            // 页面只序列化一次 DOM，正文的识别与评分在后台线程由 ReaderExtractor 完成
+            String script = "({url: location.href, title: document.title, html: document.documentElement.outerHTML})";
+            com.olsc.manorbrowser.utils.JsEvalBridge.get().evaluate(session, script, 15000, result -> new Thread(() -> {
+                com.olsc.manorbrowser.data.ReaderArticle article = null;
+                try {
+                    Object value = new org.json.JSONTokener(result).nextValue();
+                    if (value instanceof JSONObject) {
+                        JSONObject page = (JSONObject) value;
+                        article = com.olsc.manorbrowser.utils.ReaderExtractor.extract(
+                                page.optString("html"), page.optString("url"), page.optString("title"));
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                com.olsc.manorbrowser.data.ReaderArticle extracted = article;
+                runOnUiThread(() -> {
+                    if (isFinishing() || isDestroyed()) return;
+                    if (extracted == null || extracted.textLength() < READER_MIN_TEXT) {
+                        Toast.makeText(MainActivity.this, R.string.msg_reader_mode_failed, Toast.LENGTH_SHORT).show();
+                    } else {
+                        openReaderActivity(extracted);
+                    }
+                });
+            }).start());
         }
     }
-    private void openReaderActivity(String title, String content) {
+    private void openReaderActivity(com.olsc.manorbrowser.data.ReaderArticle article) {
+        // 文章按 ID 交接，避免长章节超出 Intent 的 Binder 大小限制
         android.content.Intent intent = new android.content.Intent(this, ReaderActivity.class);
-        intent.putExtra("title", title);
-        intent.putExtra("content", content);
+        intent.putExtra(ReaderActivity.EXTRA_TITLE, article.title);
+        intent.putExtra(ReaderActivity.EXTRA_ARTICLE_ID, com.olsc.manorbrowser.data.ReaderArticleCache.put(this, article));
         startActivity(intent);
     }
     
@@ -3470,7 +3516,14 @@ public class MainActivity extends AppCompatActivity {
         rv.setLayoutManager(new androidx.recyclerview.widget.LinearLayoutManager(this));
         
         if (sRuntime != null) {
-            sRuntime.getWebExtensionController().list().accept(extensions -> {
+            sRuntime.getWebExtensionController().list().accept(installed -> {
+                // 内置扩展（脚本执行桥等）不在列表中展示
+                final java.util.List<org.mozilla.geckoview.WebExtension> extensions = new java.util.ArrayList<>();
+                if (installed != null) {
+                    for (org.mozilla.geckoview.WebExtension ext : installed) {
+                        if (!ext.isBuiltIn) extensions.add(ext);
+                    }
+                }
                 runOnUiThread(() -> {
                     if (extensions == null || extensions.isEmpty()) {
                         tvEmpty.setVisibility(android.view.View.VISIBLE);
@@ -3797,6 +3850,11 @@ public class MainActivity extends AppCompatActivity {
     private void initAiRemoteAssistant() {
         // 初始化命令处理器（不启动内部 HTTP Server，只作为逻辑封装）
         commandServer = new BrowserCommandServer(new BrowserCommandServer.CommandHandler() {
+            @Override
+            public Object getCurrentSessionKey() {
+                return getCurrentSession();
+            }
+
             @Override
             public void navigate(String url) {
                 runOnUiThread(() -> {
@@ -3840,17 +3898,34 @@ public class MainActivity extends AppCompatActivity {
             }
 
             @Override
-            public void evalJs(String js, BrowserCommandServer.EvalCallback callback) {
+            public com.olsc.manorbrowser.utils.JsEvalBridge.Call evalJs(String js, long timeoutMs, BrowserCommandServer.EvalCallback callback) {
+                final com.olsc.manorbrowser.utils.JsEvalBridge.Call[] call = new com.olsc.manorbrowser.utils.JsEvalBridge.Call[1];
+                final boolean[] cancelled = {false};
                 runOnUiThread(() -> {
+                    if (cancelled[0]) return;
                     GeckoSession session = getCurrentSession();
                     if (session == null) { callback.onResult("null"); return; }
+                    call[0] = com.olsc.manorbrowser.utils.JsEvalBridge.get().evaluate(session, js, timeoutMs, callback);
+                });
+                return () -> runOnUiThread(() -> {
+                    cancelled[0] = true;
+                    if (call[0] != null) call[0].cancel();
+                });
+            }
 
-                    pendingJsCallback = callback;
-
-                    // 通过 alert() 传回 JS 结果（解决 document.title 的长度限制问题）
-                    String encodedJs = js.replace("\\", "\\\\").replace("'", "\\'").replace("\n", " ");
-                    String bridge = "(function(){try{var __r=" + encodedJs + ";alert('__JSRESULT__:' + JSON.stringify(__r));}catch(__e){alert('__JSRESULT__:' + JSON.stringify('error:'+__e.message));}})()";
-                    session.loadUri("javascript:" + bridge);
+            @Override
+            public com.olsc.manorbrowser.utils.JsEvalBridge.Call callPageModel(String op, JSONObject args, long timeoutMs, BrowserCommandServer.EvalCallback callback) {
+                final com.olsc.manorbrowser.utils.JsEvalBridge.Call[] call = new com.olsc.manorbrowser.utils.JsEvalBridge.Call[1];
+                final boolean[] cancelled = {false};
+                runOnUiThread(() -> {
+                    if (cancelled[0]) return;
+                    GeckoSession session = getCurrentSession();
+                    if (session == null) { callback.onResult(JSONObject.quote("error:no tab")); return; }
+                    call[0] = com.olsc.manorbrowser.utils.JsEvalBridge.get().callPageModel(session, op, args, timeoutMs, callback);
+                });
+                return () -> runOnUiThread(() -> {
+                    cancelled[0] = true;
+                    if (call[0] != null) call[0].cancel();
                 });
             }
 
@@ -3891,6 +3966,12 @@ public class MainActivity extends AppCompatActivity {
                     s.put("title", getCurrentTitle());
                     s.put("tabCount", tabs.size());
                     s.put("currentTabIndex", currentTabIndex);
+                    GeckoSession session = getCurrentSession();
+                    if (session != null) {
+                        com.olsc.manorbrowser.utils.ContentBlocker.Stats blocked = com.olsc.manorbrowser.utils.ContentBlocker.get().getStats(session);
+                        s.put("blockedRequests", blocked.blocked);
+                        s.put("savedBytes", blocked.savedBytes);
+                    }
                     return s.toString();
                 } catch (Exception e) { return "{}"; }
             }
@@ -3938,6 +4019,7 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void clearHistory() {
                 com.olsc.manorbrowser.data.HistoryStorage.clearHistory(MainActivity.this);
+                if (suggestionEngine != null) suggestionEngine.invalidate();
             }
             
             @Override
@@ -3994,6 +4076,9 @@ public class MainActivity extends AppCompatActivity {
         if (navigationView != null) {
             android.content.SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
             isLordMode = prefs.getBoolean(Config.PREF_KEY_LORD_MODE, false);
+            // 提前在后台加载过滤规则，避免第一次拦截判断时规则尚未就绪
+            if (isLordMode) com.olsc.manorbrowser.utils.ContentFilter.get(this);
+            com.olsc.manorbrowser.utils.ContentBlocker.get().setEnabled(isLordMode);
             android.view.Menu menu = navigationView.getMenu();
             android.view.MenuItem lordItem = menu.findItem(R.id.nav_lord_mode);
             if (lordItem != null) {
@@ -4034,30 +4119,24 @@ public class MainActivity extends AppCompatActivity {
 
     /**
      * 更新历史建议列表
+     * 前缀树结果同步返回，数据库结果经防抖后异步合并；旧输入的结果会被取消而不会覆盖新输入。
      */
     private void updateRecommendations(String query) {
-        if (recommendationAdapter == null || recommendationsContainer == null) return;
-        
-        // 基于线程池进行异步查询，避免卡顿主线程
-        new Thread(() -> {
-            List<com.olsc.manorbrowser.data.HistoryStorage.HistoryItem> suggestions = 
-                com.olsc.manorbrowser.data.HistoryStorage.getRecommendations(this, query);
-            
-            runOnUiThread(() -> {
-                // 如果搜索框失去焦点或输入已变更（对于延迟返回的旧请求），则不再处理
-                if (!urlInput.hasFocus()) {
-                    recommendationsContainer.setVisibility(View.GONE);
-                    return;
-                }
-                
-                if (suggestions.isEmpty()) {
-                    recommendationsContainer.setVisibility(View.GONE);
-                } else {
-                    recommendationAdapter.setItems(suggestions);
-                    recommendationsContainer.setVisibility(View.VISIBLE);
-                }
-            });
-        }).start();
+        if (recommendationAdapter == null || recommendationsContainer == null || suggestionEngine == null) return;
+
+        suggestionEngine.query(query, (suggestions, complete) -> {
+            if (!urlInput.hasFocus()) {
+                recommendationsContainer.setVisibility(View.GONE);
+                return;
+            }
+            if (suggestions.isEmpty()) {
+                // 即时结果为空时等待数据库结果，避免列表闪烁
+                if (complete) recommendationsContainer.setVisibility(View.GONE);
+            } else {
+                recommendationAdapter.setItems(suggestions);
+                recommendationsContainer.setVisibility(View.VISIBLE);
+            }
+        });
     }
 
     private void hideKeyboard() {
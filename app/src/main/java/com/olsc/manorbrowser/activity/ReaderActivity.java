@@ -1,5 +1,8 @@
 /**
  * 阅读模式界面，提供沉浸式阅读体验。
+ * 文章由 ReaderArticleCache 按 ID 交接（Intent 只携带 ID），在后台线程取回后按内容块显示在 RecyclerView 中，
+ * 超长章节也只排版屏幕附近的块；调整字号与主题时只立即更新可见的块。
+ * 也可以打开离线文章（按 SavedArticleStorage 中的 ID），此时只读取本地文件；当前文章可保存为离线文章。
  */
 package com.olsc.manorbrowser.activity;
 import android.content.Intent;
@@ -8,8 +11,8 @@ import android.os.Bundle;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.ImageView;
-import android.widget.TextView;
 import android.widget.SeekBar;
+import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.core.view.WindowCompat;
@@ -17,10 +20,26 @@ import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 import androidx.core.view.WindowInsetsControllerCompat;
 import androidx.core.graphics.Insets;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 import com.olsc.manorbrowser.R;
+import com.olsc.manorbrowser.adapter.ReaderBlockAdapter;
+import com.olsc.manorbrowser.data.ReaderArticle;
+import com.olsc.manorbrowser.data.ReaderArticleCache;
+import com.olsc.manorbrowser.data.SavedArticleStorage;
 public class ReaderActivity extends AppCompatActivity {
-    private TextView contentTextView;
-    private View readerContainer;
+    /** Intent 参数：ReaderArticleCache 中的文章 ID */
+    public static final String EXTRA_ARTICLE_ID = "article_id";
+    public static final String EXTRA_TITLE = "title";
+    /** Intent 参数：离线文章 ID，存在时忽略 EXTRA_ARTICLE_ID */
+    public static final String EXTRA_SAVED_ID = "saved_id";
+
+    private RecyclerView readerContainer;
+    private LinearLayoutManager layoutManager;
+    private ReaderBlockAdapter adapter;
+    private ReaderArticle article;
+    private View btnSaveOffline;
+    private boolean isSavedArticle;
     private SeekBar fontSizeSeekBar;
     private View controlContent;
     private ImageView expandIcon;
@@ -63,25 +82,27 @@ public class ReaderActivity extends AppCompatActivity {
             v.setPadding(v.getPaddingLeft(), 0, v.getPaddingRight(), insets.bottom);
             return windowInsets;
         });
-        contentTextView = findViewById(R.id.reader_content);
         readerContainer = findViewById(R.id.reader_container);
+        // RecyclerView 在帧间空闲时预取下一项并绑定，文字排版随之提前在后台开始
+        layoutManager = new LinearLayoutManager(this);
+        readerContainer.setLayoutManager(layoutManager);
         fontSizeSeekBar = findViewById(R.id.font_size_seekbar);
         controlContent = findViewById(R.id.control_content);
         expandIcon = findViewById(R.id.expand_icon);
+        btnSaveOffline = findViewById(R.id.btn_save_offline);
         
         Intent intent = getIntent();
-        String content = intent.getStringExtra("content");
-        String title = intent.getStringExtra("title");
+        String title = intent.getStringExtra(EXTRA_TITLE);
         
         if (title != null && !title.isEmpty()) {
             toolbar.setTitle(title);
         }
         
-        if (content != null) {
-            // 清理和格式化内容
-            String formattedContent = formatContent(content);
-            contentTextView.setText(formattedContent);
-        }
+        isSavedArticle = intent.hasExtra(EXTRA_SAVED_ID);
+        // 离线文章已经保存过，不需要保存按钮
+        btnSaveOffline.setVisibility(isSavedArticle ? View.GONE : View.VISIBLE);
+        btnSaveOffline.setOnClickListener(v -> saveOffline());
+        loadArticle(intent.getStringExtra(EXTRA_ARTICLE_ID), intent.getLongExtra(EXTRA_SAVED_ID, -1));
         
         setupControlPanel();
         setupFontSizeControl();
@@ -142,12 +163,52 @@ public class ReaderActivity extends AppCompatActivity {
     private float dp8r() {
         return 8 * getResources().getDisplayMetrics().density;
     }
-    private String formatContent(String content) {
-        // 移除多余的空行
-        content = content.replaceAll("\n{3,}", "\n\n");
-        // 移除首尾空白
-        content = content.trim();
-        return content;
+    /**
+     * 文章通常还在内存缓存中；进程被回收后重建时需要从文件读取，离线文章需要解压，因此都放到后台线程
+     */
+    private void loadArticle(String articleId, long savedId) {
+        new Thread(() -> {
+            ReaderArticle loaded = isSavedArticle
+                    ? SavedArticleStorage.open(this, savedId)
+                    : ReaderArticleCache.get(this, articleId);
+            runOnUiThread(() -> {
+                if (isFinishing() || isDestroyed()) return;
+                if (loaded == null) {
+                    Toast.makeText(this, R.string.msg_reader_mode_failed, Toast.LENGTH_SHORT).show();
+                    finish();
+                    return;
+                }
+                article = loaded;
+                btnSaveOffline.setEnabled(article.url != null);
+                adapter = new ReaderBlockAdapter(article.blocks, currentFontSize, THEME_COLORS[currentTheme][1]);
+                readerContainer.setAdapter(adapter);
+            });
+        }).start();
+    }
+
+    /** 保存为离线文章：需要下载图片，在后台线程进行，期间禁用按钮 */
+    private void saveOffline() {
+        if (article == null) return;
+        ReaderArticle toSave = article;
+        btnSaveOffline.setEnabled(false);
+        new Thread(() -> {
+            SavedArticleStorage.SavedArticle saved = SavedArticleStorage.save(this, toSave);
+            runOnUiThread(() -> {
+                if (isFinishing() || isDestroyed()) return;
+                btnSaveOffline.setEnabled(true);
+                Toast.makeText(this, saved != null ? R.string.msg_article_saved : R.string.msg_article_save_failed,
+                        Toast.LENGTH_SHORT).show();
+            });
+        }).start();
+    }
+
+    /** 只通知当前可见的块；屏幕外的块在重新出现时由适配器按样式版本号补上 */
+    private void notifyVisibleBlocks(Object payload) {
+        if (adapter == null) return;
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION || last < first) return;
+        adapter.notifyItemRangeChanged(first, last - first + 1, payload);
     }
     private void setupFontSizeControl() {
         fontSizeSeekBar.setMax(20);
@@ -157,7 +218,10 @@ public class ReaderActivity extends AppCompatActivity {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
                 currentFontSize = 10 + progress;
-                contentTextView.setTextSize(currentFontSize);
+                if (adapter != null) {
+                    adapter.setFontSize(currentFontSize);
+                    notifyVisibleBlocks(ReaderBlockAdapter.PAYLOAD_STYLE);
+                }
             }
             @Override
             public void onStartTrackingTouch(SeekBar seekBar) {}
@@ -176,6 +240,9 @@ public class ReaderActivity extends AppCompatActivity {
         int textColor = THEME_COLORS[theme][1];
         
         readerContainer.setBackgroundColor(bgColor);
-        contentTextView.setTextColor(textColor);
+        if (adapter != null) {
+            adapter.setTextColor(textColor);
+            notifyVisibleBlocks(ReaderBlockAdapter.PAYLOAD_COLOR);
+        }
     }
 }
@@ -0,0 +1,132 @@
+/**
+ * 离线文章界面，列出保存的阅读模式文章。
+ * 点击后在阅读界面中打开本地副本，不访问网络；长按删除。
+ */
+package com.olsc.manorbrowser.activity;
+import com.olsc.manorbrowser.R;
+import com.olsc.manorbrowser.Config;
+import com.olsc.manorbrowser.adapter.SavedArticleAdapter;
+import com.olsc.manorbrowser.data.SavedArticleStorage;
+import android.content.Intent;
+import android.os.Bundle;
+import android.text.format.Formatter;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.TextView;
+import androidx.appcompat.app.AlertDialog;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.Toolbar;
+import androidx.core.view.WindowCompat;
+import androidx.core.view.ViewCompat;
+import androidx.core.view.WindowInsetsCompat;
+import androidx.core.view.WindowInsetsControllerCompat;
+import androidx.core.graphics.Insets;
+import java.util.ArrayList;
+import java.util.List;
+public class SavedArticlesActivity extends AppCompatActivity {
+    private SavedArticleAdapter adapter;
+    private final List<SavedArticleStorage.SavedArticle> articles = new ArrayList<>();
+    private TextView tvEmpty;
+    private TextView tvUsage;
+    @Override
+    protected void attachBaseContext(android.content.Context newBase) {
+        super.attachBaseContext(com.olsc.manorbrowser.utils.LocaleHelper.onAttach(newBase));
+    }
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        android.content.SharedPreferences prefs = getSharedPreferences(Config.PREF_NAME_THEME, MODE_PRIVATE);
+        boolean isDarkMode = prefs.getBoolean(Config.PREF_KEY_DARK_MODE, false);
+        androidx.appcompat.app.AppCompatDelegate.setDefaultNightMode(isDarkMode ?
+            androidx.appcompat.app.AppCompatDelegate.MODE_NIGHT_YES : androidx.appcompat.app.AppCompatDelegate.MODE_NIGHT_NO);
+        WindowCompat.setDecorFitsSystemWindows(getWindow(), false);
+        WindowInsetsControllerCompat controller = WindowCompat.getInsetsController(getWindow(), getWindow().getDecorView());
+        if (controller != null) {
+            controller.setAppearanceLightStatusBars(!isDarkMode);
+            controller.setAppearanceLightNavigationBars(!isDarkMode);
+        }
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_saved_articles);
+        Toolbar toolbar = findViewById(R.id.toolbar_saved_articles);
+        setSupportActionBar(toolbar);
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+        }
+        View mainView = findViewById(android.R.id.content);
+        ViewCompat.setOnApplyWindowInsetsListener(mainView, (v, windowInsets) -> {
+            Insets insets = windowInsets.getInsets(WindowInsetsCompat.Type.systemBars());
+            toolbar.setPadding(toolbar.getPaddingLeft(), insets.top, toolbar.getPaddingRight(), 0);
+            v.setPadding(v.getPaddingLeft(), 0, v.getPaddingRight(), insets.bottom);
+            return windowInsets;
+        });
+        tvEmpty = findViewById(R.id.tv_empty_saved_articles);
+        tvUsage = findViewById(R.id.tv_saved_usage);
+        androidx.recyclerview.widget.RecyclerView recyclerView = findViewById(R.id.recycler_view_saved_articles);
+        adapter = new SavedArticleAdapter(articles, new SavedArticleAdapter.OnItemClickListener() {
+            @Override
+            public void onItemClick(SavedArticleStorage.SavedArticle article) {
+                Intent intent = new Intent(SavedArticlesActivity.this, ReaderActivity.class);
+                intent.putExtra(ReaderActivity.EXTRA_SAVED_ID, article.id);
+                intent.putExtra(ReaderActivity.EXTRA_TITLE, article.title);
+                startActivity(intent);
+            }
+            @Override
+            public void onItemLongClick(SavedArticleStorage.SavedArticle article, int position) {
+                showDeleteDialog(article, position);
+            }
+        });
+        recyclerView.setLayoutManager(new androidx.recyclerview.widget.LinearLayoutManager(this));
+        recyclerView.setAdapter(adapter);
+        loadArticles();
+    }
+    /** 索引查询放到后台线程，完成后一次性显示 */
+    private void loadArticles() {
+        new Thread(() -> {
+            List<SavedArticleStorage.SavedArticle> list = SavedArticleStorage.list(this);
+            long total = SavedArticleStorage.totalBytes(this);
+            runOnUiThread(() -> {
+                if (isFinishing() || isDestroyed()) return;
+                articles.clear();
+                articles.addAll(list);
+                adapter.notifyDataSetChanged();
+                updateUsage(total);
+            });
+        }).start();
+    }
+    private void showDeleteDialog(SavedArticleStorage.SavedArticle article, int position) {
+        new AlertDialog.Builder(this)
+            .setTitle(R.string.action_delete)
+            .setMessage(R.string.msg_confirm_delete_saved_article)
+            .setPositiveButton(android.R.string.ok, (dialog, which) -> {
+                articles.remove(position);
+                adapter.notifyItemRemoved(position);
+                new Thread(() -> {
+                    SavedArticleStorage.delete(this, article.id);
+                    long total = SavedArticleStorage.totalBytes(this);
+                    runOnUiThread(() -> {
+                        if (!isFinishing() && !isDestroyed()) updateUsage(total);
+                    });
+                }).start();
+                updateEmptyState();
+            })
+            .setNegativeButton(android.R.string.cancel, null)
+            .show();
+    }
+    private void updateUsage(long total) {
+        tvUsage.setText(getString(R.string.saved_articles_usage,
+                Formatter.formatShortFileSize(this, total),
+                Formatter.formatShortFileSize(this, SavedArticleStorage.MAX_STORE_BYTES)));
+        updateEmptyState();
+    }
+    private void updateEmptyState() {
+        tvEmpty.setVisibility(articles.isEmpty() ? View.VISIBLE : View.GONE);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == android.R.id.home) {
+            finish();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+}
@@ -111,6 +111,17 @@ public class SettingsActivity extends AppCompatActivity {
             });
         }
 
+        // 内置下载器：仅 Wi-Fi / 仅充电时下载
+        bindDownloadConstraintSwitch(R.id.switch_download_wifi_only, Config.PREF_KEY_DOWNLOAD_WIFI_ONLY, defaultPrefs);
+        bindDownloadConstraintSwitch(R.id.switch_download_charging_only, Config.PREF_KEY_DOWNLOAD_CHARGING_ONLY, defaultPrefs);
+
+        // 内置下载器：全局限速
+        View containerSpeedLimit = findViewById(R.id.container_download_speed_limit);
+        if (containerSpeedLimit != null) {
+            containerSpeedLimit.setOnClickListener(v -> showDownloadSpeedLimitDialog());
+            updateCurrentSpeedLimitText();
+        }
+
 
         // 主页按钮自定义
         View containerCustomHomeButton = findViewById(R.id.container_custom_home_button);
@@ -322,6 +333,52 @@ public class SettingsActivity extends AppCompatActivity {
                 .setNegativeButton(android.R.string.cancel, null)
                 .show();
     }
+    private void bindDownloadConstraintSwitch(int switchId, String prefKey, SharedPreferences defaultPrefs) {
+        androidx.appcompat.widget.SwitchCompat sw = findViewById(switchId);
+        if (sw == null) return;
+        sw.setChecked(defaultPrefs.getBoolean(prefKey, false));
+        sw.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            defaultPrefs.edit().putBoolean(prefKey, isChecked).apply();
+            com.olsc.manorbrowser.utils.DownloadScheduler.get(this).onPreferencesChanged();
+        });
+    }
+
+    /** 限速选项，单位 KB/s，0 表示不限速 */
+    private static final int[] SPEED_LIMIT_VALUES = {0, 256, 512, 1024, 5120};
+
+    private String formatSpeedLimit(int kbps) {
+        if (kbps <= 0) return getString(R.string.speed_limit_unlimited);
+        return android.text.format.Formatter.formatShortFileSize(this, kbps * 1024L) + "/s";
+    }
+
+    private void showDownloadSpeedLimitDialog() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+        int current = prefs.getInt(Config.PREF_KEY_DOWNLOAD_SPEED_LIMIT, 0);
+        String[] labels = new String[SPEED_LIMIT_VALUES.length];
+        int checkedItem = 0;
+        for (int i = 0; i < SPEED_LIMIT_VALUES.length; i++) {
+            labels[i] = formatSpeedLimit(SPEED_LIMIT_VALUES[i]);
+            if (SPEED_LIMIT_VALUES[i] == current) checkedItem = i;
+        }
+        new com.google.android.material.dialog.MaterialAlertDialogBuilder(this)
+                .setTitle(R.string.pref_download_speed_limit)
+                .setSingleChoiceItems(labels, checkedItem, (dialog, which) -> {
+                    prefs.edit().putInt(Config.PREF_KEY_DOWNLOAD_SPEED_LIMIT, SPEED_LIMIT_VALUES[which]).apply();
+                    com.olsc.manorbrowser.utils.DownloadScheduler.get(this).onPreferencesChanged();
+                    updateCurrentSpeedLimitText();
+                    dialog.dismiss();
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    private void updateCurrentSpeedLimitText() {
+        android.widget.TextView tv = findViewById(R.id.tv_current_download_speed_limit);
+        if (tv == null) return;
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+        tv.setText(formatSpeedLimit(prefs.getInt(Config.PREF_KEY_DOWNLOAD_SPEED_LIMIT, 0)));
+    }
+
     private void showSearchEngineDialog() {
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
         String currentEngine = prefs.getString(Config.PREF_KEY_SEARCH_ENGINE, Config.ENGINE_GOOGLE);
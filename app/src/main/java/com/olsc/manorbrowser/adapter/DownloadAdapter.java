@@ -6,6 +6,7 @@ import android.app.DownloadManager;
 import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
+import android.text.format.DateUtils;
 import android.text.format.Formatter;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -15,17 +16,74 @@ import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 import com.olsc.manorbrowser.R;
 import com.olsc.manorbrowser.data.DownloadInfo;
+import java.util.ArrayList;
 import java.util.List;
 public class DownloadAdapter extends RecyclerView.Adapter<DownloadAdapter.DownloadViewHolder> {
-    private final List<DownloadInfo> list;
+    /** 局部刷新标记：只有进度、大小、速度等数值变化，仅重绘进度条与文字 */
+    public static final Object PAYLOAD_PROGRESS = new Object();
+    private final List<DownloadInfo> list = new ArrayList<>();
     private final Context context;
-    public DownloadAdapter(Context context, List<DownloadInfo> list) {
+    public DownloadAdapter(Context context) {
         this.context = context;
-        this.list = list;
     }
+
+    /**
+     * 当前显示的列表（只读快照）
+     */
+    public List<DownloadInfo> getItems() {
+        return java.util.Collections.unmodifiableList(list);
+    }
+
+    /**
+     * 用新的快照列表替换当前内容，通过 DiffUtil 计算最小变更；
+     * 仅进度类字段变化的行以 PAYLOAD_PROGRESS 局部刷新，不重新绑定整行
+     */
+    public void submitList(List<DownloadInfo> newList) {
+        final List<DownloadInfo> oldList = new ArrayList<>(list);
+        DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldList.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newList.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPos, int newPos) {
+                return oldList.get(oldPos).id == newList.get(newPos).id;
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPos, int newPos) {
+                DownloadInfo a = oldList.get(oldPos);
+                DownloadInfo b = newList.get(newPos);
+                return isSameRow(a, b) && a.currentBytes == b.currentBytes && a.totalBytes == b.totalBytes
+                        && a.speed == b.speed && a.queuedAt == b.queuedAt;
+            }
+
+            @Override
+            public Object getChangePayload(int oldPos, int newPos) {
+                return isSameRow(oldList.get(oldPos), newList.get(newPos)) ? PAYLOAD_PROGRESS : null;
+            }
+        }, false);
+        list.clear();
+        list.addAll(newList);
+        result.dispatchUpdatesTo(this);
+    }
+
+    /** 除进度类数值外，决定整行外观的字段是否一致 */
+    private static boolean isSameRow(DownloadInfo a, DownloadInfo b) {
+        return a.status == b.status && a.reason == b.reason && a.isInternal == b.isInternal
+                && java.util.Objects.equals(a.title, b.title) && java.util.Objects.equals(a.filePath, b.filePath);
+    }
+
     @NonNull
     @Override
     public DownloadViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -33,9 +91,61 @@ public class DownloadAdapter extends RecyclerView.Adapter<DownloadAdapter.Downlo
         return new DownloadViewHolder(view);
     }
     @Override
+    public void onBindViewHolder(@NonNull DownloadViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(PAYLOAD_PROGRESS)) {
+            bindProgress(holder, list.get(position));
+        } else {
+            super.onBindViewHolder(holder, position, payloads);
+        }
+    }
+    @Override
     public void onBindViewHolder(@NonNull DownloadViewHolder holder, int position) {
         DownloadInfo info = list.get(position);
         holder.tvFilename.setText(info.title);
+        bindProgress(holder, info);
+        int actionIcon = android.R.drawable.ic_menu_close_clear_cancel;
+        switch (info.status) {
+            case 2:
+                if (info.isInternal) actionIcon = android.R.drawable.ic_media_play;
+                break;
+            case 3:
+                actionIcon = android.R.drawable.ic_menu_view;
+                break;
+            case 4:
+                actionIcon = android.R.drawable.ic_menu_revert;
+                break;
+        }
+        holder.btnAction.setImageResource(actionIcon);
+        holder.itemView.setOnClickListener(v -> {
+            if (info.status == 3 && info.filePath != null) {
+                openFile(info);
+            }
+        });
+        holder.itemView.setOnLongClickListener(v -> {
+            if (info.isInternal && info.status != 3) {
+                showQueueDialog(info);
+            } else {
+                showDeleteDialog(info);
+            }
+            return true;
+        });
+        holder.btnAction.setOnClickListener(v -> {
+             if (info.status == 1 || info.status == 0) {
+                 cancelDownload(info);
+             } else if (info.status == 3) {
+                 openFile(info);
+             } else if ((info.status == 2 || info.status == 4) && info.isInternal) {
+                 // 内置下载重新排队，从已保存的分段进度继续；状态变化由进度总线推送回来
+                 com.olsc.manorbrowser.utils.DownloadScheduler.get(context).resume(info.id);
+             } else if (info.status == 4) {
+                 Toast.makeText(context, R.string.msg_retry_download, Toast.LENGTH_SHORT).show();
+             }
+        });
+    }
+    /**
+     * 绑定随进度变化的部分：进度条、大小与状态文字
+     */
+    private void bindProgress(DownloadViewHolder holder, DownloadInfo info) {
         int percent = 0;
         if (info.totalBytes > 0) {
             percent = (int) ((info.currentBytes * 100) / info.totalBytes);
@@ -45,15 +155,20 @@ public class DownloadAdapter extends RecyclerView.Adapter<DownloadAdapter.Downlo
                          Formatter.formatFileSize(context, info.totalBytes);
         holder.tvSize.setText(sizeStr);
         String statusText;
-        int actionIcon = android.R.drawable.ic_menu_close_clear_cancel;
-        boolean enableAction = true;
         switch (info.status) {
             case 0:
                 statusText = context.getString(R.string.download_status_waiting);
-                holder.progressBar.setIndeterminate(true);
+                if (info.isInternal && info.queuedAt > 0) {
+                    // 排队中的内置任务显示已等待时长及等待原因
+                    long waited = (System.currentTimeMillis() - info.queuedAt) / 1000;
+                    statusText = context.getString(R.string.download_status_queued, DateUtils.formatElapsedTime(waited));
+                    if (info.reason != 0) statusText += " · " + getPausedReason(info.reason);
+                }
+                holder.progressBar.setIndeterminate(info.currentBytes <= 0);
                 break;
             case 1:
                 statusText = context.getString(R.string.download_status_running, percent);
+                if (info.speed > 0) statusText += " · " + Formatter.formatFileSize(context, info.speed) + "/s";
                 holder.progressBar.setIndeterminate(info.totalBytes <= 0);
                 break;
             case 2:
@@ -62,39 +177,46 @@ public class DownloadAdapter extends RecyclerView.Adapter<DownloadAdapter.Downlo
                 break;
             case 3:
                 statusText = context.getString(R.string.download_status_completed);
+                if (info.reason == com.olsc.manorbrowser.utils.BrowserDownloader.REASON_DUPLICATE) {
+                    statusText += " · " + context.getString(R.string.download_status_duplicate);
+                }
                 holder.progressBar.setIndeterminate(false);
                 holder.progressBar.setProgress(100);
-                actionIcon = android.R.drawable.ic_menu_view;
                 break;
             case 4:
                 statusText = context.getString(R.string.download_status_failed) + ": " + getErrorReason(info.reason);
                 holder.progressBar.setIndeterminate(false);
-                actionIcon = android.R.drawable.ic_menu_revert;
                 break;
             default:
                 statusText = context.getString(R.string.download_status_unknown);
                 break;
         }
         holder.tvStatus.setText(statusText);
-        holder.btnAction.setImageResource(actionIcon);
-        holder.itemView.setOnClickListener(v -> {
-            if (info.status == 3 && info.filePath != null) {
-                openFile(info);
-            }
-        });
-        holder.itemView.setOnLongClickListener(v -> {
-            showDeleteDialog(info);
-            return true;
-        });
-        holder.btnAction.setOnClickListener(v -> {
-             if (info.status == 1 || info.status == 0) {
-                 cancelDownload(info);
-             } else if (info.status == 3) {
-                 openFile(info);
-             } else if (info.status == 4) {
-                 Toast.makeText(context, R.string.msg_retry_download, Toast.LENGTH_SHORT).show();
-             }
-        });
+    }
+    /**
+     * 内置下载的队列操作：暂停 / 继续、移到队首、删除
+     */
+    private void showQueueDialog(DownloadInfo info) {
+        com.olsc.manorbrowser.utils.DownloadScheduler scheduler = com.olsc.manorbrowser.utils.DownloadScheduler.get(context);
+        List<String> labels = new java.util.ArrayList<>();
+        List<Runnable> actions = new java.util.ArrayList<>();
+        if (info.status == 0 || info.status == 1) {
+            labels.add(context.getString(R.string.action_pause));
+            actions.add(() -> scheduler.pause(info.id));
+        } else {
+            labels.add(context.getString(R.string.action_resume));
+            actions.add(() -> scheduler.resume(info.id));
+        }
+        if (info.status == 0) {
+            labels.add(context.getString(R.string.action_move_to_front));
+            actions.add(() -> scheduler.moveToFront(info.id));
+        }
+        labels.add(context.getString(R.string.action_delete));
+        actions.add(() -> showDeleteDialog(info));
+        new com.google.android.material.dialog.MaterialAlertDialogBuilder(context)
+            .setTitle(info.title)
+            .setItems(labels.toArray(new String[0]), (dialog, which) -> actions.get(which).run())
+            .show();
     }
     private void showDeleteDialog(DownloadInfo info) {
         new com.google.android.material.dialog.MaterialAlertDialogBuilder(context)
@@ -142,11 +264,19 @@ public class DownloadAdapter extends RecyclerView.Adapter<DownloadAdapter.Downlo
             }
         } catch (Exception ignored) {}
         
-        list.remove(info);
-        notifyDataSetChanged();
+        removeItem(info.id);
         // 提示已被删除（不再误显为“已取消”）
         Toast.makeText(context, R.string.action_delete, Toast.LENGTH_SHORT).show();
     }
+    private void removeItem(long id) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i).id == id) {
+                list.remove(i);
+                notifyItemRemoved(i);
+                return;
+            }
+        }
+    }
     @Override
     public int getItemCount() {
         return list.size();
@@ -198,12 +328,13 @@ public class DownloadAdapter extends RecyclerView.Adapter<DownloadAdapter.Downlo
             }
         } catch (Exception ignored) {}
         
-        list.remove(info);
-        notifyDataSetChanged();
+        removeItem(info.id);
         Toast.makeText(context, R.string.msg_download_cancelled, Toast.LENGTH_SHORT).show();
     }
     private String getPausedReason(int reason) {
         switch (reason) {
+            case com.olsc.manorbrowser.utils.DownloadScheduler.REASON_PAUSED_BY_USER: return context.getString(R.string.paused_by_user);
+            case com.olsc.manorbrowser.utils.DownloadScheduler.REASON_WAITING_FOR_CHARGING: return context.getString(R.string.paused_waiting_for_charging);
             case DownloadManager.PAUSED_WAITING_TO_RETRY: return context.getString(R.string.paused_waiting_to_retry);
             case DownloadManager.PAUSED_WAITING_FOR_NETWORK: return context.getString(R.string.paused_waiting_for_network);
             case DownloadManager.PAUSED_QUEUED_FOR_WIFI: return context.getString(R.string.paused_queued_for_wifi);
@@ -214,6 +345,7 @@ public class DownloadAdapter extends RecyclerView.Adapter<DownloadAdapter.Downlo
         // 自定义错误码处理
         if (reason == 1000) return "网络异常/连接超时 (LAN IP?)";
         if (reason == 1001) return "存储空间不足或写入失败";
+        if (reason == com.olsc.manorbrowser.utils.BrowserDownloader.REASON_INTEGRITY_FAILED) return context.getString(R.string.error_integrity_check_failed);
         if (reason >= 300 && reason < 600) return "HTTP 服务器响应错误: " + reason;
 
         switch (reason) {
@@ -0,0 +1,241 @@
+/**
+ * 阅读模式内容块列表的适配器
+ *
+ * 每个段落、标题、列表等是一个列表项，只有屏幕附近的块会被绑定与排版。
+ * 文字排版（PrecomputedTextCompat）在后台线程进行，结果按块缓存，字号变化时整体作废；
+ * 主线程只在测量时取用已完成的结果。
+ * 字号与主题变化时由调用方只通知可见范围内的块；屏幕外已缓存的列表项在重新附加到窗口时
+ * 按样式版本号检查是否过期，过期才重新排版。
+ */
+package com.olsc.manorbrowser.adapter;
+
+import android.graphics.Bitmap;
+import android.graphics.Typeface;
+import android.text.SpannableStringBuilder;
+import android.text.style.QuoteSpan;
+import android.util.LruCache;
+import android.util.TypedValue;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.widget.AppCompatTextView;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.olsc.manorbrowser.R;
+import com.olsc.manorbrowser.data.ReaderArticle;
+import com.olsc.manorbrowser.utils.ReaderImageLoader;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ReaderBlockAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+    private static final int VIEW_TEXT = 0;
+    private static final int VIEW_IMAGE = 1;
+    /** 只需要重新排版（字号变化） */
+    public static final Object PAYLOAD_STYLE = new Object();
+    /** 只需要更换文字颜色（主题变化），不重新排版 */
+    public static final Object PAYLOAD_COLOR = new Object();
+    /** 最多缓存的排版结果数 */
+    private static final int MAX_PRECOMPUTED = 96;
+    private static final float[] HEADING_SCALE = {1.6f, 1.4f, 1.25f, 1.15f, 1.1f, 1.05f};
+
+    /** 所有阅读界面共用的排版线程 */
+    private static final Executor TEXT_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final List<ReaderArticle.Block> blocks;
+    private final LruCache<Integer, Future<PrecomputedTextCompat>> precomputed = new LruCache<>(MAX_PRECOMPUTED);
+    private float fontSizeSp;
+    private int textColor;
+    private int styleVersion;
+    private int colorVersion;
+
+    public ReaderBlockAdapter(List<ReaderArticle.Block> blocks, float fontSizeSp, int textColor) {
+        this.blocks = blocks;
+        this.fontSizeSp = fontSizeSp;
+        this.textColor = textColor;
+    }
+
+    /** 修改字号；之后需要对可见范围通知 PAYLOAD_STYLE */
+    public void setFontSize(float fontSizeSp) {
+        if (this.fontSizeSp == fontSizeSp) return;
+        this.fontSizeSp = fontSizeSp;
+        styleVersion++;
+        precomputed.evictAll();
+    }
+
+    /** 修改文字颜色；之后需要对可见范围通知 PAYLOAD_COLOR */
+    public void setTextColor(int textColor) {
+        if (this.textColor == textColor) return;
+        this.textColor = textColor;
+        colorVersion++;
+    }
+
+    @Override
+    public int getItemCount() {
+        return blocks.size();
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return blocks.get(position).type == ReaderArticle.BLOCK_IMAGE ? VIEW_IMAGE : VIEW_TEXT;
+    }
+
+    @NonNull
+    @Override
+    public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        LayoutInflater inflater = LayoutInflater.from(parent.getContext());
+        if (viewType == VIEW_IMAGE) {
+            return new ImageHolder(inflater.inflate(R.layout.item_reader_image, parent, false));
+        }
+        return new TextHolder(inflater.inflate(R.layout.item_reader_text, parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        if (holder instanceof TextHolder) {
+            bindText((TextHolder) holder, position);
+        } else {
+            ((ImageHolder) holder).bind(blocks.get(position));
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty() || !(holder instanceof TextHolder)) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        TextHolder text = (TextHolder) holder;
+        if (payloads.contains(PAYLOAD_STYLE)) {
+            bindText(text, position);
+        } else if (payloads.contains(PAYLOAD_COLOR)) {
+            applyColor(text);
+        }
+    }
+
+    @Override
+    public void onViewAttachedToWindow(@NonNull RecyclerView.ViewHolder holder) {
+        if (!(holder instanceof TextHolder)) return;
+        // 屏幕外缓存的列表项不经过绑定直接重新附加，样式过期时在这里补上
+        TextHolder text = (TextHolder) holder;
+        int position = holder.getBindingAdapterPosition();
+        if (position == RecyclerView.NO_POSITION) return;
+        if (text.styleVersion != styleVersion) {
+            bindText(text, position);
+        } else if (text.colorVersion != colorVersion) {
+            applyColor(text);
+        }
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull RecyclerView.ViewHolder holder) {
+        if (holder instanceof ImageHolder) ((ImageHolder) holder).release();
+    }
+
+    private void bindText(TextHolder holder, int position) {
+        ReaderArticle.Block block = blocks.get(position);
+        AppCompatTextView view = holder.text;
+        float size = fontSizeSp;
+        Typeface typeface = Typeface.DEFAULT;
+        if (block.type == ReaderArticle.BLOCK_HEADING) {
+            size *= HEADING_SCALE[Math.max(0, Math.min(HEADING_SCALE.length - 1, block.level - 1))];
+            typeface = Typeface.DEFAULT_BOLD;
+        } else if (block.type == ReaderArticle.BLOCK_CODE) {
+            size *= 0.85f;
+            typeface = Typeface.MONOSPACE;
+        }
+        view.setTextSize(TypedValue.COMPLEX_UNIT_SP, size);
+        view.setTypeface(typeface);
+        holder.styleVersion = styleVersion;
+        applyColor(holder);
+
+        // 排版参数取自刚设置好的 TextView，同一字号下同一块的结果可以复用
+        Future<PrecomputedTextCompat> future = precomputed.get(position);
+        if (future == null) {
+            PrecomputedTextCompat.Params params = TextViewCompat.getTextMetricsParams(view);
+            future = PrecomputedTextCompat.getTextFuture(textOf(block), params, TEXT_EXECUTOR);
+            precomputed.put(position, future);
+        }
+        view.setTextFuture(future);
+    }
+
+    private void applyColor(TextHolder holder) {
+        holder.text.setTextColor(textColor);
+        holder.colorVersion = colorVersion;
+    }
+
+    /** 块的显示文字：列表加项目符号，引用加左侧竖线 */
+    private CharSequence textOf(ReaderArticle.Block block) {
+        switch (block.type) {
+            case ReaderArticle.BLOCK_LIST: {
+                SpannableStringBuilder sb = new SpannableStringBuilder();
+                for (int i = 0; i < block.items.size(); i++) {
+                    if (i > 0) sb.append('\n');
+                    sb.append(block.level == 1 ? (i + 1) + ". " : "• ").append(block.items.get(i));
+                }
+                return sb;
+            }
+            case ReaderArticle.BLOCK_QUOTE: {
+                SpannableStringBuilder sb = new SpannableStringBuilder(block.text);
+                sb.setSpan(new QuoteSpan(0x66888888), 0, sb.length(), 0);
+                return sb;
+            }
+            default:
+                return block.text;
+        }
+    }
+
+    static class TextHolder extends RecyclerView.ViewHolder {
+        final AppCompatTextView text;
+        int styleVersion = -1;
+        int colorVersion = -1;
+
+        TextHolder(@NonNull View itemView) {
+            super(itemView);
+            text = (AppCompatTextView) itemView;
+        }
+    }
+
+    static class ImageHolder extends RecyclerView.ViewHolder {
+        final ImageView image;
+        String src;
+        ReaderImageLoader.Handle handle;
+
+        ImageHolder(@NonNull View itemView) {
+            super(itemView);
+            image = (ImageView) itemView;
+        }
+
+        void bind(ReaderArticle.Block block) {
+            release();
+            src = block.src;
+            image.setContentDescription(block.text);
+            Bitmap cached = ReaderImageLoader.get().getCached(src);
+            if (cached != null) {
+                image.setImageBitmap(cached);
+                return;
+            }
+            image.setImageDrawable(null);
+            String requested = src;
+            int width = itemView.getResources().getDisplayMetrics().widthPixels;
+            handle = ReaderImageLoader.get().load(requested, width, bitmap -> {
+                if (bitmap == null || !requested.equals(src)) return;
+                image.setImageBitmap(bitmap);
+            });
+        }
+
+        void release() {
+            if (handle != null) {
+                handle.cancel();
+                handle = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * 离线文章列表的适配器，显示标题、来源网址、保存时间与占用空间。
+ */
+package com.olsc.manorbrowser.adapter;
+import com.olsc.manorbrowser.R;
+import com.olsc.manorbrowser.data.SavedArticleStorage;
+import android.net.Uri;
+import android.text.format.Formatter;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+public class SavedArticleAdapter extends RecyclerView.Adapter<SavedArticleAdapter.SavedArticleViewHolder> {
+    private final List<SavedArticleStorage.SavedArticle> articles;
+    private final OnItemClickListener listener;
+    private final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.getDefault());
+    public interface OnItemClickListener {
+        void onItemClick(SavedArticleStorage.SavedArticle article);
+        void onItemLongClick(SavedArticleStorage.SavedArticle article, int position);
+    }
+    public SavedArticleAdapter(List<SavedArticleStorage.SavedArticle> articles, OnItemClickListener listener) {
+        this.articles = articles;
+        this.listener = listener;
+    }
+    @NonNull
+    @Override
+    public SavedArticleViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_saved_article, parent, false);
+        return new SavedArticleViewHolder(view);
+    }
+    @Override
+    public void onBindViewHolder(@NonNull SavedArticleViewHolder holder, int position) {
+        holder.bind(articles.get(position));
+    }
+    @Override
+    public int getItemCount() {
+        return articles.size();
+    }
+    class SavedArticleViewHolder extends RecyclerView.ViewHolder {
+        TextView tvTitle;
+        TextView tvSource;
+        TextView tvInfo;
+        public SavedArticleViewHolder(@NonNull View itemView) {
+            super(itemView);
+            tvTitle = itemView.findViewById(R.id.tv_saved_title);
+            tvSource = itemView.findViewById(R.id.tv_saved_source);
+            tvInfo = itemView.findViewById(R.id.tv_saved_info);
+        }
+        public void bind(SavedArticleStorage.SavedArticle article) {
+            tvTitle.setText(article.title != null && !article.title.isEmpty() ? article.title : article.url);
+            String host = Uri.parse(article.url).getHost();
+            tvSource.setText(host != null ? host : article.url);
+            tvInfo.setText(sdf.format(new Date(article.savedAt)) + " · "
+                    + Formatter.formatShortFileSize(itemView.getContext(), article.size));
+            itemView.setOnClickListener(v -> listener.onItemClick(article));
+            itemView.setOnLongClickListener(v -> {
+                int position = getBindingAdapterPosition();
+                if (position == RecyclerView.NO_POSITION) return false;
+                listener.onItemLongClick(article, position);
+                return true;
+            });
+        }
+    }
+}
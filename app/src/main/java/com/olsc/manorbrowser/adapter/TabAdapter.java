@@ -4,6 +4,7 @@
 package com.olsc.manorbrowser.adapter;
 import com.olsc.manorbrowser.R;
 import com.olsc.manorbrowser.data.TabInfo;
+import com.olsc.manorbrowser.data.ThumbnailCache;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -54,8 +55,9 @@ public class TabAdapter extends RecyclerView.Adapter<TabAdapter.TabViewHolder> {
         public void bind(TabInfo tab, int position, OnTabClickListener listener) {
             title.setText(tab.title != null && !tab.title.isEmpty() ? tab.title : itemView.getContext().getString(R.string.title_new_tab));
             url.setText(tab.url != null ? tab.url : "");
-            if (tab.thumbnail != null) {
-                preview.setImageBitmap(tab.thumbnail);
+            android.graphics.Bitmap thumbnail = ThumbnailCache.get(itemView.getContext()).getCached(tab.id);
+            if (thumbnail != null) {
+                preview.setImageBitmap(thumbnail);
                 preview.setScaleType(ImageView.ScaleType.CENTER_CROP);
             } else {
                 preview.setImageResource(android.R.drawable.ic_menu_gallery);
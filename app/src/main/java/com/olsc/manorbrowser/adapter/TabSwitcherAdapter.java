@@ -6,7 +6,7 @@ package com.olsc.manorbrowser.adapter;
 
 import com.olsc.manorbrowser.R;
 import com.olsc.manorbrowser.data.TabInfo;
-import com.olsc.manorbrowser.data.TabStorage;
+import com.olsc.manorbrowser.data.ThumbnailCache;
 
 import android.view.LayoutInflater;
 import android.view.View;
@@ -100,6 +100,13 @@ public class TabSwitcherAdapter extends RecyclerView.Adapter<TabSwitcherAdapter.
         holder.bind(tab, position, listener);
     }
 
+    @Override
+    public void onViewRecycled(@NonNull TabViewHolder holder) {
+        super.onViewRecycled(holder);
+        // 回收的卡片不再需要其缩略图，取消尚未完成的解码
+        holder.cancelThumbnailLoad();
+    }
+
     @Override
     public int getItemCount() {
         return tabs.size();
@@ -113,6 +120,9 @@ public class TabSwitcherAdapter extends RecyclerView.Adapter<TabSwitcherAdapter.
         TextView title;
         TextView url;
 
+        /** 当前绑定的缩略图异步加载请求 */
+        ThumbnailCache.Request thumbnailRequest;
+
         public TabViewHolder(@NonNull View itemView) {
             super(itemView);
             preview = itemView.findViewById(R.id.tab_preview);
@@ -120,6 +130,19 @@ public class TabSwitcherAdapter extends RecyclerView.Adapter<TabSwitcherAdapter.
             url = itemView.findViewById(R.id.tab_url);
         }
 
+        void cancelThumbnailLoad() {
+            if (thumbnailRequest != null) {
+                thumbnailRequest.cancel();
+                thumbnailRequest = null;
+            }
+        }
+
+        private void showThumbnail(android.graphics.Bitmap bitmap) {
+            preview.setImageBitmap(bitmap);
+            preview.setScaleType(ImageView.ScaleType.CENTER_CROP);
+            preview.setBackgroundColor(androidx.core.content.ContextCompat.getColor(itemView.getContext(), com.olsc.manorbrowser.R.color.divider_color));
+        }
+
         public void bind(TabInfo tab, int position, OnTabActionListener listener) {
             // 设置标题，处理空标题或默认页情况
             String titleText = tab.title;
@@ -137,26 +160,19 @@ public class TabSwitcherAdapter extends RecyclerView.Adapter<TabSwitcherAdapter.
                 url.setVisibility(View.GONE);
             }
 
-            // 处理缩略图加载
-            if (tab.thumbnail != null && !tab.thumbnail.isRecycled()) {
+            // 处理缩略图加载：先取消该 ViewHolder 上一次绑定的加载请求，防止回收复用后错位
+            cancelThumbnailLoad();
+            android.graphics.Bitmap cached = ThumbnailCache.get(itemView.getContext()).getCached(tab.id);
+            if (cached != null) {
                 // 如果内存中已有截图，直接显示
-                preview.setImageBitmap(tab.thumbnail);
-                preview.setScaleType(ImageView.ScaleType.CENTER_CROP);
-                preview.setBackgroundColor(androidx.core.content.ContextCompat.getColor(itemView.getContext(), com.olsc.manorbrowser.R.color.divider_color));
+                showThumbnail(cached);
             } else {
-                // 否则显示占位背景并异步从磁盘加载缓存的缩略图
+                // 否则显示占位背景并异步从磁盘解码缓存的缩略图
                 preview.setImageResource(0);
                 preview.setBackgroundColor(androidx.core.content.ContextCompat.getColor(itemView.getContext(), com.olsc.manorbrowser.R.color.background_main));
-                TabStorage.loadThumbnailAsync(itemView.getContext(), tab.id, bitmap -> {
-                    if (bitmap != null && (tab.thumbnail == null || tab.thumbnail.isRecycled())) {
-                        tab.thumbnail = bitmap;
-                        // 确保加载完成时，ViewHolder 仍绑定在当前位置，防止列表滚动导致的错位
-                        if (getBindingAdapterPosition() == position) {
-                            preview.setImageBitmap(bitmap);
-                            preview.setScaleType(ImageView.ScaleType.CENTER_CROP);
-                            preview.setBackgroundColor(androidx.core.content.ContextCompat.getColor(itemView.getContext(), com.olsc.manorbrowser.R.color.divider_color));
-                        }
-                    }
+                thumbnailRequest = ThumbnailCache.get(itemView.getContext()).load(tab.id, bitmap -> {
+                    thumbnailRequest = null;
+                    if (bitmap != null) showThumbnail(bitmap);
                 });
             }
 
@@ -0,0 +1,161 @@
+/**
+ * 离线文章的内容寻址文件存储
+ *
+ * 每份数据以内容的 SHA-256 命名，相同内容（例如多篇文章共用的配图、重复保存的同一篇文章）只存一份；
+ * 文章正文 JSON 以 gzip 压缩后存放，图片已是压缩格式，原样存放。
+ * 文件按摘要前两位分目录，避免单个目录下文件过多。写入经由 AtomicFileStore，读取时校验摘要；
+ * 图片以文件地址交给阅读界面，由 ReaderImageLoader 读取后用 isIntact 校验。
+ * 本类只依赖 JDK，可在 JVM 单元测试中使用；引用计数与淘汰由索引数据库负责。
+ */
+package com.olsc.manorbrowser.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class ArticleBlobStore {
+    /** 压缩存放的数据（文章正文）的文件后缀 */
+    private static final String EXT_GZIP = ".gz";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File root;
+
+    public ArticleBlobStore(File root) {
+        this.root = root;
+    }
+
+    /**
+     * 原样存入数据，返回其键；相同内容已存在时直接返回
+     */
+    public String put(byte[] data) throws IOException {
+        String key = sha256(data);
+        File file = fileOf(key);
+        if (!file.exists()) write(file, data);
+        return key;
+    }
+
+    /**
+     * 以 gzip 压缩存入数据，键仍由压缩前的内容计算
+     */
+    public String putCompressed(byte[] data) throws IOException {
+        String key = sha256(data) + EXT_GZIP;
+        File file = fileOf(key);
+        if (file.exists()) return key;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 16 * 1024)) {
+            gzip.write(data);
+        }
+        write(file, out.toByteArray());
+        return key;
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        // 内容寻址的文件不会被改写，不需要保留备份
+        AtomicFileStore.writeNow(file, data, false);
+    }
+
+    /**
+     * 读取数据（压缩存放的自动解压）并校验摘要；不存在或内容损坏时返回 null
+     */
+    public byte[] get(String key) {
+        File file = fileOf(key);
+        if (file == null || !file.exists()) return null;
+        try {
+            byte[] data = AtomicFileStore.readBytes(file);
+            if (key.endsWith(EXT_GZIP)) data = gunzip(data);
+            return isIntact(key, data) ? data : null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /** 键对应的文件（图片交给解码器读取，读取后需用 isIntact 校验）；键不合法时返回 null */
+    public File fileOf(String key) {
+        if (!isValidKey(key)) return null;
+        return new File(new File(root, key.substring(0, 2)), key);
+    }
+
+    /** 磁盘占用字节数，不存在时为 0 */
+    public long sizeOf(String key) {
+        File file = fileOf(key);
+        return file != null ? file.length() : 0;
+    }
+
+    public void delete(String key) {
+        File file = fileOf(key);
+        if (file != null) AtomicFileStore.delete(file);
+    }
+
+    /**
+     * 删除键不在 keep 中的所有文件（索引中没有记录的数据块、写入中断留下的临时文件），返回删除的文件数。
+     * 调用方需保证期间没有写入
+     */
+    public int retainOnly(Set<String> keep) {
+        int removed = 0;
+        File[] dirs = root.listFiles();
+        if (dirs == null) return 0;
+        for (File dir : dirs) {
+            File[] files = dir.listFiles();
+            if (files == null) continue;
+            for (File file : files) {
+                if (keep.contains(file.getName())) continue;
+                if (file.delete()) removed++;
+            }
+            dir.delete(); // 只有空目录会被删除
+        }
+        return removed;
+    }
+
+    /**
+     * 数据（压缩存放的为解压后的内容）是否与键中的摘要一致；name 不是数据块键时返回 false
+     */
+    public static boolean isIntact(String name, byte[] data) {
+        if (!isValidKey(name) || data == null) return false;
+        String digest = name.endsWith(EXT_GZIP) ? name.substring(0, name.length() - EXT_GZIP.length()) : name;
+        return digest.equals(sha256(data));
+    }
+
+    /** 键只能是 64 位小写十六进制摘要加可选的 .gz 后缀，防止路径穿越 */
+    static boolean isValidKey(String key) {
+        if (key == null) return false;
+        int length = key.endsWith(EXT_GZIP) ? key.length() - EXT_GZIP.length() : key.length();
+        if (length != 64) return false;
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) return false;
+        }
+        return true;
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data), 16 * 1024)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[16 * 1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) out.write(buffer, 0, n);
+            return out.toByteArray();
+        }
+    }
+
+    static String sha256(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            char[] chars = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                chars[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+                chars[i * 2 + 1] = HEX[digest[i] & 0xF];
+            }
+            return new String(chars);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
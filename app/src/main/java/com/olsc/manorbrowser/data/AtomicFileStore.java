@@ -0,0 +1,210 @@
+/**
+ * 崩溃安全的文件持久化组件
+ * 供标签页、书签、密码等 JSON 存储共用：
+ * 1. 先写临时文件并 fsync，再通过 rename 原子替换目标文件，进程中途被杀也不会留下截断的文件；
+ * 2. 替换前将旧文件保留为 .bak，作为最近一次完好的备份，目标文件缺失或解析失败时自动回退；
+ * 3. 异步写入在共享的单线程上执行，同一文件尚未开始的写请求会被合并，只写最后一份数据。
+ * 保存凭据等敏感数据时使用不保留备份的写入：rename 直接原子覆盖目标文件并清除残留的 .bak，
+ * 已删除的内容不会以备份的形式留在磁盘上。
+ * 本类只依赖 java.io，可在 JVM 单元测试中做故障注入。
+ */
+package com.olsc.manorbrowser.data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class AtomicFileStore {
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String BACKUP_SUFFIX = ".bak";
+
+    /** 数据序列化回调，在写线程上执行 */
+    public interface Payload {
+        byte[] serialize() throws Exception;
+    }
+
+    /** 文件内容解析回调，抛出异常即视为文件损坏 */
+    public interface Parser<T> {
+        T parse(byte[] data) throws Exception;
+    }
+
+    /**
+     * 故障注入钩子（仅测试使用）：包装写入流以模拟在任意字节处被杀，
+     * 或在备份与替换之间中断。
+     */
+    interface Hooks {
+        OutputStream wrap(OutputStream out);
+
+        void afterBackup() throws IOException;
+    }
+
+    static volatile Hooks hooks;
+
+    private static final AtomicFileStore INSTANCE = new AtomicFileStore();
+
+    /** 所有 JSON 存储共用的写线程 */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    /** 目标路径 -> 尚未开始执行的最新写请求 */
+    private final Map<String, Payload> pending = new HashMap<>();
+    /** 目标路径 -> 是否保留备份（与 pending 一起更新） */
+    private final Map<String, Boolean> pendingBackup = new HashMap<>();
+
+    public static AtomicFileStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 异步写入；若同一文件已有排队中的写请求，则仅替换其数据
+     */
+    public void write(File target, Payload payload) {
+        write(target, payload, true);
+    }
+
+    /**
+     * 异步写入，keepBackup 为 false 时不保留旧版本的备份（见 writeNow）
+     */
+    public void write(File target, Payload payload, boolean keepBackup) {
+        String key = target.getAbsolutePath();
+        synchronized (pending) {
+            pendingBackup.put(key, keepBackup);
+            if (pending.put(key, payload) != null) return;
+        }
+        executor.execute(() -> {
+            Payload latest;
+            boolean backup;
+            synchronized (pending) {
+                latest = pending.remove(key);
+                Boolean keep = pendingBackup.remove(key);
+                backup = keep == null || keep;
+            }
+            if (latest == null) return;
+            try {
+                writeNow(target, latest.serialize(), backup);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * 阻塞直到此前提交的异步写入全部完成
+     */
+    public void flush() {
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(latch::countDown);
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 同步原子写入：临时文件 -> fsync -> 旧文件转为备份 -> rename 为目标文件
+     */
+    public static void writeNow(File target, byte[] data) throws IOException {
+        writeNow(target, data, true);
+    }
+
+    /**
+     * 同步原子写入；keepBackup 为 false 时临时文件直接 rename 覆盖目标（同样是原子的），
+     * 并删除此前残留的备份，旧内容不会留在磁盘上
+     */
+    public static void writeNow(File target, byte[] data, boolean keepBackup) throws IOException {
+        File dir = target.getParentFile();
+        if (dir != null && !dir.exists()) dir.mkdirs();
+        File tmp = new File(target.getPath() + TMP_SUFFIX);
+        Hooks h = hooks;
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            OutputStream out = h != null ? h.wrap(fos) : fos;
+            out.write(data);
+            out.flush();
+            fos.getFD().sync();
+        }
+
+        if (!keepBackup) {
+            if (!tmp.renameTo(target)) {
+                throw new IOException("无法替换: " + target);
+            }
+            File backup = backupOf(target);
+            if (backup.exists() && !backup.delete()) {
+                throw new IOException("无法删除旧备份: " + backup);
+            }
+            return;
+        }
+        if (target.exists()) {
+            File backup = backupOf(target);
+            if (backup.exists() && !backup.delete()) {
+                throw new IOException("无法删除旧备份: " + backup);
+            }
+            if (!target.renameTo(backup)) {
+                throw new IOException("无法备份: " + target);
+            }
+        }
+        if (h != null) h.afterBackup();
+        if (!tmp.renameTo(target)) {
+            throw new IOException("无法替换: " + target);
+        }
+    }
+
+    /**
+     * 读取并解析文件；目标文件缺失或解析失败时回退到最近一次完好的备份。
+     * 两者都不可用时返回 null。
+     */
+    public static <T> T read(File target, Parser<T> parser) {
+        for (File file : new File[]{target, backupOf(target)}) {
+            if (!file.exists()) continue;
+            try {
+                return parser.parse(readBytes(file));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 目标文件或其备份是否存在
+     */
+    public static boolean exists(File target) {
+        return target.exists() || backupOf(target).exists();
+    }
+
+    /**
+     * 删除目标文件及其备份、残留的临时文件
+     */
+    public static void delete(File target) {
+        target.delete();
+        backupOf(target).delete();
+        new File(target.getPath() + TMP_SUFFIX).delete();
+    }
+
+    public static File backupOf(File target) {
+        return new File(target.getPath() + BACKUP_SUFFIX);
+    }
+
+    static byte[] readBytes(File file) throws IOException {
+        try (FileInputStream fis = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int off = 0;
+            while (off < data.length) {
+                int n = fis.read(data, off, data.length - off);
+                if (n < 0) break;
+                off += n;
+            }
+            if (off < data.length) {
+                byte[] trimmed = new byte[off];
+                System.arraycopy(data, 0, trimmed, 0, off);
+                return trimmed;
+            }
+            return data;
+        }
+    }
+}
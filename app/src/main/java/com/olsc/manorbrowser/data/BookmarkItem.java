@@ -9,6 +9,7 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class BookmarkItem {
     /** 类别枚举：链接或文件夹 */
@@ -27,14 +28,30 @@ public class BookmarkItem {
     /** 父级文件夹 ID (-1 表示根目录) */
     public long parentId;
 
+    /** 最近分配的 ID */
+    private static final AtomicLong lastId = new AtomicLong();
+
+    /**
+     * 分配新的 ID：以当前时间为基准单调递增，同一进程内不会重复
+     */
+    static long nextId() {
+        return lastId.accumulateAndGet(System.currentTimeMillis(), (last, now) -> Math.max(last + 1, now));
+    }
+
+    /**
+     * 登记已存在的 ID（从磁盘加载时），之后分配的 ID 都比它大
+     */
+    static void reserveId(long id) {
+        lastId.accumulateAndGet(id, Math::max);
+    }
+
     /**
      * 构建一个普通链接书签
      */
     public BookmarkItem(String title, String url) {
         this.title = title;
         this.url = url;
-        // 使用时间戳加随机数生成尽量唯一的 ID
-        this.id = System.currentTimeMillis() + (long)(Math.random() * 1000);
+        this.id = nextId();
         this.type = Type.LINK;
         this.parentId = -1;
     }
@@ -44,12 +61,27 @@ public class BookmarkItem {
      */
     public BookmarkItem(String title) {
         this.title = title;
-        this.id = System.currentTimeMillis() + (long)(Math.random() * 1000);
+        this.id = nextId();
         this.type = Type.FOLDER;
         this.children = new ArrayList<>();
         this.parentId = -1;
     }
 
+    /**
+     * 深拷贝当前书签（及其子项），保留原始 ID
+     */
+    public BookmarkItem copy() {
+        BookmarkItem item = type == Type.LINK ? new BookmarkItem(title, url) : new BookmarkItem(title);
+        item.id = id;
+        item.parentId = parentId;
+        if (type == Type.FOLDER && children != null) {
+            for (BookmarkItem child : children) {
+                item.children.add(child.copy());
+            }
+        }
+        return item;
+    }
+
     /**
      * 将当前书签对象（及其子项）转换为 JSON
      */
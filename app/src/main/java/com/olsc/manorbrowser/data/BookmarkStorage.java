@@ -1,16 +1,12 @@
 /**
  * 书签持久化存储类
  * 负责书签的加载、保存、添加、删除、移动以及目录结构的管理。
- * 数据以 JSON 格式存储在应用的私有文件目录中。
+ * 实际数据由 BookmarkStore 维护：内存索引 + 追加日志，定期压缩为 JSON 快照。
  */
 package com.olsc.manorbrowser.data;
 
 import android.content.Context;
 import org.json.JSONArray;
-import org.json.JSONObject;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -18,203 +14,86 @@ import java.util.List;
 import java.util.Locale;
 
 public class BookmarkStorage {
-    /** 书签存储的文件名 */
-    private static final String FILE_NAME = "bookmarks.json";
+    /** 朝鲜地区默认书签中用于判断是否已导入的标志项 */
+    private static final String KP_DEFAULT_MARKER = "광명 (국가망)";
 
     /**
-     * 从本地文件加载所有书签
+     * 加载所有书签（返回内存索引的深拷贝）
      */
     public static List<BookmarkItem> loadBookmarks(Context context) {
-        List<BookmarkItem> bookmarks = new ArrayList<>();
-        try {
-            File file = new File(context.getFilesDir(), FILE_NAME);
-            if (!file.exists()) {
-                bookmarks = initDefaultBookmarksIfNeeded(context);
-                if (!bookmarks.isEmpty()) {
-                    saveBookmarks(context, bookmarks);
-                }
-                return bookmarks;
-            }
-            
-            FileInputStream fis = new FileInputStream(file);
-            byte[] data = new byte[(int) file.length()];
-            fis.read(data);
-            fis.close();
-            
-            JSONArray arr = new JSONArray(new String(data));
-            for (int i = 0; i < arr.length(); i++) {
-                bookmarks.add(BookmarkItem.fromJson(arr.getJSONObject(i)));
-            }
-
-            // 如果是朝鲜语/朝鲜地区环境且缺失光明星书签，自动补全
-            Locale locale = context.getResources().getConfiguration().getLocales().get(0);
-            if ("KP".equalsIgnoreCase(locale.getCountry()) && "ko".equalsIgnoreCase(locale.getLanguage())) {
-                boolean hasKwangmyong = false;
-                for (BookmarkItem item : bookmarks) {
-                    if ("광명 (국가망)".equals(item.title)) {
-                        hasKwangmyong = true;
-                        break;
-                    }
-                }
-                if (!hasKwangmyong) {
-                    List<BookmarkItem> defaults = initDefaultBookmarksIfNeeded(context);
-                    if (!defaults.isEmpty()) {
-                        bookmarks.addAll(defaults);
-                        saveBookmarks(context, bookmarks);
-                    }
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return bookmarks;
+        return BookmarkStore.get(context).snapshot();
     }
 
     /**
-     * 将书签列表全量保存到本地文件
+     * 用给定的书签树整体替换，快照在后台写出
      */
     public static void saveBookmarks(Context context, List<BookmarkItem> bookmarks) {
-        try {
-            JSONArray arr = new JSONArray();
-            for (BookmarkItem item : bookmarks) {
-                arr.put(item.toJson());
-            }
-            File file = new File(context.getFilesDir(), FILE_NAME);
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                fos.write(arr.toString().getBytes());
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        BookmarkStore.get(context).replaceAll(bookmarks);
     }
 
     /**
      * 添加书签到根目录
      */
     public static void addBookmark(Context context, BookmarkItem item) {
-        List<BookmarkItem> bookmarks = loadBookmarks(context);
-        bookmarks.add(item);
-        saveBookmarks(context, bookmarks);
+        BookmarkStore.get(context).add(item, -1);
     }
 
     /**
-     * 根据 ID 删除书签（含递归删除）
+     * 根据 ID 删除书签（文件夹连同子项一起删除）
      */
     public static void removeBookmark(Context context, long id) {
-        List<BookmarkItem> bookmarks = loadBookmarks(context);
-        removeRecursive(bookmarks, id);
-        saveBookmarks(context, bookmarks);
+        BookmarkStore.get(context).remove(id);
     }
 
     /**
-     * 递归删除逻辑
+     * 修改书签标题与地址（url 为 null 表示不修改）
      */
-    private static boolean removeRecursive(List<BookmarkItem> items, long id) {
-        for (int i = 0; i < items.size(); i++) {
-            BookmarkItem item = items.get(i);
-            if (item.id == id) {
-                items.remove(i);
-                return true;
-            }
-            if (item.children != null && !item.children.isEmpty()) {
-                if (removeRecursive(item.children, id)) return true;
-            }
-        }
-        return false;
+    public static void updateBookmark(Context context, long id, String title, String url) {
+        BookmarkStore.get(context).update(id, title, url);
     }
 
     /**
      * 将书签添加至指定文件夹
      */
     public static void addBookmarkToFolder(Context context, BookmarkItem item, long folderId) {
-        List<BookmarkItem> bookmarks = loadBookmarks(context);
-        if (folderId == -1) {
-            bookmarks.add(item);
-        } else {
-            addToFolderRecursive(bookmarks, item, folderId);
-        }
-        saveBookmarks(context, bookmarks);
-    }
-
-    /**
-     * 递归寻找并添加至目标文件夹
-     */
-    private static void addToFolderRecursive(List<BookmarkItem> items, BookmarkItem itemToAdd, long folderId) {
-        for (BookmarkItem folder : items) {
-            if (folder.id == folderId) {
-                if (folder.children == null) folder.children = new ArrayList<>();
-                itemToAdd.parentId = folderId;
-                folder.children.add(itemToAdd);
-                return;
-            }
-            if (folder.children != null && !folder.children.isEmpty()) {
-                addToFolderRecursive(folder.children, itemToAdd, folderId);
-            }
-        }
+        BookmarkStore.get(context).add(item, folderId);
     }
 
     /**
      * 获取所有可用的文件夹列表，用于移动书签时的目标选择
      */
     public static List<BookmarkItem> getAllFolders(Context context) {
-        List<BookmarkItem> allBookmarks = loadBookmarks(context);
-        List<BookmarkItem> folders = new ArrayList<>();
-        collectFolders(allBookmarks, folders);
-        return folders;
+        return BookmarkStore.get(context).getFolders();
     }
 
     /**
-     * 递归搜集所有文件夹类型的项
+     * 移动书签到目标文件夹（-1 表示根目录）
      */
-    private static void collectFolders(List<BookmarkItem> items, List<BookmarkItem> result) {
-        for (BookmarkItem item : items) {
-            if (item.type == BookmarkItem.Type.FOLDER) {
-                result.add(item);
-                if (item.children != null && !item.children.isEmpty()) {
-                    collectFolders(item.children, result);
-                }
-            }
-        }
+    public static void moveBookmark(Context context, long bookmarkId, long targetFolderId) {
+        BookmarkStore.get(context).move(bookmarkId, targetFolderId);
     }
 
     /**
-     * 移动书签逻辑：先递归删除原位数据，再递归插入目标位置
+     * 书签加载完成后在主线程执行回调（已加载时立即执行），用于冷启动时刷新界面
      */
-    public static void moveBookmark(Context context, long bookmarkId, long targetFolderId) {
-        List<BookmarkItem> bookmarks = loadBookmarks(context);
-        BookmarkItem itemToMove = findAndRemoveRecursive(bookmarks, bookmarkId);
-        if (itemToMove != null) {
-            if (targetFolderId == -1) {
-                itemToMove.parentId = -1;
-                bookmarks.add(itemToMove);
-            } else {
-                addToFolderRecursive(bookmarks, itemToMove, targetFolderId);
-            }
-            saveBookmarks(context, bookmarks);
-        }
+    public static void whenLoaded(Context context, Runnable callback) {
+        BookmarkStore.get(context).whenLoaded(callback);
     }
 
     /**
-     * 移动逻辑中使用的：查找并移除
+     * 朝鲜语/朝鲜地区环境下，根目录是否缺失光明星书签
      */
-    private static BookmarkItem findAndRemoveRecursive(List<BookmarkItem> items, long id) {
-        for (int i = 0; i < items.size(); i++) {
-            BookmarkItem item = items.get(i);
-            if (item.id == id) {
-                return items.remove(i);
-            }
-            if (item.children != null && !item.children.isEmpty()) {
-                BookmarkItem found = findAndRemoveRecursive(item.children, id);
-                if (found != null) return found;
-            }
+    static boolean isMissingDefaults(List<BookmarkItem> roots) {
+        for (BookmarkItem item : roots) {
+            if (KP_DEFAULT_MARKER.equals(item.title)) return false;
         }
-        return null;
+        return true;
     }
 
     /**
      * 根据语言环境（朝鲜语）初始化默认书签
      */
-    private static List<BookmarkItem> initDefaultBookmarksIfNeeded(Context context) {
+    static List<BookmarkItem> initDefaultBookmarksIfNeeded(Context context) {
         List<BookmarkItem> bookmarks = new ArrayList<>();
         Locale locale = context.getResources().getConfiguration().getLocales().get(0);
         String country = locale.getCountry();
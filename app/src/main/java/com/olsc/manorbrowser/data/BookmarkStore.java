@@ -0,0 +1,259 @@
+/**
+ * 书签内存索引与增量日志存储
+ * 书签树 (BookmarkTree) 常驻内存并维护 id 索引，
+ * 增删改移只修改内存并经 JsonJournal 向 bookmarks.journal 追加一行 JSON 记录；
+ * 日志达到阈值后在后台压缩为 bookmarks.json 快照并清空日志。
+ * 所有磁盘读写都在单个后台写线程上执行，UI 调用不会同步触盘。
+ * 主线程不等待加载：加载完成前查询返回当前（可能为空的）内存树，修改排到写线程上在加载之后执行，
+ * 界面通过 whenLoaded 在加载完成后刷新；后台线程的调用仍会等待加载完成。
+ *
+ * 快照文件沿用旧版 bookmarks.json 的文件名，旧版的数组格式可以直接作为初始快照加载。
+ * 日志重放按序号去重（见 JsonJournal）；新书签的 ID 与已有节点冲突时换用新分配的 ID，不会被丢弃。
+ */
+package com.olsc.manorbrowser.data;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.json.JSONArray;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class BookmarkStore {
+    private static final String TAG = "BookmarkStore";
+    /** 快照文件名（与旧版全量文件同名） */
+    static final String SNAPSHOT_FILE = "bookmarks.json";
+    /** 增量日志文件名 */
+    static final String JOURNAL_FILE = "bookmarks.journal";
+    /** 日志记录达到该条数后触发压缩 */
+    private static final int COMPACT_THRESHOLD = 200;
+
+    private static volatile BookmarkStore instance;
+
+    private final Context appContext;
+    /** 唯一的磁盘写线程：加载、追加日志与压缩都在这里顺序执行 */
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Object loadLock = new Object();
+    /** 等待加载完成的回调，受 loadLock 保护；为 null 表示已加载完成 */
+    private List<Runnable> loadListeners = new ArrayList<>();
+
+    /** 内存中的书签树，受 this 锁保护 */
+    private final BookmarkTree tree = new BookmarkTree();
+    /** 快照与日志，append 等调用在 this 锁内进行 */
+    private final JsonJournal journal;
+
+    public static BookmarkStore get(Context context) {
+        if (instance == null) {
+            synchronized (BookmarkStore.class) {
+                if (instance == null) {
+                    instance = new BookmarkStore(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private BookmarkStore(Context context) {
+        this.appContext = context;
+        this.journal = new JsonJournal(new File(context.getFilesDir(), SNAPSHOT_FILE),
+                new File(context.getFilesDir(), JOURNAL_FILE), this, writer, COMPACT_THRESHOLD, tree::toJson);
+        writer.execute(this::load);
+    }
+
+    /**
+     * 提前触发后台加载（在 Application 启动时调用，避免首次打开书签时等待）
+     */
+    public static void preload(Context context) {
+        get(context);
+    }
+
+    /**
+     * 书签是否已从磁盘加载完成
+     */
+    public boolean isLoaded() {
+        return loaded.getCount() == 0;
+    }
+
+    /**
+     * 已加载完成时立即执行，否则在加载完成（以及加载期间排队的修改生效）后于主线程执行
+     */
+    public void whenLoaded(Runnable callback) {
+        synchronized (loadLock) {
+            if (loadListeners != null) {
+                loadListeners.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    // ---------------------------------------------------------------- 查询
+
+    /**
+     * 返回整棵书签树的深拷贝，调用方可以自由修改而不影响索引
+     */
+    public List<BookmarkItem> snapshot() {
+        awaitLoadedOffMainThread();
+        synchronized (this) {
+            return tree.copy();
+        }
+    }
+
+    /**
+     * 返回所有文件夹（先序遍历），仅包含 id / 标题 / 父级，不含子项
+     */
+    public List<BookmarkItem> getFolders() {
+        awaitLoadedOffMainThread();
+        synchronized (this) {
+            return tree.folders();
+        }
+    }
+
+    // ---------------------------------------------------------------- 修改
+
+    /**
+     * 添加书签（或文件夹）到指定文件夹，folderId 为 -1 或不存在时添加到根目录
+     */
+    public void add(BookmarkItem item, long folderId) {
+        BookmarkItem copy = item.copy();
+        runWhenLoaded(() -> {
+            synchronized (this) {
+                journal.append(tree.add(copy, folderId));
+                item.id = copy.id;
+                item.parentId = copy.parentId;
+            }
+        });
+    }
+
+    /**
+     * 删除书签（文件夹会连同子项一起删除）
+     */
+    public void remove(long id) {
+        runWhenLoaded(() -> {
+            synchronized (this) {
+                JsonJournal.Record record = tree.remove(id);
+                if (record != null) journal.append(record);
+            }
+        });
+    }
+
+    /**
+     * 移动书签到目标文件夹；目标为自身或其子孙时忽略
+     */
+    public void move(long id, long targetFolderId) {
+        runWhenLoaded(() -> {
+            synchronized (this) {
+                JsonJournal.Record record = tree.move(id, targetFolderId);
+                if (record != null) journal.append(record);
+            }
+        });
+    }
+
+    /**
+     * 修改标题与地址（url 为 null 表示不修改）
+     */
+    public void update(long id, String title, String url) {
+        runWhenLoaded(() -> {
+            synchronized (this) {
+                JsonJournal.Record record = tree.update(id, title, url);
+                if (record != null) journal.append(record);
+            }
+        });
+    }
+
+    /**
+     * 用给定的书签树整体替换（用于批量编辑），随后在后台写出新快照
+     */
+    public void replaceAll(List<BookmarkItem> items) {
+        List<BookmarkItem> copies = new ArrayList<>(items.size());
+        for (BookmarkItem item : items) copies.add(item.copy());
+        runWhenLoaded(() -> {
+            synchronized (this) {
+                tree.replaceAll(copies);
+                journal.rewrite();
+            }
+        });
+    }
+
+    // ---------------------------------------------------------------- 日志与快照
+
+    /** 写线程：加载快照并重放日志 */
+    private void load() {
+        try {
+            boolean fresh = journal.isEmpty();
+            synchronized (this) {
+                JSONArray items = journal.readSnapshot();
+                if (items != null) tree.load(items);
+                journal.replay(tree::apply);
+            }
+
+            // 首次启动或朝鲜语环境缺失默认书签时补全
+            List<BookmarkItem> defaults = BookmarkStorage.initDefaultBookmarksIfNeeded(appContext);
+            if (!defaults.isEmpty()) {
+                synchronized (this) {
+                    if (fresh || BookmarkStorage.isMissingDefaults(tree.roots())) {
+                        for (BookmarkItem item : defaults) tree.add(item, -1);
+                        journal.rewrite();
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "加载书签失败", e);
+        } finally {
+            loaded.countDown();
+            List<Runnable> listeners;
+            synchronized (loadLock) {
+                listeners = loadListeners;
+                loadListeners = null;
+                // 排在加载期间主线程提交的修改之后，回调时界面读到的是修改后的书签树
+                writer.execute(() -> {
+                    for (Runnable listener : listeners) mainHandler.post(listener);
+                });
+            }
+        }
+    }
+
+    /**
+     * 修改在加载完成后执行：已加载或在后台线程时（等待加载后）直接执行；
+     * 主线程且尚未加载时排到写线程上，写线程在加载任务之后才会执行它
+     */
+    private void runWhenLoaded(Runnable mutation) {
+        if (!isMainThread()) {
+            awaitLoaded();
+        } else {
+            synchronized (loadLock) {
+                if (loadListeners != null) {
+                    writer.execute(mutation);
+                    return;
+                }
+            }
+        }
+        mutation.run();
+    }
+
+    /** 主线程不等待加载，直接读取当前内存树 */
+    private void awaitLoadedOffMainThread() {
+        if (!isMainThread()) awaitLoaded();
+    }
+
+    private static boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    private void awaitLoaded() {
+        try {
+            loaded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
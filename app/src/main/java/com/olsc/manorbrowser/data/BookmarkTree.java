@@ -0,0 +1,211 @@
+/**
+ * 书签树的内存状态
+ * 维护根目录列表与 id -> 节点 的索引（父级通过 parentId 在同一索引中定位），执行增删改移，
+ * 每次修改返回对应的日志记录，重放时由 apply 把记录应用回来。
+ * 不做同步，由 BookmarkStore 在自己的锁内调用；只依赖 org.json，可在 JVM 单元测试中使用。
+ */
+package com.olsc.manorbrowser.data;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class BookmarkTree {
+    private static final String OP_ADD = "add";
+    private static final String OP_REMOVE = "remove";
+    private static final String OP_MOVE = "move";
+    private static final String OP_UPDATE = "update";
+
+    /** 根目录下的书签 */
+    private final List<BookmarkItem> roots = new ArrayList<>();
+    /** id -> 节点 索引 */
+    private final Map<Long, BookmarkItem> byId = new HashMap<>();
+
+    /**
+     * 加载快照中的书签（追加到根目录）
+     */
+    void load(JSONArray items) throws Exception {
+        for (int i = 0; i < items.length(); i++) {
+            BookmarkItem item = BookmarkItem.fromJson(items.getJSONObject(i));
+            item.parentId = -1;
+            roots.add(item);
+            index(item);
+        }
+    }
+
+    /**
+     * 用给定的书签整体替换（调用方传入副本）
+     */
+    void replaceAll(List<BookmarkItem> items) {
+        roots.clear();
+        byId.clear();
+        for (BookmarkItem item : items) {
+            item.parentId = -1;
+            roots.add(item);
+            index(item);
+        }
+    }
+
+    /**
+     * 添加到指定文件夹，folderId 为 -1 或不存在时添加到根目录；ID 已被占用时换用新分配的 ID
+     */
+    JsonJournal.Record add(BookmarkItem item, long folderId) {
+        BookmarkItem folder = folderId == -1 ? null : byId.get(folderId);
+        if (folder != null && folder.type == BookmarkItem.Type.FOLDER) {
+            if (folder.children == null) folder.children = new ArrayList<>();
+            item.parentId = folder.id;
+            folder.children.add(item);
+        } else {
+            item.parentId = -1;
+            roots.add(item);
+        }
+        index(item);
+        try {
+            return new JsonJournal.Record(OP_ADD).put("parent", item.parentId).put("item", item.toJson());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 删除节点（文件夹连同子项），不存在时返回 null
+     */
+    JsonJournal.Record remove(long id) {
+        BookmarkItem item = byId.get(id);
+        if (item == null) return null;
+        siblingsOf(item).remove(item);
+        unindex(item);
+        return new JsonJournal.Record(OP_REMOVE).put("id", id);
+    }
+
+    /**
+     * 移动到目标文件夹；节点不存在、目标不是文件夹、目标为自身或其子孙、位置未变时返回 null
+     */
+    JsonJournal.Record move(long id, long targetFolderId) {
+        BookmarkItem item = byId.get(id);
+        if (item == null) return null;
+        BookmarkItem target = targetFolderId == -1 ? null : byId.get(targetFolderId);
+        if (target != null && target.type != BookmarkItem.Type.FOLDER) return null;
+        // 沿父级索引向上检查，禁止把文件夹移入自身或其子孙
+        for (BookmarkItem p = target; p != null; p = p.parentId == -1 ? null : byId.get(p.parentId)) {
+            if (p.id == id) return null;
+        }
+        long newParent = target == null ? -1 : target.id;
+        if (item.parentId == newParent) return null;
+        siblingsOf(item).remove(item);
+        item.parentId = newParent;
+        if (target == null) {
+            roots.add(item);
+        } else {
+            if (target.children == null) target.children = new ArrayList<>();
+            target.children.add(item);
+        }
+        return new JsonJournal.Record(OP_MOVE).put("id", id).put("parent", targetFolderId);
+    }
+
+    /**
+     * 修改标题与地址（null 表示不修改），节点不存在时返回 null
+     */
+    JsonJournal.Record update(long id, String title, String url) {
+        BookmarkItem item = byId.get(id);
+        if (item == null) return null;
+        if (title != null) item.title = title;
+        if (url != null && item.type == BookmarkItem.Type.LINK) item.url = url;
+        return new JsonJournal.Record(OP_UPDATE).put("id", id).put("title", title).put("url", url);
+    }
+
+    /**
+     * 重放一条日志记录
+     */
+    void apply(JSONObject json) throws Exception {
+        switch (json.getString("op")) {
+            case OP_ADD:
+                add(BookmarkItem.fromJson(json.getJSONObject("item")), json.optLong("parent", -1));
+                break;
+            case OP_REMOVE:
+                remove(json.getLong("id"));
+                break;
+            case OP_MOVE:
+                move(json.getLong("id"), json.optLong("parent", -1));
+                break;
+            case OP_UPDATE:
+                update(json.getLong("id"), json.optString("title", null), json.optString("url", null));
+                break;
+        }
+    }
+
+    /** 根目录列表（不要在锁外修改） */
+    List<BookmarkItem> roots() {
+        return roots;
+    }
+
+    BookmarkItem get(long id) {
+        return byId.get(id);
+    }
+
+    /**
+     * 整棵书签树的深拷贝
+     */
+    List<BookmarkItem> copy() {
+        List<BookmarkItem> copy = new ArrayList<>(roots.size());
+        for (BookmarkItem item : roots) copy.add(item.copy());
+        return copy;
+    }
+
+    /**
+     * 所有文件夹（先序遍历），仅包含 id / 标题 / 父级，不含子项
+     */
+    List<BookmarkItem> folders() {
+        List<BookmarkItem> result = new ArrayList<>();
+        collectFolders(roots, result);
+        return result;
+    }
+
+    JSONArray toJson() throws Exception {
+        JSONArray arr = new JSONArray();
+        for (BookmarkItem item : roots) arr.put(item.toJson());
+        return arr;
+    }
+
+    private static void collectFolders(List<BookmarkItem> items, List<BookmarkItem> result) {
+        for (BookmarkItem item : items) {
+            if (item.type == BookmarkItem.Type.FOLDER) {
+                BookmarkItem folder = new BookmarkItem(item.title);
+                folder.id = item.id;
+                folder.parentId = item.parentId;
+                result.add(folder);
+                if (item.children != null) collectFolders(item.children, result);
+            }
+        }
+    }
+
+    /** 通过父级索引直接定位兄弟列表 */
+    private List<BookmarkItem> siblingsOf(BookmarkItem item) {
+        BookmarkItem parent = item.parentId == -1 ? null : byId.get(item.parentId);
+        return parent != null && parent.children != null ? parent.children : roots;
+    }
+
+    /** 登记节点及其子孙；ID 已被其他节点占用时换用新分配的 ID */
+    private void index(BookmarkItem item) {
+        if (byId.containsKey(item.id)) item.id = BookmarkItem.nextId();
+        BookmarkItem.reserveId(item.id);
+        byId.put(item.id, item);
+        if (item.children != null) {
+            for (BookmarkItem child : item.children) {
+                child.parentId = item.id;
+                index(child);
+            }
+        }
+    }
+
+    private void unindex(BookmarkItem item) {
+        byId.remove(item.id);
+        if (item.children != null) {
+            for (BookmarkItem child : item.children) unindex(child);
+        }
+    }
+}
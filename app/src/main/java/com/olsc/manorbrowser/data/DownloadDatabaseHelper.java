@@ -0,0 +1,180 @@
+package com.olsc.manorbrowser.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * 下载记录数据库助手类
+ * 每个下载任务一行，进度更新只改动对应行，取代过去整串 JSON 存放在 SharedPreferences 中的做法。
+ * 首次建库时会把旧版 SharedPreferences 中的记录迁移进来。
+ */
+public class DownloadDatabaseHelper extends SQLiteOpenHelper {
+    private static final String TAG = "DownloadDatabaseHelper";
+    public static final String DATABASE_NAME = "manor_downloads.db";
+    /** 版本 2：新增内容摘要列 sha256 / expected_digest 及查重索引 */
+    private static final int DATABASE_VERSION = 2;
+
+    public static final String TABLE_DOWNLOADS = "downloads";
+    public static final String COLUMN_ID = "id";
+    public static final String COLUMN_TITLE = "title";
+    public static final String COLUMN_URL = "url";
+    public static final String COLUMN_FILE_PATH = "file_path";
+    public static final String COLUMN_MIME_TYPE = "mime_type";
+    public static final String COLUMN_STATUS = "status";
+    public static final String COLUMN_REASON = "reason";
+    public static final String COLUMN_TOTAL_BYTES = "total_bytes";
+    public static final String COLUMN_CURRENT_BYTES = "current_bytes";
+    public static final String COLUMN_TIMESTAMP = "timestamp";
+    public static final String COLUMN_IS_INTERNAL = "is_internal";
+    public static final String COLUMN_SEGMENTS = "segments";
+    public static final String COLUMN_VALIDATOR = "validator";
+    public static final String COLUMN_ACCEPT_RANGES = "accept_ranges";
+    public static final String COLUMN_USER_AGENT = "user_agent";
+    public static final String COLUMN_COOKIE = "cookie";
+    public static final String COLUMN_REFERER = "referer";
+    public static final String COLUMN_QUEUED_AT = "queued_at";
+    public static final String COLUMN_QUEUE_ORDER = "queue_order";
+    public static final String COLUMN_WAIT_MILLIS = "wait_millis";
+    public static final String COLUMN_SHA256 = "sha256";
+    public static final String COLUMN_EXPECTED_DIGEST = "expected_digest";
+
+    /** 旧版存储位置，仅用于迁移 */
+    private static final String LEGACY_PREF_NAME = "download_storage";
+    private static final String LEGACY_KEY_DOWNLOADS = "internal_downloads";
+
+    private static volatile DownloadDatabaseHelper instance;
+
+    private final Context appContext;
+    /** 本次建库时是否成功迁移了旧记录，打开后再清理旧数据，避免建库事务失败时丢失记录 */
+    private boolean legacyMigrated;
+
+    /**
+     * 获取共享的数据库助手实例（长连接，不要调用 close）
+     */
+    public static DownloadDatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            synchronized (DownloadDatabaseHelper.class) {
+                if (instance == null) {
+                    instance = new DownloadDatabaseHelper(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private DownloadDatabaseHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.appContext = context;
+        // WAL 模式：下载列表读取不会被后台进度写入阻塞
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_DOWNLOADS + "("
+                + COLUMN_ID + " INTEGER PRIMARY KEY,"
+                + COLUMN_TITLE + " TEXT,"
+                + COLUMN_URL + " TEXT,"
+                + COLUMN_FILE_PATH + " TEXT,"
+                + COLUMN_MIME_TYPE + " TEXT,"
+                + COLUMN_STATUS + " INTEGER DEFAULT 0,"
+                + COLUMN_REASON + " INTEGER DEFAULT 0,"
+                + COLUMN_TOTAL_BYTES + " INTEGER DEFAULT 0,"
+                + COLUMN_CURRENT_BYTES + " INTEGER DEFAULT 0,"
+                + COLUMN_TIMESTAMP + " INTEGER,"
+                + COLUMN_IS_INTERNAL + " INTEGER DEFAULT 0,"
+                + COLUMN_SEGMENTS + " TEXT,"
+                + COLUMN_VALIDATOR + " TEXT,"
+                + COLUMN_ACCEPT_RANGES + " INTEGER DEFAULT 0,"
+                + COLUMN_USER_AGENT + " TEXT,"
+                + COLUMN_COOKIE + " TEXT,"
+                + COLUMN_REFERER + " TEXT,"
+                + COLUMN_QUEUED_AT + " INTEGER DEFAULT 0,"
+                + COLUMN_QUEUE_ORDER + " INTEGER DEFAULT 0,"
+                + COLUMN_WAIT_MILLIS + " INTEGER DEFAULT 0,"
+                + COLUMN_SHA256 + " TEXT,"
+                + COLUMN_EXPECTED_DIGEST + " TEXT"
+                + ")");
+        // 列表按时间倒序展示；调度器恢复时按状态筛选
+        db.execSQL("CREATE INDEX idx_downloads_timestamp ON " + TABLE_DOWNLOADS + "(" + COLUMN_TIMESTAMP + " DESC)");
+        db.execSQL("CREATE INDEX idx_downloads_status ON " + TABLE_DOWNLOADS + "(" + COLUMN_STATUS + ")");
+        createDigestIndex(db);
+
+        legacyMigrated = migrateLegacyRecords(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // 逐版本增量迁移，保留已有下载记录
+        if (oldVersion < 2) {
+            db.execSQL("ALTER TABLE " + TABLE_DOWNLOADS + " ADD COLUMN " + COLUMN_SHA256 + " TEXT");
+            db.execSQL("ALTER TABLE " + TABLE_DOWNLOADS + " ADD COLUMN " + COLUMN_EXPECTED_DIGEST + " TEXT");
+            createDigestIndex(db);
+        }
+    }
+
+    /** 按内容摘要查找已完成的相同文件 */
+    private static void createDigestIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX idx_downloads_sha256 ON " + TABLE_DOWNLOADS + "(" + COLUMN_SHA256 + ") WHERE " + COLUMN_SHA256 + " IS NOT NULL");
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (legacyMigrated) {
+            legacyMigrated = false;
+            appContext.getSharedPreferences(LEGACY_PREF_NAME, Context.MODE_PRIVATE)
+                    .edit().remove(LEGACY_KEY_DOWNLOADS).apply();
+        }
+    }
+
+    /**
+     * 将旧版 SharedPreferences 中的 JSON 下载记录逐条写入新表
+     *
+     * @return 是否存在需要清理的旧数据
+     */
+    private boolean migrateLegacyRecords(SQLiteDatabase db) {
+        SharedPreferences prefs = appContext.getSharedPreferences(LEGACY_PREF_NAME, Context.MODE_PRIVATE);
+        String json = prefs.getString(LEGACY_KEY_DOWNLOADS, null);
+        if (json == null) return false;
+        try {
+            JSONArray array = new JSONArray(json);
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject obj = array.getJSONObject(i);
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_ID, obj.getLong("id"));
+                values.put(COLUMN_TITLE, obj.optString("title", null));
+                values.put(COLUMN_URL, obj.optString("url", null));
+                values.put(COLUMN_FILE_PATH, obj.optString("filePath", null));
+                values.put(COLUMN_MIME_TYPE, obj.optString("mimeType", null));
+                values.put(COLUMN_STATUS, obj.optInt("status", 0));
+                values.put(COLUMN_REASON, obj.optInt("reason", 0));
+                values.put(COLUMN_TOTAL_BYTES, obj.optLong("totalBytes", 0));
+                values.put(COLUMN_CURRENT_BYTES, obj.optLong("currentBytes", 0));
+                values.put(COLUMN_TIMESTAMP, obj.optLong("timestamp", 0));
+                values.put(COLUMN_IS_INTERNAL, obj.optBoolean("isInternal", false) ? 1 : 0);
+                values.put(COLUMN_SEGMENTS, obj.optString("segments", null));
+                values.put(COLUMN_VALIDATOR, obj.optString("validator", null));
+                values.put(COLUMN_ACCEPT_RANGES, obj.optBoolean("acceptRanges", false) ? 1 : 0);
+                values.put(COLUMN_USER_AGENT, obj.optString("userAgent", null));
+                values.put(COLUMN_COOKIE, obj.optString("cookie", null));
+                values.put(COLUMN_REFERER, obj.optString("referer", null));
+                values.put(COLUMN_QUEUED_AT, obj.optLong("queuedAt", 0));
+                values.put(COLUMN_QUEUE_ORDER, obj.optLong("queueOrder", 0));
+                values.put(COLUMN_WAIT_MILLIS, obj.optLong("waitMillis", 0));
+                db.insertWithOnConflict(TABLE_DOWNLOADS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+        } catch (Exception e) {
+            // 旧数据损坏时放弃迁移，同样清理掉，避免每次启动重复解析
+            Log.e(TAG, "迁移旧版下载记录失败", e);
+        }
+        return true;
+    }
+}
@@ -14,6 +14,28 @@ public class DownloadInfo {
     public long timestamp;
     public int reason;
     public boolean isInternal;
+    /** 内置下载的分段进度（SegmentedDownloader.State 编码），完成后清空 */
+    public String segments;
+    /** 续传时用于 If-Range 的 ETag 或 Last-Modified */
+    public String validator;
+    /** 服务器是否支持 Range 请求 */
+    public boolean acceptRanges;
+    /** 原始请求头，续传时原样带上 */
+    public String userAgent;
+    public String cookie;
+    public String referer;
+    /** 进入下载队列的时间，用于计算排队等待时长 */
+    public long queuedAt;
+    /** 队列顺序，越小越先开始；移到队首时取当前最小值减一 */
+    public long queueOrder;
+    /** 最近一次从入队到开始下载的等待时长 */
+    public long waitMillis;
+    /** 下载完成后计算出的 SHA-256（十六进制），用于内容查重 */
+    public String sha256;
+    /** 服务器声明的完整文件摘要（"sha-256=Base64" 或 "md5=Base64"），完成时据此校验 */
+    public String expectedDigest;
+    /** 当前下载速度（字节/秒），仅运行时有效，不持久化 */
+    public transient long speed;
     public DownloadInfo(long id, String title, String url, String filePath, String mimeType) {
         this.id = id;
         this.title = title;
@@ -24,4 +46,30 @@ public class DownloadInfo {
         this.timestamp = System.currentTimeMillis();
         this.isInternal = false;
     }
+
+    /**
+     * 拷贝当前字段的快照，供界面比较差异使用（原对象会被下载线程持续修改）
+     */
+    public DownloadInfo copy() {
+        DownloadInfo c = new DownloadInfo(id, title, url, filePath, mimeType);
+        c.status = status;
+        c.totalBytes = totalBytes;
+        c.currentBytes = currentBytes;
+        c.timestamp = timestamp;
+        c.reason = reason;
+        c.isInternal = isInternal;
+        c.segments = segments;
+        c.validator = validator;
+        c.acceptRanges = acceptRanges;
+        c.userAgent = userAgent;
+        c.cookie = cookie;
+        c.referer = referer;
+        c.queuedAt = queuedAt;
+        c.queueOrder = queueOrder;
+        c.waitMillis = waitMillis;
+        c.sha256 = sha256;
+        c.expectedDigest = expectedDigest;
+        c.speed = speed;
+        return c;
+    }
 }
@@ -1,103 +1,288 @@
 /**
  * 下载历史持久化类
  * 负责保存和读取浏览器内置下载器的下载记录。
+ * 记录存放在 SQLite 下载表中，每个任务一行；运行中的进度更新先在内存中按任务合并，
+ * 再由后台线程在单个事务中批量写入所有活跃任务的进度。
+ * 所有写入都在同一个后台线程上按提交顺序执行，调用方（包括主线程）不会被数据库写入阻塞。
  */
 package com.olsc.manorbrowser.data;
 
+import android.content.ContentValues;
 import android.content.Context;
-import android.content.SharedPreferences;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class DownloadStorage {
-    private static final String PREF_NAME = "download_storage";
-    private static final String KEY_DOWNLOADS = "internal_downloads";
+    private static final String TAG = "DownloadStorage";
+
+    /** 进度合并窗口：窗口内同一任务的多次进度只写最后一次 */
+    private static final long PROGRESS_FLUSH_MS = 1000;
+
+    private static final String SQL_UPDATE_PROGRESS = "UPDATE " + DownloadDatabaseHelper.TABLE_DOWNLOADS + " SET "
+            + DownloadDatabaseHelper.COLUMN_CURRENT_BYTES + " = ?, "
+            + DownloadDatabaseHelper.COLUMN_TOTAL_BYTES + " = ?, "
+            + DownloadDatabaseHelper.COLUMN_SEGMENTS + " = ?, "
+            + DownloadDatabaseHelper.COLUMN_VALIDATOR + " = ?, "
+            + DownloadDatabaseHelper.COLUMN_ACCEPT_RANGES + " = ?"
+            + " WHERE " + DownloadDatabaseHelper.COLUMN_ID + " = ?";
+
+    /** 执行所有写入的后台线程：完整记录、删除与进度批量写入在这里串行，不会互相交错 */
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * 待写入的进度快照（拷贝当时的字段，避免写入时读到下载线程正在修改的值）
+     */
+    private static class PendingProgress {
+        long id;
+        long currentBytes;
+        long totalBytes;
+        String segments;
+        String validator;
+        boolean acceptRanges;
+    }
+
+    /** 以任务 ID 为键的待写进度，受 DownloadStorage.class 锁保护 */
+    private static final Map<Long, PendingProgress> pendingProgress = new LinkedHashMap<>();
+    private static boolean flushScheduled = false;
 
-    public static synchronized void saveDownload(Context context, DownloadInfo info) {
+    /**
+     * 写入完整记录（新建任务或状态变化时调用），可在主线程调用：字段在调用时拷贝，写入交给后台线程。
+     * 同时丢弃该任务尚未落盘的进度，避免旧进度覆盖新状态
+     */
+    public static void saveDownload(Context context, DownloadInfo info) {
         if (info == null) return;
-        List<DownloadInfo> list = getAllDownloads(context);
-        
-        // 检查是否存在（根据 ID 更新）
-        boolean found = false;
-        for (int i = 0; i < list.size(); i++) {
-            if (list.get(i).id == info.id) {
-                list.set(i, info);
-                found = true;
-                break;
-            }
+        Context appContext = context.getApplicationContext();
+        synchronized (DownloadStorage.class) {
+            // 持锁只为了拷贝字段并按调用顺序提交，写入本身不在锁内
+            pendingProgress.remove(info.id);
+            ContentValues values = toValues(info);
+            executor.execute(() -> {
+                try {
+                    SQLiteDatabase db = DownloadDatabaseHelper.getInstance(appContext).getWritableDatabase();
+                    db.insertWithOnConflict(DownloadDatabaseHelper.TABLE_DOWNLOADS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                } catch (Exception e) {
+                    Log.e(TAG, "保存下载记录失败", e);
+                }
+            });
         }
-        if (!found) {
-            list.add(0, info); // 新任务放在最前面
+        // 状态变化推送给正在显示的下载列表
+        com.olsc.manorbrowser.utils.DownloadProgressBus.get(context).publish(info);
+    }
+
+    /**
+     * 记录运行中任务的进度，不立即写盘；合并窗口结束后与其他活跃任务的进度一起在一个事务中提交
+     */
+    public static synchronized void updateProgress(Context context, DownloadInfo info) {
+        if (info == null) return;
+        PendingProgress progress = pendingProgress.get(info.id);
+        if (progress == null) {
+            progress = new PendingProgress();
+            progress.id = info.id;
+            pendingProgress.put(info.id, progress);
+        }
+        progress.currentBytes = info.currentBytes;
+        progress.totalBytes = info.totalBytes;
+        progress.segments = info.segments;
+        progress.validator = info.validator;
+        progress.acceptRanges = info.acceptRanges;
+        if (!flushScheduled) {
+            flushScheduled = true;
+            Context appContext = context.getApplicationContext();
+            executor.schedule(() -> flushProgress(appContext), PROGRESS_FLUSH_MS, TimeUnit.MILLISECONDS);
         }
-        
-        saveAll(context, list);
     }
 
-    public static synchronized void removeDownload(Context context, long id) {
-        List<DownloadInfo> list = getAllDownloads(context);
-        list.removeIf(info -> info.id == id);
-        saveAll(context, list);
+    public static void removeDownload(Context context, long id) {
+        Context appContext = context.getApplicationContext();
+        synchronized (DownloadStorage.class) {
+            pendingProgress.remove(id);
+            executor.execute(() -> {
+                try {
+                    DownloadDatabaseHelper.getInstance(appContext).getWritableDatabase().delete(DownloadDatabaseHelper.TABLE_DOWNLOADS,
+                            DownloadDatabaseHelper.COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
+                } catch (Exception e) {
+                    Log.e(TAG, "删除下载记录失败", e);
+                }
+                // 删除落盘后再通知列表重新加载，避免读到尚未删除的记录
+                com.olsc.manorbrowser.utils.DownloadProgressBus.get(appContext).invalidate();
+            });
+        }
     }
 
-    public static synchronized void clearAllDownloads(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
-        prefs.edit().remove(KEY_DOWNLOADS).apply();
+    public static void clearAllDownloads(Context context) {
+        Context appContext = context.getApplicationContext();
+        synchronized (DownloadStorage.class) {
+            pendingProgress.clear();
+            executor.execute(() -> {
+                try {
+                    DownloadDatabaseHelper.getInstance(appContext).getWritableDatabase().delete(DownloadDatabaseHelper.TABLE_DOWNLOADS, null, null);
+                } catch (Exception e) {
+                    Log.e(TAG, "清空下载记录失败", e);
+                }
+                com.olsc.manorbrowser.utils.DownloadProgressBus.get(appContext).invalidate();
+            });
+        }
     }
 
+    /**
+     * 按 ID 查找单条下载记录，不存在时返回 null
+     */
+    public static DownloadInfo getDownload(Context context, long id) {
+        List<DownloadInfo> list = query(context, DownloadDatabaseHelper.COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    /**
+     * 查找已完成的相同内容下载：SHA-256 一致，或同一 URL、同一校验值（ETag / Last-Modified）且大小相同。
+     * 按时间倒序返回候选，调用方需确认文件仍然存在。
+     *
+     * @param sha256 期望内容的 SHA-256（十六进制），未知时为 null
+     */
+    public static List<DownloadInfo> findCompletedDuplicates(Context context, long excludeId, String sha256,
+                                                             String url, String validator, long totalBytes) {
+        StringBuilder where = new StringBuilder(DownloadDatabaseHelper.COLUMN_STATUS + " = 3 AND "
+                + DownloadDatabaseHelper.COLUMN_ID + " != ? AND " + DownloadDatabaseHelper.COLUMN_FILE_PATH + " IS NOT NULL AND (0");
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(excludeId));
+        if (sha256 != null) {
+            where.append(" OR ").append(DownloadDatabaseHelper.COLUMN_SHA256).append(" = ?");
+            args.add(sha256);
+        }
+        if (url != null && validator != null && totalBytes > 0) {
+            where.append(" OR (").append(DownloadDatabaseHelper.COLUMN_URL).append(" = ? AND ")
+                    .append(DownloadDatabaseHelper.COLUMN_VALIDATOR).append(" = ? AND ")
+                    .append(DownloadDatabaseHelper.COLUMN_TOTAL_BYTES).append(" = ?)");
+            args.add(url);
+            args.add(validator);
+            args.add(String.valueOf(totalBytes));
+        }
+        where.append(")");
+        if (args.size() == 1) return new ArrayList<>();
+        return query(context, where.toString(), args.toArray(new String[0]));
+    }
+
+    /**
+     * 读取全部下载记录，最新的在前
+     */
     public static List<DownloadInfo> getAllDownloads(Context context) {
+        return query(context, null, null);
+    }
+
+    private static List<DownloadInfo> query(Context context, String selection, String[] args) {
         List<DownloadInfo> list = new ArrayList<>();
-        SharedPreferences prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
-        String json = prefs.getString(KEY_DOWNLOADS, "[]");
         try {
-            JSONArray array = new JSONArray(json);
-            for (int i = 0; i < array.length(); i++) {
-                JSONObject obj = array.getJSONObject(i);
-                DownloadInfo info = new DownloadInfo(
-                    obj.getLong("id"),
-                    obj.getString("title"),
-                    obj.getString("url"),
-                    obj.optString("filePath", null),
-                    obj.optString("mimeType", null)
-                );
-                info.status = obj.getInt("status");
-                info.totalBytes = obj.getLong("totalBytes");
-                info.currentBytes = obj.getLong("currentBytes");
-                info.timestamp = obj.getLong("timestamp");
-                info.isInternal = obj.optBoolean("isInternal", false);
-                list.add(info);
+            SQLiteDatabase db = DownloadDatabaseHelper.getInstance(context).getReadableDatabase();
+            try (Cursor cursor = db.query(DownloadDatabaseHelper.TABLE_DOWNLOADS, null, selection, args,
+                    null, null, DownloadDatabaseHelper.COLUMN_TIMESTAMP + " DESC")) {
+                while (cursor.moveToNext()) {
+                    list.add(fromCursor(cursor));
+                }
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            Log.e(TAG, "读取下载记录失败", e);
         }
         return list;
     }
 
-    private static void saveAll(Context context, List<DownloadInfo> list) {
-        SharedPreferences prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+    /**
+     * 在后台线程上执行：取走当前所有待写进度，在单个事务中逐行更新。
+     * 只在取走批次时持锁；写入与 saveDownload / removeDownload 提交的写入同在一个线程上串行，
+     * 之后提交的新状态或删除总在本批次之后执行，旧进度不会覆盖新状态
+     */
+    private static void flushProgress(Context context) {
+        List<PendingProgress> batch;
+        synchronized (DownloadStorage.class) {
+            flushScheduled = false;
+            if (pendingProgress.isEmpty()) return;
+            batch = new ArrayList<>(pendingProgress.values());
+            pendingProgress.clear();
+        }
         try {
-            JSONArray array = new JSONArray();
-            // 限制保存最近的 100 条记录
-            int count = Math.min(list.size(), 100);
-            for (int i = 0; i < count; i++) {
-                DownloadInfo info = list.get(i);
-                JSONObject obj = new JSONObject();
-                obj.put("id", info.id);
-                obj.put("title", info.title);
-                obj.put("url", info.url);
-                obj.put("filePath", info.filePath);
-                obj.put("mimeType", info.mimeType);
-                obj.put("status", info.status);
-                obj.put("totalBytes", info.totalBytes);
-                obj.put("currentBytes", info.currentBytes);
-                obj.put("timestamp", info.timestamp);
-                obj.put("isInternal", info.isInternal);
-                array.put(obj);
+            SQLiteDatabase db = DownloadDatabaseHelper.getInstance(context).getWritableDatabase();
+            SQLiteStatement stmt = db.compileStatement(SQL_UPDATE_PROGRESS);
+            db.beginTransaction();
+            try {
+                for (PendingProgress progress : batch) {
+                    stmt.clearBindings();
+                    stmt.bindLong(1, progress.currentBytes);
+                    stmt.bindLong(2, progress.totalBytes);
+                    if (progress.segments != null) stmt.bindString(3, progress.segments); else stmt.bindNull(3);
+                    if (progress.validator != null) stmt.bindString(4, progress.validator); else stmt.bindNull(4);
+                    stmt.bindLong(5, progress.acceptRanges ? 1 : 0);
+                    stmt.bindLong(6, progress.id);
+                    stmt.executeUpdateDelete();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                stmt.close();
             }
-            prefs.edit().putString(KEY_DOWNLOADS, array.toString()).apply();
         } catch (Exception e) {
-            e.printStackTrace();
+            Log.e(TAG, "批量写入下载进度失败", e);
         }
     }
+
+    private static ContentValues toValues(DownloadInfo info) {
+        ContentValues values = new ContentValues();
+        values.put(DownloadDatabaseHelper.COLUMN_ID, info.id);
+        values.put(DownloadDatabaseHelper.COLUMN_TITLE, info.title);
+        values.put(DownloadDatabaseHelper.COLUMN_URL, info.url);
+        values.put(DownloadDatabaseHelper.COLUMN_FILE_PATH, info.filePath);
+        values.put(DownloadDatabaseHelper.COLUMN_MIME_TYPE, info.mimeType);
+        values.put(DownloadDatabaseHelper.COLUMN_STATUS, info.status);
+        values.put(DownloadDatabaseHelper.COLUMN_REASON, info.reason);
+        values.put(DownloadDatabaseHelper.COLUMN_TOTAL_BYTES, info.totalBytes);
+        values.put(DownloadDatabaseHelper.COLUMN_CURRENT_BYTES, info.currentBytes);
+        values.put(DownloadDatabaseHelper.COLUMN_TIMESTAMP, info.timestamp);
+        values.put(DownloadDatabaseHelper.COLUMN_IS_INTERNAL, info.isInternal ? 1 : 0);
+        values.put(DownloadDatabaseHelper.COLUMN_SEGMENTS, info.segments);
+        values.put(DownloadDatabaseHelper.COLUMN_VALIDATOR, info.validator);
+        values.put(DownloadDatabaseHelper.COLUMN_ACCEPT_RANGES, info.acceptRanges ? 1 : 0);
+        values.put(DownloadDatabaseHelper.COLUMN_USER_AGENT, info.userAgent);
+        values.put(DownloadDatabaseHelper.COLUMN_COOKIE, info.cookie);
+        values.put(DownloadDatabaseHelper.COLUMN_REFERER, info.referer);
+        values.put(DownloadDatabaseHelper.COLUMN_QUEUED_AT, info.queuedAt);
+        values.put(DownloadDatabaseHelper.COLUMN_QUEUE_ORDER, info.queueOrder);
+        values.put(DownloadDatabaseHelper.COLUMN_WAIT_MILLIS, info.waitMillis);
+        values.put(DownloadDatabaseHelper.COLUMN_SHA256, info.sha256);
+        values.put(DownloadDatabaseHelper.COLUMN_EXPECTED_DIGEST, info.expectedDigest);
+        return values;
+    }
+
+    private static DownloadInfo fromCursor(Cursor c) {
+        DownloadInfo info = new DownloadInfo(
+                c.getLong(c.getColumnIndexOrThrow(DownloadDatabaseHelper.COLUMN_ID)),
+                c.getString(c.getColumnIndexOrThrow(DownloadDatabaseHelper.COLUMN_TITLE)),
+                c.getString(c.getColumnIndexOrThrow(DownloadDatabaseHelper.COLUMN_URL)),
+                c.getString(c.getColumnIndexOrThrow(DownloadDatabaseHelper.COLUMN_FILE_PATH)),
+                c.getString(c.getColumnIndexOrThrow(DownloadDatabaseHelper.COLUMN_MIME_TYPE)));
+        info.status = c.getInt(c.getColumnIndexOrThrow(DownloadDatabaseHelper.COLUMN_STATUS));
+        info.reason = c.getInt(c.getColumnIndexOrThrow(DownloadDatabaseHelper.COLUMN_REASON));
+        info.totalBytes = c.getLong(c.getColumnIndexOrThrow(DownloadDatabaseHelper.COLUMN_TOTAL_BYTES));
+        info.currentBytes = c.getLong(c.getColumnIndexOrThrow(DownloadDatabaseHelper.COLUMN_CURRENT_BYTES));
+        info.timestamp = c.getLong(c.getColumnIndexOrThrow(DownloadDatabaseHelper.COLUMN_TIMESTAMP));
+        info.isInternal = c.getInt(c.getColumnIndexOrThrow(DownloadDatabaseHelper.COLUMN_IS_INTERNAL)) != 0;
+        info.segments = c.getString(c.getColumnIndexOrThrow(DownloadDatabaseHelper.COLUMN_SEGMENTS));
+        info.validator = c.getString(c.getColumnIndexOrThrow(DownloadDatabaseHelper.COLUMN_VALIDATOR));
+        info.acceptRanges = c.getInt(c.getColumnIndexOrThrow(DownloadDatabaseHelper.COLUMN_ACCEPT_RANGES)) != 0;
+        info.userAgent = c.getString(c.getColumnIndexOrThrow(DownloadDatabaseHelper.COLUMN_USER_AGENT));
+        info.cookie = c.getString(c.getColumnIndexOrThrow(DownloadDatabaseHelper.COLUMN_COOKIE));
+        info.referer = c.getString(c.getColumnIndexOrThrow(DownloadDatabaseHelper.COLUMN_REFERER));
+        info.queuedAt = c.getLong(c.getColumnIndexOrThrow(DownloadDatabaseHelper.COLUMN_QUEUED_AT));
+        info.queueOrder = c.getLong(c.getColumnIndexOrThrow(DownloadDatabaseHelper.COLUMN_QUEUE_ORDER));
+        info.waitMillis = c.getLong(c.getColumnIndexOrThrow(DownloadDatabaseHelper.COLUMN_WAIT_MILLIS));
+        info.sha256 = c.getString(c.getColumnIndexOrThrow(DownloadDatabaseHelper.COLUMN_SHA256));
+        info.expectedDigest = c.getString(c.getColumnIndexOrThrow(DownloadDatabaseHelper.COLUMN_EXPECTED_DIGEST));
+        return info;
+    }
 }
@@ -0,0 +1,195 @@
+/**
+ * 地址栏建议用的内存前缀树
+ * 只收录频次/新鲜度 (frecency) 最高的前 N 条历史与书签，
+ * 每个节点预先保存经过该前缀的最高分若干条目，查询耗时只与输入长度有关，可直接在主线程调用。
+ * 本类不依赖 Android API，便于在 JVM 单元测试中做基准测量。
+ */
+package com.olsc.manorbrowser.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+public class FrecencyTrie {
+    /** 每个节点保留的最高分条目数 */
+    public static final int TOP_PER_NODE = 12;
+    /** 每个条目最多按标题中的前几个词建立索引，控制节点总数 */
+    private static final int MAX_TITLE_WORDS = 6;
+    /** 单个索引键的最大长度，超出部分不再展开节点 */
+    private static final int MAX_KEY_LENGTH = 48;
+
+    private static final char[] EMPTY_KEYS = new char[0];
+    private static final Node[] EMPTY_NODES = new Node[0];
+    private static final int[] EMPTY_TOP = new int[0];
+
+    /**
+     * 前缀树中的一个候选条目
+     */
+    public static class Entry {
+        public final String url;
+        public final String title;
+        public final int visitCount;
+        public final long lastVisit;
+        public final boolean bookmarked;
+        public final double score;
+
+        public Entry(String url, String title, int visitCount, long lastVisit, boolean bookmarked, double score) {
+            this.url = url;
+            this.title = title;
+            this.visitCount = visitCount;
+            this.lastVisit = lastVisit;
+            this.bookmarked = bookmarked;
+            this.score = score;
+        }
+    }
+
+    /**
+     * 紧凑节点：子节点以有序字符数组 + 并行节点数组存放，避免 HashMap 的装箱与额外对象
+     */
+    private static class Node {
+        char[] keys = EMPTY_KEYS;
+        Node[] children = EMPTY_NODES;
+        int[] top = EMPTY_TOP;
+        int topSize;
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node addChild(char c) {
+            int insert = -Arrays.binarySearch(keys, c) - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insert);
+            System.arraycopy(children, 0, newChildren, 0, insert);
+            newKeys[insert] = c;
+            Node node = new Node();
+            newChildren[insert] = node;
+            System.arraycopy(keys, insert, newKeys, insert + 1, keys.length - insert);
+            System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+            keys = newKeys;
+            children = newChildren;
+            return node;
+        }
+
+        /** 条目按分数降序插入，因此这里只需追加并去重 */
+        void offer(int entry) {
+            for (int i = 0; i < topSize; i++) {
+                if (top[i] == entry) return;
+            }
+            if (topSize >= TOP_PER_NODE) return;
+            if (topSize == top.length) {
+                top = Arrays.copyOf(top, Math.min(TOP_PER_NODE, Math.max(2, top.length * 2)));
+            }
+            top[topSize++] = entry;
+        }
+    }
+
+    private final Entry[] entries;
+    private final Node root = new Node();
+    private int nodeCount = 1;
+
+    /**
+     * 从候选集合中挑出分数最高的 capacity 条建立前缀树
+     */
+    public FrecencyTrie(List<Entry> candidates, int capacity) {
+        List<Entry> sorted = new ArrayList<>(candidates);
+        Collections.sort(sorted, (a, b) -> Double.compare(b.score, a.score));
+        if (sorted.size() > capacity) sorted = sorted.subList(0, capacity);
+        entries = sorted.toArray(new Entry[0]);
+        for (int i = 0; i < entries.length; i++) {
+            root.offer(i);
+            Entry entry = entries[i];
+            insertKey(normalizeUrl(entry.url), i);
+            if (entry.title != null) {
+                int words = 0;
+                for (String word : splitWords(entry.title)) {
+                    insertKey(word, i);
+                    if (++words >= MAX_TITLE_WORDS) break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 计算 frecency 分数：访问次数按对数增长，最近访问按天衰减，书签额外加权
+     */
+    public static double frecency(int visitCount, long lastVisit, long now, boolean bookmarked) {
+        double days = Math.max(0, now - lastVisit) / 86_400_000.0;
+        double recency = 1.0 / (1.0 + days / 7.0);
+        return Math.log1p(Math.max(0, visitCount)) * (0.5 + recency) + (bookmarked ? 2.0 : 0.0);
+    }
+
+    /**
+     * 前缀查询；输入会按与建树相同的规则归一化（去协议、去 www.、转小写）
+     */
+    public List<Entry> search(String prefix, int limit) {
+        List<Entry> result = new ArrayList<>(Math.min(limit, TOP_PER_NODE));
+        Node node = root;
+        String key = prefix == null ? "" : normalizeUrl(prefix.trim());
+        for (int i = 0; i < key.length() && i < MAX_KEY_LENGTH && node != null; i++) {
+            node = node.child(key.charAt(i));
+        }
+        if (node == null) return result;
+        for (int i = 0; i < node.topSize && result.size() < limit; i++) {
+            result.add(entries[node.top[i]]);
+        }
+        return result;
+    }
+
+    public int size() {
+        return entries.length;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    private void insertKey(String key, int entry) {
+        Node node = root;
+        int length = Math.min(key.length(), MAX_KEY_LENGTH);
+        for (int i = 0; i < length; i++) {
+            Node child = node.child(key.charAt(i));
+            if (child == null) {
+                child = node.addChild(key.charAt(i));
+                nodeCount++;
+            }
+            node = child;
+            node.offer(entry);
+        }
+    }
+
+    /**
+     * 归一化 URL：去掉协议与 www. 前缀并转为小写，使 "git" 能命中 https://www.github.com
+     */
+    static String normalizeUrl(String url) {
+        if (url == null) return "";
+        String s = url.toLowerCase(Locale.ROOT);
+        int scheme = s.indexOf("://");
+        if (scheme > 0 && scheme < 10) s = s.substring(scheme + 3);
+        if (s.startsWith("www.")) s = s.substring(4);
+        return s;
+    }
+
+    /**
+     * 按非字母数字字符切分标题为小写词
+     */
+    static List<String> splitWords(String text) {
+        List<String> words = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        String lower = text.toLowerCase(Locale.ROOT);
+        for (int i = 0; i <= lower.length(); i++) {
+            char c = i < lower.length() ? lower.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                token.append(c);
+            } else if (token.length() > 0) {
+                words.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        return words;
+    }
+}
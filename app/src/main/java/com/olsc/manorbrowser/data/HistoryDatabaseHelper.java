@@ -1,16 +1,20 @@
 package com.olsc.manorbrowser.data;
 
 import android.content.Context;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 
 /**
  * 历史记录数据库助手类
  * 采用 SQLite 存储以便于进行权重计算、全文搜索及闲时整理。
+ * 全文搜索基于 FTS5（不可用时退回 FTS4）外部内容表，由触发器与 history 表保持同步。
  */
 public class HistoryDatabaseHelper extends SQLiteOpenHelper {
     public static final String DATABASE_NAME = "manor_history.db";
-    private static final int DATABASE_VERSION = 1;
+    /** 版本 2：新增全文索引 history_fts 及同步触发器 */
+    private static final int DATABASE_VERSION = 2;
 
     public static final String TABLE_HISTORY = "history";
     public static final String COLUMN_ID = "id";
@@ -21,8 +25,35 @@ public class HistoryDatabaseHelper extends SQLiteOpenHelper {
     public static final String COLUMN_LAST_VISIT = "last_visit";
     public static final String COLUMN_CATEGORY = "category";
 
-    public HistoryDatabaseHelper(Context context) {
+    /** 标题 / URL / 摘要的全文索引虚拟表（外部内容表，数据仍只存一份在 history 中） */
+    public static final String TABLE_HISTORY_FTS = "history_fts";
+
+    /** 全文索引实现：FTS5 支持 bm25 排序；部分系统 SQLite 未编译 FTS5，则退回 FTS4 */
+    public enum FtsVersion { FTS5, FTS4, NONE }
+
+    private volatile FtsVersion ftsVersion = FtsVersion.NONE;
+
+    /** 进程内共享的单例，避免每次读写都重新打开/关闭数据库文件 */
+    private static volatile HistoryDatabaseHelper instance;
+
+    /**
+     * 获取共享的数据库助手实例（长连接，不要调用 close）
+     */
+    public static HistoryDatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            synchronized (HistoryDatabaseHelper.class) {
+                if (instance == null) {
+                    instance = new HistoryDatabaseHelper(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private HistoryDatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // WAL 模式：写入不阻塞读取，地址栏建议查询与后台批量写入可并行
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
@@ -42,12 +73,91 @@ public class HistoryDatabaseHelper extends SQLiteOpenHelper {
         db.execSQL("CREATE INDEX idx_history_url ON " + TABLE_HISTORY + "(" + COLUMN_URL + ")");
         db.execSQL("CREATE INDEX idx_history_last_visit ON " + TABLE_HISTORY + "(" + COLUMN_LAST_VISIT + " DESC)");
         db.execSQL("CREATE INDEX idx_history_weight ON " + TABLE_HISTORY + "(" + COLUMN_VISIT_COUNT + " DESC, " + COLUMN_LAST_VISIT + " DESC)");
+
+        createFullTextIndex(db);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // 目前仅有版本 1，暂不处理升级逻辑
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_HISTORY);
-        onCreate(db);
+        // 逐版本增量迁移，保留用户已有的历史数据
+        if (oldVersion < 2) {
+            createFullTextIndex(db);
+            // 为已有记录补建索引
+            if (ftsVersion != FtsVersion.NONE) db.execSQL("INSERT INTO " + TABLE_HISTORY_FTS + "(" + TABLE_HISTORY_FTS + ") VALUES('rebuild')");
+        }
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        ftsVersion = detectFtsVersion(db);
+    }
+
+    /**
+     * 当前数据库实际使用的全文索引实现
+     */
+    public FtsVersion getFtsVersion() {
+        return ftsVersion;
+    }
+
+    /**
+     * 创建全文索引虚拟表及保持同步的触发器。
+     * 优先使用 FTS5，若系统 SQLite 不支持则退回 FTS4；两者均不可用时仅保留普通索引。
+     */
+    private void createFullTextIndex(SQLiteDatabase db) {
+        String columns = COLUMN_TITLE + ", " + COLUMN_URL + ", " + COLUMN_CONTENT;
+        String[] definitions = {
+                "fts5(" + columns + ", content='" + TABLE_HISTORY + "', content_rowid='" + COLUMN_ID + "'"
+                        + ", tokenize='unicode61 remove_diacritics 2', prefix='2 3')",
+                "fts4(content=\"" + TABLE_HISTORY + "\", " + columns + ", tokenize=unicode61, prefix=\"2,3\")",
+                "fts4(content=\"" + TABLE_HISTORY + "\", " + columns + ", prefix=\"2,3\")"
+        };
+        ftsVersion = FtsVersion.NONE;
+        for (String definition : definitions) {
+            try {
+                db.execSQL("CREATE VIRTUAL TABLE " + TABLE_HISTORY_FTS + " USING " + definition);
+                ftsVersion = definition.startsWith("fts5") ? FtsVersion.FTS5 : FtsVersion.FTS4;
+                break;
+            } catch (SQLiteException e) {
+                // 当前系统 SQLite 未编译该模块/分词器，尝试下一种
+            }
+        }
+        if (ftsVersion == FtsVersion.NONE) return;
+
+        String newValues = "new." + COLUMN_TITLE + ", new." + COLUMN_URL + ", new." + COLUMN_CONTENT;
+        String oldValues = "old." + COLUMN_TITLE + ", old." + COLUMN_URL + ", old." + COLUMN_CONTENT;
+        // 仅在被索引的列发生变化时才更新索引，单纯的访问次数/时间变化不触及 FTS
+        String changed = " WHEN old." + COLUMN_TITLE + " IS NOT new." + COLUMN_TITLE
+                + " OR old." + COLUMN_URL + " IS NOT new." + COLUMN_URL
+                + " OR old." + COLUMN_CONTENT + " IS NOT new." + COLUMN_CONTENT;
+        String insertNew = "INSERT INTO " + TABLE_HISTORY_FTS + "(rowid, " + columns + ") VALUES (new." + COLUMN_ID + ", " + newValues + ");";
+        db.execSQL("CREATE TRIGGER history_fts_ai AFTER INSERT ON " + TABLE_HISTORY + " BEGIN " + insertNew + " END");
+
+        if (ftsVersion == FtsVersion.FTS5) {
+            // FTS5 的 'delete' 命令自带旧值，可在 AFTER 触发器中执行
+            String deleteOld = "INSERT INTO " + TABLE_HISTORY_FTS + "(" + TABLE_HISTORY_FTS + ", rowid, " + columns
+                    + ") VALUES ('delete', old." + COLUMN_ID + ", " + oldValues + ");";
+            db.execSQL("CREATE TRIGGER history_fts_ad AFTER DELETE ON " + TABLE_HISTORY + " BEGIN " + deleteOld + " END");
+            db.execSQL("CREATE TRIGGER history_fts_au AFTER UPDATE ON " + TABLE_HISTORY + changed
+                    + " BEGIN " + deleteOld + " " + insertNew + " END");
+        } else {
+            // FTS4 外部内容表删除时需读取 history 中的旧值，必须在 BEFORE 触发器中执行
+            String deleteOld = "DELETE FROM " + TABLE_HISTORY_FTS + " WHERE docid = old." + COLUMN_ID + ";";
+            db.execSQL("CREATE TRIGGER history_fts_bd BEFORE DELETE ON " + TABLE_HISTORY + " BEGIN " + deleteOld + " END");
+            db.execSQL("CREATE TRIGGER history_fts_bu BEFORE UPDATE ON " + TABLE_HISTORY + changed + " BEGIN " + deleteOld + " END");
+            db.execSQL("CREATE TRIGGER history_fts_au AFTER UPDATE ON " + TABLE_HISTORY + changed + " BEGIN " + insertNew + " END");
+        }
+    }
+
+    private static FtsVersion detectFtsVersion(SQLiteDatabase db) {
+        try {
+            String sql = DatabaseUtils.stringForQuery(db,
+                    "SELECT sql FROM sqlite_master WHERE type = 'table' AND name = ?", new String[]{TABLE_HISTORY_FTS});
+            if (sql == null) return FtsVersion.NONE;
+            return sql.toLowerCase(java.util.Locale.ROOT).contains("fts5") ? FtsVersion.FTS5 : FtsVersion.FTS4;
+        } catch (Exception e) {
+            // 查询无结果时 stringForQuery 会抛出 SQLiteDoneException
+            return FtsVersion.NONE;
+        }
     }
 }
@@ -1,20 +1,19 @@
 /**
  * 历史记录持久化存储类
  * 负责网页访问历史的记录、查询、单条删除以及全量清理。
- * 使用异步单线程池 (ExecutorService) 保证磁盘 IO 不阻塞主线程。
+ * 使用共享的长连接 (WAL) 与单线程写入队列，保证磁盘 IO 不阻塞主线程。
  */
 package com.olsc.manorbrowser.data;
 
 import com.olsc.manorbrowser.Config;
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * 历史记录持久化存储类
@@ -22,8 +21,10 @@ import java.util.concurrent.Executors;
  * 已升级为 SQLite 存储，支持权重计算与全文建议搜索。
  */
 public class HistoryStorage {
-    /** 专用于处理历史记录磁盘操作的后台线程池 */
-    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    /** 专用于处理历史记录磁盘操作的后台线程（同时承担写入队列的定时合并提交） */
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    /** 访问记录写入队列（懒加载） */
+    private static volatile HistoryWriteQueue writeQueue;
 
     /**
      * 历史记录项数据模型
@@ -55,6 +56,31 @@ public class HistoryStorage {
         }
     }
 
+    private static HistoryWriteQueue getWriteQueue(Context context) {
+        if (writeQueue == null) {
+            synchronized (HistoryStorage.class) {
+                if (writeQueue == null) {
+                    writeQueue = new HistoryWriteQueue(HistoryDatabaseHelper.getInstance(context), executor);
+                }
+            }
+        }
+        return writeQueue;
+    }
+
+    /**
+     * 获取写入队列的运行指标（队列深度、事务耗时等）
+     */
+    public static HistoryWriteQueue.Stats getWriteStats(Context context) {
+        return getWriteQueue(context).getStats();
+    }
+
+    /**
+     * 将尚在合并窗口内的访问记录立即提交（如应用退到后台时调用）
+     */
+    public static void flushPendingWrites(Context context) {
+        getWriteQueue(context).flushNow();
+    }
+
     /**
      * 添加一条历史记录（异步执行）
      */
@@ -68,43 +94,8 @@ public class HistoryStorage {
     public static void addHistory(Context context, String title, String url, String contentSnippet) {
         if (url == null || url.isEmpty() || url.equals(Config.URL_BLANK) || url.equals("about:blank")) return;
         
-        executor.execute(() -> {
-            HistoryDatabaseHelper dbHelper = new HistoryDatabaseHelper(context);
-            SQLiteDatabase db = dbHelper.getWritableDatabase();
-            
-            // 检查是否已存在该 URL
-            long now = System.currentTimeMillis();
-            Cursor cursor = db.query(HistoryDatabaseHelper.TABLE_HISTORY, 
-                    new String[]{HistoryDatabaseHelper.COLUMN_VISIT_COUNT, HistoryDatabaseHelper.COLUMN_ID}, 
-                    HistoryDatabaseHelper.COLUMN_URL + " = ?", 
-                    new String[]{url}, null, null, null);
-            
-            if (cursor != null && cursor.moveToFirst()) {
-                // 更新已有的记录：访问次数 +1，更新时间
-                int count = cursor.getInt(0);
-                long id = cursor.getLong(1);
-                ContentValues values = new ContentValues();
-                values.put(HistoryDatabaseHelper.COLUMN_VISIT_COUNT, count + 1);
-                values.put(HistoryDatabaseHelper.COLUMN_LAST_VISIT, now);
-                if (title != null && !title.isEmpty()) values.put(HistoryDatabaseHelper.COLUMN_TITLE, title);
-                if (contentSnippet != null) values.put(HistoryDatabaseHelper.COLUMN_CONTENT, contentSnippet);
-                
-                db.update(HistoryDatabaseHelper.TABLE_HISTORY, values, 
-                        HistoryDatabaseHelper.COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
-                cursor.close();
-            } else {
-                // 插入新记录
-                ContentValues values = new ContentValues();
-                values.put(HistoryDatabaseHelper.COLUMN_URL, url);
-                values.put(HistoryDatabaseHelper.COLUMN_TITLE, title);
-                values.put(HistoryDatabaseHelper.COLUMN_CONTENT, contentSnippet != null ? contentSnippet : "");
-                values.put(HistoryDatabaseHelper.COLUMN_LAST_VISIT, now);
-                values.put(HistoryDatabaseHelper.COLUMN_VISIT_COUNT, 1);
-                db.insert(HistoryDatabaseHelper.TABLE_HISTORY, null, values);
-                if (cursor != null) cursor.close();
-            }
-            db.close();
-        });
+        // 交由写入队列合并：窗口内同一 URL 的多次访问/标题变化只落盘一次
+        getWriteQueue(context).enqueueVisit(url, title, contentSnippet, System.currentTimeMillis());
     }
 
     /**
@@ -112,15 +103,7 @@ public class HistoryStorage {
      */
     public static void updateHistoryContent(Context context, String url, String contentSnippet) {
         if (url == null || url.isEmpty() || contentSnippet == null) return;
-        executor.execute(() -> {
-            HistoryDatabaseHelper dbHelper = new HistoryDatabaseHelper(context);
-            SQLiteDatabase db = dbHelper.getWritableDatabase();
-            ContentValues values = new ContentValues();
-            values.put(HistoryDatabaseHelper.COLUMN_CONTENT, contentSnippet);
-            db.update(HistoryDatabaseHelper.TABLE_HISTORY, values, 
-                    HistoryDatabaseHelper.COLUMN_URL + " = ?", new String[]{url});
-            db.close();
-        });
+        getWriteQueue(context).enqueueContent(url, contentSnippet);
     }
 
     /**
@@ -128,78 +111,206 @@ public class HistoryStorage {
      */
     public static List<HistoryItem> loadHistory(Context context) {
         List<HistoryItem> history = new ArrayList<>();
-        HistoryDatabaseHelper dbHelper = new HistoryDatabaseHelper(context);
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        SQLiteDatabase db = HistoryDatabaseHelper.getInstance(context).getReadableDatabase();
         
         Cursor cursor = db.query(HistoryDatabaseHelper.TABLE_HISTORY, null, null, null, null, null, 
                 HistoryDatabaseHelper.COLUMN_LAST_VISIT + " DESC");
         
         if (cursor != null) {
             while (cursor.moveToNext()) {
-                history.add(new HistoryItem(
-                        cursor.getLong(cursor.getColumnIndexOrThrow(HistoryDatabaseHelper.COLUMN_ID)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(HistoryDatabaseHelper.COLUMN_TITLE)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(HistoryDatabaseHelper.COLUMN_URL)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(HistoryDatabaseHelper.COLUMN_CONTENT)),
-                        cursor.getLong(cursor.getColumnIndexOrThrow(HistoryDatabaseHelper.COLUMN_LAST_VISIT)),
-                        cursor.getInt(cursor.getColumnIndexOrThrow(HistoryDatabaseHelper.COLUMN_VISIT_COUNT)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(HistoryDatabaseHelper.COLUMN_CATEGORY))
-                ));
+                history.add(readItem(cursor));
+            }
+            cursor.close();
+        }
+        return history;
+    }
+
+    /**
+     * 按访问权重加载前 limit 条历史记录（用于构建地址栏内存前缀树）
+     */
+    public static List<HistoryItem> loadTopVisited(Context context, int limit) {
+        List<HistoryItem> history = new ArrayList<>();
+        SQLiteDatabase db = HistoryDatabaseHelper.getInstance(context).getReadableDatabase();
+        // 走 idx_history_weight 索引，无需全表排序
+        Cursor cursor = db.query(HistoryDatabaseHelper.TABLE_HISTORY, null, null, null, null, null,
+                HistoryDatabaseHelper.COLUMN_VISIT_COUNT + " DESC, " + HistoryDatabaseHelper.COLUMN_LAST_VISIT + " DESC",
+                String.valueOf(limit));
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                history.add(readItem(cursor));
             }
             cursor.close();
         }
-        db.close();
         return history;
     }
 
     /**
-     * 获取搜索建议（基于关键词匹配和权重排序）
+     * 按最近访问时间加载前 limit 条历史记录（与 loadTopVisited 一起作为前缀树的候选）
+     */
+    public static List<HistoryItem> loadRecentlyVisited(Context context, int limit) {
+        List<HistoryItem> history = new ArrayList<>();
+        SQLiteDatabase db = HistoryDatabaseHelper.getInstance(context).getReadableDatabase();
+        // 走 idx_history_last_visit 索引
+        Cursor cursor = db.query(HistoryDatabaseHelper.TABLE_HISTORY, null, null, null, null, null,
+                HistoryDatabaseHelper.COLUMN_LAST_VISIT + " DESC", String.valueOf(limit));
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                history.add(readItem(cursor));
+            }
+            cursor.close();
+        }
+        return history;
+    }
+
+    /** 建议结果条数上限 */
+    private static final int RECOMMENDATION_LIMIT = 20;
+    /** 子串匹配只扫描最近访问的这么多条记录（与闲时整理保留的条数一致），不做全表扫描 */
+    static final int SUBSTRING_SCAN_ROWS = 2000;
+
+    /**
+     * 频次/新鲜度加权项：访问次数按饱和曲线计分，最近访问按天衰减。
+     * 与全文相关度 (bm25) 相加后作为最终排序分。
+     */
+    private static String weightExpression(String alias, long now) {
+        String visits = alias + "." + HistoryDatabaseHelper.COLUMN_VISIT_COUNT;
+        String lastVisit = alias + "." + HistoryDatabaseHelper.COLUMN_LAST_VISIT;
+        return "(2.0 * " + visits + " / (" + visits + " + 5.0)"
+                + " + 2.0 / (1.0 + (" + now + " - IFNULL(" + lastVisit + ", 0)) / 86400000.0))";
+    }
+
+    /**
+     * 获取搜索建议（基于全文索引前缀匹配和权重排序）
      */
     public static List<HistoryItem> getRecommendations(Context context, String query) {
+        return getRecommendations(context, query, RECOMMENDATION_LIMIT);
+    }
+
+    /**
+     * 获取搜索建议
+     * 有全文索引时走 MATCH 前缀查询，按 bm25 相关度与访问次数、新鲜度混合排序；
+     * 分词只能做词首匹配（整段中文是一个词，"hub" 也匹配不到 "github"），
+     * 因此含中日韩文字或索引没有任何结果时，在最近访问的 SUBSTRING_SCAN_ROWS 条记录中用 LIKE 子串匹配。
+     */
+    public static List<HistoryItem> getRecommendations(Context context, String query, int limit) {
         List<HistoryItem> suggestions = new ArrayList<>();
-        HistoryDatabaseHelper dbHelper = new HistoryDatabaseHelper(context);
+        HistoryDatabaseHelper dbHelper = HistoryDatabaseHelper.getInstance(context);
         SQLiteDatabase db = dbHelper.getReadableDatabase();
-        
-        String selection = null;
-        String[] selectionArgs = null;
-        
-        if (query != null && !query.isEmpty()) {
-            selection = HistoryDatabaseHelper.COLUMN_TITLE + " LIKE ? OR " + HistoryDatabaseHelper.COLUMN_URL + " LIKE ?";
-            selectionArgs = new String[]{"%" + query + "%", "%" + query + "%"};
+        long now = System.currentTimeMillis();
+        String match = buildMatchQuery(query);
+
+        Cursor cursor = null;
+        if (match != null && dbHelper.getFtsVersion() == HistoryDatabaseHelper.FtsVersion.FTS5) {
+            // bm25 越小越相关，取负后与权重项相加；列权重：标题 > URL > 摘要
+            cursor = db.rawQuery("SELECT h.*, (-bm25(" + HistoryDatabaseHelper.TABLE_HISTORY_FTS + ", 10.0, 4.0, 1.0) + "
+                    + weightExpression("h", now) + ") AS score FROM " + HistoryDatabaseHelper.TABLE_HISTORY_FTS
+                    + " JOIN " + HistoryDatabaseHelper.TABLE_HISTORY + " h ON h." + HistoryDatabaseHelper.COLUMN_ID
+                    + " = " + HistoryDatabaseHelper.TABLE_HISTORY_FTS + ".rowid"
+                    + " WHERE " + HistoryDatabaseHelper.TABLE_HISTORY_FTS + " MATCH ?"
+                    + " ORDER BY score DESC LIMIT " + limit, new String[]{match});
+        } else if (match != null && dbHelper.getFtsVersion() == HistoryDatabaseHelper.FtsVersion.FTS4) {
+            // FTS4 没有内置 bm25，仅用索引做候选过滤，再按权重排序
+            cursor = db.rawQuery("SELECT h.*, " + weightExpression("h", now) + " AS score FROM "
+                    + HistoryDatabaseHelper.TABLE_HISTORY + " h WHERE h." + HistoryDatabaseHelper.COLUMN_ID
+                    + " IN (SELECT docid FROM " + HistoryDatabaseHelper.TABLE_HISTORY_FTS
+                    + " WHERE " + HistoryDatabaseHelper.TABLE_HISTORY_FTS + " MATCH ?)"
+                    + " ORDER BY score DESC LIMIT " + limit, new String[]{match});
         }
-        
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                suggestions.add(readItem(cursor));
+            }
+            cursor.close();
+        }
+
+        if (!needsSubstringFallback(query, suggestions.size())) return suggestions;
         // 权重排序核心：访问次数越多越靠前，相同次数按时间排序
         String orderBy = HistoryDatabaseHelper.COLUMN_VISIT_COUNT + " DESC, " + HistoryDatabaseHelper.COLUMN_LAST_VISIT + " DESC";
-        
-        Cursor cursor = db.query(HistoryDatabaseHelper.TABLE_HISTORY, null, selection, selectionArgs, null, null, orderBy, "20");
-        
+        if (query == null || query.isEmpty()) {
+            cursor = db.query(HistoryDatabaseHelper.TABLE_HISTORY, null, null, null, null, null, orderBy, String.valueOf(limit));
+        } else {
+            // 先按最近访问时间索引取出有限的窗口，再在窗口内做子串匹配
+            cursor = db.rawQuery("SELECT * FROM (SELECT * FROM " + HistoryDatabaseHelper.TABLE_HISTORY
+                    + " ORDER BY " + HistoryDatabaseHelper.COLUMN_LAST_VISIT + " DESC LIMIT " + SUBSTRING_SCAN_ROWS + ")"
+                    + " WHERE " + HistoryDatabaseHelper.COLUMN_TITLE + " LIKE ? OR " + HistoryDatabaseHelper.COLUMN_URL + " LIKE ?"
+                    + " ORDER BY " + orderBy + " LIMIT " + limit, new String[]{"%" + query + "%", "%" + query + "%"});
+        }
         if (cursor != null) {
             while (cursor.moveToNext()) {
-                suggestions.add(new HistoryItem(
-                        cursor.getLong(cursor.getColumnIndexOrThrow(HistoryDatabaseHelper.COLUMN_ID)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(HistoryDatabaseHelper.COLUMN_TITLE)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(HistoryDatabaseHelper.COLUMN_URL)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(HistoryDatabaseHelper.COLUMN_CONTENT)),
-                        cursor.getLong(cursor.getColumnIndexOrThrow(HistoryDatabaseHelper.COLUMN_LAST_VISIT)),
-                        cursor.getInt(cursor.getColumnIndexOrThrow(HistoryDatabaseHelper.COLUMN_VISIT_COUNT)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(HistoryDatabaseHelper.COLUMN_CATEGORY))
-                ));
+                suggestions.add(readItem(cursor));
             }
             cursor.close();
         }
-        db.close();
         return suggestions;
     }
 
+    /**
+     * 是否需要用 LIKE 子串匹配查找：没有可用的 MATCH 表达式（无全文索引、含中日韩文字等），
+     * 或全文索引没有任何结果（可能只有词中间的匹配，如 "hub" 之于 "github.com"）
+     */
+    static boolean needsSubstringFallback(String query, int ftsCount) {
+        return buildMatchQuery(query) == null || ftsCount == 0;
+    }
+
+    /**
+     * 将用户输入转换为 FTS 前缀查询表达式，例如 "git hub" -> "git"* "hub"*
+     * 按非字母数字字符切词，与 unicode61 分词器保持一致；无有效词时返回 null。
+     * unicode61 把连续的中日韩文字整段作为一个词，前缀查询无法匹配其中的子串，含这类文字时也返回 null。
+     */
+    static String buildMatchQuery(String query) {
+        if (query == null || containsCjk(query)) return null;
+        StringBuilder sb = new StringBuilder();
+        StringBuilder token = new StringBuilder();
+        String lower = query.toLowerCase(java.util.Locale.ROOT);
+        for (int i = 0; i <= lower.length(); i++) {
+            char c = i < lower.length() ? lower.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                token.append(c);
+            } else if (token.length() > 0) {
+                if (sb.length() > 0) sb.append(' ');
+                sb.append('"').append(token).append("\"*");
+                token.setLength(0);
+            }
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    /** 是否含有汉字、假名或韩文（这些文字不以空格分词） */
+    static boolean containsCjk(String text) {
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+            if (script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                    || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL) {
+                return true;
+            }
+            i += Character.charCount(cp);
+        }
+        return false;
+    }
+
+    /**
+     * 从游标当前行读取一条历史记录
+     */
+    private static HistoryItem readItem(Cursor cursor) {
+        return new HistoryItem(
+                cursor.getLong(cursor.getColumnIndexOrThrow(HistoryDatabaseHelper.COLUMN_ID)),
+                cursor.getString(cursor.getColumnIndexOrThrow(HistoryDatabaseHelper.COLUMN_TITLE)),
+                cursor.getString(cursor.getColumnIndexOrThrow(HistoryDatabaseHelper.COLUMN_URL)),
+                cursor.getString(cursor.getColumnIndexOrThrow(HistoryDatabaseHelper.COLUMN_CONTENT)),
+                cursor.getLong(cursor.getColumnIndexOrThrow(HistoryDatabaseHelper.COLUMN_LAST_VISIT)),
+                cursor.getInt(cursor.getColumnIndexOrThrow(HistoryDatabaseHelper.COLUMN_VISIT_COUNT)),
+                cursor.getString(cursor.getColumnIndexOrThrow(HistoryDatabaseHelper.COLUMN_CATEGORY))
+        );
+    }
+
     /**
      * 清空所有历史记录
      */
     public static void clearHistory(Context context) {
+        getWriteQueue(context).discardAll();
         executor.execute(() -> {
-            HistoryDatabaseHelper dbHelper = new HistoryDatabaseHelper(context);
-            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            SQLiteDatabase db = HistoryDatabaseHelper.getInstance(context).getWritableDatabase();
             db.delete(HistoryDatabaseHelper.TABLE_HISTORY, null, null);
-            db.close();
         });
     }
 
@@ -212,8 +323,7 @@ public class HistoryStorage {
      */
     public static void runIdleOrganization(Context context) {
         executor.execute(() -> {
-            HistoryDatabaseHelper dbHelper = new HistoryDatabaseHelper(context);
-            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            SQLiteDatabase db = HistoryDatabaseHelper.getInstance(context).getWritableDatabase();
             
             // 策略 1: 清理超过 30 天未访问且访问次数低于 3 次的记录
             long thirtyDaysAgo = System.currentTimeMillis() - (30L * 24 * 60 * 60 * 1000);
@@ -227,9 +337,12 @@ public class HistoryStorage {
                     " ORDER BY " + HistoryDatabaseHelper.COLUMN_VISIT_COUNT + " DESC, " + HistoryDatabaseHelper.COLUMN_LAST_VISIT + " DESC " +
                     " LIMIT 2000)");
 
-            // 策略 3: 优化数据库
+            // 策略 3: 合并全文索引段并优化数据库
+            if (HistoryDatabaseHelper.getInstance(context).getFtsVersion() != HistoryDatabaseHelper.FtsVersion.NONE) {
+                db.execSQL("INSERT INTO " + HistoryDatabaseHelper.TABLE_HISTORY_FTS + "("
+                        + HistoryDatabaseHelper.TABLE_HISTORY_FTS + ") VALUES('optimize')");
+            }
             db.execSQL("VACUUM");
-            db.close();
         });
     }
 
@@ -237,13 +350,12 @@ public class HistoryStorage {
      * 删除单条指定的历史记录
      */
     public static void deleteHistoryItem(Context context, HistoryItem itemToDelete) {
+        if (itemToDelete.url != null) getWriteQueue(context).discard(itemToDelete.url);
         executor.execute(() -> {
-            HistoryDatabaseHelper dbHelper = new HistoryDatabaseHelper(context);
-            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            SQLiteDatabase db = HistoryDatabaseHelper.getInstance(context).getWritableDatabase();
             db.delete(HistoryDatabaseHelper.TABLE_HISTORY, 
                     HistoryDatabaseHelper.COLUMN_ID + " = ?", 
                     new String[]{String.valueOf(itemToDelete.id)});
-            db.close();
         });
     }
 }
@@ -0,0 +1,286 @@
+/**
+ * 历史记录写入队列
+ * 将短时间窗口内到达的访问记录按 URL 合并，统一在一个事务中批量写入，
+ * 取代过去“每次标题变化都 SELECT + UPDATE/INSERT 并开关一次数据库”的做法。
+ */
+package com.olsc.manorbrowser.data;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class HistoryWriteQueue {
+    private static final String TAG = "HistoryWriteQueue";
+
+    /** 合并窗口：窗口内同一 URL 的多次访问/标题更新只写一次 */
+    private static final long MERGE_WINDOW_MS = 500;
+
+    /** SQLite 3.24 起支持 INSERT ... ON CONFLICT DO UPDATE (UPSERT) */
+    private static final String SQL_UPSERT = "INSERT INTO " + HistoryDatabaseHelper.TABLE_HISTORY + "("
+            + HistoryDatabaseHelper.COLUMN_URL + ","
+            + HistoryDatabaseHelper.COLUMN_TITLE + ","
+            + HistoryDatabaseHelper.COLUMN_CONTENT + ","
+            + HistoryDatabaseHelper.COLUMN_VISIT_COUNT + ","
+            + HistoryDatabaseHelper.COLUMN_LAST_VISIT + ") VALUES (?1, ?2, COALESCE(?3, ''), ?4, ?5)"
+            + " ON CONFLICT(" + HistoryDatabaseHelper.COLUMN_URL + ") DO UPDATE SET "
+            + HistoryDatabaseHelper.COLUMN_VISIT_COUNT + " = " + HistoryDatabaseHelper.COLUMN_VISIT_COUNT + " + excluded." + HistoryDatabaseHelper.COLUMN_VISIT_COUNT + ", "
+            + HistoryDatabaseHelper.COLUMN_LAST_VISIT + " = MAX(" + HistoryDatabaseHelper.COLUMN_LAST_VISIT + ", excluded." + HistoryDatabaseHelper.COLUMN_LAST_VISIT + "), "
+            + HistoryDatabaseHelper.COLUMN_TITLE + " = COALESCE(NULLIF(excluded." + HistoryDatabaseHelper.COLUMN_TITLE + ", ''), " + HistoryDatabaseHelper.COLUMN_TITLE + "), "
+            + HistoryDatabaseHelper.COLUMN_CONTENT + " = COALESCE(?3, " + HistoryDatabaseHelper.COLUMN_CONTENT + ")";
+
+    /** 旧版 SQLite (Android 8-10) 的等价写法：先 UPDATE，未命中再 INSERT */
+    private static final String SQL_UPDATE = "UPDATE " + HistoryDatabaseHelper.TABLE_HISTORY + " SET "
+            + HistoryDatabaseHelper.COLUMN_VISIT_COUNT + " = " + HistoryDatabaseHelper.COLUMN_VISIT_COUNT + " + ?4, "
+            + HistoryDatabaseHelper.COLUMN_LAST_VISIT + " = MAX(" + HistoryDatabaseHelper.COLUMN_LAST_VISIT + ", ?5), "
+            + HistoryDatabaseHelper.COLUMN_TITLE + " = COALESCE(NULLIF(?2, ''), " + HistoryDatabaseHelper.COLUMN_TITLE + "), "
+            + HistoryDatabaseHelper.COLUMN_CONTENT + " = COALESCE(?3, " + HistoryDatabaseHelper.COLUMN_CONTENT + ")"
+            + " WHERE " + HistoryDatabaseHelper.COLUMN_URL + " = ?1";
+    private static final String SQL_INSERT = "INSERT OR IGNORE INTO " + HistoryDatabaseHelper.TABLE_HISTORY + "("
+            + HistoryDatabaseHelper.COLUMN_URL + ","
+            + HistoryDatabaseHelper.COLUMN_TITLE + ","
+            + HistoryDatabaseHelper.COLUMN_CONTENT + ","
+            + HistoryDatabaseHelper.COLUMN_VISIT_COUNT + ","
+            + HistoryDatabaseHelper.COLUMN_LAST_VISIT + ") VALUES (?1, ?2, COALESCE(?3, ''), ?4, ?5)";
+
+    /**
+     * 待写入的一条合并记录
+     */
+    private static class PendingWrite {
+        final String url;
+        String title;
+        String content;
+        /** 窗口内累计的访问次数；为 0 表示仅更新内容摘要，不新增记录 */
+        int visits;
+        long lastVisit;
+
+        PendingWrite(String url) {
+            this.url = url;
+        }
+    }
+
+    /**
+     * 队列运行指标快照
+     */
+    public static class Stats {
+        /** 当前等待写入的 URL 数 */
+        public int queueDepth;
+        /** 累计入队的写请求数 */
+        public long enqueued;
+        /** 累计实际写入的行数（合并后） */
+        public long rowsWritten;
+        /** 累计提交的事务数 */
+        public long transactions;
+        /** 最近一次事务耗时（毫秒） */
+        public double lastTransactionMs;
+        /** 平均事务耗时（毫秒） */
+        public double avgTransactionMs;
+        /** 最长事务耗时（毫秒） */
+        public double maxTransactionMs;
+
+        @Override
+        public String toString() {
+            return "depth=" + queueDepth + " enqueued=" + enqueued + " rows=" + rowsWritten
+                    + " tx=" + transactions + String.format(java.util.Locale.US,
+                    " last=%.2fms avg=%.2fms max=%.2fms", lastTransactionMs, avgTransactionMs, maxTransactionMs);
+        }
+    }
+
+    private final HistoryDatabaseHelper dbHelper;
+    private final ScheduledExecutorService executor;
+    /** 以 URL 为键、保持到达顺序的待写集合，受 this 锁保护 */
+    private final Map<String, PendingWrite> pending = new LinkedHashMap<>();
+    private boolean flushScheduled = false;
+    private Boolean upsertSupported;
+
+    private long enqueued;
+    private long rowsWritten;
+    private long transactions;
+    private long lastTxNanos;
+    private long totalTxNanos;
+    private long maxTxNanos;
+
+    public HistoryWriteQueue(HistoryDatabaseHelper dbHelper, ScheduledExecutorService executor) {
+        this.dbHelper = dbHelper;
+        this.executor = executor;
+    }
+
+    /**
+     * 记录一次访问（访问次数 +1，并可顺带更新标题与摘要）
+     */
+    public void enqueueVisit(String url, String title, String content, long time) {
+        synchronized (this) {
+            PendingWrite write = obtain(url);
+            write.visits++;
+            write.lastVisit = Math.max(write.lastVisit, time);
+            if (title != null && !title.isEmpty()) write.title = title;
+            if (content != null) write.content = content;
+            scheduleFlushLocked();
+        }
+    }
+
+    /**
+     * 仅更新已有记录的摘要内容，不增加访问权重
+     */
+    public void enqueueContent(String url, String content) {
+        synchronized (this) {
+            PendingWrite write = obtain(url);
+            write.content = content;
+            scheduleFlushLocked();
+        }
+    }
+
+    /**
+     * 丢弃指定 URL 尚未落盘的写入（删除单条记录前调用，避免被重新插入）
+     */
+    public synchronized void discard(String url) {
+        pending.remove(url);
+    }
+
+    /**
+     * 丢弃全部尚未落盘的写入（清空历史前调用）
+     */
+    public synchronized void discardAll() {
+        pending.clear();
+    }
+
+    /**
+     * 当前队列深度
+     */
+    public synchronized int getQueueDepth() {
+        return pending.size();
+    }
+
+    /**
+     * 获取队列与事务耗时指标快照
+     */
+    public synchronized Stats getStats() {
+        Stats stats = new Stats();
+        stats.queueDepth = pending.size();
+        stats.enqueued = enqueued;
+        stats.rowsWritten = rowsWritten;
+        stats.transactions = transactions;
+        stats.lastTransactionMs = lastTxNanos / 1_000_000.0;
+        stats.avgTransactionMs = transactions == 0 ? 0 : totalTxNanos / 1_000_000.0 / transactions;
+        stats.maxTransactionMs = maxTxNanos / 1_000_000.0;
+        return stats;
+    }
+
+    /**
+     * 立即在写线程上提交队列中的所有记录（不等待合并窗口结束）
+     */
+    public void flushNow() {
+        executor.execute(this::flush);
+    }
+
+    private PendingWrite obtain(String url) {
+        enqueued++;
+        PendingWrite write = pending.get(url);
+        if (write == null) {
+            write = new PendingWrite(url);
+            pending.put(url, write);
+        }
+        return write;
+    }
+
+    private void scheduleFlushLocked() {
+        if (flushScheduled) return;
+        flushScheduled = true;
+        executor.schedule(this::flush, MERGE_WINDOW_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 在写线程上执行：取走当前批次并在单个事务中写入
+     */
+    private void flush() {
+        List<PendingWrite> batch;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.isEmpty()) return;
+            batch = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        int written = 0;
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            if (upsertSupported == null) upsertSupported = isUpsertSupported(db);
+            SQLiteStatement upsert = db.compileStatement(upsertSupported ? SQL_UPSERT : SQL_UPDATE);
+            SQLiteStatement insert = upsertSupported ? null : db.compileStatement(SQL_INSERT);
+            SQLiteStatement contentOnly = db.compileStatement("UPDATE " + HistoryDatabaseHelper.TABLE_HISTORY
+                    + " SET " + HistoryDatabaseHelper.COLUMN_CONTENT + " = ? WHERE " + HistoryDatabaseHelper.COLUMN_URL + " = ?");
+            db.beginTransaction();
+            try {
+                for (PendingWrite write : batch) {
+                    if (write.visits == 0) {
+                        if (write.content == null) continue;
+                        contentOnly.bindString(1, write.content);
+                        contentOnly.bindString(2, write.url);
+                        written += contentOnly.executeUpdateDelete();
+                        continue;
+                    }
+                    bindVisit(upsert, write);
+                    if (upsertSupported) {
+                        upsert.executeInsert();
+                        written++;
+                    } else if (upsert.executeUpdateDelete() > 0) {
+                        written++;
+                    } else {
+                        bindVisit(insert, write);
+                        insert.executeInsert();
+                        written++;
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                upsert.close();
+                if (insert != null) insert.close();
+                contentOnly.close();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "批量写入历史记录失败", e);
+        }
+
+        long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+        synchronized (this) {
+            transactions++;
+            rowsWritten += written;
+            lastTxNanos = elapsed;
+            totalTxNanos += elapsed;
+            maxTxNanos = Math.max(maxTxNanos, elapsed);
+        }
+    }
+
+    private static void bindVisit(SQLiteStatement stmt, PendingWrite write) {
+        stmt.clearBindings();
+        stmt.bindString(1, write.url);
+        if (write.title != null) stmt.bindString(2, write.title); else stmt.bindNull(2);
+        if (write.content != null) stmt.bindString(3, write.content); else stmt.bindNull(3);
+        stmt.bindLong(4, write.visits);
+        stmt.bindLong(5, write.lastVisit);
+    }
+
+    /**
+     * 检测系统 SQLite 版本是否支持 UPSERT (>= 3.24.0)
+     */
+    private static boolean isUpsertSupported(SQLiteDatabase db) {
+        try {
+            String[] parts = DatabaseUtils.stringForQuery(db, "SELECT sqlite_version()", null).split("\\.");
+            int major = Integer.parseInt(parts[0]);
+            int minor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            return major > 3 || (major == 3 && minor >= 24);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
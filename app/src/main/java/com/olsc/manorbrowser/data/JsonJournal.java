@@ -0,0 +1,240 @@
+/**
+ * 快照 + 追加日志的 JSON 持久化
+ * 书签与标签列表共用：状态的每次修改向日志追加一行带递增序号的 JSON 记录，并立即刷到系统缓冲区，
+ * 进程被杀也不会丢失；日志达到阈值后把当前状态写为快照（经 AtomicFileStore 原子替换）并截断日志。
+ * 快照记录它包含的最大序号；加载时先读快照，再按序号顺序重放日志中更新的记录，
+ * 进程被杀时残留的半行、重复的记录以及压缩后未及截断的旧记录都会被跳过，记录不会被应用两次。
+ * 旧版不带序号的数组快照仍可读取，视为序号 0。
+ *
+ * 状态本身由使用方维护：修改状态与调用 append 都在使用方的锁内进行，压缩时同样在该锁内取快照，
+ * 保证快照与序号一致；磁盘读写都在使用方提供的单线程执行器上进行。
+ * 本类只依赖 java.io 与 org.json，可在 JVM 单元测试中使用。
+ */
+package com.olsc.manorbrowser.data;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+class JsonJournal {
+    /** 记录中的序号字段 */
+    static final String KEY_SEQ = "seq";
+    /** 快照中的状态条目 */
+    private static final String KEY_ITEMS = "items";
+
+    /** 使用方的当前状态 */
+    interface State {
+        /** 当前状态的快照内容，调用时持有 lock */
+        JSONArray snapshot() throws Exception;
+    }
+
+    /** 一条日志记录；JSON 在调用线程上构建（单条很小），写盘交给写线程 */
+    static class Record {
+        final JSONObject json = new JSONObject();
+
+        Record(String op) {
+            put("op", op);
+        }
+
+        Record put(String key, Object value) {
+            try {
+                json.put(key, value);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return this;
+        }
+    }
+
+    /** 重放日志时逐条应用记录，抛出异常的记录被跳过 */
+    interface Replayer {
+        void apply(JSONObject record) throws Exception;
+    }
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private final Object lock;
+    private final Executor writer;
+    private final int compactThreshold;
+    private final State state;
+    /** 最近一次修改的序号，受 lock 保护 */
+    private long lastSeq;
+
+    // 以下字段仅在写线程访问
+    private Writer journalWriter;
+    private int journalRecords;
+    /** 已包含在快照中的最大序号，小于等于它的排队记录不再追加 */
+    private long compactedSeq;
+
+    /**
+     * @param lock 使用方保护状态的锁，append / rewrite / delete 与读取快照、重放都应在该锁内调用
+     * @param writer 单线程执行器，所有磁盘写入按提交顺序在其上执行
+     */
+    JsonJournal(File snapshotFile, File journalFile, Object lock, Executor writer, int compactThreshold, State state) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = journalFile;
+        this.lock = lock;
+        this.writer = writer;
+        this.compactThreshold = compactThreshold;
+        this.state = state;
+    }
+
+    /**
+     * 读取快照内容，并把已应用的序号设为快照的序号；快照损坏时 AtomicFileStore 会回退到上一份完好的备份，
+     * 都不可用时返回 null。调用方持有 lock，且在 replay 之前调用
+     */
+    JSONArray readSnapshot() {
+        JSONObject snapshot = AtomicFileStore.read(snapshotFile, data -> {
+            String text = new String(data, StandardCharsets.UTF_8).trim();
+            JSONObject parsed = text.startsWith("[") ? new JSONObject().put(KEY_ITEMS, new JSONArray(text)) : new JSONObject(text);
+            parsed.getJSONArray(KEY_ITEMS); // 缺少条目时视为损坏
+            return parsed;
+        });
+        if (snapshot == null) return null;
+        lastSeq = snapshot.optLong(KEY_SEQ, 0);
+        return snapshot.optJSONArray(KEY_ITEMS);
+    }
+
+    /**
+     * 快照与日志是否都不存在（首次使用）
+     */
+    boolean isEmpty() {
+        return !AtomicFileStore.exists(snapshotFile) && !journalFile.exists();
+    }
+
+    /**
+     * 按序号顺序重放快照之后的日志记录；解析失败的行、没有序号的行与序号不大于已应用序号的记录被跳过
+     */
+    void replay(Replayer replayer) {
+        if (!journalFile.exists()) return;
+        List<JSONObject> records = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                try {
+                    JSONObject record = new JSONObject(line);
+                    if (record.has(KEY_SEQ)) records.add(record);
+                } catch (Exception e) {
+                    // 进程被杀时残留的半行
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        Collections.sort(records, (a, b) -> Long.compare(a.optLong(KEY_SEQ), b.optLong(KEY_SEQ)));
+        for (JSONObject record : records) {
+            long seq = record.optLong(KEY_SEQ);
+            if (seq <= lastSeq) continue; // 快照已包含或重复的记录
+            try {
+                replayer.apply(record);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            lastSeq = seq;
+        }
+        final int replayed = records.size();
+        // journalRecords 仅由写线程维护
+        writer.execute(() -> journalRecords += replayed);
+    }
+
+    /**
+     * 为记录分配序号并排队追加到日志；调用方持有 lock，且已把这次修改应用到状态上
+     */
+    void append(Record record) {
+        long seq = ++lastSeq;
+        String line = record.put(KEY_SEQ, seq).json.toString();
+        writer.execute(() -> write(seq, line));
+    }
+
+    /**
+     * 状态被整体替换（没有对应的日志记录），排队写出新快照并清空日志；调用方持有 lock
+     */
+    void rewrite() {
+        lastSeq++;
+        writer.execute(this::compact);
+    }
+
+    /**
+     * 删除快照与日志；调用方持有 lock
+     */
+    void delete() {
+        long seq = ++lastSeq;
+        writer.execute(() -> {
+            closeWriter();
+            AtomicFileStore.delete(snapshotFile);
+            journalFile.delete();
+            journalRecords = 0;
+            compactedSeq = seq;
+        });
+    }
+
+    /** 写线程：追加一条日志，必要时触发压缩 */
+    private void write(long seq, String line) {
+        if (seq <= compactedSeq) return; // 已被更新的快照覆盖
+        try {
+            if (journalWriter == null) {
+                journalWriter = new OutputStreamWriter(new FileOutputStream(journalFile, true), StandardCharsets.UTF_8);
+            }
+            journalWriter.write(line);
+            journalWriter.write('\n');
+            // 刷到系统缓冲区即可抵御进程被杀；掉电场景由压缩时的快照兜底
+            journalWriter.flush();
+            journalRecords++;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        if (journalRecords >= compactThreshold) compact();
+    }
+
+    /** 写线程：将当前状态写为快照并清空日志 */
+    private void compact() {
+        String json;
+        long seq;
+        synchronized (lock) {
+            try {
+                JSONObject snapshot = new JSONObject();
+                snapshot.put(KEY_SEQ, lastSeq);
+                snapshot.put(KEY_ITEMS, state.snapshot());
+                json = snapshot.toString();
+            } catch (Exception e) {
+                e.printStackTrace();
+                return;
+            }
+            seq = lastSeq;
+        }
+        try {
+            AtomicFileStore.writeNow(snapshotFile, json.getBytes(StandardCharsets.UTF_8));
+            closeWriter();
+            // 快照已持久化，旧日志可以截断
+            new FileOutputStream(journalFile).close();
+            journalRecords = 0;
+            compactedSeq = seq;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void closeWriter() {
+        if (journalWriter != null) {
+            try {
+                journalWriter.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            journalWriter = null;
+        }
+    }
+}
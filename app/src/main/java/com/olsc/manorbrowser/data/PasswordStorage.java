@@ -7,13 +7,9 @@ package com.olsc.manorbrowser.data;
 
 import android.content.Context;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -21,40 +17,43 @@ import org.json.JSONObject;
 public class PasswordStorage {
     /** 存储密码的文件名 */
     private static final String FILE_NAME = "passwords.json";
+    /** 内存副本：写盘为异步，后续读取以此为准，保证读到最近一次写入 */
+    private static List<PasswordItem> cache;
 
     /**
      * 加载所有已保存的账号密码
      * 结果按时间戳倒序排列，确保最近使用的账号在前。
      */
-    public static List<PasswordItem> loadPasswords(Context context) {
-        List<PasswordItem> items = new ArrayList<>();
+    public static synchronized List<PasswordItem> loadPasswords(Context context) {
+        if (cache == null) cache = readFromDisk(context);
+        return new ArrayList<>(cache);
+    }
+
+    private static List<PasswordItem> readFromDisk(Context context) {
         File file = new File(context.getFilesDir(), FILE_NAME);
-        if (!file.exists()) return items;
-        
-        try (FileInputStream fis = new FileInputStream(file)) {
-            byte[] data = new byte[(int) file.length()];
-            fis.read(data);
-            String jsonStr = new String(data, StandardCharsets.UTF_8);
-            JSONArray array = new JSONArray(jsonStr);
+        // 旧版本写入时留下的备份仍可作为损坏时的回退，下一次写入会将其删除
+        List<PasswordItem> items = AtomicFileStore.read(file, data -> {
+            List<PasswordItem> parsed = new ArrayList<>();
+            JSONArray array = new JSONArray(new String(data, StandardCharsets.UTF_8));
             for (int i = 0; i < array.length(); i++) {
                 JSONObject obj = array.getJSONObject(i);
                 PasswordItem item = PasswordItem.fromJson(obj);
                 if (item != null) {
-                    items.add(item);
+                    parsed.add(item);
                 }
             }
-            // 排序：最新录入的基础在前
-            Collections.sort(items, (p1, p2) -> Long.compare(p2.timestamp, p1.timestamp));
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+            return parsed;
+        });
+        if (items == null) return new ArrayList<>();
+        // 排序：最新录入的基础在前
+        Collections.sort(items, (p1, p2) -> Long.compare(p2.timestamp, p1.timestamp));
         return items;
     }
 
     /**
      * 保存单条新的账号密码，若存在相同 URL+用户名 则覆盖。
      */
-    public static void savePassword(Context context, PasswordItem newItem) {
+    public static synchronized void savePassword(Context context, PasswordItem newItem) {
         if (newItem == null || newItem.url == null) return;
         List<PasswordItem> items = loadPasswords(context);
         items.removeIf(item -> 
@@ -68,7 +67,7 @@ public class PasswordStorage {
     /**
      * 删除单条账号密码项
      */
-    public static void deletePassword(Context context, PasswordItem itemToDelete) {
+    public static synchronized void deletePassword(Context context, PasswordItem itemToDelete) {
         List<PasswordItem> items = loadPasswords(context);
         items.removeIf(item -> 
             item.url.equals(itemToDelete.url) && 
@@ -78,22 +77,20 @@ public class PasswordStorage {
     }
 
     /**
-     * 全量写回本地磁盘
+     * 全量写回本地磁盘（经 AtomicFileStore 异步原子写入）
+     * 不保留备份：删除的密码不能以明文留在 .bak 中
      */
     private static void saveAll(Context context, List<PasswordItem> items) {
-        try {
+        cache = new ArrayList<>(items);
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        AtomicFileStore.getInstance().write(file, () -> {
             JSONArray array = new JSONArray();
             for (PasswordItem item : items) {
                 JSONObject obj = item.toJson();
                 if (obj != null) array.put(obj);
             }
-            File file = new File(context.getFilesDir(), FILE_NAME);
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                fos.write(array.toString().getBytes(StandardCharsets.UTF_8));
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+            return array.toString().getBytes(StandardCharsets.UTF_8);
+        }, false);
     }
 
     /**
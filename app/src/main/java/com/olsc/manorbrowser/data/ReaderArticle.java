@@ -0,0 +1,138 @@
+/**
+ * 阅读模式提取出的文章：标题与按顺序排列的内容块（标题、段落、图片、列表、引用、代码）。
+ * 可与 JSON 互相转换，用于跨界面传递与离线保存。
+ */
+package com.olsc.manorbrowser.data;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ReaderArticle {
+    public static final int BLOCK_HEADING = 0;
+    public static final int BLOCK_PARAGRAPH = 1;
+    public static final int BLOCK_IMAGE = 2;
+    public static final int BLOCK_LIST = 3;
+    public static final int BLOCK_QUOTE = 4;
+    public static final int BLOCK_CODE = 5;
+
+    /** 一个内容块 */
+    public static class Block {
+        public final int type;
+        /** 文字内容；图片块为替代文字 */
+        public final String text;
+        /** 标题级别（1-6）；列表块为 1 表示有序列表 */
+        public final int level;
+        /** 图片地址，仅图片块有效 */
+        public final String src;
+        /** 列表项，仅列表块有效 */
+        public final List<String> items;
+
+        public Block(int type, String text, int level, String src, List<String> items) {
+            this.type = type;
+            this.text = text != null ? text : "";
+            this.level = level;
+            this.src = src;
+            this.items = items != null ? items : Collections.emptyList();
+        }
+
+        public static Block heading(int level, String text) {
+            return new Block(BLOCK_HEADING, text, level, null, null);
+        }
+
+        public static Block paragraph(String text) {
+            return new Block(BLOCK_PARAGRAPH, text, 0, null, null);
+        }
+
+        public static Block image(String src, String alt) {
+            return new Block(BLOCK_IMAGE, alt, 0, src, null);
+        }
+
+        public static Block list(boolean ordered, List<String> items) {
+            return new Block(BLOCK_LIST, null, ordered ? 1 : 0, null, items);
+        }
+    }
+
+    public final String url;
+    public final String title;
+    public final List<Block> blocks;
+
+    public ReaderArticle(String url, String title, List<Block> blocks) {
+        this.url = url;
+        this.title = title != null ? title : "";
+        this.blocks = blocks != null ? blocks : new ArrayList<>();
+    }
+
+    /** 正文文字总长度（不含图片与标题），用于判断提取是否成功 */
+    public int textLength() {
+        int length = 0;
+        for (Block block : blocks) {
+            if (block.type == BLOCK_HEADING || block.type == BLOCK_IMAGE) continue;
+            length += block.text.length();
+            for (String item : block.items) length += item.length();
+        }
+        return length;
+    }
+
+    public JSONObject toJson() throws JSONException {
+        JSONArray array = new JSONArray();
+        for (Block block : blocks) {
+            JSONObject json = new JSONObject().put("type", block.type);
+            if (!block.text.isEmpty()) json.put("text", block.text);
+            if (block.level != 0) json.put("level", block.level);
+            if (block.src != null) json.put("src", block.src);
+            if (!block.items.isEmpty()) json.put("items", new JSONArray(block.items));
+            array.put(json);
+        }
+        return new JSONObject().put("url", url).put("title", title).put("blocks", array);
+    }
+
+    public static ReaderArticle fromJson(JSONObject json) throws JSONException {
+        JSONArray array = json.getJSONArray("blocks");
+        List<Block> blocks = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject block = array.getJSONObject(i);
+            List<String> items = null;
+            JSONArray itemArray = block.optJSONArray("items");
+            if (itemArray != null) {
+                items = new ArrayList<>(itemArray.length());
+                for (int k = 0; k < itemArray.length(); k++) items.add(itemArray.getString(k));
+            }
+            blocks.add(new Block(block.getInt("type"), block.optString("text"), block.optInt("level"),
+                    block.has("src") ? block.getString("src") : null, items));
+        }
+        return new ReaderArticle(json.has("url") ? json.getString("url") : null, json.optString("title"), blocks);
+    }
+
+    /** 纯文字形式：块之间空一行，标题加 === 标记，列表项加项目符号 */
+    public String toPlainText() {
+        StringBuilder sb = new StringBuilder();
+        for (Block block : blocks) {
+            switch (block.type) {
+                case BLOCK_HEADING:
+                    sb.append("=== ").append(block.text).append(" ===");
+                    break;
+                case BLOCK_IMAGE:
+                    continue;
+                case BLOCK_LIST:
+                    for (int i = 0; i < block.items.size(); i++) {
+                        if (i > 0) sb.append('\n');
+                        sb.append(block.level == 1 ? (i + 1) + ". " : "• ").append(block.items.get(i));
+                    }
+                    break;
+                case BLOCK_QUOTE:
+                    sb.append("「").append(block.text).append("」");
+                    break;
+                default:
+                    sb.append(block.text);
+                    break;
+            }
+            sb.append("\n\n");
+        }
+        return sb.toString().trim();
+    }
+}
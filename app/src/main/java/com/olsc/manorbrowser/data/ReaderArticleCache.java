@@ -0,0 +1,77 @@
+/**
+ * 阅读模式文章的交接缓存
+ *
+ * 文章不再整体放进 Intent（长章节会超出 Binder 事务的大小限制），而是按 ID 存入进程内缓存，
+ * Intent 只携带 ID。同时异步写一份 JSON 到缓存目录，进程被回收后重建阅读界面时从文件恢复。
+ * 只保留最近几篇，更早的文件在写入新文章时清理。
+ */
+package com.olsc.manorbrowser.data;
+
+import android.content.Context;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ReaderArticleCache {
+    private static final String DIR = "reader_handoff";
+    private static final String EXT_JSON = ".json";
+    /** 内存与磁盘各保留的文章数 */
+    private static final int MAX_ARTICLES = 4;
+
+    private static final Map<String, ReaderArticle> memory = new LinkedHashMap<String, ReaderArticle>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ReaderArticle> eldest) {
+            return size() > MAX_ARTICLES;
+        }
+    };
+
+    /**
+     * 存入文章，返回用于取回的 ID
+     */
+    public static String put(Context context, ReaderArticle article) {
+        String id = Long.toString(System.currentTimeMillis(), 36) + Integer.toString((int) (Math.random() * 1296), 36);
+        synchronized (memory) {
+            memory.put(id, article);
+        }
+        File dir = new File(context.getCacheDir(), DIR);
+        if (!dir.exists()) dir.mkdirs();
+        pruneFiles(dir);
+        AtomicFileStore.getInstance().write(new File(dir, id + EXT_JSON),
+                () -> article.toJson().toString().getBytes(StandardCharsets.UTF_8));
+        return id;
+    }
+
+    /**
+     * 按 ID 取回文章；不在内存中时读取文件，应在后台线程调用。找不到时返回 null
+     */
+    public static ReaderArticle get(Context context, String id) {
+        if (id == null) return null;
+        synchronized (memory) {
+            ReaderArticle cached = memory.get(id);
+            if (cached != null) return cached;
+        }
+        // 文件名来自 ID，拒绝带路径分隔符的值
+        if (id.contains("/") || id.contains("..")) return null;
+        ReaderArticle article = AtomicFileStore.read(new File(new File(context.getCacheDir(), DIR), id + EXT_JSON),
+                data -> ReaderArticle.fromJson(new JSONObject(new String(data, StandardCharsets.UTF_8))));
+        if (article != null) {
+            synchronized (memory) {
+                memory.put(id, article);
+            }
+        }
+        return article;
+    }
+
+    /** 只保留最新的几个文件（为即将写入的新文件留一个位置） */
+    private static void pruneFiles(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(EXT_JSON));
+        if (files == null || files.length < MAX_ARTICLES) return;
+        Arrays.sort(files, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+        for (int i = MAX_ARTICLES - 1; i < files.length; i++) AtomicFileStore.delete(files[i]);
+    }
+}
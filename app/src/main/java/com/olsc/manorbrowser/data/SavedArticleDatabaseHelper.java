@@ -0,0 +1,91 @@
+package com.olsc.manorbrowser.data;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * 离线文章索引数据库助手类
+ * 文章内容与图片存放在 ArticleBlobStore 中，这里只记录索引：每篇文章一行（按 URL 唯一、标题、保存时间），
+ * 以及文章与数据块的引用关系和每个数据块的大小，用于共享数据块的引用计数与按容量淘汰。
+ */
+public class SavedArticleDatabaseHelper extends SQLiteOpenHelper {
+    public static final String DATABASE_NAME = "manor_saved_articles.db";
+    private static final int DATABASE_VERSION = 1;
+
+    public static final String TABLE_ARTICLES = "saved_articles";
+    public static final String COLUMN_ID = "id";
+    public static final String COLUMN_URL = "url";
+    public static final String COLUMN_TITLE = "title";
+    public static final String COLUMN_SAVED_AT = "saved_at";
+    public static final String COLUMN_LAST_OPENED = "last_opened";
+    /** 文章正文（压缩 JSON）的数据块键 */
+    public static final String COLUMN_CONTENT_KEY = "content_key";
+    /** 正文与图片合计的磁盘占用（共享的图片在每篇文章中都计入） */
+    public static final String COLUMN_SIZE = "size";
+    public static final String COLUMN_IMAGE_COUNT = "image_count";
+
+    /** 数据块：键 -> 磁盘占用 */
+    public static final String TABLE_BLOBS = "saved_blobs";
+    public static final String COLUMN_KEY = "blob_key";
+
+    /** 文章引用的数据块 */
+    public static final String TABLE_REFS = "saved_article_blobs";
+    public static final String COLUMN_ARTICLE_ID = "article_id";
+
+    private static volatile SavedArticleDatabaseHelper instance;
+
+    /**
+     * 获取共享的数据库助手实例（长连接，不要调用 close）
+     */
+    public static SavedArticleDatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            synchronized (SavedArticleDatabaseHelper.class) {
+                if (instance == null) {
+                    instance = new SavedArticleDatabaseHelper(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private SavedArticleDatabaseHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // WAL 模式：打开文章时的读取不会被后台保存阻塞
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_ARTICLES + "("
+                + COLUMN_ID + " INTEGER PRIMARY KEY,"
+                + COLUMN_URL + " TEXT NOT NULL UNIQUE,"
+                + COLUMN_TITLE + " TEXT,"
+                + COLUMN_SAVED_AT + " INTEGER,"
+                + COLUMN_LAST_OPENED + " INTEGER,"
+                + COLUMN_CONTENT_KEY + " TEXT NOT NULL,"
+                + COLUMN_SIZE + " INTEGER DEFAULT 0,"
+                + COLUMN_IMAGE_COUNT + " INTEGER DEFAULT 0"
+                + ")");
+        // 列表按保存时间倒序或按标题排列；淘汰时取最久未打开的文章
+        db.execSQL("CREATE INDEX idx_saved_articles_saved_at ON " + TABLE_ARTICLES + "(" + COLUMN_SAVED_AT + " DESC)");
+        db.execSQL("CREATE INDEX idx_saved_articles_title ON " + TABLE_ARTICLES + "(" + COLUMN_TITLE + " COLLATE NOCASE)");
+        db.execSQL("CREATE INDEX idx_saved_articles_last_opened ON " + TABLE_ARTICLES + "(" + COLUMN_LAST_OPENED + ")");
+
+        db.execSQL("CREATE TABLE " + TABLE_BLOBS + "("
+                + COLUMN_KEY + " TEXT PRIMARY KEY,"
+                + COLUMN_SIZE + " INTEGER DEFAULT 0"
+                + ")");
+        db.execSQL("CREATE TABLE " + TABLE_REFS + "("
+                + COLUMN_ARTICLE_ID + " INTEGER NOT NULL,"
+                + COLUMN_KEY + " TEXT NOT NULL,"
+                + "PRIMARY KEY(" + COLUMN_ARTICLE_ID + ", " + COLUMN_KEY + ")"
+                + ")");
+        // 查找不再被任何文章引用的数据块
+        db.execSQL("CREATE INDEX idx_saved_article_blobs_key ON " + TABLE_REFS + "(" + COLUMN_KEY + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    }
+}
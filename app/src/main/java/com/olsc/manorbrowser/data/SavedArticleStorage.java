@@ -0,0 +1,375 @@
+/**
+ * 离线文章库
+ *
+ * 保存时下载文章中的图片，按阅读宽度缩小并重新压缩，连同正文 JSON 一起存入内容寻址的 ArticleBlobStore，
+ * 正文中的图片地址改写为数据块引用；索引（URL、标题、保存时间、大小、引用的数据块）记录在 SQLite 中。
+ * 打开时只读取本地文件，图片地址还原为 file: 地址，不会访问网络。
+ * 总占用超过上限时按最久未打开的顺序淘汰文章，并删除不再被引用的数据块。
+ * 保存、删除与淘汰串行执行，避免清理数据块时与正在写入的相同数据块冲突。
+ * 数据块先于索引写入，进程在两者之间退出或索引提交失败会留下没有记录的文件，首次使用文章库时在后台清理。
+ */
+package com.olsc.manorbrowser.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import com.olsc.manorbrowser.utils.ReaderImageLoader;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class SavedArticleStorage {
+    private static final String DIR = "saved_articles";
+    /** 离线文章库的总容量上限 */
+    public static final long MAX_STORE_BYTES = 200L * 1024 * 1024;
+    /** 保存图片的最大宽度（像素），足够手机全宽显示 */
+    private static final int MAX_IMAGE_WIDTH = 1080;
+    private static final int IMAGE_QUALITY = 80;
+    /** 存储的正文中图片地址的前缀，后接数据块键 */
+    private static final String SRC_BLOB = "blob:";
+
+    /** 索引的维护（打开时间等）放到后台线程，不占用打开文章的时间 */
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Object lock = new Object();
+    private static volatile ArticleBlobStore blobStore;
+
+    /**
+     * 离线文章索引项
+     */
+    public static class SavedArticle {
+        public final long id;
+        public final String url;
+        public final String title;
+        public final long savedAt;
+        public final long size;
+        public final int imageCount;
+
+        public SavedArticle(long id, String url, String title, long savedAt, long size, int imageCount) {
+            this.id = id;
+            this.url = url;
+            this.title = title;
+            this.savedAt = savedAt;
+            this.size = size;
+            this.imageCount = imageCount;
+        }
+    }
+
+    private static ArticleBlobStore blobs(Context context) {
+        if (blobStore == null) {
+            synchronized (SavedArticleStorage.class) {
+                if (blobStore == null) {
+                    Context appContext = context.getApplicationContext();
+                    blobStore = new ArticleBlobStore(new File(appContext.getFilesDir(), DIR));
+                    executor.execute(() -> {
+                        synchronized (lock) {
+                            sweep(appContext);
+                        }
+                    });
+                }
+            }
+        }
+        return blobStore;
+    }
+
+    /**
+     * 保存文章（同一 URL 已保存时替换），会下载图片，必须在后台线程调用。
+     * 下载失败的图片不保存，对应的图片块从离线版本中去掉。
+     *
+     * @return 新的索引项，保存失败时返回 null
+     */
+    public static SavedArticle save(Context context, ReaderArticle article) {
+        if (article == null || article.url == null) return null;
+        // 图片的下载与压缩不需要持锁
+        List<ReaderArticle.Block> blocks = new ArrayList<>(article.blocks.size());
+        List<byte[]> images = new ArrayList<>();
+        for (ReaderArticle.Block block : article.blocks) {
+            if (block.type != ReaderArticle.BLOCK_IMAGE) {
+                blocks.add(block);
+                continue;
+            }
+            byte[] image = block.src != null ? downscaleImage(block.src) : null;
+            if (image == null) continue;
+            images.add(image);
+            // 先占位，写入数据块后换成键
+            blocks.add(new ReaderArticle.Block(block.type, block.text, block.level, null, null));
+        }
+
+        ArticleBlobStore store = blobs(context);
+        long now = System.currentTimeMillis();
+        synchronized (lock) {
+            try {
+                Set<String> keys = new LinkedHashSet<>();
+                int imageIndex = 0;
+                for (int i = 0; i < blocks.size(); i++) {
+                    ReaderArticle.Block block = blocks.get(i);
+                    if (block.type != ReaderArticle.BLOCK_IMAGE) continue;
+                    String key = store.put(images.get(imageIndex++));
+                    keys.add(key);
+                    blocks.set(i, new ReaderArticle.Block(block.type, block.text, block.level, SRC_BLOB + key, null));
+                }
+                ReaderArticle stored = new ReaderArticle(article.url, article.title, blocks);
+                String contentKey = store.putCompressed(stored.toJson().toString().getBytes(StandardCharsets.UTF_8));
+                keys.add(contentKey);
+
+                long size = 0;
+                for (String key : keys) size += store.sizeOf(key);
+
+                SQLiteDatabase db = SavedArticleDatabaseHelper.getInstance(context).getWritableDatabase();
+                List<String> orphans;
+                long id;
+                db.beginTransaction();
+                try {
+                    // 替换旧版本：先删除旧行，数据块的清理放到新引用写入之后，共享的数据块得以保留
+                    deleteRows(db, article.url);
+                    ContentValues values = new ContentValues();
+                    values.put(SavedArticleDatabaseHelper.COLUMN_URL, article.url);
+                    values.put(SavedArticleDatabaseHelper.COLUMN_TITLE, article.title);
+                    values.put(SavedArticleDatabaseHelper.COLUMN_SAVED_AT, now);
+                    values.put(SavedArticleDatabaseHelper.COLUMN_LAST_OPENED, now);
+                    values.put(SavedArticleDatabaseHelper.COLUMN_CONTENT_KEY, contentKey);
+                    values.put(SavedArticleDatabaseHelper.COLUMN_SIZE, size);
+                    values.put(SavedArticleDatabaseHelper.COLUMN_IMAGE_COUNT, images.size());
+                    id = db.insertOrThrow(SavedArticleDatabaseHelper.TABLE_ARTICLES, null, values);
+                    for (String key : keys) {
+                        ContentValues blob = new ContentValues();
+                        blob.put(SavedArticleDatabaseHelper.COLUMN_KEY, key);
+                        blob.put(SavedArticleDatabaseHelper.COLUMN_SIZE, store.sizeOf(key));
+                        db.insertWithOnConflict(SavedArticleDatabaseHelper.TABLE_BLOBS, null, blob, SQLiteDatabase.CONFLICT_IGNORE);
+                        ContentValues ref = new ContentValues();
+                        ref.put(SavedArticleDatabaseHelper.COLUMN_ARTICLE_ID, id);
+                        ref.put(SavedArticleDatabaseHelper.COLUMN_KEY, key);
+                        db.insertWithOnConflict(SavedArticleDatabaseHelper.TABLE_REFS, null, ref, SQLiteDatabase.CONFLICT_IGNORE);
+                    }
+                    orphans = collectOrphans(db);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                for (String key : orphans) store.delete(key);
+                evict(context, id);
+                return new SavedArticle(id, article.url, article.title, now, size, images.size());
+            } catch (Exception e) {
+                e.printStackTrace();
+                // 已写入的数据块可能没有登记到索引中
+                sweep(context);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 按保存时间倒序列出离线文章
+     */
+    public static List<SavedArticle> list(Context context) {
+        List<SavedArticle> list = new ArrayList<>();
+        SQLiteDatabase db = SavedArticleDatabaseHelper.getInstance(context).getReadableDatabase();
+        try (Cursor cursor = db.query(SavedArticleDatabaseHelper.TABLE_ARTICLES,
+                new String[]{SavedArticleDatabaseHelper.COLUMN_ID, SavedArticleDatabaseHelper.COLUMN_URL,
+                        SavedArticleDatabaseHelper.COLUMN_TITLE, SavedArticleDatabaseHelper.COLUMN_SAVED_AT,
+                        SavedArticleDatabaseHelper.COLUMN_SIZE, SavedArticleDatabaseHelper.COLUMN_IMAGE_COUNT},
+                null, null, null, null, SavedArticleDatabaseHelper.COLUMN_SAVED_AT + " DESC")) {
+            while (cursor.moveToNext()) {
+                list.add(new SavedArticle(cursor.getLong(0), cursor.getString(1), cursor.getString(2),
+                        cursor.getLong(3), cursor.getLong(4), cursor.getInt(5)));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 读取离线文章，只访问本地文件，应在后台线程调用；不存在或数据损坏时返回 null。
+     * 图片地址还原为数据块文件的 file: 地址，缺失的图片块被去掉。
+     */
+    public static ReaderArticle open(Context context, long id) {
+        SQLiteDatabase db = SavedArticleDatabaseHelper.getInstance(context).getReadableDatabase();
+        String contentKey;
+        try (Cursor cursor = db.query(SavedArticleDatabaseHelper.TABLE_ARTICLES,
+                new String[]{SavedArticleDatabaseHelper.COLUMN_CONTENT_KEY},
+                SavedArticleDatabaseHelper.COLUMN_ID + " = ?", new String[]{String.valueOf(id)}, null, null, null)) {
+            if (!cursor.moveToFirst()) return null;
+            contentKey = cursor.getString(0);
+        }
+        ArticleBlobStore store = blobs(context);
+        byte[] data = store.get(contentKey);
+        if (data == null) return null;
+        try {
+            ReaderArticle stored = ReaderArticle.fromJson(new JSONObject(new String(data, StandardCharsets.UTF_8)));
+            List<ReaderArticle.Block> blocks = new ArrayList<>(stored.blocks.size());
+            for (ReaderArticle.Block block : stored.blocks) {
+                if (block.type != ReaderArticle.BLOCK_IMAGE) {
+                    blocks.add(block);
+                    continue;
+                }
+                File file = block.src != null && block.src.startsWith(SRC_BLOB)
+                        ? store.fileOf(block.src.substring(SRC_BLOB.length())) : null;
+                if (file == null || !file.exists()) continue;
+                blocks.add(new ReaderArticle.Block(block.type, block.text, block.level, file.toURI().toString(), null));
+            }
+            touch(context, id);
+            return new ReaderArticle(stored.url, stored.title, blocks);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 删除一篇离线文章及其不再被引用的数据块，应在后台线程调用
+     */
+    public static void delete(Context context, long id) {
+        synchronized (lock) {
+            SQLiteDatabase db = SavedArticleDatabaseHelper.getInstance(context).getWritableDatabase();
+            List<String> orphans;
+            db.beginTransaction();
+            try {
+                deleteRow(db, id);
+                orphans = collectOrphans(db);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            ArticleBlobStore store = blobs(context);
+            for (String key : orphans) store.delete(key);
+        }
+    }
+
+    /**
+     * 离线文章库当前的磁盘占用（共享的数据块只计一次）
+     */
+    public static long totalBytes(Context context) {
+        SQLiteDatabase db = SavedArticleDatabaseHelper.getInstance(context).getReadableDatabase();
+        try (Cursor cursor = db.rawQuery("SELECT SUM(" + SavedArticleDatabaseHelper.COLUMN_SIZE + ") FROM "
+                + SavedArticleDatabaseHelper.TABLE_BLOBS, null)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    /** 记录打开时间，淘汰时优先保留最近读过的文章 */
+    private static void touch(Context context, long id) {
+        Context appContext = context.getApplicationContext();
+        long now = System.currentTimeMillis();
+        executor.execute(() -> {
+            try {
+                ContentValues values = new ContentValues();
+                values.put(SavedArticleDatabaseHelper.COLUMN_LAST_OPENED, now);
+                SavedArticleDatabaseHelper.getInstance(appContext).getWritableDatabase().update(
+                        SavedArticleDatabaseHelper.TABLE_ARTICLES, values,
+                        SavedArticleDatabaseHelper.COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /** 总占用超过上限时，按最久未打开的顺序删除文章（刚保存的文章除外）；调用方持有 lock */
+    private static void evict(Context context, long keepId) {
+        SQLiteDatabase db = SavedArticleDatabaseHelper.getInstance(context).getWritableDatabase();
+        while (totalBytes(context) > MAX_STORE_BYTES) {
+            long victim;
+            try (Cursor cursor = db.query(SavedArticleDatabaseHelper.TABLE_ARTICLES,
+                    new String[]{SavedArticleDatabaseHelper.COLUMN_ID},
+                    SavedArticleDatabaseHelper.COLUMN_ID + " != ?", new String[]{String.valueOf(keepId)},
+                    null, null, SavedArticleDatabaseHelper.COLUMN_LAST_OPENED + " ASC", "1")) {
+                if (!cursor.moveToFirst()) return;
+                victim = cursor.getLong(0);
+            }
+            delete(context, victim);
+        }
+    }
+
+    private static void deleteRows(SQLiteDatabase db, String url) {
+        try (Cursor cursor = db.query(SavedArticleDatabaseHelper.TABLE_ARTICLES,
+                new String[]{SavedArticleDatabaseHelper.COLUMN_ID},
+                SavedArticleDatabaseHelper.COLUMN_URL + " = ?", new String[]{url}, null, null, null)) {
+            while (cursor.moveToNext()) deleteRow(db, cursor.getLong(0));
+        }
+    }
+
+    private static void deleteRow(SQLiteDatabase db, long id) {
+        String[] args = {String.valueOf(id)};
+        db.delete(SavedArticleDatabaseHelper.TABLE_REFS, SavedArticleDatabaseHelper.COLUMN_ARTICLE_ID + " = ?", args);
+        db.delete(SavedArticleDatabaseHelper.TABLE_ARTICLES, SavedArticleDatabaseHelper.COLUMN_ID + " = ?", args);
+    }
+
+    /** 删除索引中没有记录的数据块文件；调用方持有 lock */
+    private static void sweep(Context context) {
+        try {
+            Set<String> recorded = new HashSet<>();
+            SQLiteDatabase db = SavedArticleDatabaseHelper.getInstance(context).getReadableDatabase();
+            try (Cursor cursor = db.query(SavedArticleDatabaseHelper.TABLE_BLOBS,
+                    new String[]{SavedArticleDatabaseHelper.COLUMN_KEY}, null, null, null, null, null)) {
+                while (cursor.moveToNext()) recorded.add(cursor.getString(0));
+            }
+            blobs(context).retainOnly(recorded);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** 找出并删除不再被任何文章引用的数据块记录，返回它们的键（文件在事务提交后删除） */
+    private static List<String> collectOrphans(SQLiteDatabase db) {
+        List<String> orphans = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("SELECT " + SavedArticleDatabaseHelper.COLUMN_KEY
+                + " FROM " + SavedArticleDatabaseHelper.TABLE_BLOBS + " WHERE NOT EXISTS (SELECT 1 FROM "
+                + SavedArticleDatabaseHelper.TABLE_REFS + " r WHERE r." + SavedArticleDatabaseHelper.COLUMN_KEY
+                + " = " + SavedArticleDatabaseHelper.TABLE_BLOBS + "." + SavedArticleDatabaseHelper.COLUMN_KEY + ")", null)) {
+            while (cursor.moveToNext()) orphans.add(cursor.getString(0));
+        }
+        for (String key : orphans) {
+            db.delete(SavedArticleDatabaseHelper.TABLE_BLOBS, SavedArticleDatabaseHelper.COLUMN_KEY + " = ?", new String[]{key});
+        }
+        return orphans;
+    }
+
+    /**
+     * 下载图片并缩小到保存宽度以内，重新压缩为 WebP；原图已经足够小时保留原始数据。失败时返回 null
+     */
+    private static byte[] downscaleImage(String src) {
+        try {
+            byte[] data = ReaderImageLoader.fetch(src);
+            if (data == null) return null;
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(data, 0, data.length, bounds);
+            if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = ReaderImageLoader.sampleSize(bounds.outWidth, MAX_IMAGE_WIDTH);
+            Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            if (bitmap == null) return null;
+            boolean scaled = options.inSampleSize > 1;
+            if (bitmap.getWidth() > MAX_IMAGE_WIDTH) {
+                int height = Math.max(1, Math.round(bitmap.getHeight() * (float) MAX_IMAGE_WIDTH / bitmap.getWidth()));
+                Bitmap resized = Bitmap.createScaledBitmap(bitmap, MAX_IMAGE_WIDTH, height, true);
+                if (resized != bitmap) bitmap.recycle();
+                bitmap = resized;
+                scaled = true;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            @SuppressWarnings("deprecation")
+            Bitmap.CompressFormat format = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                    ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+            bitmap.compress(format, IMAGE_QUALITY, out);
+            bitmap.recycle();
+            byte[] encoded = out.toByteArray();
+            return !scaled && data.length <= encoded.length ? data : encoded;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
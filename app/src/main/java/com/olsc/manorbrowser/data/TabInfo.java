@@ -1,20 +1,18 @@
 /**
  * 标签页信息实体类
- * 承载单个标签页的核心数据，包括 GeckoSession 实例、页面基本信息以及 UI 状态（如缩略图、滚动位置）。
+ * 承载单个标签页的核心数据，包括 GeckoSession 实例、页面基本信息以及 UI 状态（如滚动位置）。缩略图按 id 存放在 ThumbnailCache 中。
  */
 package com.olsc.manorbrowser.data;
 
 import org.mozilla.geckoview.GeckoSession;
 
 public class TabInfo {
-    /** 绑定的 GeckoView 会话实例 */
+    /** 绑定的 GeckoView 会话实例；为 null 表示尚未创建会话的占位标签（如启动时恢复的后台标签） */
     public GeckoSession session;
     /** 页面标题 */
     public String title;
     /** 页面 URL */
     public String url;
-    /** 页面预览图（缩略图） */
-    public android.graphics.Bitmap thumbnail;
     /** 唯一标识符 */
     public long id;
     /** 垂直滚动位置记录 */
@@ -25,9 +23,21 @@ public class TabInfo {
     public transient Runnable timeoutRunnable;
     /** 上次记录的进度值，辅助判断是否有实质进度 */
     public int lastProgress = 0;
+    /** 最近一次由引擎回传的会话状态（前进后退历史、滚动位置、表单），会话被回收后据此恢复 */
+    public GeckoSession.SessionState sessionState;
+    /** 最近一次切换到该标签的时间，用于 LRU 回收后台会话 */
+    public long lastActiveTime = 0;
+
+    /** 上一次分配的 id；同一毫秒内连续新建标签时递增，避免 id 冲突导致日志与缩略图错乱 */
+    private static long lastId;
+
+    private static synchronized long nextId() {
+        lastId = Math.max(System.currentTimeMillis(), lastId + 1);
+        return lastId;
+    }
 
     public TabInfo(GeckoSession session) {
-        this.id = System.currentTimeMillis();
+        this.id = nextId();
         this.session = session;
         this.title = null;
         this.url = "about:blank";
@@ -0,0 +1,202 @@
+/**
+ * 标签列表增量日志
+ * 每个标签分组对应一份快照（沿用旧版 tabs.json / tabs_group_xxx.json 的文件名，旧版数组格式仍可读取）和一份 .journal 日志，
+ * 由 JsonJournal 维护：新建、关闭、更新、移动标签时只追加一行记录，即使在两次 onStop 之间崩溃也不会丢失标签。
+ * 所有分组共用一个写线程，UI 调用不会同步触盘。
+ */
+package com.olsc.manorbrowser.data;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+class TabJournal {
+    /** 日志条数达到该值后压缩为快照 */
+    private static final int COMPACT_THRESHOLD = 100;
+
+    private static final String OP_ADD = "add";
+    private static final String OP_CLOSE = "close";
+    private static final String OP_UPDATE = "update";
+    private static final String OP_MOVE = "move";
+
+    /** 所有分组共用的写线程 */
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+    /** 日志中记录的标签信息（不含会话与缩略图） */
+    static class Entry {
+        final long id;
+        String url;
+        String title;
+
+        Entry(long id, String url, String title) {
+            this.id = id;
+            this.url = url;
+            this.title = title;
+        }
+
+        JSONObject toJson() throws Exception {
+            JSONObject json = new JSONObject();
+            json.put("id", id);
+            json.put("url", url);
+            json.put("title", title);
+            return json;
+        }
+    }
+
+    private final JsonJournal journal;
+    /** 当前标签列表的镜像，顺序与界面一致 */
+    private final List<Entry> entries = new ArrayList<>();
+    private boolean loaded;
+
+    TabJournal(File snapshotFile) {
+        this.journal = new JsonJournal(snapshotFile, new File(snapshotFile.getPath() + ".journal"),
+                this, writer, COMPACT_THRESHOLD, this::toJsonArray);
+    }
+
+    /**
+     * 读取快照并重放日志，返回标签列表的副本（首次调用时触盘）
+     */
+    synchronized List<Entry> load() {
+        if (!loaded) {
+            JSONArray items = journal.readSnapshot();
+            if (items != null) {
+                for (int i = 0; i < items.length(); i++) {
+                    JSONObject item = items.optJSONObject(i);
+                    if (item != null) entries.add(fromJson(item));
+                }
+            }
+            journal.replay(this::apply);
+            loaded = true;
+        }
+        List<Entry> copy = new ArrayList<>();
+        for (Entry e : entries) copy.add(new Entry(e.id, e.url, e.title));
+        return copy;
+    }
+
+    synchronized void add(long id, String url, String title) {
+        load();
+        if (indexOf(id) >= 0) return;
+        entries.add(new Entry(id, url, title));
+        journal.append(new JsonJournal.Record(OP_ADD).put("id", id).put("url", url).put("title", title));
+    }
+
+    synchronized void close(long id) {
+        load();
+        int index = indexOf(id);
+        if (index < 0) return;
+        entries.remove(index);
+        journal.append(new JsonJournal.Record(OP_CLOSE).put("id", id));
+    }
+
+    /**
+     * 更新标签的 URL 与标题；与镜像一致时不产生记录
+     */
+    synchronized void update(long id, String url, String title) {
+        load();
+        int index = indexOf(id);
+        if (index < 0) return;
+        Entry entry = entries.get(index);
+        if (equals(entry.url, url) && equals(entry.title, title)) return;
+        entry.url = url;
+        entry.title = title;
+        journal.append(new JsonJournal.Record(OP_UPDATE).put("id", id).put("url", url).put("title", title));
+    }
+
+    synchronized void move(long id, int toIndex) {
+        load();
+        int from = indexOf(id);
+        if (from < 0 || from == toIndex) return;
+        Entry entry = entries.remove(from);
+        entries.add(Math.max(0, Math.min(toIndex, entries.size())), entry);
+        journal.append(new JsonJournal.Record(OP_MOVE).put("id", id).put("index", toIndex));
+    }
+
+    /**
+     * 整体替换标签列表（如另存为分组、关闭全部），直接写快照并清空日志
+     */
+    synchronized void replaceAll(List<Entry> items) {
+        entries.clear();
+        entries.addAll(items);
+        loaded = true;
+        journal.rewrite();
+    }
+
+    /**
+     * 删除快照与日志
+     */
+    synchronized void delete() {
+        entries.clear();
+        loaded = true;
+        journal.delete();
+    }
+
+    /**
+     * 阻塞直到此前排队的日志全部落盘（测试与退出前使用）
+     */
+    static void flush() {
+        CountDownLatch latch = new CountDownLatch(1);
+        writer.execute(latch::countDown);
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int indexOf(long id) {
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i).id == id) return i;
+        }
+        return -1;
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /** 在写线程上由 JsonJournal 压缩时调用，此时持有本对象的锁 */
+    private JSONArray toJsonArray() throws Exception {
+        JSONArray arr = new JSONArray();
+        for (Entry e : entries) arr.put(e.toJson());
+        return arr;
+    }
+
+    /** 重放一条日志记录 */
+    private void apply(JSONObject json) throws Exception {
+        long id = json.getLong("id");
+        int index = indexOf(id);
+        switch (json.getString("op")) {
+            case OP_ADD:
+                if (index < 0) entries.add(fromJson(json));
+                break;
+            case OP_CLOSE:
+                if (index >= 0) entries.remove(index);
+                break;
+            case OP_UPDATE:
+                if (index >= 0) {
+                    entries.get(index).url = json.optString("url", null);
+                    entries.get(index).title = json.optString("title", null);
+                }
+                break;
+            case OP_MOVE:
+                if (index >= 0) {
+                    Entry entry = entries.remove(index);
+                    int to = json.getInt("index");
+                    entries.add(Math.max(0, Math.min(to, entries.size())), entry);
+                }
+                break;
+        }
+    }
+
+    private static Entry fromJson(JSONObject json) {
+        return new Entry(json.optLong("id", System.currentTimeMillis()),
+                json.optString("url", com.olsc.manorbrowser.Config.URL_BLANK),
+                json.optString("title", "New Tab"));
+    }
+}
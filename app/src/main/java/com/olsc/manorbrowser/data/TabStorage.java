@@ -1,27 +1,23 @@
 /**
  * 标签页持久化存储类
- * 负责保存和恢复用户当前打开的所有标签页（URL、标题）及其缩略图。
- * 使用后台线程池处理磁盘写入，缩略图以 PNG 格式单独存放在子目录中。
+ * 负责保存和恢复用户当前打开的所有标签页（URL、标题、会话状态）。
+ * 标签列表的变化（新建、关闭、更新、移动）实时追加到 TabJournal 增量日志，进入后台时无需整体重写；
+ * 会话状态仅在变化后重写。
+ * 缩略图由 ThumbnailCache 独立管理，保存标签时只落盘有变化的缩略图。
  */
 package com.olsc.manorbrowser.data;
 
 import com.olsc.manorbrowser.Config;
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import org.json.JSONArray;
 import org.json.JSONObject;
+import org.mozilla.geckoview.GeckoSession;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import android.os.Handler;
-import android.os.Looper;
+import java.util.Map;
 
 public class TabStorage {
     /** 标签列表配置文件名 */
@@ -33,75 +29,137 @@ public class TabStorage {
         }
         return "tabs_group_" + groupId + ".json";
     }
-    /** 缩略图存放子目录 */
-    private static final String THUMB_DIR = "thumbnails";
-    
-    /** 专用于处理标签磁盘 IO 的后台线程池 */
-    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    /**
+     * 会话状态文件名，与标签列表文件并列存放。
+     * 会话状态可能较大，单独成文件以免拖慢标签列表的读写。
+     */
+    private static String getStateFileName(String groupId) {
+        if (groupId == null || groupId.isEmpty()) {
+            return "tab_states.json";
+        }
+        return "tab_states_group_" + groupId + ".json";
+    }
+
+    /** 分组快照文件路径 -> 增量日志 */
+    private static final Map<String, TabJournal> journals = new HashMap<>();
+    /** 分组 -> 上次写盘时各标签的会话状态，用于判断状态文件是否需要重写 */
+    private static final Map<String, Map<Long, GeckoSession.SessionState>> writtenStates = new HashMap<>();
+
+    private static TabJournal journal(Context context, String groupId) {
+        File file = new File(context.getFilesDir(), getFileName(groupId));
+        synchronized (journals) {
+            TabJournal journal = journals.get(file.getPath());
+            if (journal == null) {
+                journal = new TabJournal(file);
+                journals.put(file.getPath(), journal);
+            }
+            return journal;
+        }
+    }
+
+    /** 记录新建标签（追加到列表末尾） */
+    public static void recordAdded(Context context, String groupId, TabInfo tab) {
+        journal(context, groupId).add(tab.id, tab.url, tab.title);
+    }
 
-    /** 缩略图异步加载回调接口 */
-    public interface ThumbnailCallback {
-        void onLoaded(Bitmap bitmap);
+    /** 记录关闭标签 */
+    public static void recordClosed(Context context, String groupId, TabInfo tab) {
+        journal(context, groupId).close(tab.id);
+    }
+
+    /** 记录标签 URL 或标题变化；与上次记录相同时忽略 */
+    public static void recordUpdated(Context context, String groupId, TabInfo tab) {
+        journal(context, groupId).update(tab.id, tab.url, tab.title);
+    }
+
+    /** 记录标签移动到新位置 */
+    public static void recordMoved(Context context, String groupId, TabInfo tab, int toIndex) {
+        journal(context, groupId).move(tab.id, toIndex);
+    }
+
+    /**
+     * 进入后台时调用：标签列表已由日志实时记录，这里只落盘有变化的会话状态与缩略图
+     */
+    public static void flush(Context context, String groupId, List<TabInfo> tabs) {
+        ThumbnailCache.get(context).flush();
+        saveSessionStates(context, groupId, tabs);
     }
 
     /**
-     * 保存所有标签页数据到磁盘（异步执行）
+     * 以完整列表覆盖分组（另存为分组、关闭全部等整体替换场景）
+     * 直接写快照并清空该分组的日志。
      */
     public static void saveTabs(Context context, String groupId, List<TabInfo> tabs) {
-        executor.execute(() -> {
-            try {
-                JSONArray jsonArray = new JSONArray();
-                for (TabInfo tab : tabs) {
-                    JSONObject json = new JSONObject();
-                    json.put("id", tab.id);
-                    json.put("url", tab.url);
-                    json.put("title", tab.title);
-                    jsonArray.put(json);
-                    
-                    // 同时保存对应的缩略图
-                    saveThumbnail(context, tab);
-                }
-                
-                
-                File file = new File(context.getFilesDir(), getFileName(groupId));
-                try (FileOutputStream fos = new FileOutputStream(file)) {
-                    fos.write(jsonArray.toString().getBytes());
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
+        List<TabJournal.Entry> entries = new ArrayList<>();
+        for (TabInfo tab : tabs) {
+            entries.add(new TabJournal.Entry(tab.id, tab.url, tab.title));
+        }
+        journal(context, groupId).replaceAll(entries);
+        flush(context, groupId, tabs);
+    }
+
+    /**
+     * 会话状态引用与上次写盘时不同才重写状态文件
+     */
+    private static void saveSessionStates(Context context, String groupId, List<TabInfo> tabs) {
+        String key = groupId == null ? "" : groupId;
+        Map<Long, GeckoSession.SessionState> current = new HashMap<>();
+        for (TabInfo tab : tabs) {
+            if (tab.sessionState != null) current.put(tab.id, tab.sessionState);
+        }
+        synchronized (writtenStates) {
+            Map<Long, GeckoSession.SessionState> written = writtenStates.get(key);
+            if (written != null && sameStates(written, current)) return;
+            writtenStates.put(key, current);
+        }
+        File stateFile = new File(context.getFilesDir(), getStateFileName(groupId));
+        AtomicFileStore.getInstance().write(stateFile, () -> {
+            JSONObject states = new JSONObject();
+            for (Map.Entry<Long, GeckoSession.SessionState> e : current.entrySet()) {
+                states.put(String.valueOf(e.getKey()), e.getValue().toString());
             }
+            return states.toString().getBytes(StandardCharsets.UTF_8);
         });
     }
 
+    private static boolean sameStates(Map<Long, GeckoSession.SessionState> a, Map<Long, GeckoSession.SessionState> b) {
+        if (a.size() != b.size()) return false;
+        for (Map.Entry<Long, GeckoSession.SessionState> e : a.entrySet()) {
+            if (b.get(e.getKey()) != e.getValue()) return false;
+        }
+        return true;
+    }
+
     /**
      * 同步加载保存好的标签页信息（不含大图缩略图）
+     * 先读快照再重放日志；快照损坏时自动回退到上一次完好的备份。
      */
     public static List<TabInfo> loadTabs(Context context, String groupId) {
         List<TabInfo> tabs = new ArrayList<>();
-        try {
-            File file = new File(context.getFilesDir(), getFileName(groupId));
-            if (!file.exists()) return tabs;
-            
-            FileInputStream fis = new FileInputStream(file);
-            byte[] data = new byte[(int) file.length()];
-            int readBytes = fis.read(data);
-            fis.close();
-            
-            if (readBytes > 0) {
-                String jsonStr = new String(data, 0, readBytes);
-                JSONArray jsonArray = new JSONArray(jsonStr);
-                for (int i = 0; i < jsonArray.length(); i++) {
-                    JSONObject json = jsonArray.getJSONObject(i);
-                    TabInfo tab = new TabInfo(null); // 注意：此时 Session 为空，需由调用方后续创建
-                    tab.id = json.optLong("id", System.currentTimeMillis());
-                    tab.url = json.optString("url", Config.URL_BLANK);
-                    tab.title = json.optString("title", "New Tab");
-                    tab.thumbnail = null; 
-                    tabs.add(tab);
+        for (TabJournal.Entry entry : journal(context, groupId).load()) {
+            TabInfo tab = new TabInfo(null); // 注意：此时 Session 为空，需由调用方后续创建
+            tab.id = entry.id;
+            tab.url = entry.url != null ? entry.url : Config.URL_BLANK;
+            tab.title = entry.title;
+            tabs.add(tab);
+        }
+        if (tabs.isEmpty()) return tabs;
+
+        // 会话状态缺失或损坏不影响标签本身的恢复，仅退化为按 URL 重新加载
+        File stateFile = new File(context.getFilesDir(), getStateFileName(groupId));
+        JSONObject states = AtomicFileStore.read(stateFile, data -> new JSONObject(new String(data, StandardCharsets.UTF_8)));
+        if (states != null) {
+            Map<Long, GeckoSession.SessionState> restored = new HashMap<>();
+            for (TabInfo tab : tabs) {
+                String state = states.optString(String.valueOf(tab.id), null);
+                if (state != null) {
+                    tab.sessionState = GeckoSession.SessionState.fromString(state);
+                    if (tab.sessionState != null) restored.put(tab.id, tab.sessionState);
                 }
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            synchronized (writtenStates) {
+                writtenStates.put(groupId == null ? "" : groupId, restored);
+            }
         }
         return tabs;
     }
@@ -127,55 +185,10 @@ public class TabStorage {
      * 删除分组
      */
     public static void deleteGroup(Context context, String groupId) {
-        File file = new File(context.getFilesDir(), getFileName(groupId));
-        if (file.exists()) {
-            file.delete();
-        }
-    }
-
-    /**
-     * 异步加载指定标签的缩略图
-     */
-    public static void loadThumbnailAsync(Context context, long id, ThumbnailCallback callback) {
-        executor.execute(() -> {
-            Bitmap bmp = loadThumbnail(context, id);
-            new Handler(Looper.getMainLooper()).post(() -> {
-                if (callback != null) {
-                    callback.onLoaded(bmp);
-                }
-            });
-        });
-    }
-
-    /**
-     * 将 Bitmap 缩略图保存到磁盘文件
-     */
-    private static void saveThumbnail(Context context, TabInfo tab) {
-        if (tab.thumbnail == null) return;
-        try {
-            File dir = new File(context.getFilesDir(), THUMB_DIR);
-            if (!dir.exists()) dir.mkdirs();
-            File file = new File(dir, tab.id + ".png");
-            try (BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(file))) {
-                tab.thumbnail.compress(Bitmap.CompressFormat.PNG, 80, bos);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
-
-    /**
-     * 从磁盘文件读取缩略图
-     */
-    private static Bitmap loadThumbnail(Context context, long id) {
-        try {
-            File file = new File(new File(context.getFilesDir(), THUMB_DIR), id + ".png");
-            if (file.exists()) {
-                return BitmapFactory.decodeFile(file.getAbsolutePath());
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+        journal(context, groupId).delete();
+        synchronized (writtenStates) {
+            writtenStates.remove(groupId == null ? "" : groupId);
         }
-        return null;
+        AtomicFileStore.delete(new File(context.getFilesDir(), getStateFileName(groupId)));
     }
 }
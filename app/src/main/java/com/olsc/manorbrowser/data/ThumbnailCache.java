@@ -0,0 +1,324 @@
+/**
+ * 标签页缩略图缓存
+ *
+ * 三层结构：
+ * 1. 内存层：按字节预算的 LRU，位图统一转为 RGB_565，占用约为 ARGB_8888 的一半；
+ * 2. 磁盘层：WebP 格式，仅在缩略图变化（脏）后重新编码，未变化的标签不会重复写盘；
+ * 3. 截图缓冲池：PixelCopy 的目标位图在转换后回收复用，避免每次切换标签都分配新的大图。
+ * 解码与编码均在后台线程执行，异步加载返回可取消的请求，供列表项回收时取消。
+ */
+package com.olsc.manorbrowser.data;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ThumbnailCache {
+    /** 缩略图存放子目录 */
+    private static final String THUMB_DIR = "thumbnails";
+    private static final String EXT_WEBP = ".webp";
+    /** 旧版本保存的 PNG，读取后转存为 WebP */
+    private static final String EXT_LEGACY_PNG = ".png";
+    private static final int WEBP_QUALITY = 75;
+    /** 内存层预算上限 */
+    private static final int MAX_MEMORY_BYTES = 32 * 1024 * 1024;
+    /** 截图缓冲池最多保留的位图数 */
+    private static final int MAX_POOLED_BUFFERS = 2;
+
+    /** 异步加载回调（主线程调用），未找到缩略图时 bitmap 为 null */
+    public interface Callback {
+        void onLoaded(Bitmap bitmap);
+    }
+
+    /** 可取消的异步加载请求 */
+    public static class Request {
+        private volatile boolean cancelled;
+        private Future<?> future;
+
+        public void cancel() {
+            cancelled = true;
+            if (future != null) future.cancel(false);
+        }
+    }
+
+    private static volatile ThumbnailCache instance;
+
+    private final File dir;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    /** 磁盘读写线程 */
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    /** 截图转换线程，与磁盘 IO 分开，避免切换标签时排在批量编码之后 */
+    private final ExecutorService captureExecutor = Executors.newSingleThreadExecutor();
+    private final LruCache<Long, Bitmap> memory;
+    /** 内存中已更新但尚未写入磁盘的标签 id */
+    private final Set<Long> dirty = new HashSet<>();
+    /** 可复用的截图目标位图（仅供 PixelCopy 写入，从不直接显示） */
+    private final ArrayDeque<Bitmap> bufferPool = new ArrayDeque<>();
+
+    public static ThumbnailCache get(Context context) {
+        if (instance == null) {
+            synchronized (ThumbnailCache.class) {
+                if (instance == null) {
+                    instance = new ThumbnailCache(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private ThumbnailCache(Context context) {
+        this.dir = new File(context.getFilesDir(), THUMB_DIR);
+        int budget = (int) Math.min(Runtime.getRuntime().maxMemory() / 16, MAX_MEMORY_BYTES);
+        this.memory = new LruCache<Long, Bitmap>(budget) {
+            @Override
+            protected int sizeOf(Long key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Long key, Bitmap oldValue, Bitmap newValue) {
+                // 脏数据被挤出内存前先落盘；位图可能仍在界面上显示，不主动 recycle
+                if (evicted && takeDirty(key)) {
+                    ioExecutor.execute(() -> encode(key, oldValue));
+                }
+            }
+        };
+    }
+
+    /**
+     * 读取内存层中的缩略图，未命中返回 null
+     */
+    public Bitmap getCached(long tabId) {
+        return memory.get(tabId);
+    }
+
+    /**
+     * 异步加载缩略图：内存命中时同步回调，否则在后台解码磁盘文件
+     */
+    public Request load(long tabId, Callback callback) {
+        Request request = new Request();
+        Bitmap cached = memory.get(tabId);
+        if (cached != null) {
+            callback.onLoaded(cached);
+            return request;
+        }
+        request.future = ioExecutor.submit(() -> {
+            if (request.cancelled) return;
+            Bitmap bitmap = memory.get(tabId);
+            if (bitmap == null) {
+                bitmap = decode(tabId);
+                // 解码期间可能已有新截图写入内存，新截图优先
+                if (bitmap != null) {
+                    synchronized (memory) {
+                        Bitmap newer = memory.get(tabId);
+                        if (newer != null) {
+                            bitmap = newer;
+                        } else {
+                            memory.put(tabId, bitmap);
+                        }
+                    }
+                }
+            }
+            if (request.cancelled) return;
+            Bitmap result = bitmap;
+            mainHandler.post(() -> {
+                if (!request.cancelled) callback.onLoaded(result);
+            });
+        });
+        return request;
+    }
+
+    /**
+     * 从缓冲池取出指定尺寸的截图目标位图，尺寸不符时新建
+     */
+    public Bitmap obtainCaptureBuffer(int width, int height) {
+        synchronized (bufferPool) {
+            Bitmap buffer;
+            while ((buffer = bufferPool.poll()) != null) {
+                if (!buffer.isRecycled() && buffer.getWidth() == width && buffer.getHeight() == height) {
+                    return buffer;
+                }
+                buffer.recycle();
+            }
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * 将截图缓冲归还到池中（截图失败时调用）
+     */
+    public void releaseCaptureBuffer(Bitmap buffer) {
+        if (buffer == null || buffer.isRecycled()) return;
+        synchronized (bufferPool) {
+            if (bufferPool.size() < MAX_POOLED_BUFFERS) {
+                bufferPool.push(buffer);
+                return;
+            }
+        }
+        buffer.recycle();
+    }
+
+    /**
+     * 提交一次成功的截图：在后台转为 RGB_565 存入内存层并标记为脏，随后归还缓冲。
+     * 截图几乎全白（页面尚未绘制）且已有旧缩略图时保留旧图。
+     *
+     * @param onReady 新缩略图可用后在主线程回调，可为 null
+     */
+    public void putCapture(long tabId, Bitmap buffer, Runnable onReady) {
+        captureExecutor.execute(() -> {
+            boolean updated = false;
+            try {
+                if (!looksBlank(buffer) || !hasThumbnail(tabId)) {
+                    Bitmap compact = buffer.copy(Bitmap.Config.RGB_565, false);
+                    if (compact != null) {
+                        synchronized (memory) {
+                            memory.put(tabId, compact);
+                        }
+                        synchronized (dirty) {
+                            dirty.add(tabId);
+                        }
+                        updated = true;
+                    }
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                releaseCaptureBuffer(buffer);
+            }
+            if (updated && onReady != null) mainHandler.post(onReady);
+        });
+    }
+
+    /**
+     * 将所有脏缩略图编码为 WebP 写入磁盘（异步），未变化的缩略图不会重复编码
+     */
+    public void flush() {
+        List<Long> ids;
+        synchronized (dirty) {
+            ids = new ArrayList<>(dirty);
+            dirty.clear();
+        }
+        if (ids.isEmpty()) return;
+        ioExecutor.execute(() -> {
+            for (Long id : ids) {
+                Bitmap bitmap = memory.get(id);
+                if (bitmap != null) encode(id, bitmap);
+            }
+        });
+    }
+
+    /**
+     * 删除标签的缩略图（内存与磁盘）
+     */
+    public void remove(long tabId) {
+        takeDirty(tabId);
+        memory.remove(tabId);
+        ioExecutor.execute(() -> {
+            fileFor(tabId, EXT_WEBP).delete();
+            fileFor(tabId, EXT_LEGACY_PNG).delete();
+        });
+    }
+
+    /**
+     * 内存紧张时清空内存层（脏数据会在移除前落盘）与缓冲池
+     */
+    public void trimMemory() {
+        memory.evictAll();
+        synchronized (bufferPool) {
+            for (Bitmap buffer : bufferPool) buffer.recycle();
+            bufferPool.clear();
+        }
+    }
+
+    private boolean hasThumbnail(long tabId) {
+        return memory.get(tabId) != null || fileFor(tabId, EXT_WEBP).exists() || fileFor(tabId, EXT_LEGACY_PNG).exists();
+    }
+
+    private boolean takeDirty(long tabId) {
+        synchronized (dirty) {
+            return dirty.remove(tabId);
+        }
+    }
+
+    /**
+     * 采样中心与四角，全部为纯白时认为页面尚未绘制
+     */
+    private static boolean looksBlank(Bitmap bitmap) {
+        int w = bitmap.getWidth();
+        int h = bitmap.getHeight();
+        if (w <= 20 || h <= 20) return false;
+        int[] points = {
+                bitmap.getPixel(w / 2, h / 2),
+                bitmap.getPixel(10, 10),
+                bitmap.getPixel(w - 10, 10),
+                bitmap.getPixel(10, h - 10),
+                bitmap.getPixel(w - 10, h - 10)
+        };
+        for (int p : points) {
+            if (p != 0xFFFFFFFF) return false;
+        }
+        return true;
+    }
+
+    private Bitmap decode(long tabId) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        try {
+            File webp = fileFor(tabId, EXT_WEBP);
+            if (webp.exists()) {
+                return BitmapFactory.decodeFile(webp.getAbsolutePath(), options);
+            }
+            File png = fileFor(tabId, EXT_LEGACY_PNG);
+            if (png.exists()) {
+                Bitmap bitmap = BitmapFactory.decodeFile(png.getAbsolutePath(), options);
+                // 旧版 PNG 转存为 WebP 后删除
+                if (bitmap != null && encode(tabId, bitmap)) png.delete();
+                return bitmap;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * 编码为 WebP：先写临时文件再重命名，读取方不会看到写了一半的文件
+     */
+    @SuppressWarnings("deprecation")
+    private boolean encode(long tabId, Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) return false;
+        if (!dir.exists()) dir.mkdirs();
+        File target = fileFor(tabId, EXT_WEBP);
+        File tmp = new File(target.getPath() + ".tmp");
+        Bitmap.CompressFormat format = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+        try (BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(tmp))) {
+            if (!bitmap.compress(format, WEBP_QUALITY, bos)) return false;
+        } catch (Exception e) {
+            e.printStackTrace();
+            tmp.delete();
+            return false;
+        }
+        return tmp.renameTo(target);
+    }
+
+    private File fileFor(long tabId, String ext) {
+        return new File(dir, tabId + ext);
+    }
+}
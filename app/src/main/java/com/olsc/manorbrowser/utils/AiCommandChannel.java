@@ -0,0 +1,581 @@
+/**
+ * AI 命令通道
+ *
+ * 负责与 PC 服务端之间的命令收发，按服务端能力依次降级：
+ *   1. WebSocket（GET /api/phone/ws）：服务端有命令时立即推送，结果也走同一连接回传；
+ *      传输层由 OkHttp 定时 ping 检测断线，应用层 ping/pong 消息用于测量往返时延；
+ *   2. HTTP 长轮询：握手被服务端拒绝（不支持 WebSocket）时改为 POST /api/phone/poll 并带上 X-Poll-Wait，
+ *      服务端挂起请求直到有命令或超时，响应头带 X-Long-Poll: 1 表示支持；
+ *   3. 固定间隔轮询：旧版服务端不认识上述请求头，立即返回，此时每 1.5 秒轮询一次，与过去的行为一致。
+ * 连接失败或断开后按指数退避（带随机抖动）重连；降级到轮询后会定期重新尝试 WebSocket。
+ *
+ * 较大的结果（页面源码、元素树等）不走 WebSocket 消息，而是以分块传输 POST /api/phone/result，
+ * 边转义边 gzip 压缩写出，不在内存中生成完整载荷；同时附带结果的 SHA-256，
+ * 同一内容再次上报时只发送哈希引用 {"result_ref"}，服务端缓存未命中时再完整上传。
+ * 这两项能力需要服务端在任一响应头 X-Phone-Features 中声明（gzip、result-ref），旧版服务端仍按原方式整体上报。
+ *
+ * 消息格式（JSON 文本帧）：
+ *   手机 → 服务端：{"type":"hello",...}、{"type":"result","id","action","result"}、{"type":"ping","t"}
+ *   服务端 → 手机：{"type":"command","command":{"id","action","params"}}、{"type":"pong","t"}
+ *
+ * 本类不依赖 Android API，命令的执行交给 {@link CommandSink}。
+ */
+package com.olsc.manorbrowser.utils;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+public class AiCommandChannel {
+    public static final String TRANSPORT_NONE = "none";
+    public static final String TRANSPORT_WEBSOCKET = "websocket";
+    public static final String TRANSPORT_LONG_POLL = "long_poll";
+    public static final String TRANSPORT_POLL = "poll";
+
+    static final String PATH_WEBSOCKET = "/api/phone/ws";
+    static final String PATH_POLL = "/api/phone/poll";
+    static final String PATH_RESULT = "/api/phone/result";
+    /** 请求头：客户端愿意等待的长轮询时长（毫秒） */
+    static final String HEADER_POLL_WAIT = "X-Poll-Wait";
+    /** 响应头：服务端支持长轮询 */
+    static final String HEADER_LONG_POLL = "X-Long-Poll";
+    /** 响应头：服务端支持的扩展能力，逗号分隔 */
+    static final String HEADER_FEATURES = "X-Phone-Features";
+    /** 请求头：完整上传的结果内容的 SHA-256，服务端据此缓存 */
+    static final String HEADER_RESULT_SHA256 = "X-Result-Sha256";
+    static final String FEATURE_GZIP = "gzip";
+    static final String FEATURE_RESULT_REF = "result-ref";
+
+    /** 旧版服务端的轮询间隔（毫秒） */
+    static final long POLL_INTERVAL_MS = 1500;
+    /** 长轮询单次挂起时长（毫秒） */
+    static final long LONG_POLL_WAIT_MS = 25_000;
+    /** 心跳间隔（毫秒） */
+    static final long HEARTBEAT_MS = 15_000;
+    /** 普通请求超时（毫秒） */
+    static final long TIMEOUT_MS = 10_000;
+    /** 重连退避的起始值与上限（毫秒） */
+    static final long BACKOFF_BASE_MS = 500;
+    static final long BACKOFF_MAX_MS = 30_000;
+    /** 服务端拒绝 WebSocket 后，隔多久再次尝试升级（毫秒） */
+    static final long WEBSOCKET_RETRY_MS = 5 * 60_000;
+    /** 结果超过该长度（字符）时流式上传 */
+    static final int STREAM_THRESHOLD = 32 * 1024;
+    /** 记住最近多少个已上传结果的哈希 */
+    private static final int MAX_UPLOADED_HASHES = 64;
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    /**
+     * 命令接收者。回调在网络线程上，实现方应尽快把命令转交给自己的执行线程，
+     * 执行完后调用 {@link #sendResult} 回传结果。
+     */
+    public interface CommandSink {
+        void onCommand(JSONObject command);
+    }
+
+    private final OkHttpClient httpClient;
+    private final OkHttpClient pollClient;
+    private final OkHttpClient webSocketClient;
+    private final String baseUrl;
+    private final JSONObject hello;
+    private final CommandSink sink;
+    private final Random random = new Random();
+
+    /** 连接、轮询与心跳都在这个线程上调度，下面几个非 volatile 字段只在该线程访问 */
+    private final ScheduledExecutorService scheduler;
+    private int failures;
+    private long webSocketRetryAt;
+    private int generation;
+
+    private volatile boolean running;
+    private volatile String transport = TRANSPORT_NONE;
+    private volatile boolean connected;
+    private volatile WebSocket webSocket;
+    private volatile Call pollCall;
+
+    /** 往返时延的指数滑动平均（毫秒），尚无样本时为 -1 */
+    private volatile double rttMillis = -1;
+    private volatile long lastCommandMillis = -1;
+    private final AtomicLong commandCount = new AtomicLong();
+    private final AtomicLong reconnectCount = new AtomicLong();
+    /** 命令 ID -> 收到命令的时间（纳秒），用于统计从收到命令到结果送出的耗时 */
+    private final Map<String, Long> receivedAt = new ConcurrentHashMap<>();
+
+    private volatile boolean serverGzip;
+    private volatile boolean serverResultRef;
+    /** 服务端已完整收到过的结果哈希（按最近使用排序） */
+    private final Map<String, Boolean> uploadedHashes = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_UPLOADED_HASHES;
+        }
+    };
+    private final AtomicLong resultRefHits = new AtomicLong();
+
+    /**
+     * @param client  基础 OkHttpClient（共享连接池、代理与证书配置）
+     * @param baseUrl 服务端地址，如 http://192.168.1.10:8000
+     * @param hello   连接时发送给服务端的手机信息
+     * @param sink    命令接收者
+     */
+    public AiCommandChannel(OkHttpClient client, String baseUrl, JSONObject hello, CommandSink sink) {
+        this.baseUrl = baseUrl;
+        this.hello = hello;
+        this.sink = sink;
+        this.httpClient = client.newBuilder()
+                .connectTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .readTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .writeTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .build();
+        this.pollClient = httpClient.newBuilder()
+                .readTimeout(LONG_POLL_WAIT_MS + TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .build();
+        // 连接建立后不设读超时，断线由定时 ping 检测（对端未及时回应 pong 时连接会以失败结束）
+        this.webSocketClient = httpClient.newBuilder()
+                .readTimeout(0, TimeUnit.MILLISECONDS)
+                .pingInterval(HEARTBEAT_MS, TimeUnit.MILLISECONDS)
+                .build();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "AiCmdChannel");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // -------------------------------------------------------
+    // 公开方法
+    // -------------------------------------------------------
+
+    public void start() {
+        if (running) return;
+        running = true;
+        schedule(this::connectWebSocket, 0);
+    }
+
+    /** 关闭连接并停止调度；停止后不可再次启动 */
+    public void stop() {
+        running = false;
+        connected = false;
+        transport = TRANSPORT_NONE;
+        WebSocket ws = webSocket;
+        webSocket = null;
+        if (ws != null) ws.close(1000, "stop");
+        Call call = pollCall;
+        if (call != null) call.cancel();
+        scheduler.shutdownNow();
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /** 当前使用的传输方式：TRANSPORT_* 之一 */
+    public String getTransport() {
+        return transport;
+    }
+
+    /** 往返时延（毫秒），尚未测得时返回 -1 */
+    public long getRttMillis() {
+        double rtt = rttMillis;
+        return rtt < 0 ? -1 : Math.round(rtt);
+    }
+
+    /**
+     * 通道状态，合并到 get_status 的返回中：
+     * last_round_trip_ms 为最近一条命令在手机端的处理耗时加上网络往返时延，即服务端观察到的命令往返时间的估计
+     */
+    public JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+        try {
+            long rtt = getRttMillis();
+            long handling = lastCommandMillis;
+            stats.put("transport", transport);
+            stats.put("connected", connected);
+            stats.put("rtt_ms", rtt);
+            stats.put("last_command_ms", handling);
+            stats.put("last_round_trip_ms", rtt < 0 || handling < 0 ? -1 : handling + rtt);
+            stats.put("commands", commandCount.get());
+            stats.put("reconnects", reconnectCount.get());
+            stats.put("result_ref_hits", resultRefHits.get());
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return stats;
+    }
+
+    /**
+     * 回传命令结果（阻塞），见 {@link #sendResult(String, String, CommandResult)}
+     */
+    public boolean sendResult(String id, String action, String result) {
+        return sendResult(id, action, CommandResult.ofJson(result));
+    }
+
+    /**
+     * 回传命令结果（阻塞）：大结果在服务端支持时流式压缩上传或只发送哈希引用；
+     * 其余结果在 WebSocket 可用时走当前连接，否则（或消息过大被拒绝时）POST /api/phone/result
+     *
+     * @return 是否已成功送出
+     */
+    public boolean sendResult(String id, String action, CommandResult result) {
+        Long started = id != null ? receivedAt.remove(id) : null;
+        boolean sent = false;
+        try {
+            if (result.length() >= STREAM_THRESHOLD && (serverGzip || serverResultRef)) {
+                sent = uploadLargeResult(id, action, result);
+            } else {
+                JSONObject payload = new JSONObject();
+                payload.put("id", id);
+                payload.put("action", action);
+                payload.put("result", result.toJson());
+                WebSocket ws = webSocket;
+                if (ws != null && TRANSPORT_WEBSOCKET.equals(transport)) {
+                    payload.put("type", "result");
+                    sent = ws.send(payload.toString());
+                    payload.remove("type");
+                }
+                if (!sent) sent = postResult(payload.toString());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        if (sent && started != null) {
+            lastCommandMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        }
+        return sent;
+    }
+
+    private boolean postResult(String body) throws IOException {
+        Request request = new Request.Builder()
+                .url(baseUrl + PATH_RESULT)
+                .post(RequestBody.create(body, JSON))
+                .build();
+        long start = System.nanoTime();
+        try (Response response = httpClient.newCall(request).execute()) {
+            updateFeatures(response);
+            if (!response.isSuccessful()) return false;
+            // 结果上报是一次普通的请求-响应，可作为 HTTP 传输下的往返时延样本
+            recordRtt(System.nanoTime() - start);
+            return true;
+        }
+    }
+
+    /**
+     * 大结果上报：服务端已有相同内容时只发送哈希引用，否则流式完整上传
+     */
+    private boolean uploadLargeResult(String id, String action, CommandResult result) throws Exception {
+        String hash = serverResultRef ? result.sha256() : null;
+        if (hash != null && isUploaded(hash)) {
+            if (postReference(id, action, hash)) {
+                resultRefHits.incrementAndGet();
+                return true;
+            }
+            // 服务端缓存已失效（如重启），改为完整上传
+            synchronized (uploadedHashes) {
+                uploadedHashes.remove(hash);
+            }
+        }
+        boolean sent = postStreaming(id, action, result, hash);
+        if (sent && hash != null) {
+            synchronized (uploadedHashes) {
+                uploadedHashes.put(hash, Boolean.TRUE);
+            }
+        }
+        return sent;
+    }
+
+    private boolean isUploaded(String hash) {
+        synchronized (uploadedHashes) {
+            return uploadedHashes.get(hash) != null;
+        }
+    }
+
+    /** 发送哈希引用；服务端返回 {"status":"ok"} 表示命中缓存 */
+    private boolean postReference(String id, String action, String hash) throws Exception {
+        String body = new JSONObject().put("id", id).put("action", action).put("result_ref", hash).toString();
+        Request request = new Request.Builder()
+                .url(baseUrl + PATH_RESULT)
+                .post(RequestBody.create(body, JSON))
+                .build();
+        try (Response response = httpClient.newCall(request).execute()) {
+            updateFeatures(response);
+            if (!response.isSuccessful()) return false;
+            return "ok".equals(new JSONObject(response.body().string()).optString("status"));
+        }
+    }
+
+    /**
+     * 以分块传输上报完整结果，载荷 {"id","action","result":"<结果 JSON 文本>"} 边生成边写出，
+     * 服务端支持时整体 gzip 压缩
+     */
+    private boolean postStreaming(String id, String action, CommandResult result, String hash) throws IOException {
+        final boolean gzip = serverGzip;
+        RequestBody body = new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return JSON;
+            }
+
+            @Override
+            public long contentLength() {
+                return -1;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                BufferedSink target = gzip ? Okio.buffer(new GzipSink(sink)) : sink;
+                Writer out = new OutputStreamWriter(target.outputStream(), StandardCharsets.UTF_8);
+                out.write("{\"id\":");
+                out.write(JSONObject.quote(id));
+                out.write(",\"action\":");
+                out.write(JSONObject.quote(action));
+                out.write(",\"result\":\"");
+                result.writeJson(new CommandResult.EscapingWriter(out));
+                out.write("\"}");
+                out.flush();
+                if (gzip) target.close();
+            }
+        };
+        Request.Builder builder = new Request.Builder()
+                .url(baseUrl + PATH_RESULT)
+                .post(body);
+        if (gzip) builder.header("Content-Encoding", "gzip");
+        if (hash != null) builder.header(HEADER_RESULT_SHA256, hash);
+        try (Response response = httpClient.newCall(builder.build()).execute()) {
+            updateFeatures(response);
+            return response.isSuccessful();
+        }
+    }
+
+    /** 从响应头读取服务端声明的能力 */
+    private void updateFeatures(Response response) {
+        String header = response.header(HEADER_FEATURES);
+        if (header == null) return;
+        boolean gzip = false;
+        boolean resultRef = false;
+        for (String feature : header.split(",")) {
+            String f = feature.trim();
+            if (FEATURE_GZIP.equals(f)) gzip = true;
+            if (FEATURE_RESULT_REF.equals(f)) resultRef = true;
+        }
+        serverGzip = gzip;
+        serverResultRef = resultRef;
+    }
+
+    // -------------------------------------------------------
+    // WebSocket
+    // -------------------------------------------------------
+
+    private void connectWebSocket() {
+        if (!running) return;
+        final int gen = ++generation;
+        Request request = new Request.Builder().url(baseUrl + PATH_WEBSOCKET).build();
+        webSocket = webSocketClient.newWebSocket(request, new WebSocketListener() {
+            @Override
+            public void onOpen(WebSocket ws, Response response) {
+                updateFeatures(response);
+                schedule(() -> {
+                    if (gen != generation) return;
+                    markConnected(TRANSPORT_WEBSOCKET);
+                    try {
+                        ws.send(new JSONObject(hello.toString()).put("type", "hello").toString());
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                    heartbeat(gen);
+                }, 0);
+            }
+
+            @Override
+            public void onMessage(WebSocket ws, String text) {
+                // 命令直接在读线程上转交，不经过调度线程，减少一次线程切换
+                handleMessage(ws, text);
+            }
+
+            @Override
+            public void onClosing(WebSocket ws, int code, String reason) {
+                ws.close(1000, null);
+            }
+
+            @Override
+            public void onClosed(WebSocket ws, int code, String reason) {
+                schedule(() -> {
+                    if (gen == generation) onWebSocketLost(false);
+                }, 0);
+            }
+
+            @Override
+            public void onFailure(WebSocket ws, Throwable t, Response response) {
+                // 握手得到了普通 HTTP 响应（404、426 等），说明服务端不支持 WebSocket
+                boolean rejected = response != null && response.code() != 101;
+                schedule(() -> {
+                    if (gen == generation) onWebSocketLost(rejected);
+                }, 0);
+            }
+        });
+    }
+
+    private void onWebSocketLost(boolean rejected) {
+        webSocket = null;
+        markDisconnected();
+        if (rejected) {
+            webSocketRetryAt = System.currentTimeMillis() + WEBSOCKET_RETRY_MS;
+            schedule(this::pollOnce, 0);
+        } else {
+            schedule(this::connectWebSocket, nextBackoff());
+        }
+    }
+
+    private void handleMessage(WebSocket ws, String text) {
+        try {
+            JSONObject message = new JSONObject(text);
+            switch (message.optString("type")) {
+                case "command": {
+                    JSONObject command = message.optJSONObject("command");
+                    if (command != null) deliver(command);
+                    break;
+                }
+                case "pong": {
+                    long sentAt = message.optLong("t", 0);
+                    if (sentAt > 0) recordRtt(System.nanoTime() - sentAt);
+                    break;
+                }
+                case "ping":
+                    ws.send(new JSONObject().put("type", "pong").put("t", message.opt("t")).toString());
+                    break;
+                default:
+                    break;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** 应用层心跳：发送 ping 消息测量往返时延，连接存活期间每 HEARTBEAT_MS 一次 */
+    private void heartbeat(int gen) {
+        WebSocket ws = webSocket;
+        if (!running || gen != generation || ws == null) return;
+        try {
+            ws.send(new JSONObject().put("type", "ping").put("t", System.nanoTime()).toString());
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        schedule(() -> heartbeat(gen), HEARTBEAT_MS);
+    }
+
+    // -------------------------------------------------------
+    // HTTP 轮询（长轮询 / 旧版固定间隔轮询）
+    // -------------------------------------------------------
+
+    private void pollOnce() {
+        if (!running) return;
+        if (System.currentTimeMillis() >= webSocketRetryAt) {
+            // 服务端可能已升级，重新尝试 WebSocket；仍被拒绝时会再回到轮询
+            connectWebSocket();
+            return;
+        }
+        // 连接尚未确认时先发一次不挂起的请求，尽快得知服务端是否在线、是否支持长轮询
+        long wait = connected ? LONG_POLL_WAIT_MS : 0;
+        Request request = new Request.Builder()
+                .url(baseUrl + PATH_POLL)
+                .header(HEADER_POLL_WAIT, String.valueOf(wait))
+                .post(RequestBody.create(hello.toString(), JSON))
+                .build();
+        long start = System.nanoTime();
+        Call call = pollClient.newCall(request);
+        pollCall = call;
+        try (Response response = call.execute()) {
+            updateFeatures(response);
+            if (!response.isSuccessful()) throw new IOException("HTTP " + response.code());
+            JSONObject body = new JSONObject(response.body().string());
+            if (!"ok".equals(body.optString("status"))) throw new IOException("Bad poll status");
+            boolean longPoll = "1".equals(response.header(HEADER_LONG_POLL));
+            markConnected(longPoll ? TRANSPORT_LONG_POLL : TRANSPORT_POLL);
+            // 不挂起的请求耗时即往返时延；长轮询的耗时包含等待命令的时间，不计入
+            if (!longPoll || wait == 0) recordRtt(System.nanoTime() - start);
+            JSONObject command = body.optJSONObject("command");
+            if (command != null) deliver(command);
+            schedule(this::pollOnce, longPoll || command != null ? 0 : POLL_INTERVAL_MS);
+        } catch (Exception e) {
+            if (!running) return;
+            markDisconnected();
+            schedule(this::pollOnce, nextBackoff());
+        } finally {
+            pollCall = null;
+        }
+    }
+
+    // -------------------------------------------------------
+    // 工具方法
+    // -------------------------------------------------------
+
+    private void deliver(JSONObject command) {
+        String id = command.optString("id", null);
+        if (id != null) receivedAt.put(id, System.nanoTime());
+        commandCount.incrementAndGet();
+        sink.onCommand(command);
+    }
+
+    private void markConnected(String newTransport) {
+        failures = 0;
+        transport = newTransport;
+        connected = true;
+    }
+
+    private void markDisconnected() {
+        if (connected) reconnectCount.incrementAndGet();
+        connected = false;
+    }
+
+    private void recordRtt(long nanos) {
+        double sample = nanos / 1_000_000.0;
+        double rtt = rttMillis;
+        rttMillis = rtt < 0 ? sample : rtt * 0.8 + sample * 0.2;
+    }
+
+    private long nextBackoff() {
+        return backoffDelay(failures++, random);
+    }
+
+    /**
+     * 第 attempt 次（从 0 开始）连续失败后的重连等待时长：上限按 BACKOFF_BASE_MS 翻倍增长至 BACKOFF_MAX_MS，
+     * 实际取值在 [上限/2, 上限) 内随机，避免多台设备在服务端重启后同时重连
+     */
+    static long backoffDelay(int attempt, Random random) {
+        long cap = Math.min(BACKOFF_MAX_MS, BACKOFF_BASE_MS << Math.min(attempt, 16));
+        return cap / 2 + (long) (random.nextDouble() * (cap / 2));
+    }
+
+    private void schedule(Runnable task, long delayMillis) {
+        if (!running) return;
+        try {
+            scheduler.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // 已停止
+        }
+    }
+}
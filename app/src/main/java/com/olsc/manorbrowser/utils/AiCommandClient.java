@@ -3,8 +3,9 @@
  *
  * 采用"手机主动连接 PC 服务端"的反向连接模式：
  *   1. 用户在设置中配置 PC 的 IP 地址（服务端地址）
- *   2. 本客户端每 1.5 秒向服务端 POST /api/phone/poll 获取待执行命令
- *   3. 执行命令后，将结果通过 POST /api/phone/result 上报给服务端
+ *   2. 本客户端通过 {@link AiCommandChannel} 连接服务端：优先 WebSocket 实时接收命令，
+ *      服务端不支持时降级为 HTTP 长轮询，旧版服务端则保持每 1.5 秒 POST /api/phone/poll 轮询
+ *   3. 命令在单独的执行线程上依次执行，结果经同一通道（或 POST /api/phone/result）上报给服务端
  *   4. 服务端根据命令结果继续驱动 AI 推理
  *
  * 无需知道手机 IP，无需 ADB，手机端主动发起连接。
@@ -18,17 +19,11 @@ import android.util.Log;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 public class AiCommandClient {
@@ -38,18 +33,29 @@ public class AiCommandClient {
     private static final String PREF_NAME = "ai_agent_prefs";
     private static final String PREF_SERVER_URL = "server_url";
 
-    // 网络超时时长（毫秒）
-    private static final int TIMEOUT_MS = 10_000;
-    // 轮询间隔（毫秒）
-    private static final int POLL_INTERVAL_MS = 1500;
+    // 等待类命令的默认超时（毫秒）
+    private static final long DEFAULT_WAIT_MS = 10_000;
+    // 导航的默认超时（毫秒）
+    private static final long DEFAULT_NAVIGATE_TIMEOUT_MS = 30_000;
+    // 网络空闲判定：连续这么长时间没有请求完成（毫秒）
+    private static final long DEFAULT_IDLE_MS = 500;
+    // 批量命令结果超过该长度（字符）时压缩
+    private static final int COMPRESS_THRESHOLD = 1024;
+    /** stop_on 中按前缀匹配的值的标记 */
+    private static final String STOP_ON_PREFIX = "prefix:";
+    /** 读取页面源码的脚本 */
+    private static final String SOURCE_JS = "document.documentElement.outerHTML";
+    /** evalForUpload 中按引用比较的结束标记 */
+    private static final String STREAM_END = new String("");
 
     private final Context context;
     private final BrowserCommandServer.CommandHandler handler;
-    private ScheduledExecutorService executor;
+    /** 命令执行线程：命令按到达顺序逐条执行，不占用网络线程 */
+    private ExecutorService executor;
+    private volatile AiCommandChannel channel;
 
     private volatile boolean running = false;
     private volatile String serverUrl = null;
-    private volatile boolean lastPollSuccessful = false;
 
     public AiCommandClient(Context context, BrowserCommandServer.CommandHandler handler) {
         this.context = context.getApplicationContext();
@@ -72,87 +78,111 @@ public class AiCommandClient {
             .putString(PREF_SERVER_URL, url)
             .apply();
         Log.i(TAG, "服务端地址已更新: " + url);
+        // 运行中修改地址时重新建立连接
+        synchronized (this) {
+            if (running) {
+                closeChannel();
+                openChannel();
+            }
+        }
     }
 
     public String getServerUrl() {
         return serverUrl;
     }
 
-    /** 启动后台轮询线程 */
-    public void start() {
+    /** 启动命令通道 */
+    public synchronized void start() {
         if (running) return;
         running = true;
-        executor = Executors.newSingleThreadScheduledExecutor(r -> {
-            Thread t = new Thread(r, "AiCmdPoller");
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "AiCmdExecutor");
             t.setDaemon(true);
             return t;
         });
-        executor.scheduleWithFixedDelay(this::poll, 0, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
-        Log.i(TAG, "开始轮询: " + serverUrl);
+        openChannel();
+        Log.i(TAG, "开始连接: " + serverUrl);
     }
 
-    /** 停止后台轮询线程 */
-    public void stop() {
+    /** 断开命令通道并停止执行线程 */
+    public synchronized void stop() {
         running = false;
+        closeChannel();
         if (executor != null) {
             executor.shutdownNow();
             executor = null;
         }
-        Log.i(TAG, "轮询已停止");
+        Log.i(TAG, "连接已停止");
     }
 
     public boolean isRunning() {
         return running;
     }
 
-    /** 最近一次轮询是否成功（用于 UI 显示连接状态） */
+    /** 与服务端的连接当前是否正常（用于 UI 显示连接状态） */
     public boolean isLastPollSuccessful() {
-        return lastPollSuccessful;
+        AiCommandChannel c = channel;
+        return c != null && c.isConnected();
+    }
+
+    /** 通道状态：传输方式、往返时延、最近一条命令的耗时等 */
+    public JSONObject getChannelStatus() {
+        AiCommandChannel c = channel;
+        return c != null ? c.getStats() : new JSONObject();
     }
 
     // -------------------------------------------------------
-    // 核心轮询逻辑
+    // 命令通道
     // -------------------------------------------------------
 
-    private void poll() {
-        if (!running || serverUrl == null || serverUrl.isEmpty()) return;
-        try {
-            String resp = doPost(serverUrl + "/api/phone/poll", buildPhoneInfo().toString());
-            if (resp == null || resp.isEmpty()) {
-                lastPollSuccessful = false;
-                return;
-            }
-
-            JSONObject respObj = new JSONObject(resp);
-            if (!"ok".equals(respObj.optString("status"))) {
-                lastPollSuccessful = false;
-                return;
-            }
-
-            lastPollSuccessful = true;
-
-            JSONObject cmd = respObj.optJSONObject("command");
-            if (cmd == null) return; // 无待执行命令，正常返回
-
-            String cmdId = cmd.getString("id");
-            String action = cmd.getString("action");
-            JSONObject params = cmd.optJSONObject("params");
-            if (params == null) params = new JSONObject();
+    private void openChannel() {
+        if (serverUrl == null || serverUrl.isEmpty()) return;
+        AiCommandChannel c = new AiCommandChannel(BrowserDownloader.getClient(), serverUrl, buildPhoneInfo(), this::onCommand);
+        channel = c;
+        c.start();
+    }
 
-            Log.d(TAG, "收到命令: " + action + " id=" + cmdId);
-            String result = executeCommand(action, params);
-            reportResult(cmdId, action, result);
+    private void closeChannel() {
+        AiCommandChannel c = channel;
+        channel = null;
+        if (c != null) c.stop();
+    }
 
-        } catch (Exception e) {
-            lastPollSuccessful = false;
-            Log.d(TAG, "轮询异常（等待下次重试）: " + e.getMessage());
+    /** 通道收到命令（网络线程），转交执行线程 */
+    private void onCommand(JSONObject cmd) {
+        ExecutorService e = executor;
+        if (!running || e == null) return;
+        final AiCommandChannel source = channel;
+        try {
+            e.execute(() -> {
+                String cmdId = cmd.optString("id", null);
+                String action = cmd.optString("action", "");
+                JSONObject params = cmd.optJSONObject("params");
+                if (params == null) params = new JSONObject();
+
+                Log.d(TAG, "收到命令: " + action + " id=" + cmdId);
+                CommandResult result = executeForUpload(action, params);
+                try {
+                    if (source != null && !source.sendResult(cmdId, action, result)) {
+                        Log.w(TAG, "上报结果失败: " + action + " id=" + cmdId);
+                    }
+                } finally {
+                    result.release();
+                }
+            });
+        } catch (java.util.concurrent.RejectedExecutionException ignored) {
+            // 已停止
         }
     }
 
     /** 构建发送给服务端的手机信息 */
-    private JSONObject buildPhoneInfo() throws Exception {
+    private JSONObject buildPhoneInfo() {
         JSONObject info = new JSONObject();
-        info.put("client", "manor-browser");
+        try {
+            info.put("client", "manor-browser");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
         return info;
     }
 
@@ -160,22 +190,56 @@ public class AiCommandClient {
     // 命令执行（委托给 MainActivity 的 CommandHandler）
     // -------------------------------------------------------
 
+    /**
+     * 执行通道收到的命令：返回大文本的命令直接交出原始数据，由通道边转义边压缩上传，
+     * 不再经过 JSONObject 包装；页面源码与脚本结果分块回传时直接写入临时文件，不在内存中拼接。
+     * 其余命令返回完整 JSON 文本
+     */
+    private CommandResult executeForUpload(String action, JSONObject params) {
+        switch (action) {
+            case "get_source":
+                return evalForUpload(SOURCE_JS, 15);
+            case "get_elements_tree":
+                return CommandResult.ofData(getElementsTree());
+            case "eval_js":
+                return evalForUpload(params.optString("js", "undefined"), 15);
+            default:
+                return CommandResult.ofJson(executeCommand(action, params));
+        }
+    }
+
     private String executeCommand(String action, JSONObject params) {
         try {
             switch (action) {
-                case "navigate": {
-                    String url = params.getString("url");
-                    handler.navigate(url);
-                    Thread.sleep(600); // 等待导航初始化
-                    return jsonOk("navigating");
+                case "navigate":
+                    return navigate(params);
+                case "wait_for_load": {
+                    Object session = handler.getCurrentSessionKey();
+                    if (session == null) return jsonError("没有打开的标签页");
+                    long start = System.currentTimeMillis();
+                    PageLoadTracker.Snapshot snap = PageLoadTracker.get().awaitIdle(session, params.optLong("timeout_ms", DEFAULT_NAVIGATE_TIMEOUT_MS));
+                    return pageResult(snap, start, false);
+                }
+                case "wait_for_network_idle": {
+                    long start = System.currentTimeMillis();
+                    String state = waitForNetworkIdle(params.optLong("idle_ms", DEFAULT_IDLE_MS), params.optLong("timeout_ms", DEFAULT_WAIT_MS));
+                    JSONObject data = new JSONObject().put("state", state).put("elapsed_ms", System.currentTimeMillis() - start);
+                    return "idle".equals(state) ? new JSONObject().put("status", "ok").put("data", data).toString() : jsonError("network idle " + state);
                 }
-                case "get_source": {
-                    String html = evalSync("document.documentElement.outerHTML", 15);
-                    return jsonOk(html);
+                case "wait_for_url_change": {
+                    Object session = handler.getCurrentSessionKey();
+                    if (session == null) return jsonError("没有打开的标签页");
+                    long start = System.currentTimeMillis();
+                    String from = params.has("from") ? params.getString("from") : PageLoadTracker.get().snapshot(session).url;
+                    PageLoadTracker.Snapshot snap = PageLoadTracker.get().awaitUrlChange(session, from, params.optLong("timeout_ms", DEFAULT_WAIT_MS));
+                    return pageResult(snap, start, false);
                 }
+                case "get_source":
+                    return jsonOk(getSource());
                 case "get_status": {
-                    String status = handler.getStatus();
-                    return new JSONObject().put("status", "ok").put("data", new JSONObject(status)).toString();
+                    JSONObject status = new JSONObject(handler.getStatus());
+                    status.put("channel", getChannelStatus());
+                    return new JSONObject().put("status", "ok").put("data", status).toString();
                 }
                 case "find_text": {
                     String text = params.optString("text", "");
@@ -287,29 +351,29 @@ public class AiCommandClient {
                     handler.createTab(url);
                     return jsonOk("ok");
                 }
-                case "get_elements_tree": {
-                    // 深度提取页面交互元素（链接、按钮、输入框），包含文本、坐标、属性
-                    String js = "(function(){" +
-                            "var els=document.querySelectorAll('a, button, [role=button], input, [class*=btn], [class*=button]');" +
-                            "var results=[];" +
-                            "for(var i=0; i<els.length; i++){" +
-                            "  var el=els[i]; var r=el.getBoundingClientRect();" +
-                            "  if(r.width < 2 || r.height < 2) continue;" +
-                            "  var text = (el.innerText || el.value || el.ariaLabel || el.placeholder || '').trim().substring(0, 80);" +
-                            "  if(!text && !el.href) continue;" +
-                            "  results.push({" +
-                            "    tag: el.tagName.toLowerCase()," +
-                            "    text: text," +
-                            "    href: el.href || null," +
-                            "    aria: el.ariaLabel || null," +
-                            "    x: Math.round(r.left), y: Math.round(r.top)," +
-                            "    w: Math.round(r.width), h: Math.round(r.height)" +
-                            "  });" +
-                            "  if(results.length > 80) break;" +
-                            "}" +
-                            "return JSON.stringify(results);})()";
-                    return jsonOk(evalSync(js, 12));
+                case "get_elements_tree":
+                    return jsonOk(getElementsTree());
+                case "get_page_model": {
+                    // 增量快照：传入上次返回的 doc 与 version，只返回之后变化的元素与被移除的 ID
+                    JSONObject args = new JSONObject()
+                            .put("doc", params.optString("doc", ""))
+                            .put("since", params.optLong("since", 0))
+                            .put("full", params.optBoolean("full", false));
+                    return callModel("snapshot", args, 12);
                 }
+                case "find_elements": {
+                    JSONObject args = new JSONObject()
+                            .put("text", params.optString("text", ""))
+                            .put("tag", params.optString("tag", ""))
+                            .put("limit", params.optInt("limit", 20));
+                    return callModel("find", args, 10);
+                }
+                case "click_element":
+                    return callModel("click", elementArgs(params), 8);
+                case "set_element_value":
+                    return callModel("set_value", elementArgs(params).put("value", params.optString("value", "")), 8);
+                case "scroll_to_element":
+                    return callModel("scroll_into_view", elementArgs(params), 8);
                 case "scroll_to": {
                     int x = params.optInt("x", 0);
                     int y = params.optInt("y", 0);
@@ -333,6 +397,14 @@ public class AiCommandClient {
                     handler.exitAi();
                     return jsonOk("ok");
                 }
+                case "wait_for_selector": {
+                    String sel = params.optString("selector", "");
+                    long timeoutMs = params.optLong("timeout_ms", DEFAULT_WAIT_MS);
+                    String state = waitForSelector(sel, timeoutMs);
+                    return "found".equals(state) ? jsonOk(state) : jsonError(waitForFailure(sel, state));
+                }
+                case "batch":
+                    return runBatch(params);
                 case "ping":
                     return jsonOk("pong");
                 default:
@@ -343,17 +415,298 @@ public class AiCommandClient {
         }
     }
 
-    /** 上报命令执行结果到服务端 */
-    private void reportResult(String cmdId, String action, String result) {
+    /** 页面源码 */
+    private String getSource() {
+        return evalSync(SOURCE_JS, 15);
+    }
+
+    /** 深度提取页面交互元素（链接、按钮、输入框），包含文本、坐标、属性 */
+    private String getElementsTree() {
+        String js = "(function(){" +
+                "var els=document.querySelectorAll('a, button, [role=button], input, [class*=btn], [class*=button]');" +
+                "var results=[];" +
+                "for(var i=0; i<els.length; i++){" +
+                "  var el=els[i]; var r=el.getBoundingClientRect();" +
+                "  if(r.width < 2 || r.height < 2) continue;" +
+                "  var text = (el.innerText || el.value || el.ariaLabel || el.placeholder || '').trim().substring(0, 80);" +
+                "  if(!text && !el.href) continue;" +
+                "  results.push({" +
+                "    tag: el.tagName.toLowerCase()," +
+                "    text: text," +
+                "    href: el.href || null," +
+                "    aria: el.ariaLabel || null," +
+                "    x: Math.round(r.left), y: Math.round(r.top)," +
+                "    w: Math.round(r.width), h: Math.round(r.height)" +
+                "  });" +
+                "  if(results.length > 80) break;" +
+                "}" +
+                "return JSON.stringify(results);})()";
+        return evalSync(js, 12);
+    }
+
+    // -------------------------------------------------------
+    // 页面模型（稳定元素 ID + 增量快照，由内置扩展的内容脚本维护）
+    // -------------------------------------------------------
+
+    /** 按 ID 操作元素的参数：element 为页面模型中的元素 ID，doc 可选，用于识别页面已刷新 */
+    private JSONObject elementArgs(JSONObject params) throws Exception {
+        return new JSONObject()
+                .put("element", params.getInt("element"))
+                .put("doc", params.optString("doc", ""));
+    }
+
+    /**
+     * 在执行线程上同步调用页面模型操作，成功时结果对象放在 data 中
+     */
+    private String callModel(String op, JSONObject args, int timeoutSec) throws Exception {
+        java.util.concurrent.CountDownLatch latch = new java.util.concurrent.CountDownLatch(1);
+        String[] result = {null};
+        JsEvalBridge.Call call = handler.callPageModel(op, args, TimeUnit.SECONDS.toMillis(timeoutSec), r -> {
+            result[0] = r;
+            latch.countDown();
+        });
         try {
-            JSONObject payload = new JSONObject();
-            payload.put("id", cmdId);
-            payload.put("action", action);
-            payload.put("result", result);
-            doPost(serverUrl + "/api/phone/result", payload.toString());
+            if (!latch.await(timeoutSec + 1, TimeUnit.SECONDS)) call.cancel();
+        } catch (InterruptedException e) {
+            call.cancel();
+            Thread.currentThread().interrupt();
+        }
+        if (result[0] == null) return jsonError("page model timeout");
+        Object value = new org.json.JSONTokener(result[0]).nextValue();
+        if (value instanceof JSONObject) {
+            return new JSONObject().put("status", "ok").put("data", value).toString();
+        }
+        String message = String.valueOf(value);
+        return jsonError(message.startsWith("error:") ? message.substring("error:".length()) : message);
+    }
+
+    // -------------------------------------------------------
+    // 导航与等待
+    // -------------------------------------------------------
+
+    /**
+     * 导航并等待完成，由页面加载回调驱动，不做固定休眠。
+     *
+     * 参数：url；wait = none | load（默认）| networkidle；timeout_ms；idle_ms；selector（加载后再等待该元素出现）
+     * 返回：{url, title, state(loaded/failed/timeout), http_status, elapsed_ms, load_ms[, network, selector]}
+     */
+    private String navigate(JSONObject params) throws Exception {
+        String url = params.getString("url");
+        String wait = params.optString("wait", "load");
+        long timeoutMs = params.optLong("timeout_ms", DEFAULT_NAVIGATE_TIMEOUT_MS);
+        Object session = handler.getCurrentSessionKey();
+        if (session == null) return jsonError("没有打开的标签页");
+
+        PageLoadTracker tracker = PageLoadTracker.get();
+        PageLoadTracker.Snapshot before = tracker.snapshot(session);
+        long start = System.currentTimeMillis();
+        handler.navigate(url);
+        if ("none".equals(wait)) return jsonOk("navigating");
+
+        PageLoadTracker.Snapshot snap = tracker.awaitLoad(session, before.generation, before.url, timeoutMs);
+        long remaining = Math.max(0, timeoutMs - (System.currentTimeMillis() - start));
+        String network = null;
+        if ("networkidle".equals(wait) && !snap.timedOut) {
+            network = waitForNetworkIdle(params.optLong("idle_ms", DEFAULT_IDLE_MS), remaining);
+        }
+        String selectorState = null;
+        String selector = params.optString("selector", "");
+        if (!selector.isEmpty() && !snap.timedOut) {
+            remaining = Math.max(0, timeoutMs - (System.currentTimeMillis() - start));
+            selectorState = waitForSelector(selector, remaining);
+        }
+
+        JSONObject result = new JSONObject(pageResult(snap, start, !snap.timedOut && snap.success));
+        JSONObject data = result.getJSONObject("data");
+        if (network != null) data.put("network", network);
+        if (selectorState != null) data.put("selector", selectorState);
+        return result.toString();
+    }
+
+    /**
+     * 把页面状态组织为命令结果
+     *
+     * @param withHttpStatus 是否从页面的 Navigation Timing 读取 HTTP 状态码（需要一次脚本执行）
+     */
+    private String pageResult(PageLoadTracker.Snapshot snap, long start, boolean withHttpStatus) throws Exception {
+        JSONObject data = new JSONObject()
+                .put("url", snap.url != null ? snap.url : handler.getCurrentUrl())
+                .put("title", handler.getCurrentTitle())
+                .put("state", snap.state())
+                .put("elapsed_ms", System.currentTimeMillis() - start)
+                .put("load_ms", snap.loadMillis);
+        if (withHttpStatus) {
+            String status = evalSync("(function(){var n=performance.getEntriesByType('navigation')[0];return n&&n.responseStatus?n.responseStatus:0;})()", 3);
+            try {
+                data.put("http_status", Integer.parseInt(status.trim()));
+            } catch (NumberFormatException ignored) {
+                data.put("http_status", 0);
+            }
+        }
+        return new JSONObject().put("status", "ok").put("data", data).toString();
+    }
+
+    /**
+     * 等待网络空闲：页面内用 PerformanceObserver 监听资源请求完成，连续 idleMs 内没有新的请求完成即视为空闲
+     *
+     * @return "idle" 或 "timeout"
+     */
+    private String waitForNetworkIdle(long idleMs, long timeoutMs) {
+        String js = "new Promise(function(resolve){var done=false,timer,ob=null,deadline;" +
+                "function finish(s){if(done)return;done=true;if(ob)ob.disconnect();clearTimeout(timer);clearTimeout(deadline);resolve(s);}" +
+                "function arm(){clearTimeout(timer);timer=setTimeout(function(){finish('idle');}," + idleMs + ");}" +
+                "try{ob=new PerformanceObserver(function(){arm();});ob.observe({type:'resource'});}catch(e){}" +
+                "deadline=setTimeout(function(){finish('timeout');}," + timeoutMs + ");arm();})";
+        int timeoutSec = (int) ((timeoutMs + 999) / 1000) + 1;
+        return evalSync(js, timeoutSec);
+    }
+
+    // -------------------------------------------------------
+    // 批量命令
+    // -------------------------------------------------------
+
+    /**
+     * 在本机按顺序执行一组动作，全部结果在一次响应中返回，多步操作只需一次网络往返。
+     *
+     * 参数：
+     *   steps: [{action, params, wait_for, timeout_ms, stop_on}]
+     *     wait_for  执行前等待该选择器出现（MutationObserver），超时或选择器无效时该步失败
+     *     stop_on   结果 data 等于其中任一值时停止后续步骤，如 ["not_found"]；
+     *               以 "prefix:" 开头的值按前缀匹配，如 ["prefix:error:"]；"error" 同时匹配失败的步骤
+     *   continue_on_error: 某步返回 error 时是否继续（默认停止）
+     *   compress: 结果较大时是否 gzip + Base64 压缩（默认 true）
+     *
+     * 返回：{status, completed, total, stopped_at, elapsed_ms, results:[{step, action, ms, result}]}；
+     * 压缩时为 {status:"ok", encoding:"gzip+base64", data:<上述对象压缩后的文本>}
+     */
+    private String runBatch(JSONObject params) throws Exception {
+        JSONArray steps = params.optJSONArray("steps");
+        if (steps == null) return jsonError("steps 不能为空");
+        boolean continueOnError = params.optBoolean("continue_on_error", false);
+        boolean compress = params.optBoolean("compress", true);
+
+        long batchStart = System.currentTimeMillis();
+        JSONArray results = new JSONArray();
+        int stoppedAt = -1;
+        for (int i = 0; i < steps.length(); i++) {
+            if (Thread.currentThread().isInterrupted()) {
+                stoppedAt = i;
+                break;
+            }
+            JSONObject step = steps.optJSONObject(i);
+            String action = step != null ? step.optString("action", "") : "";
+            long stepStart = System.currentTimeMillis();
+            String result;
+            if (step == null || action.isEmpty()) {
+                result = jsonError("无效的步骤");
+            } else if ("batch".equals(action)) {
+                result = jsonError("不支持嵌套 batch");
+            } else {
+                result = null;
+                String waitFor = step.optString("wait_for", "");
+                if (!waitFor.isEmpty()) {
+                    long timeoutMs = step.optLong("timeout_ms", DEFAULT_WAIT_MS);
+                    String state = waitForSelector(waitFor, timeoutMs);
+                    if (!"found".equals(state)) result = jsonError(waitForFailure(waitFor, state));
+                }
+                if (result == null) {
+                    JSONObject stepParams = step.optJSONObject("params");
+                    result = executeCommand(action, stepParams != null ? stepParams : new JSONObject());
+                }
+            }
+
+            JSONObject parsed = parseResult(result);
+            results.put(new JSONObject()
+                    .put("step", i)
+                    .put("action", action)
+                    .put("ms", System.currentTimeMillis() - stepStart)
+                    .put("result", parsed));
+
+            boolean failed = "error".equals(parsed.optString("status"));
+            if ((failed && !continueOnError) || matchesStopCondition(step, parsed)) {
+                stoppedAt = i;
+                break;
+            }
+        }
+
+        JSONObject response = new JSONObject()
+                .put("status", "ok")
+                .put("completed", results.length())
+                .put("total", steps.length())
+                .put("stopped_at", stoppedAt)
+                .put("elapsed_ms", System.currentTimeMillis() - batchStart)
+                .put("results", results);
+        String text = response.toString();
+        if (!compress || text.length() < COMPRESS_THRESHOLD) return text;
+        return new JSONObject()
+                .put("status", "ok")
+                .put("encoding", "gzip+base64")
+                .put("data", gzipBase64(text))
+                .toString();
+    }
+
+    /** 步骤结果的 data 命中 stop_on 中任一值时返回 true：默认完全相等，"prefix:" 形式按前缀匹配 */
+    private boolean matchesStopCondition(JSONObject step, JSONObject result) {
+        JSONArray stopOn = step != null ? step.optJSONArray("stop_on") : null;
+        if (stopOn == null) return false;
+        String data = result.optString("data", "");
+        for (int i = 0; i < stopOn.length(); i++) {
+            String value = stopOn.optString(i, "");
+            if (value.isEmpty()) continue;
+            if (value.startsWith(STOP_ON_PREFIX)) {
+                String prefix = value.substring(STOP_ON_PREFIX.length());
+                if (!prefix.isEmpty() && data.startsWith(prefix)) return true;
+            } else if (data.equals(value)) {
+                return true;
+            }
+            // stop_on: ["error"] 同时匹配失败的步骤
+            if ("error".equals(value) && "error".equals(result.optString("status"))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 等待选择器出现：先立即检查一次，之后由 MutationObserver 在 DOM 变化时检查，不做定时轮询
+     *
+     * @return "found"、"timeout"，或选择器无效、脚本执行失败时的 "error:原因"
+     */
+    private String waitForSelector(String selector, long timeoutMs) {
+        String sel = JSONObject.quote(selector);
+        String js = "new Promise(function(resolve){var sel=" + sel + ";" +
+                "try{if(document.querySelector(sel)){resolve('found');return;}}catch(e){resolve('error:'+e.message);return;}" +
+                "var timer,ob=new MutationObserver(function(){if(document.querySelector(sel)){ob.disconnect();clearTimeout(timer);resolve('found');}});" +
+                "ob.observe(document.documentElement,{childList:true,subtree:true,attributes:true});" +
+                "timer=setTimeout(function(){ob.disconnect();resolve('timeout');}," + timeoutMs + ");})";
+        int timeoutSec = (int) ((timeoutMs + 999) / 1000) + 1;
+        return evalSync(js, timeoutSec);
+    }
+
+    /** wait_for 未等到元素时的错误信息：脚本返回 "error:原因" 时带上原因，其余视为超时 */
+    private static String waitForFailure(String selector, String state) {
+        if (state != null && state.startsWith("error:")) {
+            return "wait_for error: " + state.substring("error:".length()) + " (" + selector + ")";
+        }
+        return "wait_for timeout: " + selector;
+    }
+
+    private JSONObject parseResult(String result) {
+        try {
+            return new JSONObject(result);
         } catch (Exception e) {
-            Log.w(TAG, "上报结果失败: " + e.getMessage());
+            try {
+                return new JSONObject().put("status", "ok").put("data", result);
+            } catch (Exception ignored) {
+                return new JSONObject();
+            }
+        }
+    }
+
+    private static String gzipBase64(String text) throws java.io.IOException {
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream(text.length() / 4);
+        try (java.util.zip.GZIPOutputStream gzip = new java.util.zip.GZIPOutputStream(bytes)) {
+            gzip.write(text.getBytes(java.nio.charset.StandardCharsets.UTF_8));
         }
+        return java.util.Base64.getEncoder().encodeToString(bytes.toByteArray());
     }
 
     // -------------------------------------------------------
@@ -361,21 +714,96 @@ public class AiCommandClient {
     // -------------------------------------------------------
 
     /**
-     * 同步执行 JS，内部通过 CountDownLatch 阻塞等待回调，最多等 timeoutSec 秒。
+     * 在执行线程上同步等待 JS 结果，最多等 timeoutSec 秒；超时由执行桥负责取消并回调 "error:timeout"。
+     * 等待被中断（客户端停止）时取消执行。
      */
     private String evalSync(String js, int timeoutSec) {
         java.util.concurrent.CountDownLatch latch = new java.util.concurrent.CountDownLatch(1);
         String[] result = {""};
-        handler.evalJs(js, r -> {
+        JsEvalBridge.Call call = handler.evalJs(js, TimeUnit.SECONDS.toMillis(timeoutSec), r -> {
             result[0] = unquoteJson(r);
             latch.countDown();
         });
         try {
-            latch.await(timeoutSec, TimeUnit.SECONDS);
-        } catch (InterruptedException ignored) {}
+            // 多等一秒，让桥的超时回调先到达
+            if (!latch.await(timeoutSec + 1, TimeUnit.SECONDS)) call.cancel();
+        } catch (InterruptedException e) {
+            call.cancel();
+            Thread.currentThread().interrupt();
+        }
         return result[0];
     }
 
+    /**
+     * 执行脚本并直接得到上报用的结果，最多等 timeoutSec 秒。
+     * 执行桥分块回传的结果由执行线程逐块写入缓存目录下的临时文件：结果是 JSON 字符串时文件内容
+     * 原样作为 data 上传，其余 JSON 值作为原始文本转义，与 evalSync 的结果一致，全程不生成完整字符串。
+     * 未分块的结果、失败与超时与 evalSync 相同。
+     */
+    private CommandResult evalForUpload(String js, int timeoutSec) {
+        java.util.concurrent.BlockingQueue<String> chunks = new java.util.concurrent.LinkedBlockingQueue<>();
+        String[] result = {null};
+        JsEvalBridge.Call call = handler.evalJs(js, TimeUnit.SECONDS.toMillis(timeoutSec), new JsEvalBridge.ChunkedCallback() {
+            @Override
+            public void onChunk(String chunk) {
+                chunks.add(chunk);
+            }
+
+            @Override
+            public void onResult(String r) {
+                result[0] = r;
+                chunks.add(STREAM_END);
+            }
+        });
+        java.io.File file = null;
+        java.io.Writer out = null;
+        boolean isJsonString = false;
+        try {
+            // 多等一秒，让桥的超时回调先到达
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSec + 1);
+            while (true) {
+                String chunk = chunks.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (chunk == null) {
+                    call.cancel();
+                    return CommandResult.ofData("");
+                }
+                if (chunk == STREAM_END) break;
+                if (out == null) {
+                    file = java.io.File.createTempFile("eval", ".json", context.getCacheDir());
+                    out = new java.io.BufferedWriter(new java.io.OutputStreamWriter(
+                            new java.io.FileOutputStream(file), java.nio.charset.StandardCharsets.UTF_8));
+                    isJsonString = chunk.startsWith("\"");
+                }
+                out.write(chunk);
+            }
+            if (result[0] == null && out != null) {
+                out.close();
+                out = null;
+                CommandResult streamed = CommandResult.ofDataFile(file, isJsonString);
+                file = null;
+                return streamed;
+            }
+            return CommandResult.ofData(result[0] != null ? unquoteJson(result[0]) : "null");
+        } catch (InterruptedException e) {
+            call.cancel();
+            Thread.currentThread().interrupt();
+            return CommandResult.ofData("");
+        } catch (java.io.IOException e) {
+            e.printStackTrace();
+            call.cancel();
+            return CommandResult.ofData("error:" + e.getMessage());
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (java.io.IOException ignored) {
+                }
+            }
+            // 未交给结果的临时文件（失败、超时、中断）在这里删除
+            if (file != null) file.delete();
+        }
+    }
+
     /**
      * GeckoView 返回的 JS 结果可能被包一层 JSON 引号，此方法负责去掉外层引号。
      */
@@ -392,33 +820,6 @@ public class AiCommandClient {
         return s;
     }
 
-    /** 发起 HTTP POST 请求，返回响应体字符串（非 200 返回 null） */
-    private String doPost(String urlStr, String body) throws Exception {
-        URL url = new URL(urlStr);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("POST");
-        conn.setConnectTimeout(TIMEOUT_MS);
-        conn.setReadTimeout(TIMEOUT_MS);
-        conn.setDoOutput(true);
-        conn.setRequestProperty("Content-Type", "application/json; charset=utf-8");
-        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
-        conn.setFixedLengthStreamingMode(bytes.length);
-        try (OutputStream os = conn.getOutputStream()) {
-            os.write(bytes);
-        }
-        int code = conn.getResponseCode();
-        if (code != 200) {
-            Log.w(TAG, "HTTP 错误 " + code + " from " + urlStr);
-            return null;
-        }
-        StringBuilder sb = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = br.readLine()) != null) sb.append(line);
-        }
-        return sb.toString();
-    }
-
     private String jsonOk(String data) {
         try {
             return new JSONObject().put("status", "ok").put("data", data).toString();
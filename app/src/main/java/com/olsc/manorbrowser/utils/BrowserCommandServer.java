@@ -16,6 +16,8 @@ import com.olsc.manorbrowser.data.DownloadInfo;
 import com.olsc.manorbrowser.data.HistoryStorage;
 import com.olsc.manorbrowser.data.TabInfo;
 
+import org.json.JSONObject;
+
 import java.util.List;
 
 public class BrowserCommandServer {
@@ -27,6 +29,9 @@ public class BrowserCommandServer {
         /** 导航到指定 URL */
         void navigate(String url);
 
+        /** 当前标签页的会话对象（用作 PageLoadTracker 的键），没有标签页时返回 null */
+        Object getCurrentSessionKey();
+
         /** 后退 */
         void goBack();
 
@@ -36,8 +41,20 @@ public class BrowserCommandServer {
         /** 刷新 */
         void reload();
 
-        /** 异步执行 JavaScript，通过 callback 返回字符串结果 */
-        void evalJs(String js, EvalCallback callback);
+        /**
+         * 在当前标签页异步执行 JavaScript，通过 callback 返回 JSON 文本结果（可为 Promise 的结果）。
+         * 多次调用可同时进行，超时后回调 "error:timeout"。
+         *
+         * @return 可取消的执行句柄
+         */
+        JsEvalBridge.Call evalJs(String js, long timeoutMs, EvalCallback callback);
+
+        /**
+         * 在当前标签页调用页面模型操作（见 JsEvalBridge.callPageModel），通过 callback 返回 JSON 文本结果
+         *
+         * @return 可取消的执行句柄
+         */
+        JsEvalBridge.Call callPageModel(String op, JSONObject args, long timeoutMs, EvalCallback callback);
 
         /** 获取浏览历史，可按时间字符串模糊过滤 */
         List<HistoryStorage.HistoryItem> getHistory(String timeFilter);
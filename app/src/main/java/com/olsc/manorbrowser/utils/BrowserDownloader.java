@@ -1,6 +1,6 @@
 /**
  * 浏览器内置下载器
- * 使用 OkHttp 实现手动下载逻辑，支持通知栏进度显示、多线程下载以及 Firefox WebExtension (.xpi) 的自动安装。
+ * 使用 OkHttp 实现手动下载逻辑，支持通知栏进度显示、分段并行下载与断点续传以及 Firefox WebExtension (.xpi) 的自动安装。
  */
 package com.olsc.manorbrowser.utils;
 
@@ -23,12 +23,9 @@ import com.olsc.manorbrowser.R;
 import com.olsc.manorbrowser.activity.MainActivity;
 import com.olsc.manorbrowser.data.DownloadStorage;
 
-import okhttp3.Call;
-import okhttp3.Callback;
 import okhttp3.OkHttpClient;
 import okhttp3.Protocol;
 import okhttp3.Request;
-import okhttp3.Response;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -39,6 +36,10 @@ import java.util.concurrent.TimeUnit;
 public class BrowserDownloader {
     /** 下载通知渠道 ID */
     private static final String CHANNEL_ID = "browser_downloads_http";
+    /** 下载完成后摘要与服务器声明的不一致 */
+    public static final int REASON_INTEGRITY_FAILED = 1004;
+    /** 已存在相同内容的文件，记录直接指向现有副本（状态为已完成） */
+    public static final int REASON_DUPLICATE = 1005;
     /** 单例 OkHttpClient 实例 */
     private static OkHttpClient client;
 
@@ -100,24 +101,49 @@ public class BrowserDownloader {
         return client;
     }
 
-    /** 正在进行的下载任务映射表，用于支持取消功能 */
-    private static final java.util.concurrent.ConcurrentHashMap<Long, Call> activeCalls = new java.util.concurrent.ConcurrentHashMap<>();
+    /** 正在进行的分段下载任务，用于支持取消功能 */
+    private static final java.util.concurrent.ConcurrentHashMap<Long, SegmentedDownloader> activeDownloads = new java.util.concurrent.ConcurrentHashMap<>();
+    /** 因调度需要（用户暂停、约束条件不满足）而中断的任务 -> 暂停原因 */
+    private static final java.util.concurrent.ConcurrentHashMap<Long, Integer> pauseRequests = new java.util.concurrent.ConcurrentHashMap<>();
+    /** 分段拉取线程池，所有任务共享 */
+    private static final java.util.concurrent.ExecutorService segmentExecutor = java.util.concurrent.Executors.newCachedThreadPool();
 
     /**
      * 取消特定的下载任务
      * @param taskId 任务 ID (时间戳)
      */
     public static void cancel(long taskId) {
-        Call call = activeCalls.remove(taskId);
-        if (call != null) {
+        DownloadScheduler.forget(taskId);
+        SegmentedDownloader downloader = activeDownloads.remove(taskId);
+        if (downloader != null) {
             try {
-                call.cancel();
+                downloader.cancel();
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }
     }
 
+    /**
+     * 中断运行中的任务但保留分段进度，由调度器在之后继续。
+     * 调度器标记任务运行后，工作线程要稍后才登记下载器；暂停请求总是先记下，
+     * 在这段间隙到达的请求由 runTask 登记下载器后处理，不会丢失
+     *
+     * @param reason 暂停原因；用户暂停时任务转为暂停状态，其余原因（等待 Wi-Fi / 充电）时任务回到队列
+     */
+    static void pause(long taskId, int reason) {
+        pauseRequests.put(taskId, reason);
+        SegmentedDownloader downloader = activeDownloads.get(taskId);
+        if (downloader != null) downloader.cancel();
+    }
+
+    /**
+     * 清除任务残留的暂停请求；调度器在任务结束后调用，避免任务刚结束时到达的请求影响下次运行
+     */
+    static void clearPauseRequest(long taskId) {
+        pauseRequests.remove(taskId);
+    }
+
     /**
      * 核心下载方法（流式版本）——直接使用 GeckoView 已经建立的连接流写入磁盘。
      *
@@ -130,10 +156,12 @@ public class BrowserDownloader {
      * @param mimeType  MIME 类型
      * @param filename  保存的文件名
      * @param totalLength 文件总大小（从 Content-Length header 读取，-1 表示未知）
+     * @param headers     响应头，用于在写入之前按校验值 / 声明的摘要查重，可为 null
      * @param inputStream GeckoView 提供的已认证响应体流
      */
     public static void downloadFromStream(Context context, String url, String mimeType, String filename,
-                                          long totalLength, java.io.InputStream inputStream) {
+                                          long totalLength, java.util.Map<String, String> headers,
+                                          java.io.InputStream inputStream) {
         if (inputStream == null) return;
         
         Context appContext = context.getApplicationContext();
@@ -153,6 +181,12 @@ public class BrowserDownloader {
         downloadInfo.status = 1;
         downloadInfo.isInternal = true;
         downloadInfo.totalBytes = totalLength;
+        downloadInfo.mimeType = mimeType;
+        // 与分段下载的探测一致：弱 ETag 不作为校验值；流是完整响应，Content-MD5 也代表整个文件
+        String etag = header(headers, "ETag");
+        downloadInfo.validator = etag != null && !etag.startsWith("W/") ? etag : header(headers, "Last-Modified");
+        downloadInfo.expectedDigest = StreamingDigest.parseExpected(header(headers, "Repr-Digest"),
+                header(headers, "Digest"), header(headers, "Content-MD5"));
         DownloadHelper.sInternalDownloads.add(downloadInfo);
         DownloadStorage.saveDownload(appContext, downloadInfo);
 
@@ -167,11 +201,19 @@ public class BrowserDownloader {
 
         // 在后台线程中把流写到磁盘
         final java.io.InputStream finalStream = inputStream;
-        java.util.concurrent.Executors.newSingleThreadExecutor().execute(() -> {
+        final TokenBucket bandwidth = DownloadScheduler.get(appContext).getBandwidth();
+        DownloadScheduler.executeStream(() -> {
             java.io.OutputStream os = null;
             android.net.Uri fileUri = null;
             File legacyFile = null;
             try {
+                // 写入之前查重，与 runTask 相同：命中时不再打开输出文件，直接丢弃响应流
+                com.olsc.manorbrowser.data.DownloadInfo known = findExistingCopy(appContext, downloadInfo,
+                        StreamingDigest.expectedSha256Hex(downloadInfo.expectedDigest));
+                if (known != null) {
+                    linkToExisting(appContext, downloadInfo, known, builder, notificationManager, notificationId);
+                    return;
+                }
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
                     android.content.ContentValues values = new android.content.ContentValues();
                     values.put(android.provider.MediaStore.Downloads.DISPLAY_NAME, filename);
@@ -202,10 +244,16 @@ public class BrowserDownloader {
                 int read;
                 long downloaded = 0;
                 long lastUpdate = 0, lastStore = 0;
+                DownloadProgressBus progressBus = DownloadProgressBus.get(appContext);
+                StreamingDigest digest = StreamingDigest.forExpected(null, downloadInfo.expectedDigest);
                 while ((read = finalStream.read(buffer)) != -1) {
                     os.write(buffer, 0, read);
+                    digest.update(buffer, 0, read);
                     downloaded += read;
                     downloadInfo.currentBytes = downloaded;
+                    progressBus.publish(downloadInfo);
+                    long waitNanos = bandwidth.reserve(read);
+                    if (waitNanos > 0) TimeUnit.NANOSECONDS.sleep(waitNanos);
 
                     long now = System.currentTimeMillis();
                     if (now - lastUpdate > 500) {
@@ -222,10 +270,26 @@ public class BrowserDownloader {
                     }
                     if (now - lastStore > 2000) {
                         lastStore = now;
-                        DownloadStorage.saveDownload(appContext, downloadInfo);
+                        DownloadStorage.updateProgress(appContext, downloadInfo);
                     }
                 }
                 os.flush();
+                digest.finish(downloaded);
+                downloadInfo.totalBytes = downloaded;
+                if (!digest.verify(downloadInfo.expectedDigest)) {
+                    throw new SegmentedDownloader.IntegrityException(downloadInfo.expectedDigest);
+                }
+                downloadInfo.sha256 = digest.getSha256Hex();
+
+                // 内容与已下载过的文件完全相同：删除刚写入的副本，指向已有文件
+                com.olsc.manorbrowser.data.DownloadInfo existing = findExistingCopy(appContext, downloadInfo, downloadInfo.sha256);
+                if (existing != null) {
+                    os.close();
+                    os = null;
+                    deletePartial(appContext, downloadInfo.filePath);
+                    linkToExisting(appContext, downloadInfo, existing, builder, notificationManager, notificationId);
+                    return;
+                }
 
                 downloadInfo.status = 3;
                 DownloadStorage.saveDownload(appContext, downloadInfo);
@@ -238,13 +302,16 @@ public class BrowserDownloader {
             } catch (Exception e) {
                 Log.e("BrowserDownloader", "Stream download error", e);
                 downloadInfo.status = 4;
-                downloadInfo.reason = 1001;
+                downloadInfo.reason = e instanceof SegmentedDownloader.IntegrityException ? REASON_INTEGRITY_FAILED : 1001;
                 DownloadStorage.saveDownload(appContext, downloadInfo);
                 builder.setContentText(appContext.getString(R.string.download_status_failed))
                        .setProgress(0, 0, false).setOngoing(false);
                 notificationManager.notify(notificationId, builder.build());
                 if (fileUri != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
                     try { appContext.getContentResolver().delete(fileUri, null, null); } catch (Exception ignored) {}
+                } else if (legacyFile != null && e instanceof SegmentedDownloader.IntegrityException) {
+                    // 内容已损坏，不保留文件
+                    legacyFile.delete();
                 }
             } finally {
                 try { if (os != null) os.close(); } catch (Exception ignored) {}
@@ -255,6 +322,7 @@ public class BrowserDownloader {
 
     /**
      * 执行下载的核心方法（OkHttp 版本，用于非 GeckoView 触发的下载）
+     * 大文件按 Range 拆分为多段并行下载，进度按段持久化，网络中断后可续传。
      *
      * @param context   上下文
      * @param url       下载地址
@@ -271,6 +339,32 @@ public class BrowserDownloader {
             Toast.makeText(appContext, R.string.msg_download_starting, Toast.LENGTH_SHORT).show()
         );
 
+        // 初始化任务追踪对象，供下载管理界面使用；请求头一并保存，续传时需要原样带上
+        final long taskId = System.currentTimeMillis();
+        final com.olsc.manorbrowser.data.DownloadInfo downloadInfo = new com.olsc.manorbrowser.data.DownloadInfo(
+            taskId, filename, url, null, null);
+        downloadInfo.isInternal = true;
+        downloadInfo.userAgent = userAgent;
+        downloadInfo.cookie = cookie;
+        downloadInfo.referer = referer;
+        DownloadHelper.sInternalDownloads.add(downloadInfo);
+        // 进入调度队列，由调度器决定何时开始
+        DownloadScheduler.get(appContext).enqueue(downloadInfo);
+    }
+
+    /**
+     * 在调度器的工作线程中执行分段下载，阻塞直到完成、失败、暂停或取消
+     *
+     * @param connections 调度器分配的连接数（同时进行的分段数）
+     * @param bandwidth   全局限速器
+     */
+    static void runTask(Context appContext, com.olsc.manorbrowser.data.DownloadInfo downloadInfo,
+                        int connections, TokenBucket bandwidth) {
+        final long taskId = downloadInfo.id;
+        downloadInfo.status = 1;
+        downloadInfo.speed = 0;
+        DownloadStorage.saveDownload(appContext, downloadInfo);
+        final String filename = downloadInfo.title;
         NotificationManager notificationManager = (NotificationManager) appContext.getSystemService(Context.NOTIFICATION_SERVICE);
 
         // 创建通知渠道 (Android 8.0+)
@@ -281,15 +375,6 @@ public class BrowserDownloader {
         );
         notificationManager.createNotificationChannel(channel);
 
-        // 初始化任务追踪对象，供下载管理界面使用
-        final long taskId = System.currentTimeMillis();
-        final com.olsc.manorbrowser.data.DownloadInfo downloadInfo = new com.olsc.manorbrowser.data.DownloadInfo(
-            taskId, filename, url, null, null);
-        downloadInfo.status = 1; // 正在下载
-        downloadInfo.isInternal = true;
-        DownloadHelper.sInternalDownloads.add(downloadInfo);
-        DownloadStorage.saveDownload(appContext, downloadInfo);
-
         // 初始化通知
         final int notificationId = (int) taskId;
         NotificationCompat.Builder builder = new NotificationCompat.Builder(appContext, CHANNEL_ID)
@@ -301,206 +386,394 @@ public class BrowserDownloader {
 
         notificationManager.notify(notificationId, builder.build());
 
-        // 构造 OkHttp 请求
-        Request.Builder reqBuilder = new Request.Builder().url(url);
-        // 赋予更像浏览器的默认 Header
-        reqBuilder.header("Accept", "*/*");
-        reqBuilder.header("Accept-Language", "zh-CN,zh;q=0.9,en-US;q=0.8,en;q=0.7");
-        
-        if (!TextUtils.isEmpty(userAgent)) reqBuilder.header("User-Agent", userAgent);
-        else reqBuilder.header("User-Agent", "Mozilla/5.0 (Linux; Android 10; K) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/119.0.0.0 Mobile Safari/537.36");
-        
-        if (!TextUtils.isEmpty(cookie)) reqBuilder.header("Cookie", cookie);
-        if (!TextUtils.isEmpty(referer) && !referer.startsWith("about:")) reqBuilder.header("Referer", referer);
-
-        // 创建请求并入队追踪
-        Call call = getClient().newCall(reqBuilder.build());
-        activeCalls.put(taskId, call);
-
-        // 开始异步网络请求
-        call.enqueue(new Callback() {
-            @Override
-            public void onFailure(@NonNull Call call, @NonNull java.io.IOException e) {
-                activeCalls.remove(taskId);
-                if (call.isCanceled()) return; // 若是手动取消则不报错
-
-                Log.e("BrowserDownloader", "Download failed: " + e.getMessage());
-                // 下载失败回调
-                downloadInfo.status = 4; // 失败
-                downloadInfo.reason = 1000; // 自定义错误起始码
-                DownloadStorage.saveDownload(appContext, downloadInfo);
-                builder.setContentText(appContext.getString(R.string.download_status_failed))
-                       .setProgress(0, 0, false)
-                       .setOngoing(false);
-                notificationManager.notify(notificationId, builder.build());
-                new Handler(Looper.getMainLooper()).post(() ->
-                        Toast.makeText(appContext, appContext.getString(R.string.msg_download_failed, filename), Toast.LENGTH_SHORT).show());
+        SegmentedDownloader downloader = new SegmentedDownloader(getClient(), buildRequest(downloadInfo),
+                segmentExecutor, connections);
+        downloader.setRateLimiter(bandwidth);
+        activeDownloads.put(taskId, downloader);
+
+        java.nio.channels.FileChannel fileChannel = null;
+        java.nio.channels.FileChannel digestReader = null;
+        try {
+            // 先登记下载器再检查：在登记之前到达的暂停请求在这里处理，之后到达的由 pause 直接中断下载器
+            if (pauseRequests.containsKey(taskId)) throw new SegmentedDownloader.CancelledException();
+            // 1. 恢复已保存的分段进度；没有进度或文件已丢失时重新探测
+            SegmentedDownloader.State state = new SegmentedDownloader.State();
+            if (downloadInfo.filePath != null && state.decodeSegments(downloadInfo.segments)) {
+                state.totalBytes = downloadInfo.totalBytes;
+                state.rangeSupported = downloadInfo.acceptRanges;
+                state.validator = downloadInfo.validator;
+                state.mimeType = downloadInfo.mimeType;
+                state.expectedDigest = downloadInfo.expectedDigest;
+                fileChannel = openExisting(appContext, downloadInfo.filePath);
             }
-
-            @SuppressLint("Recycle")
-            @Override
-            public void onResponse(@NonNull Call call, @NonNull Response response) throws java.io.IOException {
-                activeCalls.remove(taskId);
-                if (call.isCanceled()) {
-                    response.close();
+            if (fileChannel == null) {
+                state = downloader.probe();
+                downloadInfo.totalBytes = state.totalBytes;
+                downloadInfo.mimeType = state.mimeType;
+                downloadInfo.acceptRanges = state.rangeSupported;
+                downloadInfo.validator = state.validator;
+                downloadInfo.expectedDigest = state.expectedDigest;
+                downloadInfo.segments = state.encodeSegments();
+
+                // 写入之前查重：服务器声明的 SHA-256 或同一 URL / 校验值 / 大小与已完成的下载一致时不再重复下载
+                com.olsc.manorbrowser.data.DownloadInfo existing = findExistingCopy(appContext, downloadInfo,
+                        StreamingDigest.expectedSha256Hex(state.expectedDigest));
+                if (existing != null) {
+                    linkToExisting(appContext, downloadInfo, existing, builder, notificationManager, notificationId);
                     return;
                 }
+                fileChannel = createOutput(appContext, downloadInfo);
+                DownloadStorage.saveDownload(appContext, downloadInfo);
+            }
+
+            // 拷贝时同步计算 SHA-256；content:// 的写通道不可读，补读需另开只读通道
+            digestReader = downloadInfo.filePath.startsWith("content://") ? openReader(appContext, downloadInfo.filePath) : fileChannel;
+            StreamingDigest digest = null;
+            if (digestReader != null) {
+                digest = StreamingDigest.forExpected(digestReader, state.expectedDigest);
+                downloader.setDigest(digest);
+            }
 
-                if (!response.isSuccessful()) {
-                    downloadInfo.status = 4;
-                    downloadInfo.reason = response.code(); // 记录 HTTP 错误码
-                    DownloadStorage.saveDownload(appContext, downloadInfo);
-                    builder.setContentText(appContext.getString(R.string.download_status_failed))
-                           .setProgress(0, 0, false)
-                           .setOngoing(false);
+            // 2. 并行拉取各分段，检查点时把分段进度写入下载记录
+            // [0] 上次更新时间，[1] 上次更新时的字节数，用于计算速度
+            final long[] lastUpdate = {System.currentTimeMillis(), downloadInfo.currentBytes};
+            final DownloadProgressBus progressBus = DownloadProgressBus.get(appContext);
+            downloader.run(state, fileChannel, new SegmentedDownloader.Listener() {
+                @Override
+                public void onProgress(long downloadedBytes, long totalBytes) {
+                    downloadInfo.currentBytes = downloadedBytes;
+                    progressBus.publish(downloadInfo);
+                    long currentTime = System.currentTimeMillis();
+                    // 每 500ms 更新一次通知
+                    synchronized (lastUpdate) {
+                        long elapsed = currentTime - lastUpdate[0];
+                        if (elapsed <= 500) return;
+                        long instant = (downloadedBytes - lastUpdate[1]) * 1000 / elapsed;
+                        // 指数平滑，避免速度数字跳动
+                        downloadInfo.speed = downloadInfo.speed == 0 ? instant : (downloadInfo.speed * 3 + instant) / 4;
+                        lastUpdate[0] = currentTime;
+                        lastUpdate[1] = downloadedBytes;
+                    }
+                    if (totalBytes > 0) {
+                        int progress = (int) ((downloadedBytes * 100) / totalBytes);
+                        builder.setProgress(100, progress, false);
+                        builder.setContentText(String.format(appContext.getString(R.string.download_status_running), progress));
+                    } else {
+                        builder.setProgress(0, 0, true);
+                        builder.setContentText(appContext.getString(R.string.download_status_waiting) + " " + (downloadedBytes / 1024) + " KB");
+                    }
                     notificationManager.notify(notificationId, builder.build());
-                    new Handler(Looper.getMainLooper()).post(() ->
-                            Toast.makeText(appContext, appContext.getString(R.string.msg_download_failed, filename), Toast.LENGTH_SHORT).show());
-                    response.close();
+                }
+
+                @Override
+                public void onCheckpoint(SegmentedDownloader.State s) {
+                    if (downloader.isCancelled()) return;
+                    downloadInfo.totalBytes = s.totalBytes;
+                    downloadInfo.validator = s.validator;
+                    downloadInfo.acceptRanges = s.rangeSupported;
+                    downloadInfo.segments = s.encodeSegments();
+                    downloadInfo.currentBytes = s.downloadedBytes();
+                    DownloadStorage.updateProgress(appContext, downloadInfo);
+                }
+            });
+            fileChannel.close();
+            fileChannel = null;
+
+            // 3. 下载完成
+            if (downloadInfo.totalBytes <= 0) downloadInfo.totalBytes = downloadInfo.currentBytes;
+            downloadInfo.segments = null;
+            if (digest != null) {
+                downloadInfo.sha256 = digest.getSha256Hex();
+                // 下载前无法得知内容时，完成后按实际摘要再查一次重复
+                com.olsc.manorbrowser.data.DownloadInfo existing = findExistingCopy(appContext, downloadInfo, downloadInfo.sha256);
+                if (existing != null) {
+                    deletePartial(appContext, downloadInfo.filePath);
+                    linkToExisting(appContext, downloadInfo, existing, builder, notificationManager, notificationId);
                     return;
                 }
+            }
+            publishIfPending(appContext, downloadInfo.filePath);
+            downloadInfo.status = 3; // 成功
+            DownloadStorage.saveDownload(appContext, downloadInfo);
 
-                String mimeType = response.header("Content-Type");
-                downloadInfo.mimeType = mimeType;
-
-                // --- 处理 Android 11+ (Scoped Storage) 文件写入 ---
-                java.io.OutputStream os = null;
-                android.net.Uri fileUri = null;
-                File legacyFile = null;
-
-                try {
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                        try {
-                            // 使用 MediaStore 写入 Downloads 目录，兼容 Android 10-16
-                            android.content.ContentValues values = new android.content.ContentValues();
-                            values.put(android.provider.MediaStore.Downloads.DISPLAY_NAME, filename);
-                            if (!TextUtils.isEmpty(mimeType)) values.put(android.provider.MediaStore.Downloads.MIME_TYPE, mimeType);
-                            values.put(android.provider.MediaStore.Downloads.RELATIVE_PATH, Environment.DIRECTORY_DOWNLOADS);
-
-                            fileUri = appContext.getContentResolver().insert(android.provider.MediaStore.Downloads.EXTERNAL_CONTENT_URI, values);
-                            if (fileUri != null) {
-                                os = appContext.getContentResolver().openOutputStream(fileUri);
-                                downloadInfo.filePath = fileUri.toString();
-                            }
-                        } catch (Exception medE) {
-                            Log.e("BrowserDownloader", "MediaStore insert failed", medE);
-                        }
-                    } 
-                    
-                    // 回退方案或低版本 Android
-                    if (os == null) {
-                        File downloadDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
-                        if (!downloadDir.exists()) downloadDir.mkdirs();
-                        
-                        legacyFile = new File(downloadDir, filename);
-                        if (legacyFile.exists()) {
-                            String baseName = filename;
-                            String extension = "";
-                            int dot = filename.lastIndexOf('.');
-                            if (dot > 0) {
-                                baseName = filename.substring(0, dot);
-                                extension = filename.substring(dot);
-                            }
-                            int counter = 1;
-                            while (legacyFile.exists()) {
-                                legacyFile = new File(downloadDir, baseName + " (" + counter + ")" + extension);
-                                counter++;
-                            }
-                        }
-                        os = new FileOutputStream(legacyFile);
-                        downloadInfo.filePath = legacyFile.getAbsolutePath();
-                    }
+            builder.setContentText(appContext.getString(R.string.download_status_completed))
+                   .setProgress(0, 0, false)
+                   .setOngoing(false);
 
-                    try (InputStream is = response.body().byteStream();
-                         java.io.OutputStream fos = os) {
-
-                        long totalLength = response.body().contentLength();
-                        downloadInfo.totalBytes = totalLength;
-                        long downloaded = 0;
-                        byte[] buffer = new byte[32768]; // 增大缓冲区
-                        int read;
-                        long lastUpdateTime = 0;
-                        long lastStorageTime = 0;
-
-                        while ((read = is.read(buffer)) != -1) {
-                            if (call.isCanceled()) throw new java.io.IOException("Canceled");
-                            
-                            fos.write(buffer, 0, read);
-                            downloaded += read;
-                            downloadInfo.currentBytes = downloaded;
-
-                            long currentTime = System.currentTimeMillis();
-                            // 每 500ms 更新一次 UI (仅在未取消时)
-                            if (currentTime - lastUpdateTime > 500) {
-                                lastUpdateTime = currentTime;
-                                if (call.isCanceled()) break;
-                                
-                                if (totalLength > 0) {
-                                    int progress = (int) ((downloaded * 100) / totalLength);
-                                    builder.setProgress(100, progress, false);
-                                    builder.setContentText(String.format(appContext.getString(R.string.download_status_running), progress));
-                                } else {
-                                    builder.setProgress(0, 0, true);
-                                    builder.setContentText(appContext.getString(R.string.download_status_waiting) + " " + (downloaded / 1024) + " KB");
-                                }
-                                notificationManager.notify(notificationId, builder.build());
-                            }
-                            
-                            // 每 2秒 同步一次存储 (仅在未取消时)
-                            if (currentTime - lastStorageTime > 2000) {
-                                lastStorageTime = currentTime;
-                                if (!call.isCanceled()) {
-                                    DownloadStorage.saveDownload(appContext, downloadInfo);
-                                }
-                            }
-                        }
-                        fos.flush();
+            // 特殊逻辑：处理 Firefox 扩展文件 (.xpi)
+            if (filename.toLowerCase().endsWith(".xpi") && downloadInfo.filePath.startsWith("/")) {
+                handleExtensionInstall(appContext, new File(downloadInfo.filePath), filename);
+            }
 
-                        if (call.isCanceled()) throw new java.io.IOException("Canceled");
+            builder.setAutoCancel(true);
+            notificationManager.notify(notificationId, builder.build());
+            new Handler(Looper.getMainLooper()).post(() ->
+                    Toast.makeText(appContext, appContext.getString(R.string.download_status_completed), Toast.LENGTH_SHORT).show());
+        } catch (SegmentedDownloader.CancelledException e) {
+            Integer pauseReason = pauseRequests.remove(taskId);
+            if (pauseReason != null) {
+                // 调度暂停：保留文件与分段进度；用户暂停转为暂停状态，约束条件暂停则回到队列等待
+                downloadInfo.status = pauseReason == DownloadScheduler.REASON_PAUSED_BY_USER ? 2 : 0;
+                downloadInfo.reason = pauseReason;
+                if (downloadInfo.status == 0) downloadInfo.queuedAt = System.currentTimeMillis();
+                DownloadStorage.saveDownload(appContext, downloadInfo);
+                notificationManager.cancel(notificationId);
+                return;
+            }
+            Log.d("BrowserDownloader", "Download canceled silently and cleaned");
+            // 确保彻底从活跃列表中移除
+            DownloadHelper.sInternalDownloads.removeIf(i -> i.id == taskId);
+            notificationManager.cancel(notificationId);
+            if (fileChannel != null) {
+                try { fileChannel.close(); } catch (Exception ignored) {}
+                fileChannel = null;
+            }
+            deletePartial(appContext, downloadInfo.filePath);
+        } catch (SegmentedDownloader.HttpStatusException e) {
+            fail(appContext, downloadInfo, e.code, builder, notificationManager, notificationId);
+        } catch (SegmentedDownloader.IntegrityException e) {
+            // 内容已损坏，不保留文件，也不保留续传进度
+            Log.e("BrowserDownloader", "Download corrupted: " + e.getMessage());
+            try { fileChannel.close(); } catch (Exception ignored) {}
+            fileChannel = null;
+            deletePartial(appContext, downloadInfo.filePath);
+            downloadInfo.filePath = null;
+            downloadInfo.segments = null;
+            downloadInfo.currentBytes = 0;
+            fail(appContext, downloadInfo, REASON_INTEGRITY_FAILED, builder, notificationManager, notificationId);
+        } catch (SegmentedDownloader.StorageException e) {
+            Log.e("BrowserDownloader", "Download write error", e);
+            fail(appContext, downloadInfo, 1001, builder, notificationManager, notificationId); // 写文件异常码
+        } catch (java.io.IOException e) {
+            // 重试耗尽仍无法连接：保留分段进度，转为暂停，可随时续传
+            Log.e("BrowserDownloader", "Download paused: " + e.getMessage());
+            downloadInfo.status = 2;
+            downloadInfo.reason = android.app.DownloadManager.PAUSED_WAITING_FOR_NETWORK;
+            DownloadStorage.saveDownload(appContext, downloadInfo);
+            builder.setContentText(appContext.getString(R.string.download_status_paused))
+                   .setProgress(0, 0, false)
+                   .setOngoing(false);
+            notificationManager.notify(notificationId, builder.build());
+        } catch (Exception e) {
+            Log.e("BrowserDownloader", "Download error", e);
+            fail(appContext, downloadInfo, 1001, builder, notificationManager, notificationId);
+        } finally {
+            if (fileChannel != null) {
+                try { fileChannel.close(); } catch (Exception ignored) {}
+            }
+            if (digestReader != null) {
+                try { digestReader.close(); } catch (Exception ignored) {}
+            }
+            activeDownloads.remove(taskId);
+            pauseRequests.remove(taskId);
+            downloadInfo.speed = 0;
+        }
+    }
 
-                        // 下载完成
-                        downloadInfo.status = 3; // 成功
-                        DownloadStorage.saveDownload(appContext, downloadInfo);
-                        
-                        builder.setContentText(appContext.getString(R.string.download_status_completed))
-                               .setProgress(0, 0, false)
-                               .setOngoing(false);
+    private static void fail(Context appContext, com.olsc.manorbrowser.data.DownloadInfo downloadInfo, int reason,
+                             NotificationCompat.Builder builder, NotificationManager notificationManager, int notificationId) {
+        downloadInfo.status = 4;
+        downloadInfo.reason = reason;
+        DownloadStorage.saveDownload(appContext, downloadInfo);
+        builder.setContentText(appContext.getString(R.string.download_status_failed))
+               .setProgress(0, 0, false)
+               .setOngoing(false);
+        notificationManager.notify(notificationId, builder.build());
+        new Handler(Looper.getMainLooper()).post(() ->
+                Toast.makeText(appContext, appContext.getString(R.string.msg_download_failed, downloadInfo.title), Toast.LENGTH_SHORT).show());
+    }
 
-                        // 特殊逻辑：处理 Firefox 扩展文件 (.xpi)
-                        if (filename.toLowerCase().endsWith(".xpi") && legacyFile != null) {
-                            handleExtensionInstall(appContext, legacyFile, filename);
-                        }
+    /**
+     * 构造 OkHttp 请求模板，赋予更像浏览器的默认 Header
+     */
+    private static Request buildRequest(com.olsc.manorbrowser.data.DownloadInfo info) {
+        Request.Builder reqBuilder = new Request.Builder().url(info.url);
+        reqBuilder.header("Accept", "*/*");
+        reqBuilder.header("Accept-Language", "zh-CN,zh;q=0.9,en-US;q=0.8,en;q=0.7");
+        // Range 请求必须拿到原始字节，不能让 OkHttp 透明解压
+        reqBuilder.header("Accept-Encoding", "identity");
 
-                        builder.setAutoCancel(true);
-                        notificationManager.notify(notificationId, builder.build());
-                        new Handler(Looper.getMainLooper()).post(() ->
-                                Toast.makeText(appContext, appContext.getString(R.string.download_status_completed), Toast.LENGTH_SHORT).show());
+        if (!TextUtils.isEmpty(info.userAgent)) reqBuilder.header("User-Agent", info.userAgent);
+        else reqBuilder.header("User-Agent", "Mozilla/5.0 (Linux; Android 10; K) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/119.0.0.0 Mobile Safari/537.36");
 
+        if (!TextUtils.isEmpty(info.cookie)) reqBuilder.header("Cookie", info.cookie);
+        if (!TextUtils.isEmpty(info.referer) && !info.referer.startsWith("about:")) reqBuilder.header("Referer", info.referer);
+        return reqBuilder.build();
+    }
+
+    /**
+     * 创建输出文件并打开可随机写入的通道
+     * Android 10+ 写入 MediaStore（下载期间标记为 IS_PENDING，对其他应用不可见），否则写入公共下载目录
+     */
+    @SuppressLint("Recycle")
+    private static java.nio.channels.FileChannel createOutput(Context appContext, com.olsc.manorbrowser.data.DownloadInfo downloadInfo) throws java.io.IOException {
+        String filename = downloadInfo.title;
+        String mimeType = downloadInfo.mimeType;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            try {
+                // 使用 MediaStore 写入 Downloads 目录，兼容 Android 10-16
+                android.content.ContentValues values = new android.content.ContentValues();
+                values.put(android.provider.MediaStore.Downloads.DISPLAY_NAME, filename);
+                if (!TextUtils.isEmpty(mimeType)) values.put(android.provider.MediaStore.Downloads.MIME_TYPE, mimeType);
+                values.put(android.provider.MediaStore.Downloads.RELATIVE_PATH, Environment.DIRECTORY_DOWNLOADS);
+                values.put(android.provider.MediaStore.Downloads.IS_PENDING, 1);
+
+                android.net.Uri fileUri = appContext.getContentResolver().insert(android.provider.MediaStore.Downloads.EXTERNAL_CONTENT_URI, values);
+                if (fileUri != null) {
+                    java.nio.channels.FileChannel channel = openExisting(appContext, fileUri.toString());
+                    if (channel != null) {
+                        downloadInfo.filePath = fileUri.toString();
+                        return channel;
                     }
-                } catch (Exception e) {
-                    if (call.isCanceled() || "Canceled".equals(e.getMessage())) {
-                        Log.d("BrowserDownloader", "Download canceled silently and cleaned");
-                        // 确保彻底从活跃列表中移除
-                        DownloadHelper.sInternalDownloads.removeIf(i -> i.id == taskId);
-                    } else {
-                        Log.e("BrowserDownloader", "Download error", e);
-                        downloadInfo.status = 4;
-                        downloadInfo.reason = 1001; // 写文件异常码
-                        DownloadStorage.saveDownload(appContext, downloadInfo);
-                        builder.setContentText(appContext.getString(R.string.download_status_failed))
-                               .setProgress(0, 0, false)
-                               .setOngoing(false);
-                        notificationManager.notify(notificationId, builder.build());
-                        if (fileUri != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                            try { appContext.getContentResolver().delete(fileUri, null, null); } catch (Exception ignored) {}
-                        }
-                    }
-                } finally {
-                    response.close();
-                    activeCalls.remove(taskId);
+                    appContext.getContentResolver().delete(fileUri, null, null);
                 }
+            } catch (Exception medE) {
+                Log.e("BrowserDownloader", "MediaStore insert failed", medE);
             }
-        });
+        }
+
+        // 回退方案或低版本 Android
+        File downloadDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
+        if (!downloadDir.exists()) downloadDir.mkdirs();
+
+        File legacyFile = new File(downloadDir, filename);
+        if (legacyFile.exists()) {
+            String baseName = filename;
+            String extension = "";
+            int dot = filename.lastIndexOf('.');
+            if (dot > 0) {
+                baseName = filename.substring(0, dot);
+                extension = filename.substring(dot);
+            }
+            int counter = 1;
+            while (legacyFile.exists()) {
+                legacyFile = new File(downloadDir, baseName + " (" + counter + ")" + extension);
+                counter++;
+            }
+        }
+        downloadInfo.filePath = legacyFile.getAbsolutePath();
+        return new java.io.RandomAccessFile(legacyFile, "rw").getChannel();
+    }
+
+    /**
+     * 以读写方式重新打开已有的下载文件，文件已被删除时返回 null
+     */
+    private static java.nio.channels.FileChannel openExisting(Context appContext, String filePath) {
+        try {
+            if (filePath.startsWith("content://")) {
+                android.os.ParcelFileDescriptor pfd = appContext.getContentResolver()
+                        .openFileDescriptor(android.net.Uri.parse(filePath), "rw");
+                if (pfd == null) return null;
+                return new android.os.ParcelFileDescriptor.AutoCloseOutputStream(pfd).getChannel();
+            }
+            File file = new File(filePath);
+            if (!file.exists()) return null;
+            return new java.io.RandomAccessFile(file, "rw").getChannel();
+        } catch (Exception e) {
+            Log.w("BrowserDownloader", "Cannot reopen " + filePath + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 以只读方式打开下载文件，供摘要补读使用；打开失败时返回 null（本次不计算摘要）
+     */
+    private static java.nio.channels.FileChannel openReader(Context appContext, String filePath) {
+        try {
+            android.os.ParcelFileDescriptor pfd = appContext.getContentResolver()
+                    .openFileDescriptor(android.net.Uri.parse(filePath), "r");
+            if (pfd == null) return null;
+            return new android.os.ParcelFileDescriptor.AutoCloseInputStream(pfd).getChannel();
+        } catch (Exception e) {
+            Log.w("BrowserDownloader", "Cannot open reader for " + filePath + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** 读取响应头，兼容大小写不同的键 */
+    private static String header(java.util.Map<String, String> headers, String name) {
+        if (headers == null) return null;
+        String value = headers.get(name);
+        return value != null ? value : headers.get(name.toLowerCase(java.util.Locale.ROOT));
+    }
+
+    /**
+     * 查找内容相同且文件仍然存在的已完成下载，没有时返回 null
+     */
+    private static com.olsc.manorbrowser.data.DownloadInfo findExistingCopy(Context appContext,
+            com.olsc.manorbrowser.data.DownloadInfo info, String sha256) {
+        for (com.olsc.manorbrowser.data.DownloadInfo candidate : DownloadStorage.findCompletedDuplicates(appContext,
+                info.id, sha256, info.url, info.validator, info.totalBytes)) {
+            if (candidate.filePath.equals(info.filePath)) continue;
+            if (fileExists(appContext, candidate.filePath)) return candidate;
+        }
+        return null;
+    }
+
+    private static boolean fileExists(Context appContext, String filePath) {
+        if (filePath.startsWith("content://")) {
+            try (android.os.ParcelFileDescriptor pfd = appContext.getContentResolver()
+                    .openFileDescriptor(android.net.Uri.parse(filePath), "r")) {
+                return pfd != null;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+        return new File(filePath).exists();
+    }
+
+    /**
+     * 把任务记为已完成并指向已有的相同文件，不再保留重复副本
+     */
+    private static void linkToExisting(Context appContext, com.olsc.manorbrowser.data.DownloadInfo downloadInfo,
+                                       com.olsc.manorbrowser.data.DownloadInfo existing, NotificationCompat.Builder builder,
+                                       NotificationManager notificationManager, int notificationId) {
+        downloadInfo.filePath = existing.filePath;
+        if (downloadInfo.mimeType == null) downloadInfo.mimeType = existing.mimeType;
+        if (downloadInfo.sha256 == null) downloadInfo.sha256 = existing.sha256;
+        downloadInfo.totalBytes = existing.totalBytes;
+        downloadInfo.currentBytes = existing.totalBytes;
+        downloadInfo.segments = null;
+        downloadInfo.status = 3;
+        downloadInfo.reason = REASON_DUPLICATE;
+        DownloadStorage.saveDownload(appContext, downloadInfo);
+        builder.setContentText(appContext.getString(R.string.download_status_duplicate))
+               .setProgress(0, 0, false)
+               .setOngoing(false)
+               .setAutoCancel(true);
+        notificationManager.notify(notificationId, builder.build());
+        new Handler(Looper.getMainLooper()).post(() ->
+                Toast.makeText(appContext, R.string.download_status_duplicate, Toast.LENGTH_SHORT).show());
+    }
+
+    /**
+     * 删除取消后残留的不完整文件
+     */
+    private static void deletePartial(Context appContext, String filePath) {
+        if (filePath == null) return;
+        try {
+            if (filePath.startsWith("content://")) {
+                appContext.getContentResolver().delete(android.net.Uri.parse(filePath), null, null);
+            } else {
+                new File(filePath).delete();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 下载完成后清除 MediaStore 的 IS_PENDING 标记，使文件对其他应用可见
+     */
+    private static void publishIfPending(Context appContext, String filePath) {
+        if (filePath == null || !filePath.startsWith("content://") || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) return;
+        try {
+            android.content.ContentValues values = new android.content.ContentValues();
+            values.put(android.provider.MediaStore.Downloads.IS_PENDING, 0);
+            appContext.getContentResolver().update(android.net.Uri.parse(filePath), values, null, null);
+        } catch (Exception e) {
+            Log.e("BrowserDownloader", "MediaStore publish failed", e);
+        }
     }
 
     /**
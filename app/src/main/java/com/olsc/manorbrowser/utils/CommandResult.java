@@ -0,0 +1,211 @@
+/**
+ * AI 命令的执行结果
+ *
+ * 普通结果直接保存完整的 JSON 文本；页面源码等大文本结果只保存原始字符串，
+ * 需要时再按 {"status":"ok","data":"..."} 的格式边转义边写出，上传时不再拼装中间 JSONObject 与字节数组。
+ * 脚本执行桥分块回传的结果可直接落在临时文件中，写出时从文件逐段读取，整个过程不生成完整字符串；
+ * 这类结果用完后调用 release 删除文件。
+ * 本类不依赖 Android API。
+ */
+package com.olsc.manorbrowser.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+public final class CommandResult {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int RUN_CHUNK = 8192;
+
+    private final String json;
+    private final String data;
+    /** 保存 data 的文件（UTF-8），为 null 时 data 在内存中 */
+    private final File dataFile;
+    /** dataFile 的内容已是 JSON 值的文本（字符串字面量带引号），原样写出即可 */
+    private final boolean dataFileIsJson;
+    private String sha256;
+
+    private CommandResult(String json, String data, File dataFile, boolean dataFileIsJson) {
+        this.json = json;
+        this.data = data;
+        this.dataFile = dataFile;
+        this.dataFileIsJson = dataFileIsJson;
+    }
+
+    /** 已是完整 JSON 文本的结果 */
+    public static CommandResult ofJson(String json) {
+        return new CommandResult(json, null, null, false);
+    }
+
+    /** 成功结果，data 为原始文本（写出时才转义） */
+    public static CommandResult ofData(String data) {
+        return new CommandResult(null, data != null ? data : "", null, false);
+    }
+
+    /**
+     * 成功结果，data 保存在文件中
+     *
+     * @param isJson 文件内容已是一个 JSON 值的文本（如脚本执行桥回传的、带引号的字符串字面量）时为 true，
+     *               写出时原样作为 data 的值；为 false 时文件内容为原始文本，写出时转义为字符串
+     */
+    public static CommandResult ofDataFile(File file, boolean isJson) {
+        return new CommandResult(null, null, file, isJson);
+    }
+
+    /** 删除保存 data 的文件；结果送出后调用，内存中的结果无需释放 */
+    public void release() {
+        if (dataFile != null) dataFile.delete();
+    }
+
+    /** 结果文本长度的估计（字符数），用于选择上传方式 */
+    public int length() {
+        if (json != null) return json.length();
+        long dataLength = dataFile != null ? dataFile.length() : data.length();
+        return (int) Math.min(Integer.MAX_VALUE, dataLength + 28);
+    }
+
+    /** 写出结果的 JSON 文本 */
+    public void writeJson(Writer out) throws IOException {
+        if (json != null) {
+            out.write(json);
+            return;
+        }
+        if (dataFile == null) {
+            out.write("{\"status\":\"ok\",\"data\":\"");
+            writeEscaped(out, data);
+            out.write("\"}");
+            return;
+        }
+        out.write("{\"status\":\"ok\",\"data\":");
+        if (!dataFileIsJson) out.write('"');
+        char[] buffer = new char[RUN_CHUNK];
+        try (Reader in = new InputStreamReader(new FileInputStream(dataFile), StandardCharsets.UTF_8)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                if (dataFileIsJson) out.write(buffer, 0, n);
+                else writeEscaped(out, CharBuffer.wrap(buffer, 0, n));
+            }
+        }
+        if (!dataFileIsJson) out.write('"');
+        out.write('}');
+    }
+
+    /** 结果的 JSON 文本（会生成完整字符串，大结果应改用 writeJson） */
+    public String toJson() {
+        if (json != null) return json;
+        StringWriter out = new StringWriter(length() + 4);
+        try {
+            writeJson(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * 结果 JSON 文本（UTF-8）的 SHA-256 十六进制值，作为内容寻址缓存的键；流式计算，不生成完整字节数组
+     */
+    public synchronized String sha256() {
+        if (sha256 != null) return sha256;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            OutputStream sinkhole = new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            };
+            try (Writer out = new OutputStreamWriter(new DigestOutputStream(sinkhole, digest), StandardCharsets.UTF_8)) {
+                writeJson(out);
+            }
+            byte[] hash = digest.digest();
+            char[] hex = new char[hash.length * 2];
+            for (int i = 0; i < hash.length; i++) {
+                hex[i * 2] = HEX[(hash[i] >> 4) & 0x0f];
+                hex[i * 2 + 1] = HEX[hash[i] & 0x0f];
+            }
+            sha256 = new String(hex);
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return sha256;
+    }
+
+    /**
+     * 把写入的字符按 JSON 字符串的规则转义后转发给下层，用于把结果 JSON 嵌入上报载荷的 "result" 字符串字段
+     */
+    static final class EscapingWriter extends Writer {
+        private final Writer out;
+
+        EscapingWriter(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            writeEscaped(out, new String(cbuf, off, len));
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            writeEscaped(out, str.subSequence(off, off + len));
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /** 以 JSON 字符串内容的形式写出 s（不含两侧引号），无需转义的连续片段整段写出 */
+    static void writeEscaped(Writer out, CharSequence s) throws IOException {
+        int length = s.length();
+        int runStart = 0;
+        for (int i = 0; i < length; i++) {
+            // 分片写出，避免对很长的无转义片段生成同样长的临时字符串
+            if (i - runStart >= RUN_CHUNK) {
+                out.append(s, runStart, i);
+                runStart = i;
+            }
+            char c = s.charAt(i);
+            String replacement;
+            switch (c) {
+                case '"': replacement = "\\\""; break;
+                case '\\': replacement = "\\\\"; break;
+                case '\n': replacement = "\\n"; break;
+                case '\r': replacement = "\\r"; break;
+                case '\t': replacement = "\\t"; break;
+                case '\b': replacement = "\\b"; break;
+                case '\f': replacement = "\\f"; break;
+                default:
+                    if (c >= 0x20 && c != '\u2028' && c != '\u2029') continue;
+                    replacement = String.format(Locale.ROOT, "\\u%04x", (int) c);
+                    break;
+            }
+            if (i > runStart) out.append(s, runStart, i);
+            out.write(replacement);
+            runStart = i + 1;
+        }
+        if (length > runStart) out.append(s, runStart, length);
+    }
+}
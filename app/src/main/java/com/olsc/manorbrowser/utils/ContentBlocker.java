@@ -0,0 +1,246 @@
+/**
+ * 子资源拦截
+ *
+ * 顶层导航与弹窗由 MainActivity 在 onLoadRequest / onNewSession 中按 {@link ContentFilter} 判断；
+ * 页面内的脚本、图片、XHR 等子资源由内置扩展（assets/extensions/content_blocker）在 webRequest 中拦截。
+ * 扩展的规则集由本类从 FilterEngine 导出，经后台脚本的原生端口推送：扩展连接时报告已持有的规则版本，
+ * 版本不同或规则列表变化时才重新推送；领主模式开关变化时推送启用状态。
+ * 扩展按标签页统计拦截次数与节省的字节数（按资源类型估算），经页面内容脚本按会话回报，可通过 getStats 查询。
+ *
+ * 除 getStats 外，所有方法与回调均在主线程。
+ */
+package com.olsc.manorbrowser.utils;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.mozilla.geckoview.GeckoResult;
+import org.mozilla.geckoview.GeckoRuntime;
+import org.mozilla.geckoview.GeckoSession;
+import org.mozilla.geckoview.WebExtension;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+public class ContentBlocker {
+    private static final String TAG = "ContentBlocker";
+
+    public static final String EXTENSION_ID = "content-blocker@manorbrowser.olsc.com";
+    private static final String EXTENSION_LOCATION = "resource://android/assets/extensions/content_blocker/";
+    private static final String NATIVE_APP = "manorContentBlocker";
+
+    // 导出给扩展的规则标志位，与 content_blocker/matcher.js 一致
+    private static final int F_EXCEPTION = 1;
+    private static final int F_ANCHOR_START = 2;
+    private static final int F_ANCHOR_HOST = 4;
+    private static final int F_ANCHOR_END = 8;
+    private static final int F_MATCH_CASE = 16;
+    private static final int F_THIRD_PARTY = 32;
+    private static final int F_FIRST_PARTY = 64;
+
+    /** 某个标签页当前页面的拦截统计 */
+    public static final class Stats {
+        public final int blocked;
+        public final long savedBytes;
+
+        Stats(int blocked, long savedBytes) {
+            this.blocked = blocked;
+            this.savedBytes = savedBytes;
+        }
+    }
+
+    private static final ContentBlocker instance = new ContentBlocker();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private Context context;
+    private WebExtension extension;
+    /** 后台脚本的端口，扩展未连接时为 null */
+    private WebExtension.Port port;
+    private boolean enabled;
+    /** 最新一份规则集（JSON 消息）及其版本 */
+    private JSONObject rulesMessage;
+    private String rulesVersion;
+    /** 扩展当前持有的规则版本 */
+    private String pushedVersion;
+    private boolean listening;
+    private final WeakHashMap<GeckoSession, Boolean> waitingSessions = new WeakHashMap<>();
+    /** 会话 -> 统计，会在后台线程读取，访问时持有该对象的锁 */
+    private final Map<GeckoSession, Stats> stats = new WeakHashMap<>();
+
+    private final ContentFilter.Listener rulesListener = engine -> {
+        // 在规则加载线程上生成规则集，避免占用主线程
+        try {
+            JSONObject message = buildRulesMessage(engine);
+            mainHandler.post(() -> {
+                rulesMessage = message;
+                rulesVersion = message.optString("version");
+                pushRules();
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "生成扩展规则集失败", e);
+        }
+    };
+
+    public static ContentBlocker get() {
+        return instance;
+    }
+
+    private ContentBlocker() {
+    }
+
+    /**
+     * 安装（或确认已安装）内置扩展，在 GeckoRuntime 创建后调用一次
+     */
+    public void install(GeckoRuntime runtime, Context context) {
+        this.context = context.getApplicationContext();
+        listenForRules();
+        runtime.getWebExtensionController()
+                .ensureBuiltIn(EXTENSION_LOCATION, EXTENSION_ID)
+                .accept(ext -> mainHandler.post(() -> {
+                    extension = ext;
+                    ext.setMessageDelegate(backgroundDelegate, NATIVE_APP);
+                    for (GeckoSession session : waitingSessions.keySet()) {
+                        attachNow(session);
+                    }
+                    waitingSessions.clear();
+                }), e -> Log.e(TAG, "子资源拦截扩展安装失败", e));
+    }
+
+    /**
+     * 为新会话注册统计消息的代理，在会话打开后调用
+     */
+    public void attach(GeckoSession session) {
+        if (extension == null) {
+            waitingSessions.put(session, Boolean.TRUE);
+        } else {
+            attachNow(session);
+        }
+    }
+
+    /**
+     * 领主模式开关：开启时加载过滤规则并推送给扩展，关闭时扩展停止拦截（规则保留）
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        listenForRules();
+        postToExtension(enabledMessage());
+    }
+
+    /** 第一次启用后才加载过滤规则，未开启领主模式时不产生开销 */
+    private void listenForRules() {
+        if (enabled && !listening && context != null) {
+            listening = true;
+            ContentFilter.get(context).addListener(rulesListener);
+        }
+    }
+
+    /** 会话当前页面的拦截统计 */
+    public Stats getStats(GeckoSession session) {
+        synchronized (stats) {
+            Stats current = stats.get(session);
+            return current != null ? current : new Stats(0, 0);
+        }
+    }
+
+    private final WebExtension.MessageDelegate backgroundDelegate = new WebExtension.MessageDelegate() {
+        @Override
+        public void onConnect(@NonNull WebExtension.Port connected) {
+            port = connected;
+            pushedVersion = null;
+            connected.setDelegate(new WebExtension.PortDelegate() {
+                @Override
+                public void onPortMessage(@NonNull Object message, @NonNull WebExtension.Port source) {
+                    if (!(message instanceof JSONObject)) return;
+                    JSONObject json = (JSONObject) message;
+                    if ("hello".equals(json.optString("type"))) {
+                        pushedVersion = json.isNull("version") ? null : json.optString("version");
+                        postToExtension(enabledMessage());
+                        pushRules();
+                    }
+                }
+
+                @Override
+                public void onDisconnect(@NonNull WebExtension.Port source) {
+                    if (port == source) port = null;
+                }
+            });
+        }
+    };
+
+    private void attachNow(GeckoSession session) {
+        session.getWebExtensionController().setMessageDelegate(extension, new WebExtension.MessageDelegate() {
+            @Nullable
+            @Override
+            public GeckoResult<Object> onMessage(@NonNull String nativeApp, @NonNull Object message,
+                                                 @NonNull WebExtension.MessageSender sender) {
+                if (message instanceof JSONObject && "blockStats".equals(((JSONObject) message).optString("type"))) {
+                    JSONObject json = (JSONObject) message;
+                    synchronized (stats) {
+                        stats.put(session, new Stats(json.optInt("blocked"), json.optLong("bytes")));
+                    }
+                }
+                return null;
+            }
+        }, NATIVE_APP);
+    }
+
+    /** 扩展持有的规则版本与最新版本不同时推送完整规则集 */
+    private void pushRules() {
+        if (port == null || rulesMessage == null || rulesVersion.equals(pushedVersion)) return;
+        if (postToExtension(rulesMessage)) pushedVersion = rulesVersion;
+    }
+
+    private boolean postToExtension(JSONObject message) {
+        if (port == null || message == null) return false;
+        try {
+            port.postMessage(message);
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "发送消息到子资源拦截扩展失败", e);
+            return false;
+        }
+    }
+
+    private JSONObject enabledMessage() {
+        try {
+            return new JSONObject().put("type", "enabled").put("value", enabled);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 把规则导出为扩展使用的紧凑格式：每条为 [flags, typeMask, host, pattern, include, exclude]
+     */
+    static JSONObject buildRulesMessage(FilterEngine engine) throws Exception {
+        JSONArray rules = new JSONArray();
+        engine.exportRules(rule -> {
+            int flags = 0;
+            if (rule.exception) flags |= F_EXCEPTION;
+            if (rule.anchor == FilterEngine.RuleInfo.ANCHOR_START) flags |= F_ANCHOR_START;
+            if (rule.anchor == FilterEngine.RuleInfo.ANCHOR_HOST) flags |= F_ANCHOR_HOST;
+            if (rule.anchorEnd) flags |= F_ANCHOR_END;
+            if (rule.matchCase) flags |= F_MATCH_CASE;
+            if (rule.party > 0) flags |= F_THIRD_PARTY;
+            if (rule.party < 0) flags |= F_FIRST_PARTY;
+            rules.put(new JSONArray()
+                    .put(flags)
+                    .put(rule.typeMask)
+                    .put(rule.host != null ? rule.host : "")
+                    .put(rule.pattern)
+                    .put(String.join("|", rule.includeDomains))
+                    .put(String.join("|", rule.excludeDomains)));
+        });
+        return new JSONObject()
+                .put("type", "rules")
+                .put("version", engine.getSourceTag() + ":" + engine.getRuleCount())
+                .put("rules", rules);
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * 内容过滤（领主模式的广告 / 弹窗拦截）
+ *
+ * 规则来自内置的 assets/filters/manor_filters.txt（EasyList 语法），由 {@link FilterEngine} 编译。
+ * 编译结果缓存在磁盘上，之后的启动直接内存映射缓存文件，不再解析规则文本；
+ * 应用更新后（规则文件可能变化）缓存的来源标识不符，自动重新编译。
+ * 加载在后台线程进行，加载完成前不拦截任何请求；加载完成后通知监听者（如子资源拦截扩展需要据此生成规则集）。
+ */
+package com.olsc.manorbrowser.utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.olsc.manorbrowser.data.AtomicFileStore;
+
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class ContentFilter {
+    private static final String TAG = "ContentFilter";
+    private static final String RULES_ASSET = "filters/manor_filters.txt";
+    private static final String CACHE_FILE = "content_filter.bin";
+
+    /** 规则加载或更新完成的回调，在后台线程调用 */
+    public interface Listener {
+        void onRulesChanged(FilterEngine engine);
+    }
+
+    private static volatile ContentFilter instance;
+
+    private final Context context;
+    private volatile FilterEngine engine;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public static ContentFilter get(Context context) {
+        if (instance == null) {
+            synchronized (ContentFilter.class) {
+                if (instance == null) {
+                    instance = new ContentFilter(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private ContentFilter(Context context) {
+        this.context = context;
+        // 只加载一次，用一次性线程，结束后不留下常驻线程
+        new Thread(this::load, "ContentFilterLoader").start();
+    }
+
+    /**
+     * 判断请求是否应被拦截
+     *
+     * @param url       请求地址
+     * @param originUrl 发起请求的页面地址，未知时为 null
+     * @param type      FilterEngine.TYPE_* 之一
+     */
+    public boolean shouldBlock(String url, String originUrl, int type) {
+        FilterEngine current = engine;
+        return current != null && current.shouldBlock(url, FilterEngine.hostOf(originUrl), type);
+    }
+
+    /**
+     * 注册规则变化监听；规则已加载时立即以当前引擎回调一次
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+        FilterEngine current = engine;
+        if (current != null) listener.onRulesChanged(current);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void setEngine(FilterEngine loaded) {
+        engine = loaded;
+        for (Listener listener : listeners) listener.onRulesChanged(loaded);
+    }
+
+    /** 当前使用的引擎，尚未加载完成时为 null */
+    public FilterEngine getEngine() {
+        return engine;
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        long tag = sourceTag();
+        File cache = new File(context.getCacheDir(), CACHE_FILE);
+        if (cache.exists()) {
+            try (RandomAccessFile file = new RandomAccessFile(cache, "r"); FileChannel channel = file.getChannel()) {
+                // 映射在通道关闭后仍然有效
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                FilterEngine cached = FilterEngine.open(mapped, tag);
+                if (cached != null) {
+                    Log.d(TAG, "已映射过滤规则缓存：" + cached.getRuleCount() + " 条，耗时 " + (System.currentTimeMillis() - start) + "ms");
+                    setEngine(cached);
+                    return;
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "过滤规则缓存读取失败，重新编译", e);
+            }
+        }
+        try (Reader reader = new InputStreamReader(context.getAssets().open(RULES_ASSET), StandardCharsets.UTF_8)) {
+            FilterEngine compiled = FilterEngine.compile(reader, tag);
+            Log.d(TAG, "已编译过滤规则：" + compiled.getRuleCount() + " 条，跳过 " + compiled.getSkippedCount()
+                    + " 条，耗时 " + (System.currentTimeMillis() - start) + "ms");
+            setEngine(compiled);
+            AtomicFileStore.writeNow(cache, compiled.toBytes());
+        } catch (Exception e) {
+            Log.e(TAG, "过滤规则编译失败", e);
+        }
+    }
+
+    /** 规则来源标识：规则文件随应用一起更新，以安装包的更新时间区分 */
+    private long sourceTag() {
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+}
@@ -69,7 +69,7 @@ public class DownloadHelper {
     private static void checkExistingFileAndDownload(Context context, String url, String originalFilename,
                                                      String userAgent, String contentDisposition, String mimeType,
                                                      String cookie, String referer) {
-        new Thread(() -> {
+        DownloadScheduler.executeIo(() -> {
             try {
                 java.io.File downloadDir = android.os.Environment.getExternalStoragePublicDirectory(android.os.Environment.DIRECTORY_DOWNLOADS);
                 java.io.File existingFile = new java.io.File(downloadDir, originalFilename);
@@ -95,7 +95,7 @@ public class DownloadHelper {
                 // 出错时直接下载
                 performDownload(context, url, userAgent, contentDisposition, mimeType, cookie, referer, originalFilename);
             }
-        }).start();
+        });
     }
 
     /**
@@ -134,7 +134,7 @@ public class DownloadHelper {
 
         final Context appContext = context.getApplicationContext();
 
-        new Thread(() -> {
+        DownloadScheduler.executeIo(() -> {
             try {
                 DownloadManager dm = (DownloadManager) appContext.getSystemService(Context.DOWNLOAD_SERVICE);
                 DownloadManager.Request request;
@@ -200,7 +200,7 @@ public class DownloadHelper {
                         Toast.makeText(context, R.string.msg_download_start_failed, Toast.LENGTH_SHORT).show()
                 );
             }
-        }).start();
+        });
     }
 
     /**
@@ -271,8 +271,22 @@ public class DownloadHelper {
         }
 
         // 3. 补充/覆盖系统下载管理器的任务（获取系统任务的最新状态）
+        for (DownloadInfo info : querySystemDownloads(context, new DownloadManager.Query())) {
+            allInfoMap.put(info.id, info);
+        }
+
+        List<DownloadInfo> list = new ArrayList<>(allInfoMap.values());
+        // 按时间倒序排列
+        list.sort((o1, o2) -> Long.compare(o2.timestamp, o1.timestamp));
+        return list;
+    }
+
+    /**
+     * 查询系统下载管理器中符合条件的任务，并转换为统一的下载信息
+     */
+    public static List<DownloadInfo> querySystemDownloads(Context context, DownloadManager.Query query) {
+        List<DownloadInfo> list = new ArrayList<>();
         DownloadManager dm = (DownloadManager) context.getSystemService(Context.DOWNLOAD_SERVICE);
-        DownloadManager.Query query = new DownloadManager.Query();
         try (Cursor cursor = dm.query(query)) {
             if (cursor != null && cursor.moveToFirst()) {
                 int idIdx = cursor.getColumnIndex(DownloadManager.COLUMN_ID);
@@ -311,16 +325,13 @@ public class DownloadHelper {
                         case DownloadManager.STATUS_SUCCESSFUL: info.status = 3; break;
                         case DownloadManager.STATUS_FAILED:  info.status = 4; break;
                     }
-                    allInfoMap.put(id, info);
+                    list.add(info);
                 } while (cursor.moveToNext());
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
 
-        List<DownloadInfo> list = new ArrayList<>(allInfoMap.values());
-        // 按时间倒序排列
-        list.sort((o1, o2) -> Long.compare(o2.timestamp, o1.timestamp));
         return list;
     }
 }
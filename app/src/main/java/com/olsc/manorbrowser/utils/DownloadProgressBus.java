@@ -0,0 +1,204 @@
+/**
+ * 下载进度推送总线
+ *
+ * 内置下载器在进度与状态变化时发布任务，系统 DownloadManager 的变化由内容观察者捕获后按 ID 重新查询再发布。
+ * 同一帧内到达的多次更新按任务 ID 合并，在下一次 Choreographer 帧回调时以快照形式统一分发给监听者，
+ * 界面刷新频率因此不会超过屏幕刷新率；没有监听者时发布直接返回，观察者也会注销，空闲时不产生任何开销。
+ */
+package com.olsc.manorbrowser.utils;
+
+import android.app.DownloadManager;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import com.olsc.manorbrowser.data.DownloadInfo;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class DownloadProgressBus {
+    /** 系统下载器的内容 URI，单个任务变化时会在其后附带任务 ID */
+    private static final Uri SYSTEM_DOWNLOADS_URI = Uri.parse("content://downloads/my_downloads");
+
+    /**
+     * 下载变化监听者，回调均在主线程
+     */
+    public interface Listener {
+        /**
+         * 一帧内发生变化的任务快照（每个任务只出现一次）
+         */
+        void onDownloadsChanged(List<DownloadInfo> changed);
+
+        /**
+         * 列表结构发生变化（记录被删除、清空或无法定位到具体任务），需要整体重新加载
+         */
+        void onDownloadsInvalidated();
+    }
+
+    private static volatile DownloadProgressBus instance;
+
+    private final Context appContext;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    /** 本帧待分发的任务，受 this 锁保护 */
+    private final Map<Long, DownloadInfo> pending = new LinkedHashMap<>();
+    private boolean invalidated;
+    private boolean frameScheduled;
+    private ContentObserver systemObserver;
+    /** 等待重新查询的系统下载任务 ID */
+    private final Set<Long> pendingSystemIds = new HashSet<>();
+
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> dispatch();
+
+    public static DownloadProgressBus get(Context context) {
+        if (instance == null) {
+            synchronized (DownloadProgressBus.class) {
+                if (instance == null) {
+                    instance = new DownloadProgressBus(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private DownloadProgressBus(Context context) {
+        this.appContext = context;
+    }
+
+    /**
+     * 发布任务的最新进度或状态，可在任意线程调用；快照在帧回调时才拷贝，频繁调用的代价只是一次哈希表写入
+     */
+    public void publish(DownloadInfo info) {
+        if (info == null || listeners.isEmpty()) return;
+        synchronized (this) {
+            pending.put(info.id, info);
+            scheduleFrameLocked();
+        }
+    }
+
+    /**
+     * 通知监听者整体重新加载，可在任意线程调用
+     */
+    public void invalidate() {
+        if (listeners.isEmpty()) return;
+        synchronized (this) {
+            invalidated = true;
+            scheduleFrameLocked();
+        }
+    }
+
+    /**
+     * 注册监听者（主线程）；第一个监听者注册时开始观察系统下载器
+     */
+    public void register(Listener listener) {
+        if (listeners.contains(listener)) return;
+        listeners.add(listener);
+        if (systemObserver == null) {
+            systemObserver = new ContentObserver(mainHandler) {
+                @Override
+                public void onChange(boolean selfChange, Uri uri) {
+                    onSystemDownloadChanged(uri);
+                }
+            };
+            try {
+                appContext.getContentResolver().registerContentObserver(SYSTEM_DOWNLOADS_URI, true, systemObserver);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 注销监听者（主线程）；最后一个监听者离开时停止观察并丢弃未分发的更新
+     */
+    public void unregister(Listener listener) {
+        listeners.remove(listener);
+        if (!listeners.isEmpty()) return;
+        if (systemObserver != null) {
+            appContext.getContentResolver().unregisterContentObserver(systemObserver);
+            systemObserver = null;
+        }
+        synchronized (this) {
+            pending.clear();
+            invalidated = false;
+        }
+    }
+
+    private void scheduleFrameLocked() {
+        if (frameScheduled) return;
+        frameScheduled = true;
+        // Choreographer 按线程区分实例，必须在主线程上登记帧回调
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        } else {
+            mainHandler.post(() -> Choreographer.getInstance().postFrameCallback(frameCallback));
+        }
+    }
+
+    /**
+     * 帧回调：取走本帧所有更新，拷贝快照后分发
+     */
+    private void dispatch() {
+        List<DownloadInfo> changed;
+        boolean reload;
+        synchronized (this) {
+            frameScheduled = false;
+            reload = invalidated;
+            invalidated = false;
+            changed = new ArrayList<>(pending.size());
+            for (DownloadInfo info : pending.values()) changed.add(info.copy());
+            pending.clear();
+        }
+        for (Listener listener : listeners) {
+            if (reload) {
+                listener.onDownloadsInvalidated();
+            } else if (!changed.isEmpty()) {
+                listener.onDownloadsChanged(changed);
+            }
+        }
+    }
+
+    /**
+     * 系统下载器的某个任务发生变化：只重新查询该任务；无法解析出 ID 时整体刷新
+     */
+    private void onSystemDownloadChanged(Uri uri) {
+        long id = -1;
+        try {
+            if (uri != null) id = ContentUris.parseId(uri);
+        } catch (Exception ignored) {
+        }
+        if (id < 0) {
+            invalidate();
+            return;
+        }
+        synchronized (pendingSystemIds) {
+            // 查询期间到达的同一批变化合并为一次查询
+            boolean idle = pendingSystemIds.isEmpty();
+            pendingSystemIds.add(id);
+            if (!idle) return;
+        }
+        DownloadScheduler.executeIo(() -> {
+            long[] ids;
+            synchronized (pendingSystemIds) {
+                ids = new long[pendingSystemIds.size()];
+                int i = 0;
+                for (Long pendingId : pendingSystemIds) ids[i++] = pendingId;
+                pendingSystemIds.clear();
+            }
+            List<DownloadInfo> result = DownloadHelper.querySystemDownloads(appContext,
+                    new DownloadManager.Query().setFilterById(ids));
+            if (result.size() < ids.length) invalidate();
+            for (DownloadInfo info : result) publish(info);
+        });
+    }
+}
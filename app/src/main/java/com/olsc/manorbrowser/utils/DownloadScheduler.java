@@ -0,0 +1,418 @@
+/**
+ * 内置下载调度器
+ *
+ * 所有内置下载先进入持久化队列（状态 0，按 queueOrder 排序），由调度器按以下规则放行：
+ * 1. 同时运行的任务数不超过 DEFAULT_MAX_ACTIVE_DOWNLOADS，任务在固定大小的线程池中执行；
+ * 2. 同一主机的连接数（各任务分段数之和）不超过 DEFAULT_MAX_CONNECTIONS_PER_HOST，
+ *    放行时按剩余额度为任务分配分段连接数；
+ * 3. 开启"仅 Wi-Fi"或"仅充电"时，条件不满足的任务留在队列中，正在运行的任务暂停后重新排队；
+ * 4. 所有任务共享一个令牌桶，实现全局限速。
+ * 队列支持暂停、继续与移到队首，顺序随下载记录一起持久化，进程重启后恢复。
+ */
+package com.olsc.manorbrowser.utils;
+
+import android.app.DownloadManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.Uri;
+import android.os.BatteryManager;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.preference.PreferenceManager;
+
+import com.olsc.manorbrowser.Config;
+import com.olsc.manorbrowser.data.DownloadInfo;
+import com.olsc.manorbrowser.data.DownloadStorage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class DownloadScheduler {
+    private static final String TAG = "DownloadScheduler";
+    /** 用户手动暂停 */
+    public static final int REASON_PAUSED_BY_USER = 1002;
+    /** 等待接通电源 */
+    public static final int REASON_WAITING_FOR_CHARGING = 1003;
+    /** 同时写入的流式下载（GeckoView 提供的响应流）数量 */
+    private static final int MAX_STREAM_DOWNLOADS = 3;
+
+    private static volatile DownloadScheduler instance;
+
+    /** 系统下载器入队、文件查重等零散 IO 操作共用的线程 */
+    private static final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    /** 流式下载线程池，替代原先每个下载各建一个线程池 */
+    private static final ThreadPoolExecutor streamExecutor = newBoundedPool(MAX_STREAM_DOWNLOADS);
+
+    private final Context appContext;
+    private final ThreadPoolExecutor workers = newBoundedPool(Config.DEFAULT_MAX_ACTIVE_DOWNLOADS);
+    private final TokenBucket bandwidth = new TokenBucket(0);
+    /** 等待中的任务，按 queueOrder 升序 */
+    private final List<DownloadInfo> queue = new ArrayList<>();
+    /** 运行中的任务 -> 分配到的连接数 */
+    private final Map<Long, Integer> running = new HashMap<>();
+    private final Map<Long, String> runningHosts = new HashMap<>();
+    /** 各主机当前占用的连接数 */
+    private final Map<String, Integer> hostConnections = new HashMap<>();
+    private long lastOrder;
+    private boolean restored;
+
+    public static DownloadScheduler get(Context context) {
+        if (instance == null) {
+            synchronized (DownloadScheduler.class) {
+                if (instance == null) {
+                    instance = new DownloadScheduler(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private DownloadScheduler(Context context) {
+        this.appContext = context;
+        reloadPreferences();
+        registerConstraintMonitors();
+    }
+
+    private static ThreadPoolExecutor newBoundedPool(int size) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * 执行零散的下载相关 IO 操作（串行）
+     */
+    public static void executeIo(Runnable task) {
+        ioExecutor.execute(task);
+    }
+
+    /**
+     * 执行流式下载，超过并发上限时排队
+     */
+    public static void executeStream(Runnable task) {
+        streamExecutor.execute(task);
+    }
+
+    /**
+     * 全局限速器，流式下载也使用它
+     */
+    public TokenBucket getBandwidth() {
+        return bandwidth;
+    }
+
+    /**
+     * 进程启动时恢复队列：等待中的任务重新入队，上次运行中且已有分段进度的任务继续下载，
+     * 没有分段进度的（如流式下载）无法续传，标记为失败。
+     */
+    public void restore() {
+        executeIo(() -> {
+            List<DownloadInfo> stored = DownloadStorage.getAllDownloads(appContext);
+            synchronized (this) {
+                if (restored) return;
+                restored = true;
+                for (DownloadInfo info : stored) {
+                    if (!info.isInternal || findTracked(info.id) != null) continue;
+                    if (info.status == 0 || (info.status == 1 && !TextUtils.isEmpty(info.segments))) {
+                        info.status = 0;
+                        if (info.queuedAt == 0) info.queuedAt = System.currentTimeMillis();
+                        DownloadHelper.sInternalDownloads.add(info);
+                        insertSorted(info);
+                        lastOrder = Math.max(lastOrder, info.queueOrder);
+                    } else if (info.status == 1) {
+                        info.status = 4;
+                        info.reason = 1000;
+                        DownloadStorage.saveDownload(appContext, info);
+                    } else if (info.status == 2) {
+                        // 暂停的任务保留在内存列表中，方便在下载管理中继续
+                        DownloadHelper.sInternalDownloads.add(info);
+                    }
+                }
+                schedule();
+            }
+        });
+    }
+
+    /**
+     * 新任务加入队尾
+     */
+    public synchronized void enqueue(DownloadInfo info) {
+        info.status = 0;
+        info.reason = 0;
+        info.queuedAt = System.currentTimeMillis();
+        info.queueOrder = ++lastOrder;
+        info.speed = 0;
+        insertSorted(info);
+        DownloadStorage.saveDownload(appContext, info);
+        schedule();
+    }
+
+    /**
+     * 暂停任务：运行中的任务中断连接并保留分段进度，等待中的任务移出队列
+     */
+    public synchronized void pause(long id) {
+        if (running.containsKey(id)) {
+            BrowserDownloader.pause(id, REASON_PAUSED_BY_USER);
+            return;
+        }
+        DownloadInfo info = removeQueued(id);
+        if (info != null) {
+            info.status = 2;
+            info.reason = REASON_PAUSED_BY_USER;
+            DownloadStorage.saveDownload(appContext, info);
+            schedule();
+        }
+    }
+
+    /**
+     * 继续暂停或失败的任务：重新排到队尾，已完成的分段不会重新下载
+     *
+     * @return 是否已重新入队
+     */
+    public synchronized boolean resume(long id) {
+        DownloadInfo info = findTracked(id);
+        if (info == null) {
+            info = DownloadStorage.getDownload(appContext, id);
+            if (info == null) return false;
+            DownloadHelper.sInternalDownloads.add(info);
+        }
+        if (!info.isInternal || info.status == 0 || info.status == 1 || info.status == 3
+                || TextUtils.isEmpty(info.url) || running.containsKey(id)) {
+            return false;
+        }
+        enqueue(info);
+        return true;
+    }
+
+    /**
+     * 将等待中的任务移到队首
+     */
+    public synchronized void moveToFront(long id) {
+        DownloadInfo info = removeQueued(id);
+        if (info == null) return;
+        long min = queue.isEmpty() ? info.queueOrder : Math.min(info.queueOrder, queue.get(0).queueOrder);
+        info.queueOrder = min - 1;
+        queue.add(0, info);
+        DownloadStorage.saveDownload(appContext, info);
+        schedule();
+    }
+
+    /**
+     * 任务被取消或删除时从队列中移除
+     */
+    public static void forget(long id) {
+        DownloadScheduler scheduler = instance;
+        if (scheduler != null) {
+            synchronized (scheduler) {
+                scheduler.removeQueued(id);
+            }
+        }
+    }
+
+    public synchronized int getQueuedCount() {
+        return queue.size();
+    }
+
+    public synchronized int getRunningCount() {
+        return running.size();
+    }
+
+    /**
+     * 下载设置变更后调用：刷新限速并重新评估约束条件
+     */
+    public synchronized void onPreferencesChanged() {
+        reloadPreferences();
+        schedule();
+    }
+
+    private void reloadPreferences() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+        bandwidth.setRate(prefs.getInt(Config.PREF_KEY_DOWNLOAD_SPEED_LIMIT, 0) * 1024L);
+    }
+
+    /**
+     * 核心调度：先处理约束条件，再按队列顺序放行满足主机连接额度的任务
+     */
+    private synchronized void schedule() {
+        int blockedReason = getBlockedReason();
+        if (blockedReason != 0) {
+            // 条件不满足：运行中的任务暂停回队列，等待中的任务标注原因
+            for (Long id : running.keySet()) BrowserDownloader.pause(id, blockedReason);
+            for (DownloadInfo info : queue) info.reason = blockedReason;
+            return;
+        }
+        int limit = Config.DEFAULT_MAX_ACTIVE_DOWNLOADS;
+        for (int i = 0; i < queue.size() && running.size() < limit; ) {
+            DownloadInfo info = queue.get(i);
+            String host = hostOf(info.url);
+            Integer used = hostConnections.get(host);
+            int allotted = Math.min(SegmentedDownloader.DEFAULT_SEGMENTS,
+                    Config.DEFAULT_MAX_CONNECTIONS_PER_HOST - (used == null ? 0 : used));
+            if (allotted <= 0) {
+                // 该主机连接已满，让后面其他主机的任务先走
+                i++;
+                continue;
+            }
+            queue.remove(i);
+            start(info, host, allotted);
+        }
+    }
+
+    private void start(DownloadInfo info, String host, int connections) {
+        running.put(info.id, connections);
+        runningHosts.put(info.id, host);
+        Integer used = hostConnections.get(host);
+        hostConnections.put(host, (used == null ? 0 : used) + connections);
+        info.reason = 0;
+        info.waitMillis = System.currentTimeMillis() - info.queuedAt;
+        Log.d(TAG, "Start " + info.id + " after " + info.waitMillis + "ms in queue, connections=" + connections);
+        workers.execute(() -> {
+            try {
+                BrowserDownloader.runTask(appContext, info, connections, bandwidth);
+            } finally {
+                onTaskFinished(info);
+            }
+        });
+    }
+
+    private synchronized void onTaskFinished(DownloadInfo info) {
+        Integer connections = running.remove(info.id);
+        // 任务已不在运行表中，此后不会再有针对本次运行的暂停请求
+        BrowserDownloader.clearPauseRequest(info.id);
+        String host = runningHosts.remove(info.id);
+        if (connections != null && host != null) {
+            Integer used = hostConnections.get(host);
+            int left = (used == null ? 0 : used) - connections;
+            if (left > 0) hostConnections.put(host, left);
+            else hostConnections.remove(host);
+        }
+        // 因约束条件被暂停的任务回到队列原位置
+        if (info.status == 0) insertSorted(info);
+        schedule();
+    }
+
+    /**
+     * 网络恢复后，因网络中断而暂停的任务自动重新排队
+     */
+    private synchronized void requeueNetworkPaused() {
+        List<DownloadInfo> paused = new ArrayList<>();
+        synchronized (DownloadHelper.sInternalDownloads) {
+            for (DownloadInfo info : DownloadHelper.sInternalDownloads) {
+                if (info.status == 2 && info.reason == DownloadManager.PAUSED_WAITING_FOR_NETWORK) paused.add(info);
+            }
+        }
+        for (DownloadInfo info : paused) enqueue(info);
+    }
+
+    /**
+     * @return 0 表示可以下载，否则为暂停原因
+     */
+    private int getBlockedReason() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+        if (prefs.getBoolean(Config.PREF_KEY_DOWNLOAD_WIFI_ONLY, false) && !isUnmeteredNetwork()) {
+            return DownloadManager.PAUSED_QUEUED_FOR_WIFI;
+        }
+        if (prefs.getBoolean(Config.PREF_KEY_DOWNLOAD_CHARGING_ONLY, false) && !isCharging()) {
+            return REASON_WAITING_FOR_CHARGING;
+        }
+        return 0;
+    }
+
+    private boolean isUnmeteredNetwork() {
+        ConnectivityManager cm = (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm == null) return false;
+        NetworkCapabilities caps = cm.getNetworkCapabilities(cm.getActiveNetwork());
+        return caps != null && (caps.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)
+                || caps.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)
+                || caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED));
+    }
+
+    private boolean isCharging() {
+        BatteryManager bm = (BatteryManager) appContext.getSystemService(Context.BATTERY_SERVICE);
+        return bm != null && bm.isCharging();
+    }
+
+    /**
+     * 监听网络与充电状态变化，条件变化时重新调度
+     */
+    private void registerConstraintMonitors() {
+        try {
+            ConnectivityManager cm = (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+            if (cm != null) {
+                cm.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                    @Override
+                    public void onAvailable(@NonNull Network network) {
+                        requeueNetworkPaused();
+                    }
+
+                    @Override
+                    public void onCapabilitiesChanged(@NonNull Network network, @NonNull NetworkCapabilities caps) {
+                        schedule();
+                    }
+
+                    @Override
+                    public void onLost(@NonNull Network network) {
+                        schedule();
+                    }
+                });
+            }
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_POWER_CONNECTED);
+            filter.addAction(Intent.ACTION_POWER_DISCONNECTED);
+            androidx.core.content.ContextCompat.registerReceiver(appContext, new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    schedule();
+                }
+            }, filter, androidx.core.content.ContextCompat.RECEIVER_NOT_EXPORTED);
+        } catch (Exception e) {
+            Log.e(TAG, "Register constraint monitors failed", e);
+        }
+    }
+
+    private void insertSorted(DownloadInfo info) {
+        int i = 0;
+        while (i < queue.size() && queue.get(i).queueOrder <= info.queueOrder) i++;
+        queue.add(i, info);
+    }
+
+    private DownloadInfo removeQueued(long id) {
+        for (int i = 0; i < queue.size(); i++) {
+            if (queue.get(i).id == id) return queue.remove(i);
+        }
+        return null;
+    }
+
+    private static DownloadInfo findTracked(long id) {
+        synchronized (DownloadHelper.sInternalDownloads) {
+            for (DownloadInfo info : DownloadHelper.sInternalDownloads) {
+                if (info.id == id) return info;
+            }
+        }
+        return null;
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = Uri.parse(url).getHost();
+            return host != null ? host.toLowerCase(Locale.ROOT) : "";
+        } catch (Exception e) {
+            return "";
+        }
+    }
+}
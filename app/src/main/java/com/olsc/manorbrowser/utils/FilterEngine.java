@@ -0,0 +1,943 @@
+/**
+ * 编译后的内容过滤规则引擎
+ *
+ * 解析 EasyList / uBlock 风格的网络过滤规则：||域名 锚点、| 首尾锚点、* 与 ^ 通配、@@ 例外规则，
+ * 以及 $third-party、$domain=、$match-case 与资源类型选项；元素隐藏规则、正则规则与不支持的选项直接跳过。
+ * 规则被编译为两部分：
+ * 1. 哈希域名表：||host 之后紧跟 ^、/ 或 : 的规则（域名完整）按域名存入开放寻址哈希表，查询时对请求域名的每一级后缀各查一次；
+ * 2. Aho–Corasick 自动机：其余规则按其中最长的字面片段建立多模式匹配，一次扫描 URL 得到候选规则后再精确验证。
+ *    域名不完整的 || 规则（如 ||ads. 或不带 ^ 的 ||example.com）也在这里，按任一级域名的开头匹配，可以命中部分域名。
+ * 编译结果是一段连续的二进制（见 toBytes），各部分以 IntBuffer / CharBuffer 视图直接在其上读取，
+ * 磁盘缓存可以内存映射后立即使用，不需要重新解析规则文本，也不需要把数据复制到堆上。
+ * 本类不依赖 Android API。
+ */
+package com.olsc.manorbrowser.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+public final class FilterEngine {
+    // 请求类型（规则的资源类型选项）
+    public static final int TYPE_DOCUMENT = 1;
+    public static final int TYPE_SUBDOCUMENT = 1 << 1;
+    public static final int TYPE_POPUP = 1 << 2;
+    public static final int TYPE_SCRIPT = 1 << 3;
+    public static final int TYPE_IMAGE = 1 << 4;
+    public static final int TYPE_STYLESHEET = 1 << 5;
+    public static final int TYPE_XHR = 1 << 6;
+    public static final int TYPE_MEDIA = 1 << 7;
+    public static final int TYPE_FONT = 1 << 8;
+    public static final int TYPE_WEBSOCKET = 1 << 9;
+    public static final int TYPE_PING = 1 << 10;
+    public static final int TYPE_OTHER = 1 << 11;
+    public static final int TYPE_ALL = (1 << 12) - 1;
+
+    /** 二进制格式版本，格式变化时递增，旧缓存会被判为无效 */
+    static final int FORMAT_VERSION = 1;
+    private static final int MAGIC = 0x4D4E5246; // "MNRF"
+
+    // 规则标志位
+    private static final int F_EXCEPTION = 1;
+    private static final int F_HOST_ANCHOR = 1 << 1;
+    private static final int F_START_ANCHOR = 1 << 2;
+    private static final int F_END_ANCHOR = 1 << 3;
+    private static final int F_MATCH_CASE = 1 << 4;
+    private static final int F_THIRD_PARTY = 1 << 5;
+    private static final int F_FIRST_PARTY = 1 << 6;
+    /** 字面片段之前没有 *，命中位置即可推出整条规则的起点 */
+    private static final int F_FIXED_PREFIX = 1 << 7;
+    /** 存放在域名表中，模式为域名之后的剩余部分 */
+    private static final int F_HOST_TABLE = 1 << 8;
+
+    /** 每条规则占用的 int 数：flags, typeMask, patOff, patLen, litOff, litLen, domStart, domCount */
+    private static final int RULE_INTS = 8;
+    /** 域名表每个槽占用的 int 数：hash, domOff, domLen, listStart, listCount */
+    private static final int SLOT_INTS = 5;
+    /** 短于此长度的字面片段不进入自动机，规则对每个 URL 逐一验证 */
+    private static final int MIN_LITERAL = 3;
+    private static final int ROOT_TABLE = 128;
+
+    private static final Map<String, Integer> TYPE_OPTIONS = new HashMap<>();
+
+    static {
+        TYPE_OPTIONS.put("document", TYPE_DOCUMENT);
+        TYPE_OPTIONS.put("doc", TYPE_DOCUMENT);
+        TYPE_OPTIONS.put("subdocument", TYPE_SUBDOCUMENT);
+        TYPE_OPTIONS.put("frame", TYPE_SUBDOCUMENT);
+        TYPE_OPTIONS.put("popup", TYPE_POPUP);
+        TYPE_OPTIONS.put("script", TYPE_SCRIPT);
+        TYPE_OPTIONS.put("image", TYPE_IMAGE);
+        TYPE_OPTIONS.put("stylesheet", TYPE_STYLESHEET);
+        TYPE_OPTIONS.put("css", TYPE_STYLESHEET);
+        TYPE_OPTIONS.put("xmlhttprequest", TYPE_XHR);
+        TYPE_OPTIONS.put("xhr", TYPE_XHR);
+        TYPE_OPTIONS.put("media", TYPE_MEDIA);
+        TYPE_OPTIONS.put("font", TYPE_FONT);
+        TYPE_OPTIONS.put("websocket", TYPE_WEBSOCKET);
+        TYPE_OPTIONS.put("ping", TYPE_PING);
+        TYPE_OPTIONS.put("beacon", TYPE_PING);
+        TYPE_OPTIONS.put("other", TYPE_OTHER);
+    }
+
+    // 二进制中的各个分段，顺序即写入顺序
+    private static final int S_RULES = 0;
+    private static final int S_DOMAINS = 1;
+    private static final int S_POOL = 2;
+    private static final int S_SLOTS = 3;
+    private static final int S_HOST_RULES = 4;
+    private static final int S_EDGE_START = 5;
+    private static final int S_EDGE_CHARS = 6;
+    private static final int S_EDGE_TARGETS = 7;
+    private static final int S_FAIL = 8;
+    private static final int S_OUT_START = 9;
+    private static final int S_OUTPUTS = 10;
+    private static final int S_ROOT = 11;
+    private static final int S_GENERIC = 12;
+    private static final int SECTION_COUNT = 13;
+    /** 头部：magic, version, sourceTag(2), ruleCount, skippedCount, 之后每个分段 offset + length */
+    private static final int HEADER_INTS = 6 + SECTION_COUNT * 2;
+
+    private final ByteBuffer data;
+    private final long sourceTag;
+    private final int ruleCount;
+    private final int skippedCount;
+    private final IntBuffer rules;
+    private final IntBuffer domains;
+    private final CharBuffer pool;
+    private final IntBuffer slots;
+    private final int slotMask;
+    private final IntBuffer hostRules;
+    private final IntBuffer edgeStart;
+    private final CharBuffer edgeChars;
+    private final IntBuffer edgeTargets;
+    private final IntBuffer fail;
+    private final IntBuffer outStart;
+    private final IntBuffer outputs;
+    private final IntBuffer root;
+    private final IntBuffer generic;
+
+    private FilterEngine(ByteBuffer data) {
+        this.data = data;
+        IntBuffer header = data.duplicate().asIntBuffer();
+        if (header.capacity() < HEADER_INTS || header.get(0) != MAGIC || header.get(1) != FORMAT_VERSION) {
+            throw new IllegalArgumentException("not a compiled filter");
+        }
+        sourceTag = ((long) header.get(2) << 32) | (header.get(3) & 0xffffffffL);
+        ruleCount = header.get(4);
+        skippedCount = header.get(5);
+        rules = intSection(header, S_RULES);
+        domains = intSection(header, S_DOMAINS);
+        pool = section(header, S_POOL).asCharBuffer();
+        slots = intSection(header, S_SLOTS);
+        slotMask = slots.capacity() / SLOT_INTS - 1;
+        hostRules = intSection(header, S_HOST_RULES);
+        edgeStart = intSection(header, S_EDGE_START);
+        edgeChars = section(header, S_EDGE_CHARS).asCharBuffer();
+        edgeTargets = intSection(header, S_EDGE_TARGETS);
+        fail = intSection(header, S_FAIL);
+        outStart = intSection(header, S_OUT_START);
+        outputs = intSection(header, S_OUTPUTS);
+        root = intSection(header, S_ROOT);
+        generic = intSection(header, S_GENERIC);
+    }
+
+    private ByteBuffer section(IntBuffer header, int index) {
+        int offset = header.get(6 + index * 2);
+        int length = header.get(7 + index * 2);
+        ByteBuffer view = data.duplicate();
+        view.limit(offset + length);
+        view.position(offset);
+        return view.slice();
+    }
+
+    private IntBuffer intSection(IntBuffer header, int index) {
+        return section(header, index).asIntBuffer();
+    }
+
+    /**
+     * 打开编译好的二进制（堆内或内存映射的缓冲区均可）
+     *
+     * @param expectedTag 规则来源的标识（如规则文件的版本），与编译时不同则返回 null，调用方应重新编译
+     * @return 引擎；数据无效或来源不符时返回 null
+     */
+    public static FilterEngine open(ByteBuffer data, long expectedTag) {
+        try {
+            FilterEngine engine = new FilterEngine(data);
+            return engine.sourceTag == expectedTag ? engine : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /** 编译结果的二进制，可原样写入磁盘缓存 */
+    public byte[] toBytes() {
+        ByteBuffer copy = data.duplicate();
+        copy.position(0);
+        byte[] bytes = new byte[copy.remaining()];
+        copy.get(bytes);
+        return bytes;
+    }
+
+    /** 编译时传入的规则来源标识 */
+    public long getSourceTag() {
+        return sourceTag;
+    }
+
+    /** 编译收录的规则数 */
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    /** 因语法或选项不受支持而跳过的规则数 */
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    // -------------------------------------------------------
+    // 导出（供其他匹配实现生成规则集，如内置扩展的子资源拦截）
+    // -------------------------------------------------------
+
+    /** 导出的一条规则，模式中 * 为任意串、^ 为分隔符 */
+    public static final class RuleInfo {
+        public static final int ANCHOR_NONE = 0;
+        /** 从 URL 开头匹配 */
+        public static final int ANCHOR_START = 1;
+        /** 从域名中任一级域名的开头匹配 */
+        public static final int ANCHOR_HOST = 2;
+
+        public boolean exception;
+        /** 非空时规则只匹配该域名及其子域名，pattern 从域名结束处开始匹配 */
+        public String host;
+        public String pattern;
+        public int anchor;
+        public boolean anchorEnd;
+        public boolean matchCase;
+        /** 1 仅第三方，-1 仅同站，0 不限 */
+        public int party;
+        public int typeMask;
+        public final List<String> includeDomains = new ArrayList<>();
+        public final List<String> excludeDomains = new ArrayList<>();
+    }
+
+    public interface RuleVisitor {
+        void visit(RuleInfo rule);
+    }
+
+    /** 按编译顺序逐条导出规则 */
+    public void exportRules(RuleVisitor visitor) {
+        String[] hosts = new String[ruleCount];
+        for (int base = 0; base < slots.capacity(); base += SLOT_INTS) {
+            int count = slots.get(base + 4);
+            if (count == 0) continue;
+            String host = poolString(slots.get(base + 1), slots.get(base + 2));
+            int start = slots.get(base + 3);
+            for (int k = start; k < start + count; k++) hosts[hostRules.get(k)] = host;
+        }
+        for (int r = 0; r < ruleCount; r++) {
+            int base = r * RULE_INTS;
+            int flags = rules.get(base);
+            RuleInfo rule = new RuleInfo();
+            rule.exception = (flags & F_EXCEPTION) != 0;
+            rule.host = (flags & F_HOST_TABLE) != 0 ? hosts[r] : null;
+            rule.pattern = poolString(rules.get(base + 2), rules.get(base + 3));
+            if ((flags & F_START_ANCHOR) != 0) rule.anchor = RuleInfo.ANCHOR_START;
+            else if ((flags & F_HOST_ANCHOR) != 0 && rule.host == null) rule.anchor = RuleInfo.ANCHOR_HOST;
+            rule.anchorEnd = (flags & F_END_ANCHOR) != 0;
+            rule.matchCase = (flags & F_MATCH_CASE) != 0;
+            rule.party = (flags & F_THIRD_PARTY) != 0 ? 1 : (flags & F_FIRST_PARTY) != 0 ? -1 : 0;
+            rule.typeMask = rules.get(base + 1);
+            int domStart = rules.get(base + 6);
+            int domCount = rules.get(base + 7);
+            for (int k = 0; k < domCount; k++) {
+                int d = (domStart + k) * 3;
+                String domain = poolString(domains.get(d), domains.get(d + 1));
+                (domains.get(d + 2) != 0 ? rule.excludeDomains : rule.includeDomains).add(domain);
+            }
+            visitor.visit(rule);
+        }
+    }
+
+    private String poolString(int offset, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) chars[i] = pool.get(offset + i);
+        return new String(chars);
+    }
+
+    // -------------------------------------------------------
+    // 匹配
+    // -------------------------------------------------------
+
+    /**
+     * 判断请求是否应被拦截：有拦截规则命中且没有例外规则命中
+     *
+     * @param url        请求地址
+     * @param originHost 发起请求的页面域名（第三方判断与 $domain= 选项使用），未知时为 null
+     * @param type       TYPE_* 之一
+     */
+    public boolean shouldBlock(String url, String originHost, int type) {
+        if (url == null || url.isEmpty()) return false;
+        String lower = url.toLowerCase(Locale.ROOT);
+        // 个别字符小写后长度会变化，此时区分大小写的规则也按小写 URL 匹配，保证位置一致
+        if (lower.length() != url.length()) url = lower;
+        int hostStart = hostStart(lower);
+        int hostEnd = hostEnd(lower, hostStart);
+        if (originHost != null) originHost = originHost.toLowerCase(Locale.ROOT);
+        Request request = new Request(url, lower, hostStart, hostEnd, originHost, type);
+
+        boolean blocked = false;
+        // 1. 域名表：请求域名的每一级后缀查一次
+        for (int i = hostStart; i < hostEnd; i++) {
+            if (i != hostStart && lower.charAt(i - 1) != '.') continue;
+            int slot = findSlot(lower, i, hostEnd);
+            if (slot < 0) continue;
+            int start = slots.get(slot + 3);
+            int end = start + slots.get(slot + 4);
+            for (int k = start; k < end; k++) {
+                int verdict = evaluate(hostRules.get(k), request, hostEnd);
+                if (verdict > 0) return false;
+                if (verdict < 0) blocked = true;
+            }
+        }
+        // 2. 自动机扫描整个 URL
+        int state = 0;
+        int length = lower.length();
+        for (int i = 0; i < length; i++) {
+            state = step(state, lower.charAt(i));
+            int end = outStart.get(state + 1);
+            for (int k = outStart.get(state); k < end; k++) {
+                int verdict = evaluate(outputs.get(k), request, i + 1);
+                if (verdict > 0) return false;
+                if (verdict < 0) blocked = true;
+            }
+        }
+        // 3. 没有可用字面片段的规则
+        for (int k = 0; k < generic.capacity(); k++) {
+            int verdict = evaluate(generic.get(k), request, -1);
+            if (verdict > 0) return false;
+            if (verdict < 0) blocked = true;
+        }
+        return blocked;
+    }
+
+    /** 一次匹配的请求信息 */
+    private static final class Request {
+        final String url;
+        final String lower;
+        final int hostStart;
+        final int hostEnd;
+        final String originHost;
+        final int type;
+        /** 0 未计算，1 第三方，-1 同站 */
+        int thirdParty;
+
+        Request(String url, String lower, int hostStart, int hostEnd, String originHost, int type) {
+            this.url = url;
+            this.lower = lower;
+            this.hostStart = hostStart;
+            this.hostEnd = hostEnd;
+            this.originHost = originHost;
+            this.type = type;
+        }
+    }
+
+    private int step(int state, char c) {
+        while (true) {
+            if (state == 0) return c < ROOT_TABLE ? root.get(c) : findEdge(0, c);
+            int next = findEdge(state, c);
+            if (next >= 0) return next;
+            state = fail.get(state);
+        }
+    }
+
+    private int findEdge(int state, char c) {
+        int low = edgeStart.get(state);
+        int high = edgeStart.get(state + 1) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char key = edgeChars.get(mid);
+            if (key < c) low = mid + 1;
+            else if (key > c) high = mid - 1;
+            else return edgeTargets.get(mid);
+        }
+        return state == 0 ? 0 : -1;
+    }
+
+    /**
+     * 验证单条规则
+     *
+     * @param hitEnd 域名表规则为域名结束位置；自动机规则为字面片段在 URL 中的结束位置；其余为 -1
+     * @return 1 例外规则命中，-1 拦截规则命中，0 未命中
+     */
+    private int evaluate(int rule, Request request, int hitEnd) {
+        int base = rule * RULE_INTS;
+        int flags = rules.get(base);
+        if ((rules.get(base + 1) & request.type) == 0) return 0;
+        if (!matchesPattern(base, flags, request, hitEnd)) return 0;
+        if (!matchesOptions(base, flags, request)) return 0;
+        return (flags & F_EXCEPTION) != 0 ? 1 : -1;
+    }
+
+    private boolean matchesPattern(int base, int flags, Request request, int hitEnd) {
+        int patOff = rules.get(base + 2);
+        int patLen = rules.get(base + 3);
+        boolean anchorEnd = (flags & F_END_ANCHOR) != 0;
+        String s = (flags & F_MATCH_CASE) != 0 ? request.url : request.lower;
+        if ((flags & F_HOST_TABLE) != 0) {
+            return glob(patOff, patLen, s, hitEnd, anchorEnd);
+        }
+        if ((flags & F_START_ANCHOR) != 0) {
+            return glob(patOff, patLen, s, 0, anchorEnd);
+        }
+        if ((flags & F_HOST_ANCHOR) != 0) {
+            for (int i = request.hostStart; i < request.hostEnd; i++) {
+                if (i != request.hostStart && s.charAt(i - 1) != '.') continue;
+                if (glob(patOff, patLen, s, i, anchorEnd)) return true;
+            }
+            return false;
+        }
+        if (hitEnd >= 0 && (flags & F_FIXED_PREFIX) != 0) {
+            // 字面片段之前只有定长部分，规则起点唯一
+            int start = hitEnd - rules.get(base + 5) - rules.get(base + 4);
+            return start >= 0 && glob(patOff, patLen, s, start, anchorEnd);
+        }
+        int last = s.length() - 1;
+        for (int i = 0; i <= last; i++) {
+            if (glob(patOff, patLen, s, i, anchorEnd)) return true;
+        }
+        return false;
+    }
+
+    /** 从 s 的 start 处开始匹配模式（* 任意串，^ 分隔符或结尾） */
+    private boolean glob(int patOff, int patLen, String s, int start, boolean anchorEnd) {
+        int n = s.length();
+        int p = 0;
+        int i = start;
+        int starP = -1;
+        int starI = 0;
+        while (true) {
+            if (p == patLen) {
+                if (!anchorEnd || i == n) return true;
+            } else {
+                char c = pool.get(patOff + p);
+                if (c == '*') {
+                    starP = ++p;
+                    starI = i;
+                    continue;
+                }
+                if (i < n && (c == '^' ? isSeparator(s.charAt(i)) : c == s.charAt(i))) {
+                    p++;
+                    i++;
+                    continue;
+                }
+                if (c == '^' && i == n) {
+                    p++;
+                    continue;
+                }
+            }
+            if (starP < 0 || starI >= n) return false;
+            p = starP;
+            i = ++starI;
+        }
+    }
+
+    static boolean isSeparator(char c) {
+        return !(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                || c == '_' || c == '-' || c == '.' || c == '%' || c > 0x7f);
+    }
+
+    private boolean matchesOptions(int base, int flags, Request request) {
+        if ((flags & (F_THIRD_PARTY | F_FIRST_PARTY)) != 0) {
+            if (request.originHost == null) return false;
+            if (request.thirdParty == 0) {
+                request.thirdParty = isThirdParty(request.lower, request.hostStart, request.hostEnd, request.originHost) ? 1 : -1;
+            }
+            boolean third = request.thirdParty > 0;
+            if ((flags & F_THIRD_PARTY) != 0 && !third) return false;
+            if ((flags & F_FIRST_PARTY) != 0 && third) return false;
+        }
+        int domCount = rules.get(base + 7);
+        if (domCount == 0) return true;
+        if (request.originHost == null) return false;
+        int domStart = rules.get(base + 6);
+        boolean hasInclude = false;
+        boolean included = false;
+        for (int k = 0; k < domCount; k++) {
+            int d = (domStart + k) * 3;
+            boolean negated = domains.get(d + 2) != 0;
+            boolean matches = hostMatches(request.originHost, domains.get(d), domains.get(d + 1));
+            if (negated) {
+                if (matches) return false;
+            } else {
+                hasInclude = true;
+                included |= matches;
+            }
+        }
+        return !hasInclude || included;
+    }
+
+    /** host 等于池中的域名或是其子域名 */
+    private boolean hostMatches(String host, int domOff, int domLen) {
+        int offset = host.length() - domLen;
+        if (offset < 0 || (offset > 0 && host.charAt(offset - 1) != '.')) return false;
+        for (int i = 0; i < domLen; i++) {
+            if (host.charAt(offset + i) != pool.get(domOff + i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 按"可注册域名"比较请求与来源是否同站；没有内置公共后缀表，
+     * 取最后两级域名，第二级很短（如 co.uk、com.cn）时取三级
+     */
+    private static boolean isThirdParty(String s, int hostStart, int hostEnd, String origin) {
+        String host = s.substring(hostStart, hostEnd);
+        return !siteOf(host).equals(siteOf(origin));
+    }
+
+    static String siteOf(String host) {
+        int last = host.lastIndexOf('.');
+        if (last <= 0) return host;
+        int second = host.lastIndexOf('.', last - 1);
+        if (second < 0) return host;
+        if (last - second - 1 <= 3 && host.length() - last - 1 == 2) {
+            int third = host.lastIndexOf('.', second - 1);
+            return third < 0 ? host : host.substring(third + 1);
+        }
+        return host.substring(second + 1);
+    }
+
+    private int findSlot(String s, int start, int end) {
+        int hash = hash(s, start, end);
+        int slot = hash & slotMask;
+        while (true) {
+            int base = slot * SLOT_INTS;
+            if (slots.get(base + 4) == 0) return -1;
+            if (slots.get(base) == hash && slots.get(base + 2) == end - start) {
+                int domOff = slots.get(base + 1);
+                boolean equal = true;
+                for (int i = start; i < end && equal; i++) equal = s.charAt(i) == pool.get(domOff + i - start);
+                if (equal) return base;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+    }
+
+    private static int hash(CharSequence s, int start, int end) {
+        int h = 0x811c9dc5;
+        for (int i = start; i < end; i++) {
+            h ^= s.charAt(i);
+            h *= 0x01000193;
+        }
+        return h;
+    }
+
+    /** URL 中域名的起始位置（跳过协议与用户信息），没有协议时为 0 */
+    static int hostStart(String url) {
+        int scheme = url.indexOf("://");
+        int start = scheme >= 0 ? scheme + 3 : 0;
+        int end = authorityEnd(url, start);
+        for (int i = end - 1; i >= start; i--) {
+            if (url.charAt(i) == '@') return i + 1;
+        }
+        return start;
+    }
+
+    /** 域名的结束位置（端口、路径、查询或片段之前） */
+    static int hostEnd(String url, int hostStart) {
+        int end = authorityEnd(url, hostStart);
+        int colon = url.indexOf(':', hostStart);
+        return colon >= 0 && colon < end ? colon : end;
+    }
+
+    private static int authorityEnd(String url, int start) {
+        int n = url.length();
+        for (int i = start; i < n; i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') return i;
+        }
+        return n;
+    }
+
+    /** URL 的域名部分（小写），无法解析时返回 null */
+    public static String hostOf(String url) {
+        if (url == null || url.isEmpty()) return null;
+        String lower = url.toLowerCase(Locale.ROOT);
+        int start = hostStart(lower);
+        int end = hostEnd(lower, start);
+        return end > start ? lower.substring(start, end) : null;
+    }
+
+    // -------------------------------------------------------
+    // 编译
+    // -------------------------------------------------------
+
+    /**
+     * 解析规则文本并编译
+     *
+     * @param sourceTag 规则来源的标识，写入二进制头部，open 时用于判断缓存是否过期
+     */
+    public static FilterEngine compile(Reader source, long sourceTag) throws IOException {
+        Compiler compiler = new Compiler();
+        BufferedReader reader = source instanceof BufferedReader ? (BufferedReader) source : new BufferedReader(source);
+        String line;
+        Set<String> seen = new HashSet<>();
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("!") || line.startsWith("[")) continue;
+            if (!seen.add(line)) continue;
+            compiler.add(line);
+        }
+        return new FilterEngine(compiler.build(sourceTag));
+    }
+
+    /** 解析后的单条规则 */
+    private static final class ParsedRule {
+        int flags;
+        int typeMask = TYPE_ALL;
+        /** 域名表规则为域名之后的剩余部分，其余为整条模式 */
+        String pattern;
+        String host;
+        int literalOffset;
+        int literalLength;
+        final List<String> domains = new ArrayList<>();
+        final List<Boolean> negated = new ArrayList<>();
+    }
+
+    private static final class Compiler {
+        final List<ParsedRule> rules = new ArrayList<>();
+        int skipped;
+
+        void add(String line) {
+            ParsedRule rule = parse(line);
+            if (rule == null) {
+                skipped++;
+            } else {
+                rules.add(rule);
+            }
+        }
+
+        private ParsedRule parse(String line) {
+            // 元素隐藏等外观规则
+            if (line.contains("##") || line.contains("#@#") || line.contains("#?#") || line.contains("#$#")) return null;
+            ParsedRule rule = new ParsedRule();
+            if (line.startsWith("@@")) {
+                rule.flags |= F_EXCEPTION;
+                line = line.substring(2);
+            }
+            int dollar = line.lastIndexOf('$');
+            if (dollar >= 0 && !parseOptions(rule, line.substring(dollar + 1))) return null;
+            String pattern = dollar >= 0 ? line.substring(0, dollar) : line;
+            // 正则规则
+            if (pattern.length() > 2 && pattern.startsWith("/") && pattern.endsWith("/")) return null;
+            if ((rule.flags & F_MATCH_CASE) == 0) pattern = pattern.toLowerCase(Locale.ROOT);
+
+            if (pattern.startsWith("||")) {
+                rule.flags |= F_HOST_ANCHOR;
+                pattern = pattern.substring(2);
+            } else if (pattern.startsWith("|")) {
+                rule.flags |= F_START_ANCHOR;
+                pattern = pattern.substring(1);
+            }
+            if (pattern.endsWith("|")) {
+                rule.flags |= F_END_ANCHOR;
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            while (pattern.startsWith("*")) {
+                pattern = pattern.substring(1);
+                rule.flags &= ~(F_START_ANCHOR | F_HOST_ANCHOR);
+            }
+            while (pattern.endsWith("*")) {
+                pattern = pattern.substring(0, pattern.length() - 1);
+                rule.flags &= ~F_END_ANCHOR;
+            }
+            // 空模式匹配所有请求，只在限定了来源域名时收录
+            if (pattern.isEmpty() && rule.domains.isEmpty()) return null;
+
+            if ((rule.flags & F_HOST_ANCHOR) != 0) {
+                int hostLength = 0;
+                while (hostLength < pattern.length() && "/^*?:|".indexOf(pattern.charAt(hostLength)) < 0) hostLength++;
+                // 只有域名之后确定是分隔符时才能整串查表；否则规则可以匹配更长的域名（||example.com 也匹配 example.community）
+                boolean completeHost = hostLength < pattern.length() ? "^/:".indexOf(pattern.charAt(hostLength)) >= 0
+                        : (rule.flags & F_END_ANCHOR) != 0;
+                if (hostLength > 0 && completeHost) {
+                    rule.flags |= F_HOST_TABLE;
+                    rule.host = pattern.substring(0, hostLength).toLowerCase(Locale.ROOT);
+                    pattern = pattern.substring(hostLength);
+                }
+            }
+            rule.pattern = pattern;
+            if ((rule.flags & F_HOST_TABLE) == 0) chooseLiteral(rule);
+            return rule;
+        }
+
+        private boolean parseOptions(ParsedRule rule, String options) {
+            int positiveTypes = 0;
+            int negativeTypes = 0;
+            for (String option : options.split(",")) {
+                option = option.trim();
+                boolean negate = option.startsWith("~");
+                String name = negate ? option.substring(1) : option;
+                Integer type = TYPE_OPTIONS.get(name);
+                if (type != null) {
+                    if (negate) negativeTypes |= type;
+                    else positiveTypes |= type;
+                } else if (name.equals("third-party") || name.equals("3p")) {
+                    rule.flags |= negate ? F_FIRST_PARTY : F_THIRD_PARTY;
+                } else if (name.equals("first-party") || name.equals("1p")) {
+                    rule.flags |= negate ? F_THIRD_PARTY : F_FIRST_PARTY;
+                } else if (name.equals("match-case")) {
+                    rule.flags |= F_MATCH_CASE;
+                } else if (name.startsWith("domain=") && !negate) {
+                    for (String domain : name.substring("domain=".length()).split("\\|")) {
+                        boolean excluded = domain.startsWith("~");
+                        String value = (excluded ? domain.substring(1) : domain).toLowerCase(Locale.ROOT);
+                        if (value.isEmpty() || value.contains("*") || value.startsWith("/")) return false;
+                        rule.domains.add(value);
+                        rule.negated.add(excluded);
+                    }
+                } else if (!name.equals("important") && !name.isEmpty()) {
+                    // redirect=、csp=、removeparam= 等选项会改变请求而不是拦截，不支持时整条跳过
+                    return false;
+                }
+            }
+            rule.typeMask = (positiveTypes != 0 ? positiveTypes : TYPE_ALL) & ~negativeTypes;
+            return rule.typeMask != 0;
+        }
+
+        /** 选出模式中最长的不含通配符的片段作为自动机的关键字 */
+        private void chooseLiteral(ParsedRule rule) {
+            String pattern = rule.pattern;
+            int bestStart = 0;
+            int bestLength = 0;
+            int start = 0;
+            for (int i = 0; i <= pattern.length(); i++) {
+                if (i == pattern.length() || pattern.charAt(i) == '*' || pattern.charAt(i) == '^') {
+                    if (i - start > bestLength) {
+                        bestStart = start;
+                        bestLength = i - start;
+                    }
+                    start = i + 1;
+                }
+            }
+            rule.literalOffset = bestStart;
+            rule.literalLength = bestLength;
+            if (pattern.lastIndexOf('*', bestStart) < 0) rule.flags |= F_FIXED_PREFIX;
+        }
+
+        ByteBuffer build(long sourceTag) {
+            StringBuilder pool = new StringBuilder();
+            Map<String, Integer> pooled = new HashMap<>();
+            int[] ruleInts = new int[rules.size() * RULE_INTS];
+            List<Integer> domainInts = new ArrayList<>();
+            Map<String, List<Integer>> byHost = new LinkedHashMap<>();
+            List<Integer> generic = new ArrayList<>();
+            AhoCorasickBuilder automaton = new AhoCorasickBuilder();
+
+            for (int r = 0; r < rules.size(); r++) {
+                ParsedRule rule = rules.get(r);
+                int base = r * RULE_INTS;
+                ruleInts[base] = rule.flags;
+                ruleInts[base + 1] = rule.typeMask;
+                ruleInts[base + 2] = intern(pool, pooled, rule.pattern);
+                ruleInts[base + 3] = rule.pattern.length();
+                ruleInts[base + 4] = rule.literalOffset;
+                ruleInts[base + 5] = rule.literalLength;
+                ruleInts[base + 6] = domainInts.size() / 3;
+                ruleInts[base + 7] = rule.domains.size();
+                for (int d = 0; d < rule.domains.size(); d++) {
+                    domainInts.add(intern(pool, pooled, rule.domains.get(d)));
+                    domainInts.add(rule.domains.get(d).length());
+                    domainInts.add(rule.negated.get(d) ? 1 : 0);
+                }
+                if ((rule.flags & F_HOST_TABLE) != 0) {
+                    byHost.computeIfAbsent(rule.host, k -> new ArrayList<>()).add(r);
+                } else if (rule.literalLength >= MIN_LITERAL) {
+                    String literal = rule.pattern.substring(rule.literalOffset, rule.literalOffset + rule.literalLength);
+                    automaton.add(literal.toLowerCase(Locale.ROOT), r);
+                } else {
+                    generic.add(r);
+                }
+            }
+
+            // 开放寻址哈希表，装载因子不超过 0.75
+            int capacity = 2;
+            while (capacity * 3 < byHost.size() * 4) capacity <<= 1;
+            int[] slotInts = new int[capacity * SLOT_INTS];
+            List<Integer> hostRuleList = new ArrayList<>();
+            for (Map.Entry<String, List<Integer>> entry : byHost.entrySet()) {
+                String host = entry.getKey();
+                int hash = hash(host, 0, host.length());
+                int slot = hash & (capacity - 1);
+                while (slotInts[slot * SLOT_INTS + 4] != 0) slot = (slot + 1) & (capacity - 1);
+                int base = slot * SLOT_INTS;
+                slotInts[base] = hash;
+                slotInts[base + 1] = intern(pool, pooled, host);
+                slotInts[base + 2] = host.length();
+                slotInts[base + 3] = hostRuleList.size();
+                slotInts[base + 4] = entry.getValue().size();
+                hostRuleList.addAll(entry.getValue());
+            }
+            automaton.finish();
+
+            Object[] sections = new Object[SECTION_COUNT];
+            sections[S_RULES] = ruleInts;
+            sections[S_DOMAINS] = toArray(domainInts);
+            sections[S_POOL] = pool.toString().toCharArray();
+            sections[S_SLOTS] = slotInts;
+            sections[S_HOST_RULES] = toArray(hostRuleList);
+            sections[S_EDGE_START] = automaton.edgeStart;
+            sections[S_EDGE_CHARS] = automaton.edgeChars;
+            sections[S_EDGE_TARGETS] = automaton.edgeTargets;
+            sections[S_FAIL] = automaton.fail;
+            sections[S_OUT_START] = automaton.outStart;
+            sections[S_OUTPUTS] = automaton.outputs;
+            sections[S_ROOT] = automaton.root;
+            sections[S_GENERIC] = toArray(generic);
+
+            int[] offsets = new int[SECTION_COUNT];
+            int[] lengths = new int[SECTION_COUNT];
+            int size = HEADER_INTS * 4;
+            for (int i = 0; i < SECTION_COUNT; i++) {
+                offsets[i] = size;
+                lengths[i] = sections[i] instanceof int[] ? ((int[]) sections[i]).length * 4 : ((char[]) sections[i]).length * 2;
+                size += (lengths[i] + 3) & ~3;
+            }
+            ByteBuffer out = ByteBuffer.allocate(size);
+            out.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(sourceTag).putInt(rules.size()).putInt(skipped);
+            for (int i = 0; i < SECTION_COUNT; i++) out.putInt(offsets[i]).putInt(lengths[i]);
+            for (int i = 0; i < SECTION_COUNT; i++) {
+                out.position(offsets[i]);
+                if (sections[i] instanceof int[]) {
+                    out.asIntBuffer().put((int[]) sections[i]);
+                } else {
+                    out.asCharBuffer().put((char[]) sections[i]);
+                }
+            }
+            out.position(0);
+            return out;
+        }
+
+        private static int intern(StringBuilder pool, Map<String, Integer> pooled, String s) {
+            Integer offset = pooled.get(s);
+            if (offset != null) return offset;
+            int at = pool.length();
+            pool.append(s);
+            pooled.put(s, at);
+            return at;
+        }
+
+        private static int[] toArray(List<Integer> list) {
+            int[] array = new int[list.size()];
+            for (int i = 0; i < array.length; i++) array[i] = list.get(i);
+            return array;
+        }
+    }
+
+    /**
+     * Aho–Corasick 自动机的构建，结果展平为按状态编号索引的数组：
+     * 每个状态的出边按字符排序（二分查找），根状态另有 ASCII 直接跳转表；
+     * 每个状态的输出已合并失败链上所有状态的输出，匹配时不需要再沿失败链收集。
+     */
+    private static final class AhoCorasickBuilder {
+        final List<Map<Character, Integer>> goTo = new ArrayList<>();
+        final List<List<Integer>> output = new ArrayList<>();
+        int[] edgeStart;
+        char[] edgeChars;
+        int[] edgeTargets;
+        int[] fail;
+        int[] outStart;
+        int[] outputs;
+        int[] root;
+
+        AhoCorasickBuilder() {
+            newState();
+        }
+
+        private int newState() {
+            goTo.add(new HashMap<>());
+            output.add(new ArrayList<>());
+            return goTo.size() - 1;
+        }
+
+        void add(String keyword, int rule) {
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = keyword.charAt(i);
+                Integer next = goTo.get(state).get(c);
+                if (next == null) {
+                    next = newState();
+                    goTo.get(state).put(c, next);
+                }
+                state = next;
+            }
+            output.get(state).add(rule);
+        }
+
+        void finish() {
+            int count = goTo.size();
+            fail = new int[count];
+            // 按广度优先顺序计算失败链，父状态的输出先于子状态合并完成
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            for (int child : goTo.get(0).values()) queue.add(child);
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                output.get(state).addAll(output.get(fail[state]));
+                for (Map.Entry<Character, Integer> edge : goTo.get(state).entrySet()) {
+                    char c = edge.getKey();
+                    int child = edge.getValue();
+                    int f = fail[state];
+                    while (f != 0 && !goTo.get(f).containsKey(c)) f = fail[f];
+                    Integer target = goTo.get(f).get(c);
+                    fail[child] = target != null && target != child ? target : 0;
+                    queue.add(child);
+                }
+            }
+
+            edgeStart = new int[count + 1];
+            outStart = new int[count + 1];
+            int edges = 0;
+            int outs = 0;
+            for (int s = 0; s < count; s++) {
+                edges += goTo.get(s).size();
+                outs += output.get(s).size();
+            }
+            edgeChars = new char[edges];
+            edgeTargets = new int[edges];
+            outputs = new int[outs];
+            int e = 0;
+            int o = 0;
+            for (int s = 0; s < count; s++) {
+                edgeStart[s] = e;
+                List<Character> keys = new ArrayList<>(goTo.get(s).keySet());
+                java.util.Collections.sort(keys);
+                for (char c : keys) {
+                    edgeChars[e] = c;
+                    edgeTargets[e++] = goTo.get(s).get(c);
+                }
+                outStart[s] = o;
+                for (int rule : output.get(s)) outputs[o++] = rule;
+            }
+            edgeStart[count] = e;
+            outStart[count] = o;
+
+            root = new int[ROOT_TABLE];
+            for (char c = 0; c < ROOT_TABLE; c++) {
+                Integer target = goTo.get(0).get(c);
+                root[c] = target != null ? target : 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,433 @@
+/**
+ * 轻量的容错 HTML 解析器
+ *
+ * 供阅读模式在 Java 端分析页面序列化后的 HTML（document.documentElement.outerHTML）。
+ * 只构建分析需要的元素树：标签名小写，属性保留原文，文字节点解码常用实体；
+ * script / style 等内容整体跳过，p、li、td 等按 HTML 的省略结束标签规则隐式闭合，
+ * 不匹配的结束标签直接忽略。不处理表单状态、模板等与正文提取无关的细节。
+ */
+package com.olsc.manorbrowser.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+public final class HtmlParser {
+
+    /** 元素或文字节点；文字节点的 tag 为 null */
+    public static final class Node {
+        public final String tag;
+        public String text;
+        public Node parent;
+        public final List<Node> children;
+        /** 属性名与属性值交替存放 */
+        private String[] attributes;
+
+        Node(String tag, String[] attributes) {
+            this.tag = tag;
+            this.attributes = attributes;
+            this.children = new ArrayList<>();
+        }
+
+        Node(String text) {
+            this.tag = null;
+            this.text = text;
+            this.children = new ArrayList<>(0);
+        }
+
+        public boolean isText() {
+            return tag == null;
+        }
+
+        public String attr(String name) {
+            if (attributes == null) return null;
+            for (int i = 0; i < attributes.length; i += 2) {
+                if (attributes[i].equals(name)) return attributes[i + 1];
+            }
+            return null;
+        }
+
+        public void appendChild(Node child) {
+            child.parent = this;
+            children.add(child);
+        }
+
+        /** 从父节点中移除 */
+        public void remove() {
+            if (parent != null) {
+                parent.children.remove(this);
+                parent = null;
+            }
+        }
+
+        /** 第一个指定标签的后代元素，没有时为 null */
+        public Node first(String name) {
+            for (Node child : children) {
+                if (name.equals(child.tag)) return child;
+                Node found = child.first(name);
+                if (found != null) return found;
+            }
+            return null;
+        }
+
+        /** 全部文字（不做空白折叠） */
+        public String textContent() {
+            if (isText()) return text;
+            StringBuilder sb = new StringBuilder();
+            appendText(this, sb);
+            return sb.toString();
+        }
+
+        private static void appendText(Node node, StringBuilder sb) {
+            for (Node child : node.children) {
+                if (child.isText()) sb.append(child.text);
+                else appendText(child, sb);
+            }
+        }
+    }
+
+    private static final Set<String> VOID_TAGS = new HashSet<>(Arrays.asList(
+            "area", "base", "br", "col", "embed", "hr", "img", "input", "link", "meta", "param", "source", "track", "wbr"));
+    /** 内容不作为 HTML 解析且与正文无关，整体跳过 */
+    private static final Set<String> SKIPPED_TAGS = new HashSet<>(Arrays.asList(
+            "script", "style", "noscript", "template", "svg", "math"));
+    /** 内容为纯文字（解码实体，不解析标签） */
+    private static final Set<String> RCDATA_TAGS = new HashSet<>(Arrays.asList("title", "textarea"));
+    /** 这些元素开始时隐式结束尚未闭合的 p */
+    private static final Set<String> CLOSES_P = new HashSet<>(Arrays.asList(
+            "address", "article", "aside", "blockquote", "details", "div", "dl", "fieldset", "figcaption", "figure",
+            "footer", "form", "h1", "h2", "h3", "h4", "h5", "h6", "header", "hr", "main", "menu", "nav", "ol", "p",
+            "pre", "section", "table", "ul"));
+    private static final Map<String, String> ENTITIES = new HashMap<>();
+
+    static {
+        String[] pairs = {
+                "amp", "&", "lt", "<", "gt", ">", "quot", "\"", "apos", "'", "nbsp", "\u00a0",
+                "mdash", "—", "ndash", "–", "hellip", "…", "lsquo", "‘", "rsquo", "’",
+                "ldquo", "“", "rdquo", "”", "laquo", "«", "raquo", "»", "lsaquo", "‹", "rsaquo", "›", "middot", "·",
+                "larr", "←", "rarr", "→", "uarr", "↑", "darr", "↓",
+                "bull", "•", "copy", "©", "reg", "®", "trade", "™", "times", "×",
+                "deg", "°", "euro", "€", "yen", "¥", "pound", "£", "shy", "\u00ad",
+                "ensp", "\u2002", "emsp", "\u2003", "thinsp", "\u2009", "zwj", "\u200d", "zwnj", "\u200c"
+        };
+        for (int i = 0; i < pairs.length; i += 2) ENTITIES.put(pairs[i], pairs[i + 1]);
+    }
+
+    private final String html;
+    private final int length;
+    private int pos;
+    private final Node root = new Node("#document", null);
+    private final List<Node> stack = new ArrayList<>();
+
+    private HtmlParser(String html) {
+        this.html = html;
+        this.length = html.length();
+        stack.add(root);
+    }
+
+    /** 解析为文档树，返回的根节点标签为 "#document" */
+    public static Node parse(String html) {
+        HtmlParser parser = new HtmlParser(html != null ? html : "");
+        parser.run();
+        return parser.root;
+    }
+
+    private Node current() {
+        return stack.get(stack.size() - 1);
+    }
+
+    private void run() {
+        int textStart = 0;
+        while (pos < length) {
+            int lt = html.indexOf('<', pos);
+            if (lt < 0) break;
+            if (lt + 1 >= length) break;
+            char next = html.charAt(lt + 1);
+            boolean tagLike = isLetter(next) || next == '/' || next == '!' || next == '?';
+            if (!tagLike) {
+                pos = lt + 1;
+                continue;
+            }
+            addText(textStart, lt);
+            pos = lt;
+            if (next == '!' || next == '?') {
+                skipMarkup();
+            } else if (next == '/') {
+                endTag();
+            } else {
+                startTag();
+            }
+            textStart = pos;
+        }
+        addText(textStart, length);
+    }
+
+    private void addText(int start, int end) {
+        if (end <= start) return;
+        Node parent = current();
+        String text = decode(html, start, end);
+        int last = parent.children.size() - 1;
+        if (last >= 0 && parent.children.get(last).isText()) {
+            Node previous = parent.children.get(last);
+            previous.text = previous.text + text;
+        } else {
+            parent.appendChild(new Node(text));
+        }
+    }
+
+    /** 注释、DOCTYPE、CDATA 与处理指令 */
+    private void skipMarkup() {
+        if (html.startsWith("<!--", pos)) {
+            int end = html.indexOf("-->", pos + 4);
+            pos = end < 0 ? length : end + 3;
+            return;
+        }
+        int end = html.indexOf('>', pos);
+        pos = end < 0 ? length : end + 1;
+    }
+
+    private void endTag() {
+        int nameStart = pos + 2;
+        int i = nameStart;
+        while (i < length && isNameChar(html.charAt(i))) i++;
+        String name = html.substring(nameStart, i).toLowerCase(Locale.ROOT);
+        int end = html.indexOf('>', i);
+        pos = end < 0 ? length : end + 1;
+        if (name.isEmpty()) return;
+        for (int k = stack.size() - 1; k > 0; k--) {
+            if (stack.get(k).tag.equals(name)) {
+                while (stack.size() > k) stack.remove(stack.size() - 1);
+                return;
+            }
+            // 结束标签不越过表格与列表边界去匹配外层同名元素
+            if (isScopeBoundary(stack.get(k).tag, name)) return;
+        }
+    }
+
+    private static boolean isScopeBoundary(String open, String closing) {
+        switch (closing) {
+            case "li":
+                return open.equals("ul") || open.equals("ol");
+            case "td":
+            case "th":
+            case "tr":
+                return open.equals("table");
+            case "p":
+                return open.equals("button") || open.equals("td") || open.equals("th") || open.equals("li");
+            default:
+                return false;
+        }
+    }
+
+    private void startTag() {
+        int nameStart = pos + 1;
+        int i = nameStart;
+        while (i < length && isNameChar(html.charAt(i))) i++;
+        String name = html.substring(nameStart, i).toLowerCase(Locale.ROOT);
+        List<String> attrs = null;
+        boolean selfClosing = false;
+        while (i < length) {
+            char c = html.charAt(i);
+            if (c == '>') {
+                i++;
+                break;
+            }
+            if (c == '/') {
+                selfClosing = i + 1 < length && html.charAt(i + 1) == '>';
+                i++;
+                continue;
+            }
+            if (isSpace(c)) {
+                i++;
+                continue;
+            }
+            int attrStart = i;
+            while (i < length) {
+                char a = html.charAt(i);
+                if (isSpace(a) || a == '=' || a == '>' || (a == '/' && i + 1 < length && html.charAt(i + 1) == '>')) break;
+                i++;
+            }
+            String attrName = html.substring(attrStart, i).toLowerCase(Locale.ROOT);
+            while (i < length && isSpace(html.charAt(i))) i++;
+            String value = "";
+            if (i < length && html.charAt(i) == '=') {
+                i++;
+                while (i < length && isSpace(html.charAt(i))) i++;
+                if (i < length && (html.charAt(i) == '"' || html.charAt(i) == '\'')) {
+                    char quote = html.charAt(i);
+                    int end = html.indexOf(quote, i + 1);
+                    if (end < 0) end = length;
+                    value = decode(html, i + 1, end);
+                    i = Math.min(length, end + 1);
+                } else {
+                    int valueStart = i;
+                    while (i < length && !isSpace(html.charAt(i)) && html.charAt(i) != '>') i++;
+                    value = decode(html, valueStart, i);
+                }
+            }
+            if (attrName.isEmpty()) {
+                i++;
+                continue;
+            }
+            if (attrs == null) attrs = new ArrayList<>(4);
+            attrs.add(attrName);
+            attrs.add(value);
+        }
+        pos = i;
+
+        if (SKIPPED_TAGS.contains(name)) {
+            if (!selfClosing) skipRawText(name);
+            return;
+        }
+        closeImplied(name);
+        Node element = new Node(name, attrs != null ? attrs.toArray(new String[0]) : null);
+        current().appendChild(element);
+        if (RCDATA_TAGS.contains(name)) {
+            int end = findRawEnd(name);
+            if (end > pos) element.appendChild(new Node(decode(html, pos, end)));
+            skipRawText(name);
+            return;
+        }
+        if (!selfClosing && !VOID_TAGS.contains(name)) stack.add(element);
+    }
+
+    /** 跳到 name 的结束标签之后 */
+    private void skipRawText(String name) {
+        int end = findRawEnd(name);
+        if (end >= length) {
+            pos = length;
+            return;
+        }
+        int close = html.indexOf('>', end);
+        pos = close < 0 ? length : close + 1;
+    }
+
+    private int findRawEnd(String name) {
+        int i = pos;
+        while (true) {
+            int lt = html.indexOf("</", i);
+            if (lt < 0) return length;
+            if (html.regionMatches(true, lt + 2, name, 0, name.length())) {
+                int after = lt + 2 + name.length();
+                if (after >= length || !isNameChar(html.charAt(after))) return lt;
+            }
+            i = lt + 2;
+        }
+    }
+
+    /** HTML 的省略结束标签规则（只处理正文提取关心的部分） */
+    private void closeImplied(String name) {
+        if (CLOSES_P.contains(name)) closeOpen("p");
+        switch (name) {
+            case "li":
+                closeOpenWithin("li", "ul", "ol");
+                break;
+            case "dt":
+            case "dd":
+                closeOpenWithin("dt", "dl");
+                closeOpenWithin("dd", "dl");
+                break;
+            case "tr":
+                closeOpenWithin("td", "table");
+                closeOpenWithin("th", "table");
+                closeOpenWithin("tr", "table");
+                break;
+            case "td":
+            case "th":
+                closeOpenWithin("td", "tr", "table");
+                closeOpenWithin("th", "tr", "table");
+                break;
+            case "option":
+                closeOpenWithin("option", "select");
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void closeOpen(String name) {
+        closeOpenWithin(name, "button", "td", "th", "li", "table");
+    }
+
+    /** 栈顶到最近的 boundary 之间有 name 时把它及其内层元素一起结束 */
+    private void closeOpenWithin(String name, String... boundaries) {
+        for (int k = stack.size() - 1; k > 0; k--) {
+            String tag = stack.get(k).tag;
+            if (tag.equals(name)) {
+                while (stack.size() > k) stack.remove(stack.size() - 1);
+                return;
+            }
+            for (String boundary : boundaries) {
+                if (tag.equals(boundary)) return;
+            }
+        }
+    }
+
+    /** 解码 [start, end) 中的字符实体 */
+    static String decode(String s, int start, int end) {
+        // 逐字查找而不是 indexOf：没有实体时 indexOf 会一直扫描到整个页面末尾
+        int amp = start;
+        while (amp < end && s.charAt(amp) != '&') amp++;
+        if (amp == end) return s.substring(start, end);
+        StringBuilder sb = new StringBuilder(end - start);
+        int i = start;
+        while (i < end) {
+            char c = s.charAt(i);
+            if (c != '&') {
+                sb.append(c);
+                i++;
+                continue;
+            }
+            int semi = -1;
+            for (int j = i + 1; j < end && j < i + 12; j++) {
+                char d = s.charAt(j);
+                if (d == ';') {
+                    semi = j;
+                    break;
+                }
+                if (!Character.isLetterOrDigit(d) && d != '#') break;
+            }
+            if (semi < 0) {
+                sb.append(c);
+                i++;
+                continue;
+            }
+            String replacement = null;
+            if (s.charAt(i + 1) == '#') {
+                try {
+                    boolean hex = semi > i + 2 && (s.charAt(i + 2) == 'x' || s.charAt(i + 2) == 'X');
+                    int code = Integer.parseInt(s.substring(i + (hex ? 3 : 2), semi), hex ? 16 : 10);
+                    if (Character.isValidCodePoint(code) && code != 0) replacement = new String(Character.toChars(code));
+                } catch (NumberFormatException ignored) {
+                }
+            } else {
+                replacement = ENTITIES.get(s.substring(i + 1, semi));
+            }
+            if (replacement == null) {
+                sb.append(c);
+                i++;
+            } else {
+                sb.append(replacement);
+                i = semi + 1;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isNameChar(char c) {
+        return isLetter(c) || (c >= '0' && c <= '9') || c == '-' || c == ':' || c == '_';
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f';
+    }
+}
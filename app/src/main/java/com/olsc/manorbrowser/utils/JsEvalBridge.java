@@ -0,0 +1,285 @@
+/**
+ * 页面脚本执行桥
+ *
+ * 通过内置扩展（assets/extensions/agent_bridge）的内容脚本与每个页面建立原生消息端口，
+ * 每次执行分配独立的请求 ID，同一标签页可同时有多个执行在进行；支持 Promise 结果、
+ * 单次调用的超时与取消，较大的结果由内容脚本分块回传，不再经过 alert 提示框。
+ * 页面尚未建立端口时（扩展未就绪、about: 等内容脚本无法注入的页面）退回 javascript: + alert 方式，
+ * 同样按 ID 关联结果。
+ *
+ * 同一端口还承载页面模型（page_model.js）的操作：交互元素的稳定 ID 与按版本的增量快照。
+ *
+ * 结果以 JSON 文本交给回调（与过去 alert 桥的格式一致），失败时为 JSON 字符串 "error:原因"。
+ * 回调实现 ChunkedCallback 时，分块回传的结果逐块交给回调，不在这里拼接成完整字符串。
+ * 所有方法与回调均在主线程。
+ */
+package com.olsc.manorbrowser.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONObject;
+import org.mozilla.geckoview.GeckoRuntime;
+import org.mozilla.geckoview.GeckoSession;
+import org.mozilla.geckoview.WebExtension;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+public class JsEvalBridge {
+    private static final String TAG = "JsEvalBridge";
+
+    public static final String EXTENSION_ID = "agent-bridge@manorbrowser.olsc.com";
+    private static final String EXTENSION_LOCATION = "resource://android/assets/extensions/agent_bridge/";
+    private static final String NATIVE_APP = "manorBridge";
+    /** 退回 alert 方式时结果消息的前缀，格式为 __JSRESULT__:<id>:<JSON> */
+    public static final String ALERT_PREFIX = "__JSRESULT__:";
+
+    /** 可取消的执行句柄 */
+    public interface Call {
+        void cancel();
+    }
+
+    /**
+     * 分块接收结果的回调：结果经端口分块回传时，各块（结果 JSON 文本的连续片段）按顺序交给 onChunk，
+     * 全部到达后以 onResult(null) 结束；未分块的结果、失败与超时仍以非 null 的 onResult 交付，
+     * 此时之前收到的块应丢弃
+     */
+    public interface ChunkedCallback extends BrowserCommandServer.EvalCallback {
+        void onChunk(String chunk);
+    }
+
+    private static final JsEvalBridge instance = new JsEvalBridge();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private WebExtension extension;
+    /** 扩展就绪前创建的会话，就绪后补注册消息代理 */
+    private final WeakHashMap<GeckoSession, Boolean> waitingSessions = new WeakHashMap<>();
+    /** 会话 -> 当前页面的端口，页面卸载时端口断开并移除 */
+    private final WeakHashMap<GeckoSession, WebExtension.Port> ports = new WeakHashMap<>();
+    private final Map<Integer, Pending> pending = new HashMap<>();
+    private int nextId = 1;
+
+    /** 一次进行中的执行 */
+    private final class Pending implements Call {
+        final int id;
+        final BrowserCommandServer.EvalCallback callback;
+        /** 经端口发送时对应的端口；走 alert 方式时为 null */
+        final WebExtension.Port port;
+        final Runnable timeout;
+        StringBuilder chunks;
+        /** 已有块直接交给了 ChunkedCallback */
+        boolean streamed;
+
+        Pending(int id, BrowserCommandServer.EvalCallback callback, WebExtension.Port port) {
+            this.id = id;
+            this.callback = callback;
+            this.port = port;
+            this.timeout = () -> {
+                sendCancel(this);
+                complete(this.id, errorJson("timeout"));
+            };
+        }
+
+        @Override
+        public void cancel() {
+            mainHandler.post(() -> {
+                if (pending.get(id) != this) return;
+                sendCancel(this);
+                complete(id, errorJson("cancelled"));
+            });
+        }
+    }
+
+    public static JsEvalBridge get() {
+        return instance;
+    }
+
+    private JsEvalBridge() {
+    }
+
+    /**
+     * 安装（或确认已安装）内置扩展，在 GeckoRuntime 创建后调用一次
+     */
+    public void install(GeckoRuntime runtime) {
+        runtime.getWebExtensionController()
+                .ensureBuiltIn(EXTENSION_LOCATION, EXTENSION_ID)
+                .accept(ext -> mainHandler.post(() -> {
+                    extension = ext;
+                    for (GeckoSession session : waitingSessions.keySet()) {
+                        attachNow(session);
+                    }
+                    waitingSessions.clear();
+                }), e -> Log.e(TAG, "内置扩展安装失败，脚本执行将使用 alert 方式", e));
+    }
+
+    /**
+     * 为新会话注册消息代理，在会话打开后调用
+     */
+    public void attach(GeckoSession session) {
+        if (extension == null) {
+            waitingSessions.put(session, Boolean.TRUE);
+        } else {
+            attachNow(session);
+        }
+    }
+
+    private void attachNow(GeckoSession session) {
+        session.getWebExtensionController().setMessageDelegate(extension, new WebExtension.MessageDelegate() {
+            @Override
+            public void onConnect(@NonNull WebExtension.Port port) {
+                ports.put(session, port);
+                port.setDelegate(new WebExtension.PortDelegate() {
+                    @Override
+                    public void onPortMessage(@NonNull Object message, @NonNull WebExtension.Port port) {
+                        if (message instanceof JSONObject) handlePortMessage((JSONObject) message);
+                    }
+
+                    @Override
+                    public void onDisconnect(@NonNull WebExtension.Port port) {
+                        onPortDisconnected(session, port);
+                    }
+                });
+            }
+        }, NATIVE_APP);
+    }
+
+    /**
+     * 在会话当前页面执行脚本
+     *
+     * @param js        表达式形式的脚本（可返回 Promise）
+     * @param timeoutMs 超时时长，超时后回调 "error:timeout"
+     * @return 可用于取消的句柄；回调保证只触发一次
+     */
+    public Call evaluate(GeckoSession session, String js, long timeoutMs, BrowserCommandServer.EvalCallback callback) {
+        WebExtension.Port port = ports.get(session);
+        Pending call = begin(callback, port, timeoutMs);
+        int id = call.id;
+        if (port != null) {
+            try {
+                port.postMessage(new JSONObject().put("type", "eval").put("id", id).put("code", js));
+            } catch (Exception e) {
+                complete(id, errorJson(e.getMessage()));
+            }
+        } else {
+            // 通过 alert() 传回 JS 结果（解决 document.title 的长度限制问题），结果带上 ID 以免并发执行互相覆盖
+            String encodedJs = js.replace("\\", "\\\\").replace("'", "\\'").replace("\n", " ");
+            String prefix = ALERT_PREFIX + id + ":";
+            String bridge = "(function(){try{var __r=" + encodedJs + ";alert('" + prefix + "' + JSON.stringify(__r));}catch(__e){alert('" + prefix + "' + JSON.stringify('error:'+__e.message));}})()";
+            session.loadUri("javascript:" + bridge);
+        }
+        return call;
+    }
+
+    /**
+     * 调用内容脚本维护的页面模型（page_model.js）
+     *
+     * @param op   snapshot / find / click / set_value / scroll_into_view
+     * @param args 操作参数，原样交给内容脚本
+     * @return 可用于取消的句柄；页面没有端口（扩展未就绪或内容脚本无法注入）时回调 "error:page model unavailable"
+     */
+    public Call callPageModel(GeckoSession session, String op, JSONObject args, long timeoutMs, BrowserCommandServer.EvalCallback callback) {
+        WebExtension.Port port = ports.get(session);
+        Pending call = begin(callback, port, timeoutMs);
+        if (port == null) {
+            mainHandler.post(() -> complete(call.id, errorJson("page model unavailable")));
+            return call;
+        }
+        try {
+            port.postMessage(new JSONObject().put("type", "model").put("id", call.id).put("op", op)
+                    .put("args", args != null ? args : new JSONObject()));
+        } catch (Exception e) {
+            complete(call.id, errorJson(e.getMessage()));
+        }
+        return call;
+    }
+
+    private Pending begin(BrowserCommandServer.EvalCallback callback, WebExtension.Port port, long timeoutMs) {
+        Pending call = new Pending(nextId++, callback, port);
+        pending.put(call.id, call);
+        mainHandler.postDelayed(call.timeout, timeoutMs);
+        return call;
+    }
+
+    /**
+     * 处理 alert 方式回传的结果
+     *
+     * @return 消息是否属于本桥（属于时调用方应直接关闭提示框）
+     */
+    public boolean handleAlert(String message) {
+        if (message == null || !message.startsWith(ALERT_PREFIX)) return false;
+        int start = ALERT_PREFIX.length();
+        int colon = message.indexOf(':', start);
+        if (colon < 0) return true;
+        try {
+            int id = Integer.parseInt(message.substring(start, colon));
+            String result = message.substring(colon + 1);
+            mainHandler.post(() -> complete(id, result));
+        } catch (NumberFormatException ignored) {
+        }
+        return true;
+    }
+
+    private void handlePortMessage(JSONObject message) {
+        int id = message.optInt("id", -1);
+        Pending call = pending.get(id);
+        if (call == null) return;
+        switch (message.optString("type")) {
+            case "result":
+                complete(id, message.optString("value", "null"));
+                break;
+            case "chunk":
+                if (call.callback instanceof ChunkedCallback) {
+                    call.streamed = true;
+                    ((ChunkedCallback) call.callback).onChunk(message.optString("data"));
+                    break;
+                }
+                if (call.chunks == null) call.chunks = new StringBuilder();
+                call.chunks.append(message.optString("data"));
+                break;
+            case "end":
+                if (call.streamed) complete(id, null);
+                else complete(id, call.chunks != null ? call.chunks.toString() : "null");
+                break;
+            default:
+                break;
+        }
+    }
+
+    /** 页面卸载或导航时端口断开，经该端口发出且尚未返回的执行直接失败 */
+    private void onPortDisconnected(GeckoSession session, WebExtension.Port port) {
+        if (ports.get(session) == port) ports.remove(session);
+        Iterator<Pending> it = pending.values().iterator();
+        while (it.hasNext()) {
+            Pending call = it.next();
+            if (call.port != port) continue;
+            it.remove();
+            mainHandler.removeCallbacks(call.timeout);
+            call.callback.onResult(errorJson("page unloaded"));
+        }
+    }
+
+    private void complete(int id, String result) {
+        Pending call = pending.remove(id);
+        if (call == null) return;
+        mainHandler.removeCallbacks(call.timeout);
+        call.callback.onResult(result);
+    }
+
+    private void sendCancel(Pending call) {
+        if (call.port == null) return;
+        try {
+            call.port.postMessage(new JSONObject().put("type", "cancel").put("id", call.id));
+        } catch (Exception ignored) {
+        }
+    }
+
+    private static String errorJson(String reason) {
+        return JSONObject.quote("error:" + (reason != null ? reason : "unknown"));
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * 页面加载状态跟踪器
+ *
+ * 由 MainActivity 的 ProgressDelegate / NavigationDelegate 回调（onPageStart、onProgressChange、onPageStop、
+ * onLocationChange）驱动，按会话记录当前 URL、是否在加载、加载次数等状态；
+ * 智能托管命令可以在后台线程上阻塞等待"加载完成"、"URL 变化"等事件，各自带截止时间，
+ * 状态变化时立即唤醒，不需要固定休眠或反复轮询 get_status。
+ * 会话对象只作为键使用，本类不依赖 Android API。
+ */
+package com.olsc.manorbrowser.utils;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+
+public class PageLoadTracker {
+    public static final String STATE_LOADED = "loaded";
+    public static final String STATE_FAILED = "failed";
+    public static final String STATE_TIMEOUT = "timeout";
+
+    private static final PageLoadTracker instance = new PageLoadTracker();
+
+    PageLoadTracker() {
+    }
+
+    /** 会话 -> 状态，会话被回收后自动移除；所有访问都持有 this 锁 */
+    private final Map<Object, PageState> states = new WeakHashMap<>();
+
+    private static final class PageState {
+        String url;
+        boolean loading;
+        boolean success = true;
+        int progress;
+        /** 每次 onPageStart 加一，用于区分"本次导航"与之前的加载 */
+        long generation;
+        long startedAt;
+        long stoppedAt;
+    }
+
+    /** 某一时刻的页面状态 */
+    public static final class Snapshot {
+        public final String url;
+        public final boolean loading;
+        public final boolean success;
+        public final int progress;
+        public final long generation;
+        /** 最近一次完整加载的耗时（毫秒），加载中或未知时为 -1 */
+        public final long loadMillis;
+        /** 等待是否因截止时间到达而结束 */
+        public final boolean timedOut;
+
+        Snapshot(PageState state, boolean timedOut) {
+            this.url = state.url;
+            this.loading = state.loading;
+            this.success = state.success;
+            this.progress = state.progress;
+            this.generation = state.generation;
+            this.loadMillis = !state.loading && state.startedAt > 0 && state.stoppedAt >= state.startedAt
+                    ? state.stoppedAt - state.startedAt : -1;
+            this.timedOut = timedOut;
+        }
+
+        /** STATE_* 之一 */
+        public String state() {
+            if (timedOut) return STATE_TIMEOUT;
+            return success ? STATE_LOADED : STATE_FAILED;
+        }
+    }
+
+    private interface Condition {
+        boolean isMet(PageState state);
+    }
+
+    public static PageLoadTracker get() {
+        return instance;
+    }
+
+    // -------------------------------------------------------
+    // 事件输入（由 Gecko 回调调用）
+    // -------------------------------------------------------
+
+    public synchronized void onPageStart(Object session, String url) {
+        PageState state = stateFor(session);
+        state.generation++;
+        state.loading = true;
+        state.success = true;
+        state.progress = 0;
+        state.url = url;
+        state.startedAt = System.currentTimeMillis();
+        notifyAll();
+    }
+
+    public synchronized void onProgressChange(Object session, int progress) {
+        stateFor(session).progress = progress;
+    }
+
+    public synchronized void onPageStop(Object session, boolean success) {
+        PageState state = stateFor(session);
+        state.loading = false;
+        state.success = success;
+        state.stoppedAt = System.currentTimeMillis();
+        notifyAll();
+    }
+
+    public synchronized void onLocationChange(Object session, String url) {
+        if (url == null) return;
+        stateFor(session).url = url;
+        notifyAll();
+    }
+
+    // -------------------------------------------------------
+    // 查询与等待（在后台线程调用）
+    // -------------------------------------------------------
+
+    public synchronized Snapshot snapshot(Object session) {
+        return new Snapshot(stateFor(session), false);
+    }
+
+    /**
+     * 等待导航完成：afterGeneration 之后开始的一次加载结束（成功或失败），
+     * 或者没有发生新的加载、但 URL 已在文档内变化（锚点跳转不会触发 onPageStart）
+     */
+    public Snapshot awaitLoad(Object session, long afterGeneration, String fromUrl, long timeoutMs) throws InterruptedException {
+        return await(session, s -> !s.loading
+                && (s.generation > afterGeneration || !Objects.equals(s.url, fromUrl)), timeoutMs);
+    }
+
+    /**
+     * 等待当前加载结束；当前没有在加载时立即返回
+     */
+    public Snapshot awaitIdle(Object session, long timeoutMs) throws InterruptedException {
+        return await(session, s -> !s.loading, timeoutMs);
+    }
+
+    /**
+     * 等待 URL 变得与 fromUrl 不同（包括同文档内的 hash / pushState 变化）
+     */
+    public Snapshot awaitUrlChange(Object session, String fromUrl, long timeoutMs) throws InterruptedException {
+        return await(session, s -> !Objects.equals(s.url, fromUrl), timeoutMs);
+    }
+
+    private synchronized Snapshot await(Object session, Condition condition, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        PageState state = stateFor(session);
+        while (!condition.isMet(state)) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) return new Snapshot(state, true);
+            wait(remaining);
+        }
+        return new Snapshot(state, false);
+    }
+
+    private PageState stateFor(Object session) {
+        PageState state = states.get(session);
+        if (state == null) {
+            state = new PageState();
+            states.put(session, state);
+        }
+        return state;
+    }
+}
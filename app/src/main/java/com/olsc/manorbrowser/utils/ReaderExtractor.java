@@ -0,0 +1,726 @@
+/**
+ * 阅读模式正文提取
+ *
+ * 页面只做一次序列化（document.documentElement.outerHTML），解析与评分全部在 Java 端的后台线程完成，
+ * 不再逐个元素调用 getComputedStyle（每次调用都会强制样式计算，长页面会卡住数秒）。
+ *
+ * 算法参照 Readability：
+ * 1. 去掉脚本、表单、导航等无关元素，以及 hidden / aria-hidden / 内联 display:none 的隐藏元素；
+ *    class 与 id 明显属于侧栏、评论、分享等的元素（不像正文容器时）一并去掉。
+ * 2. 对每个足够长的段落按文字长度与逗号数计分，分数按层级衰减累加到上三层祖先，
+ *    祖先的初始分由标签与 class / id 的正负权重决定。
+ * 3. 得分乘以（1 - 链接密度）最高的元素为正文，必要时上移到包含多个高分候选的共同祖先，
+ *    再合并得分足够高或像正文段落的兄弟元素。
+ * 4. 按链接密度、图片与段落比例等条件清理正文中的残留区块，输出结构化的内容块。
+ * 提取出的文字过短时依次放宽条件（保留疑似无关元素、不计 class 权重、不做条件清理）重试。
+ */
+package com.olsc.manorbrowser.utils;
+
+import com.olsc.manorbrowser.data.ReaderArticle;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+public final class ReaderExtractor {
+    private static final int FLAG_STRIP_UNLIKELY = 1;
+    private static final int FLAG_WEIGHT_CLASSES = 2;
+    private static final int FLAG_CLEAN_CONDITIONALLY = 4;
+
+    /** 正文文字少于该长度时放宽条件重试 */
+    private static final int CHAR_THRESHOLD = 500;
+    private static final int MIN_PARAGRAPH_LENGTH = 25;
+    private static final int ANCESTOR_LEVELS = 3;
+    private static final int TOP_CANDIDATES = 5;
+    /** br 在段落文字中的标记，与源码中的换行区分开 */
+    private static final char LINE_BREAK = '\u2028';
+
+    private static final Pattern UNLIKELY = Pattern.compile(
+            "-ad-|ai2html|banner|breadcrumbs|combx|comment|community|cover-wrap|disqus|extra|footer|gdpr|header|legends|menu|"
+                    + "related|remark|replies|rss|shoutbox|sidebar|skyscraper|social|sponsor|supplemental|ad-break|agegate|"
+                    + "pagination|pager|popup|yom-remote", Pattern.CASE_INSENSITIVE);
+    private static final Pattern MAYBE_CANDIDATE = Pattern.compile(
+            "and|article|body|column|content|main|shadow", Pattern.CASE_INSENSITIVE);
+    private static final Pattern POSITIVE = Pattern.compile(
+            "article|body|content|entry|hentry|h-entry|main|page|pagination|post|text|blog|story", Pattern.CASE_INSENSITIVE);
+    private static final Pattern NEGATIVE = Pattern.compile(
+            "-ad-|hidden|^hid$| hid$| hid |^hid |banner|combx|comment|com-|contact|footer|gdpr|masthead|media|meta|outbrain|"
+                    + "promo|related|scroll|share|shoutbox|sidebar|skyscraper|sponsor|shopping|tags|widget", Pattern.CASE_INSENSITIVE);
+    private static final Pattern HIDDEN_STYLE = Pattern.compile(
+            "display\\s*:\\s*none|visibility\\s*:\\s*hidden", Pattern.CASE_INSENSITIVE);
+
+    private static final Set<String> REMOVED_TAGS = new HashSet<>(Arrays.asList(
+            "head", "nav", "footer", "aside", "form", "button", "input", "select", "textarea", "iframe", "object",
+            "embed", "canvas", "dialog", "link", "meta", "label", "fieldset"));
+    private static final Set<String> UNLIKELY_ROLES = new HashSet<>(Arrays.asList(
+            "menu", "menubar", "complementary", "navigation", "alert", "alertdialog", "dialog"));
+    /** 参与计分的段落类元素；没有块级子元素的 div / section 也按段落计分 */
+    private static final Set<String> SCORED_TAGS = new HashSet<>(Arrays.asList(
+            "p", "pre", "td", "h2", "h3", "h4", "h5", "h6"));
+    private static final Set<String> BLOCK_TAGS = new HashSet<>(Arrays.asList(
+            "address", "article", "blockquote", "dd", "div", "dl", "dt", "figcaption", "figure", "h1", "h2", "h3",
+            "h4", "h5", "h6", "header", "hr", "li", "main", "ol", "p", "pre", "section", "table", "tbody", "td",
+            "tfoot", "th", "thead", "tr", "ul"));
+    /** 条件清理的对象（Readability 对这些容器检查链接密度与图文比例） */
+    private static final Set<String> CONDITIONAL_TAGS = new HashSet<>(Arrays.asList(
+            "div", "section", "ul", "ol", "table", "dl"));
+
+    /** 单个元素的文字统计（空白按折叠后计算） */
+    private static final class Stats {
+        int textLength;
+        int linkLength;
+        int commas;
+        int paragraphs;
+        int images;
+        int listItems;
+        int headings;
+        boolean hasBlockChild;
+    }
+
+    private final String baseUrl;
+    private final int flags;
+    private final Map<HtmlParser.Node, Stats> stats = new IdentityHashMap<>();
+    private final Map<HtmlParser.Node, double[]> scores = new IdentityHashMap<>();
+
+    private ReaderExtractor(String baseUrl, int flags) {
+        this.baseUrl = baseUrl;
+        this.flags = flags;
+    }
+
+    /**
+     * 从页面 HTML 中提取文章，耗时与页面大小成正比，应在后台线程调用
+     *
+     * @param html  页面序列化后的 HTML
+     * @param url   页面地址，用于解析相对的图片地址
+     * @param title 页面标题（document.title），为空时从 HTML 中读取
+     * @return 提取结果；页面没有可识别的正文时块列表为空
+     */
+    public static ReaderArticle extract(String html, String url, String title) {
+        ReaderArticle best = null;
+        int[] attempts = {
+                FLAG_STRIP_UNLIKELY | FLAG_WEIGHT_CLASSES | FLAG_CLEAN_CONDITIONALLY,
+                FLAG_WEIGHT_CLASSES | FLAG_CLEAN_CONDITIONALLY,
+                FLAG_CLEAN_CONDITIONALLY,
+                0
+        };
+        for (int attemptFlags : attempts) {
+            // 每次尝试都会修改元素树，重新解析（解析远快于一次完整的评分）
+            HtmlParser.Node document = HtmlParser.parse(html);
+            ReaderArticle article = new ReaderExtractor(url, attemptFlags).run(document, title);
+            if (best == null || article.textLength() > best.textLength()) best = article;
+            if (article.textLength() >= CHAR_THRESHOLD) break;
+        }
+        return best;
+    }
+
+    private ReaderArticle run(HtmlParser.Node document, String pageTitle) {
+        String base = baseUrl;
+        HtmlParser.Node baseElement = document.first("base");
+        if (baseElement != null && baseElement.attr("href") != null) base = resolve(baseElement.attr("href"));
+        String title = pageTitle;
+        if (title == null || title.trim().isEmpty()) {
+            HtmlParser.Node titleElement = document.first("title");
+            title = titleElement != null ? collapse(titleElement.textContent()) : "";
+        }
+        title = cleanTitle(title.trim());
+
+        HtmlParser.Node body = document.first("body");
+        if (body == null) body = document;
+        prune(body);
+        measure(body);
+        HtmlParser.Node top = pickTopCandidate(body);
+        List<HtmlParser.Node> content = top != null ? collectWithSiblings(top) : new ArrayList<>();
+        if (content.isEmpty()) content.add(body);
+
+        BlockWriter writer = new BlockWriter(resolveBase(base), title);
+        for (HtmlParser.Node node : content) {
+            if ((flags & FLAG_CLEAN_CONDITIONALLY) != 0) cleanConditionally(node);
+            writer.write(node);
+        }
+        writer.flush();
+        return new ReaderArticle(baseUrl, title, writer.blocks);
+    }
+
+    /** 去掉标题末尾的站点名（"文章标题 | 站点"），剩下的部分太短时保留原标题 */
+    private static String cleanTitle(String title) {
+        String[] separators = {" | ", " - ", " _ ", " – ", " — ", " · "};
+        int cut = -1;
+        for (String separator : separators) cut = Math.max(cut, title.lastIndexOf(separator));
+        if (cut <= 0) return title;
+        String head = title.substring(0, cut).trim();
+        boolean cjk = false;
+        for (int i = 0; i < head.length() && !cjk; i++) cjk = Character.UnicodeScript.of(head.charAt(i)) == Character.UnicodeScript.HAN;
+        return (cjk ? head.length() >= 5 : head.split("\\s+").length >= 3) ? head : title;
+    }
+
+    // ---- 1. 去掉无关元素 ----
+
+    private void prune(HtmlParser.Node node) {
+        for (int i = node.children.size() - 1; i >= 0; i--) {
+            HtmlParser.Node child = node.children.get(i);
+            if (child.isText()) continue;
+            if (shouldRemove(child)) {
+                node.children.remove(i);
+                child.parent = null;
+            } else {
+                prune(child);
+            }
+        }
+    }
+
+    private boolean shouldRemove(HtmlParser.Node element) {
+        if (REMOVED_TAGS.contains(element.tag)) return true;
+        if (element.attr("hidden") != null || "true".equals(element.attr("aria-hidden"))) return true;
+        String style = element.attr("style");
+        if (style != null && HIDDEN_STYLE.matcher(style).find()) return true;
+        if ((flags & FLAG_STRIP_UNLIKELY) == 0) return false;
+        String role = element.attr("role");
+        if (role != null && UNLIKELY_ROLES.contains(role.toLowerCase(Locale.ROOT))) return true;
+        if (element.tag.equals("body") || element.tag.equals("a") || element.tag.equals("article")
+                || element.tag.equals("main")) {
+            return false;
+        }
+        String match = classAndId(element);
+        return !match.isEmpty() && UNLIKELY.matcher(match).find() && !MAYBE_CANDIDATE.matcher(match).find()
+                && !hasAncestor(element, "table") && !hasAncestor(element, "code");
+    }
+
+    private static boolean hasAncestor(HtmlParser.Node node, String tag) {
+        for (HtmlParser.Node p = node.parent; p != null; p = p.parent) {
+            if (tag.equals(p.tag)) return true;
+        }
+        return false;
+    }
+
+    private static String classAndId(HtmlParser.Node element) {
+        String cls = element.attr("class");
+        String id = element.attr("id");
+        if (cls == null) return id != null ? id : "";
+        return id != null ? cls + " " + id : cls;
+    }
+
+    // ---- 2. 统计与计分 ----
+
+    /** 后序遍历统计每个元素的文字、链接文字、逗号等，之后的计分与清理不再重复遍历子树 */
+    private Stats measure(HtmlParser.Node node) {
+        Stats s = new Stats();
+        boolean inLink = "a".equals(node.tag);
+        for (HtmlParser.Node child : node.children) {
+            if (child.isText()) {
+                int length = collapsedLength(child.text);
+                s.textLength += length;
+                if (inLink) s.linkLength += length;
+                s.commas += countCommas(child.text);
+                continue;
+            }
+            Stats c = measure(child);
+            s.textLength += c.textLength;
+            s.linkLength += inLink ? c.textLength : c.linkLength;
+            s.commas += c.commas;
+            s.paragraphs += c.paragraphs;
+            s.images += c.images;
+            s.listItems += c.listItems;
+            s.headings += c.headings;
+            if (BLOCK_TAGS.contains(child.tag)) s.hasBlockChild = true;
+            switch (child.tag) {
+                case "p":
+                    s.paragraphs++;
+                    break;
+                case "img":
+                    s.images++;
+                    break;
+                case "li":
+                    s.listItems++;
+                    break;
+                case "h1": case "h2": case "h3": case "h4": case "h5": case "h6":
+                    s.headings++;
+                    break;
+                default:
+                    break;
+            }
+        }
+        stats.put(node, s);
+        return s;
+    }
+
+    private Stats stats(HtmlParser.Node node) {
+        Stats s = stats.get(node);
+        return s != null ? s : measure(node);
+    }
+
+    private double linkDensity(HtmlParser.Node node) {
+        Stats s = stats(node);
+        return s.textLength == 0 ? 0 : (double) s.linkLength / s.textLength;
+    }
+
+    private HtmlParser.Node pickTopCandidate(HtmlParser.Node body) {
+        List<HtmlParser.Node> scored = new ArrayList<>();
+        collectScorable(body, scored);
+        List<HtmlParser.Node> candidates = new ArrayList<>();
+        for (HtmlParser.Node element : scored) {
+            Stats s = stats(element);
+            if (s.textLength < MIN_PARAGRAPH_LENGTH) continue;
+            double contentScore = 1 + s.commas + Math.min(s.textLength / 100, 3);
+            HtmlParser.Node ancestor = element.parent;
+            for (int level = 0; level < ANCESTOR_LEVELS && ancestor != null && ancestor.tag != null
+                    && !ancestor.tag.equals("#document"); level++) {
+                double[] score = scores.get(ancestor);
+                if (score == null) {
+                    score = new double[]{initialScore(ancestor)};
+                    scores.put(ancestor, score);
+                    candidates.add(ancestor);
+                }
+                score[0] += level == 0 ? contentScore : level == 1 ? contentScore / 2 : contentScore / (level * 3);
+                ancestor = ancestor.parent;
+            }
+        }
+        if (candidates.isEmpty()) return null;
+
+        // 得分按链接密度折算，保留前几名
+        HtmlParser.Node[] top = new HtmlParser.Node[TOP_CANDIDATES];
+        double[] topScores = new double[TOP_CANDIDATES];
+        for (HtmlParser.Node candidate : candidates) {
+            double[] score = scores.get(candidate);
+            score[0] *= 1 - linkDensity(candidate);
+            for (int i = 0; i < TOP_CANDIDATES; i++) {
+                if (top[i] == null || score[0] > topScores[i]) {
+                    System.arraycopy(top, i, top, i + 1, TOP_CANDIDATES - i - 1);
+                    System.arraycopy(topScores, i, topScores, i + 1, TOP_CANDIDATES - i - 1);
+                    top[i] = candidate;
+                    topScores[i] = score[0];
+                    break;
+                }
+            }
+        }
+        HtmlParser.Node best = top[0];
+
+        // 正文被拆成多个得分相近的区块时，上移到至少包含其中三个的共同祖先
+        List<HtmlParser.Node> alternatives = new ArrayList<>();
+        for (int i = 1; i < TOP_CANDIDATES; i++) {
+            if (top[i] != null && topScores[i] / topScores[0] >= 0.75) alternatives.add(top[i]);
+        }
+        if (alternatives.size() >= 3) {
+            for (HtmlParser.Node parent = best.parent; parent != null && !"body".equals(parent.tag); parent = parent.parent) {
+                int contained = 0;
+                for (HtmlParser.Node alternative : alternatives) {
+                    if (isAncestor(parent, alternative)) contained++;
+                }
+                if (contained >= 3) {
+                    best = parent;
+                    break;
+                }
+            }
+        }
+        if (!scores.containsKey(best)) scores.put(best, new double[]{initialScore(best)});
+
+        // 父元素得分仍然较高时上移（正文段落被再包了一层）
+        double lastScore = scores.get(best)[0];
+        double threshold = lastScore / 3;
+        for (HtmlParser.Node parent = best.parent; parent != null && !"body".equals(parent.tag); parent = parent.parent) {
+            double[] parentScore = scores.get(parent);
+            if (parentScore == null) continue;
+            if (parentScore[0] < threshold) break;
+            if (parentScore[0] > lastScore) {
+                best = parent;
+                break;
+            }
+            lastScore = parentScore[0];
+        }
+        // 只有一个子元素的候选上移，便于与兄弟元素合并
+        while (best.parent != null && best.parent.tag != null && !"body".equals(best.parent.tag)
+                && !"#document".equals(best.parent.tag) && elementCount(best.parent) == 1) {
+            best = best.parent;
+        }
+        if (!scores.containsKey(best)) scores.put(best, new double[]{initialScore(best)});
+        return best;
+    }
+
+    private void collectScorable(HtmlParser.Node node, List<HtmlParser.Node> out) {
+        for (HtmlParser.Node child : node.children) {
+            if (child.isText()) continue;
+            if (SCORED_TAGS.contains(child.tag)
+                    || ((child.tag.equals("div") || child.tag.equals("section")) && !stats(child).hasBlockChild)) {
+                out.add(child);
+            }
+            collectScorable(child, out);
+        }
+    }
+
+    private double initialScore(HtmlParser.Node element) {
+        double score;
+        switch (element.tag) {
+            case "div":
+            case "article":
+                score = 5;
+                break;
+            case "pre":
+            case "td":
+            case "blockquote":
+                score = 3;
+                break;
+            case "address":
+            case "ol":
+            case "ul":
+            case "dl":
+            case "dd":
+            case "dt":
+            case "li":
+            case "form":
+                score = -3;
+                break;
+            case "h1": case "h2": case "h3": case "h4": case "h5": case "h6": case "th":
+                score = -5;
+                break;
+            default:
+                score = 0;
+                break;
+        }
+        return score + classWeight(element);
+    }
+
+    private int classWeight(HtmlParser.Node element) {
+        if ((flags & FLAG_WEIGHT_CLASSES) == 0) return 0;
+        int weight = 0;
+        String cls = element.attr("class");
+        if (cls != null && !cls.isEmpty()) {
+            if (NEGATIVE.matcher(cls).find()) weight -= 25;
+            if (POSITIVE.matcher(cls).find()) weight += 25;
+        }
+        String id = element.attr("id");
+        if (id != null && !id.isEmpty()) {
+            if (NEGATIVE.matcher(id).find()) weight -= 25;
+            if (POSITIVE.matcher(id).find()) weight += 25;
+        }
+        return weight;
+    }
+
+    // ---- 3. 合并兄弟元素 ----
+
+    private List<HtmlParser.Node> collectWithSiblings(HtmlParser.Node top) {
+        List<HtmlParser.Node> content = new ArrayList<>();
+        HtmlParser.Node parent = top.parent;
+        if (parent == null || "#document".equals(parent.tag)) {
+            content.add(top);
+            return content;
+        }
+        double topScore = scores.get(top)[0];
+        double threshold = Math.max(10, topScore * 0.2);
+        String topClass = top.attr("class");
+        for (HtmlParser.Node sibling : parent.children) {
+            if (sibling == top) {
+                content.add(sibling);
+                continue;
+            }
+            if (sibling.isText()) continue;
+            double bonus = topClass != null && !topClass.isEmpty() && topClass.equals(sibling.attr("class")) ? topScore * 0.2 : 0;
+            double[] score = scores.get(sibling);
+            if (score != null && score[0] + bonus >= threshold) {
+                content.add(sibling);
+            } else if (sibling.tag.equals("figure") && sibling.first("img") != null && linkDensity(sibling) == 0) {
+                // 正文旁的题图（Readability 不保留，这里作为图片块输出）
+                content.add(sibling);
+            } else if (sibling.tag.equals("p") || (sibling.tag.equals("div") && !stats(sibling).hasBlockChild)) {
+                Stats s = stats(sibling);
+                double density = linkDensity(sibling);
+                if (s.textLength > 80 && density < 0.25) {
+                    content.add(sibling);
+                } else if (s.textLength > 0 && density == 0 && endsSentence(sibling.textContent())) {
+                    content.add(sibling);
+                }
+            }
+        }
+        return content;
+    }
+
+    private static boolean endsSentence(String text) {
+        String trimmed = text.trim();
+        if (trimmed.isEmpty()) return false;
+        char last = trimmed.charAt(trimmed.length() - 1);
+        return last == '.' || last == '。' || last == '！' || last == '？' || last == '!' || last == '?'
+                || trimmed.contains(". ");
+    }
+
+    // ---- 4. 清理残留区块 ----
+
+    private void cleanConditionally(HtmlParser.Node node) {
+        for (int i = node.children.size() - 1; i >= 0; i--) {
+            HtmlParser.Node child = node.children.get(i);
+            if (child.isText()) continue;
+            if (CONDITIONAL_TAGS.contains(child.tag) && shouldClean(child)) {
+                node.children.remove(i);
+                child.parent = null;
+            } else {
+                cleanConditionally(child);
+            }
+        }
+    }
+
+    private boolean shouldClean(HtmlParser.Node element) {
+        int weight = classWeight(element);
+        if (weight < 0) return true;
+        Stats s = stats(element);
+        if (s.commas >= 10) return false;
+        boolean isList = element.tag.equals("ul") || element.tag.equals("ol");
+        double density = linkDensity(element);
+        // 带说明文字的图片组、以及正文中的列表不按图文比例清理
+        boolean inFigure = hasAncestor(element, "figure");
+        if (s.images > 1 && (double) s.paragraphs / s.images < 0.5 && !inFigure) return true;
+        if (!isList && s.listItems > s.paragraphs + 10) return true;
+        if (weight < 25 && density > (isList ? 0.5 : 0.2)) return true;
+        if (weight >= 25 && density > 0.5) return true;
+        return s.textLength < MIN_PARAGRAPH_LENGTH && s.headings == 0 && (s.images == 0 || s.images > 2)
+                && element.first("pre") == null;
+    }
+
+    private static int elementCount(HtmlParser.Node node) {
+        int count = 0;
+        for (HtmlParser.Node child : node.children) {
+            if (!child.isText()) count++;
+            else if (!child.text.trim().isEmpty()) return Integer.MAX_VALUE;
+        }
+        return count;
+    }
+
+    private static boolean isAncestor(HtmlParser.Node ancestor, HtmlParser.Node node) {
+        for (HtmlParser.Node p = node.parent; p != null; p = p.parent) {
+            if (p == ancestor) return true;
+        }
+        return false;
+    }
+
+    // ---- 输出内容块 ----
+
+    /** 把清理后的元素树转为内容块：行内文字合并为段落，标题、图片、列表、引用、代码各成一块 */
+    private final class BlockWriter {
+        final List<ReaderArticle.Block> blocks = new ArrayList<>();
+        final URI base;
+        final String title;
+        final StringBuilder inline = new StringBuilder();
+        final Set<String> images = new HashSet<>();
+        boolean titleSkipped;
+
+        BlockWriter(URI base, String title) {
+            this.base = base;
+            this.title = title;
+        }
+
+        void write(HtmlParser.Node node) {
+            if (node.isText()) {
+                inline.append(node.text);
+                return;
+            }
+            switch (node.tag) {
+                case "br":
+                    inline.append(LINE_BREAK);
+                    return;
+                case "h1": case "h2": case "h3": case "h4": case "h5": case "h6":
+                    flush();
+                    heading(node.tag.charAt(1) - '0', collapse(node.textContent()));
+                    return;
+                case "img":
+                    flush();
+                    image(node);
+                    return;
+                case "ul":
+                case "ol":
+                    flush();
+                    list(node);
+                    return;
+                case "blockquote":
+                    flush();
+                    String quote = collapse(node.textContent());
+                    if (!quote.isEmpty()) blocks.add(new ReaderArticle.Block(ReaderArticle.BLOCK_QUOTE, quote, 0, null, null));
+                    return;
+                case "pre":
+                    flush();
+                    String code = trimNewlines(node.textContent());
+                    if (!code.trim().isEmpty()) blocks.add(new ReaderArticle.Block(ReaderArticle.BLOCK_CODE, code, 0, null, null));
+                    return;
+                case "hr":
+                    flush();
+                    return;
+                case "td":
+                case "th":
+                    // 同一行的单元格合并为一段
+                    inline.append(' ');
+                    for (HtmlParser.Node child : node.children) write(child);
+                    inline.append(' ');
+                    return;
+                default:
+                    break;
+            }
+            boolean block = BLOCK_TAGS.contains(node.tag);
+            if (block) flush();
+            for (HtmlParser.Node child : node.children) write(child);
+            if (block) flush();
+        }
+
+        void flush() {
+            if (inline.length() == 0) return;
+            String text = collapseKeepingBreaks(inline);
+            inline.setLength(0);
+            if (!text.isEmpty()) blocks.add(ReaderArticle.Block.paragraph(text));
+        }
+
+        private void heading(int level, String text) {
+            if (text.isEmpty()) return;
+            // 与文章标题相同的第一个标题不再重复显示
+            if (!titleSkipped && blocks.isEmpty() && (text.equals(title)
+                    || (text.length() * 2 > title.length() && title.startsWith(text)))) {
+                titleSkipped = true;
+                return;
+            }
+            blocks.add(ReaderArticle.Block.heading(level, text));
+        }
+
+        private void image(HtmlParser.Node img) {
+            String src = imageSource(img);
+            if (src == null) return;
+            String resolved = resolve(base, src);
+            if (resolved == null || !images.add(resolved)) return;
+            String alt = img.attr("alt");
+            blocks.add(ReaderArticle.Block.image(resolved, alt != null ? collapse(alt) : ""));
+        }
+
+        private void list(HtmlParser.Node list) {
+            List<String> items = new ArrayList<>();
+            for (HtmlParser.Node child : list.children) {
+                if (child.isText()) continue;
+                String text = collapse(child.textContent());
+                if (!text.isEmpty()) items.add(text);
+                // 列表项中的图片单独成块，跟在列表后面
+                HtmlParser.Node img = child.first("img");
+                if (img != null && text.isEmpty()) {
+                    if (!items.isEmpty()) {
+                        blocks.add(ReaderArticle.Block.list(list.tag.equals("ol"), items));
+                        items = new ArrayList<>();
+                    }
+                    image(img);
+                }
+            }
+            if (!items.isEmpty()) blocks.add(ReaderArticle.Block.list(list.tag.equals("ol"), items));
+        }
+    }
+
+    /** 图片地址：懒加载图片的真实地址通常放在 data-* 属性中，src 只是占位图 */
+    private static String imageSource(HtmlParser.Node img) {
+        String[] names = {"data-src", "data-original", "data-lazy-src", "data-actualsrc", "src"};
+        for (String name : names) {
+            String value = img.attr(name);
+            if (value != null && !value.trim().isEmpty() && !value.startsWith("data:")) return value.trim();
+        }
+        String srcset = img.attr("srcset");
+        if (srcset == null) srcset = img.attr("data-srcset");
+        if (srcset != null && !srcset.trim().isEmpty()) {
+            String first = srcset.trim().split(",")[0].trim();
+            int space = first.indexOf(' ');
+            return space > 0 ? first.substring(0, space) : first;
+        }
+        return null;
+    }
+
+    private String resolve(String href) {
+        return resolve(resolveBase(baseUrl), href);
+    }
+
+    private static URI resolveBase(String url) {
+        if (url == null) return null;
+        try {
+            return new URI(url);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String resolve(URI base, String href) {
+        try {
+            URI uri = new URI(href.replace(" ", "%20"));
+            if (uri.isAbsolute()) return uri.toString();
+            if (base == null) return null;
+            return base.resolve(uri).toString();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // ---- 文字工具 ----
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f' || c == '\u00a0' || c == '\u3000';
+    }
+
+    /** 空白折叠后的长度 */
+    private static int collapsedLength(String text) {
+        int length = 0;
+        boolean space = true;
+        for (int i = 0; i < text.length(); i++) {
+            if (isSpace(text.charAt(i))) {
+                if (!space) length++;
+                space = true;
+            } else {
+                length++;
+                space = false;
+            }
+        }
+        return length;
+    }
+
+    private static int countCommas(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ',' || c == '，' || c == '،' || c == '﹐' || c == '︐' || c == '︑') count++;
+        }
+        return count;
+    }
+
+    static String collapse(CharSequence text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean space = true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isSpace(c)) {
+                if (!space) sb.append(' ');
+                space = true;
+            } else {
+                sb.append(c);
+                space = false;
+            }
+        }
+        int end = sb.length();
+        if (end > 0 && sb.charAt(end - 1) == ' ') sb.setLength(end - 1);
+        return sb.toString();
+    }
+
+    /** 折叠空白，br 标记处换行 */
+    private static String collapseKeepingBreaks(CharSequence text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        int start = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            if (i == text.length() || text.charAt(i) == LINE_BREAK) {
+                String line = collapse(text.subSequence(start, i));
+                if (!line.isEmpty()) {
+                    if (sb.length() > 0) sb.append('\n');
+                    sb.append(line);
+                }
+                start = i + 1;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String trimNewlines(String text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && (text.charAt(start) == '\n' || text.charAt(start) == '\r')) start++;
+        while (end > start && isSpace(text.charAt(end - 1))) end--;
+        return text.substring(start, end);
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * 阅读模式图片的按需加载
+ *
+ * 只有列表绑定到图片块时才开始下载与解码（RecyclerView 只绑定屏幕附近的块），
+ * 解码时按显示宽度计算采样率，不把原图整张解码进内存；结果放入按字节计算的 LRU 缓存。
+ * 列表项被回收时取消尚未完成的请求。地址为 file: 时直接读取本地文件（离线保存的文章），并按文件名中的摘要校验内容。
+ */
+package com.olsc.manorbrowser.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import com.olsc.manorbrowser.data.ArticleBlobStore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import okhttp3.Request;
+import okhttp3.Response;
+
+public class ReaderImageLoader {
+    /** 内存缓存上限 */
+    private static final int MAX_MEMORY_BYTES = 24 * 1024 * 1024;
+    /** 单张图片的下载上限，超过时放弃 */
+    private static final int MAX_IMAGE_BYTES = 10 * 1024 * 1024;
+    private static final int LOADER_THREADS = 2;
+
+    /** 加载回调（主线程调用），失败时 bitmap 为 null */
+    public interface Callback {
+        void onLoaded(Bitmap bitmap);
+    }
+
+    /** 可取消的加载请求 */
+    public static class Handle {
+        private volatile boolean cancelled;
+        private Future<?> future;
+
+        public void cancel() {
+            cancelled = true;
+            if (future != null) future.cancel(true);
+        }
+    }
+
+    private static volatile ReaderImageLoader instance;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newFixedThreadPool(LOADER_THREADS);
+    private final LruCache<String, Bitmap> memory;
+
+    public static ReaderImageLoader get() {
+        if (instance == null) {
+            synchronized (ReaderImageLoader.class) {
+                if (instance == null) {
+                    instance = new ReaderImageLoader();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private ReaderImageLoader() {
+        int budget = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, MAX_MEMORY_BYTES);
+        this.memory = new LruCache<String, Bitmap>(budget) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+    }
+
+    /** 内存中已解码的图片，未命中返回 null */
+    public Bitmap getCached(String src) {
+        return src != null ? memory.get(src) : null;
+    }
+
+    /**
+     * 异步加载图片：内存命中时同步回调，否则在后台下载（或读取本地文件）并按目标宽度采样解码
+     *
+     * @param targetWidth 显示宽度（像素），解码后的宽度不小于它（原图更窄时按原图）
+     */
+    public Handle load(String src, int targetWidth, Callback callback) {
+        Handle handle = new Handle();
+        Bitmap cached = getCached(src);
+        if (cached != null || src == null) {
+            callback.onLoaded(cached);
+            return handle;
+        }
+        handle.future = executor.submit(() -> {
+            Bitmap bitmap = null;
+            try {
+                if (handle.cancelled) return;
+                byte[] data = fetch(src);
+                if (data == null || handle.cancelled) return;
+                bitmap = decode(data, targetWidth);
+                if (bitmap != null) memory.put(src, bitmap);
+            } catch (Exception e) {
+                if (!handle.cancelled) e.printStackTrace();
+            }
+            if (handle.cancelled) return;
+            Bitmap result = bitmap;
+            mainHandler.post(() -> {
+                if (!handle.cancelled) callback.onLoaded(result);
+            });
+        });
+        return handle;
+    }
+
+    /**
+     * 同步读取图片原始数据（file: 读本地文件，其他经网络下载），超过大小上限、请求失败或本地文件损坏时返回 null
+     */
+    public static byte[] fetch(String src) throws IOException {
+        if (src.startsWith("file:")) {
+            File file = new File(URI.create(src));
+            byte[] data;
+            try (InputStream in = new FileInputStream(file)) {
+                data = readLimited(in);
+            }
+            // 本地图片只来自离线文章库，文件名即内容的摘要
+            return ArticleBlobStore.isIntact(file.getName(), data) ? data : null;
+        }
+        Request request = new Request.Builder().url(src).build();
+        try (Response response = BrowserDownloader.getClient().newCall(request).execute()) {
+            if (!response.isSuccessful() || response.body() == null) return null;
+            return readLimited(response.body().byteStream());
+        }
+    }
+
+    private static byte[] readLimited(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[16 * 1024];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+            if (out.size() > MAX_IMAGE_BYTES) return null;
+        }
+        return out.toByteArray();
+    }
+
+    /** 先只读取尺寸，再按采样率解码 */
+    static Bitmap decode(byte[] data, int targetWidth) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize(bounds.outWidth, targetWidth);
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    /** 不小于 1 的 2 的幂，使采样后的宽度仍不小于目标宽度 */
+    public static int sampleSize(int width, int targetWidth) {
+        int sample = 1;
+        if (targetWidth <= 0) return sample;
+        while (width / (sample * 2) >= targetWidth) sample *= 2;
+        return sample;
+    }
+}
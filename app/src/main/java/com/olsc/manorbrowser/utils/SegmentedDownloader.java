@@ -0,0 +1,506 @@
+/**
+ * 分段并行下载引擎
+ *
+ * 1. 先以 Range: bytes=0-0 探测服务器是否支持断点续传，同时获得文件总大小与校验值（ETag / Last-Modified）；
+ * 2. 支持时将大文件拆成若干段，通过共享的 OkHttpClient 并行拉取，每段用 FileChannel 按偏移写入同一文件；
+ * 3. 每段的已下载字节数随进度定期回调保存，网络中断后携带 Range 与 If-Range 从断点继续，
+ *    若服务器端文件已变化（If-Range 不匹配返回 200），则整体从头重新下载；
+ * 4. 设置了 StreamingDigest 时在写入的同时计算摘要，完成后与服务器声明的摘要（Repr-Digest / Digest / Content-MD5）核对。
+ * 本类不依赖 Android API，可在 JVM 单元测试中用本地 HTTP 服务验证。
+ */
+package com.olsc.manorbrowser.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+public class SegmentedDownloader {
+    /** 默认并行段数 */
+    public static final int DEFAULT_SEGMENTS = 4;
+    /** 每段最小字节数，小文件不拆分 */
+    public static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+    /** 单段连续失败的最大重试次数 */
+    private static final int MAX_RETRIES = 5;
+    /** 重试退避基准时间 */
+    private static final long RETRY_BASE_DELAY_MS = 500;
+    /** 进度检查点间隔 */
+    private static final long CHECKPOINT_INTERVAL_MS = 2000;
+
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+|\\*)");
+
+    /** 一个字节区间 [start, end]，end 为 -1 表示长度未知、读到流结束为止 */
+    public static class Segment {
+        public final long start;
+        public final long end;
+        /** 本段已写入的字节数 */
+        public volatile long downloaded;
+
+        public Segment(long start, long end, long downloaded) {
+            this.start = start;
+            this.end = end;
+            this.downloaded = downloaded;
+        }
+
+        public boolean isComplete() {
+            return end >= 0 && start + downloaded > end;
+        }
+    }
+
+    /** 可持久化的下载状态 */
+    public static class State {
+        /** 文件总大小，-1 表示未知 */
+        public long totalBytes = -1;
+        /** 服务器是否支持 Range 请求 */
+        public boolean rangeSupported;
+        /** If-Range 校验值（优先 ETag，其次 Last-Modified），可为 null */
+        public String validator;
+        /** 探测时得到的 Content-Type */
+        public String mimeType;
+        /** 服务器声明的完整文件摘要（StreamingDigest.parseExpected 的格式），可为 null */
+        public String expectedDigest;
+        public final List<Segment> segments = new ArrayList<>();
+
+        public long downloadedBytes() {
+            long sum = 0;
+            for (Segment s : segments) sum += s.downloaded;
+            return sum;
+        }
+
+        /** 编码为 "start-end-downloaded;..." 形式，便于存入下载记录 */
+        public String encodeSegments() {
+            StringBuilder sb = new StringBuilder();
+            for (Segment s : segments) {
+                if (sb.length() > 0) sb.append(';');
+                sb.append(s.start).append(',').append(s.end).append(',').append(s.downloaded);
+            }
+            return sb.toString();
+        }
+
+        /** 从 encodeSegments 的结果恢复分段进度；格式不对时返回 false */
+        public boolean decodeSegments(String encoded) {
+            segments.clear();
+            if (encoded == null || encoded.isEmpty()) return false;
+            try {
+                for (String part : encoded.split(";")) {
+                    String[] f = part.split(",");
+                    segments.add(new Segment(Long.parseLong(f[0]), Long.parseLong(f[1]), Long.parseLong(f[2])));
+                }
+                return true;
+            } catch (Exception e) {
+                segments.clear();
+                return false;
+            }
+        }
+    }
+
+    /** 进度回调，在下载线程调用 */
+    public interface Listener {
+        /** 有新数据写入 */
+        void onProgress(long downloadedBytes, long totalBytes);
+
+        /** 数据已 force 到存储，可以安全地持久化分段进度 */
+        void onCheckpoint(State state);
+    }
+
+    /** 服务器返回非预期状态码 */
+    public static class HttpStatusException extends IOException {
+        public final int code;
+
+        public HttpStatusException(int code) {
+            super("HTTP " + code);
+            this.code = code;
+        }
+    }
+
+    /** 下载被取消 */
+    public static class CancelledException extends IOException {
+        public CancelledException() {
+            super("Canceled");
+        }
+    }
+
+    /** 写入本地文件失败（存储空间不足等），与网络异常区分，不做重试 */
+    public static class StorageException extends IOException {
+        public StorageException(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    /** 下载完成后摘要与服务器声明的不一致 */
+    public static class IntegrityException extends IOException {
+        public IntegrityException(String expected) {
+            super("Digest mismatch, expected " + expected);
+        }
+    }
+
+    /** If-Range 校验失败：服务器上的文件已变化，需要从头下载 */
+    private static class ResourceChangedException extends IOException {
+        ResourceChangedException() {
+            super("Resource changed");
+        }
+    }
+
+    private final OkHttpClient client;
+    private final Request baseRequest;
+    private final ExecutorService segmentExecutor;
+    private final int maxSegments;
+    private final Set<Call> activeCalls = ConcurrentHashMap.newKeySet();
+    /** 同时进行的分段请求数上限，续传时已保存的分段数可能多于本次分配的连接数 */
+    private final Semaphore connections;
+    private volatile boolean cancelled;
+    /** 某个分段已失败，其余分段应尽快停止 */
+    private volatile boolean aborted;
+    private long lastCheckpoint;
+    private TokenBucket rateLimiter;
+    private StreamingDigest digest;
+
+    /**
+     * @param client          共享的 OkHttpClient
+     * @param baseRequest     携带 URL 与 UA / Cookie / Referer 等头的请求模板
+     * @param segmentExecutor 执行各分段的线程池
+     * @param maxSegments     最大并行段数，同时也是同时打开的连接数上限
+     */
+    public SegmentedDownloader(OkHttpClient client, Request baseRequest, ExecutorService segmentExecutor, int maxSegments) {
+        this.client = client;
+        this.baseRequest = baseRequest;
+        this.segmentExecutor = segmentExecutor;
+        this.maxSegments = Math.max(1, maxSegments);
+        this.connections = new Semaphore(this.maxSegments);
+    }
+
+    /**
+     * 设置共享的带宽限速器，为 null 时不限速
+     */
+    public void setRateLimiter(TokenBucket rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * 设置随写入计算的摘要，为 null 时不计算也不校验
+     */
+    public void setDigest(StreamingDigest digest) {
+        this.digest = digest;
+    }
+
+    /**
+     * 探测服务器能力并生成分段计划
+     */
+    public State probe() throws IOException {
+        Call call = newCall(baseRequest.newBuilder().header("Range", "bytes=0-0").build());
+        try (Response response = execute(call)) {
+            State state = new State();
+            state.mimeType = response.header("Content-Type");
+            String etag = response.header("ETag");
+            // 弱 ETag 不能用于 If-Range
+            state.validator = etag != null && !etag.startsWith("W/") ? etag : response.header("Last-Modified");
+            // Content-MD5 只描述本次响应体，只有完整响应时才代表整个文件
+            state.expectedDigest = StreamingDigest.parseExpected(response.header("Repr-Digest"), response.header("Digest"),
+                    response.code() == 200 ? response.header("Content-MD5") : null);
+            if (response.code() == 206) {
+                Matcher m = CONTENT_RANGE.matcher(String.valueOf(response.header("Content-Range")));
+                if (m.find() && !"*".equals(m.group(3))) {
+                    state.totalBytes = Long.parseLong(m.group(3));
+                    state.rangeSupported = true;
+                }
+            } else if (response.isSuccessful()) {
+                ResponseBody body = response.body();
+                state.totalBytes = body != null ? body.contentLength() : -1;
+                state.rangeSupported = false;
+            } else {
+                throw new HttpStatusException(response.code());
+            }
+            plan(state);
+            return state;
+        } finally {
+            activeCalls.remove(call);
+        }
+    }
+
+    /**
+     * 按总大小拆分区间；不支持 Range 或大小未知时只有一段
+     */
+    void plan(State state) {
+        state.segments.clear();
+        long total = state.totalBytes;
+        if (!state.rangeSupported || total <= 0) {
+            state.segments.add(new Segment(0, total > 0 ? total - 1 : -1, 0));
+            return;
+        }
+        int count = (int) Math.max(1, Math.min(maxSegments, total / MIN_SEGMENT_SIZE));
+        long size = total / count;
+        for (int i = 0; i < count; i++) {
+            long start = i * size;
+            long end = i == count - 1 ? total - 1 : start + size - 1;
+            state.segments.add(new Segment(start, end, 0));
+        }
+    }
+
+    /**
+     * 下载所有未完成的分段，阻塞直到全部完成、失败或被取消。
+     * 服务器文件已变化时重新探测并从头下载一次。
+     */
+    public void run(State state, FileChannel channel, Listener listener) throws IOException {
+        try {
+            runSegments(state, channel, listener);
+        } catch (ResourceChangedException e) {
+            // 其余分段已因中止停下，重新探测前清除中止标记
+            aborted = false;
+            State fresh = probe();
+            state.totalBytes = fresh.totalBytes;
+            state.rangeSupported = fresh.rangeSupported;
+            state.validator = fresh.validator;
+            state.expectedDigest = fresh.expectedDigest;
+            state.segments.clear();
+            if (digest != null) digest.reset();
+            state.segments.addAll(fresh.segments);
+            channel.truncate(0);
+            runSegments(state, channel, listener);
+        }
+        channel.force(false);
+        if (digest != null) {
+            try {
+                digest.finish(state.totalBytes > 0 ? state.totalBytes : state.downloadedBytes());
+            } catch (IOException e) {
+                throw new StorageException(e);
+            }
+            if (!digest.verify(state.expectedDigest)) throw new IntegrityException(state.expectedDigest);
+        }
+        listener.onCheckpoint(state);
+    }
+
+    /**
+     * 取消下载：中断所有进行中的请求
+     */
+    public void cancel() {
+        cancelled = true;
+        for (Call call : activeCalls) call.cancel();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** 用户取消或有分段失败，正在进行的读取与重试都应停止 */
+    private boolean isStopping() {
+        return cancelled || aborted;
+    }
+
+    /** 中止其余分段：正在读取响应体的请求也会被中断 */
+    private void abort() {
+        aborted = true;
+        for (Call call : activeCalls) call.cancel();
+    }
+
+    private void runSegments(State state, FileChannel channel, Listener listener) throws IOException {
+        aborted = false;
+        List<Segment> pending = new ArrayList<>();
+        for (Segment s : state.segments) {
+            if (!s.isComplete()) pending.add(s);
+        }
+        if (pending.size() == 1) {
+            // 单段直接在当前线程下载
+            fetchWithRetry(state, pending.get(0), channel, listener);
+            return;
+        }
+        // 记录最先失败的分段的原因；其余分段随后因中止而抛出的 CancelledException 不覆盖它
+        AtomicReference<IOException> firstFailure = new AtomicReference<>();
+        List<Future<?>> futures = new ArrayList<>();
+        for (Segment segment : pending) {
+            futures.add(segmentExecutor.submit(() -> {
+                try {
+                    fetchWithRetry(state, segment, channel, listener);
+                } catch (IOException | RuntimeException e) {
+                    // 任一分段失败则立即中止其余分段，已下载部分保留以便续传
+                    if (firstFailure.compareAndSet(null, e instanceof IOException ? (IOException) e : new IOException(e))) abort();
+                    throw e;
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (firstFailure.compareAndSet(null, new IOException(e.getCause()))) abort();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                throw new CancelledException();
+            }
+        }
+        if (cancelled) throw new CancelledException();
+        if (firstFailure.get() != null) throw firstFailure.get();
+    }
+
+    private void fetchWithRetry(State state, Segment segment, FileChannel channel, Listener listener) throws IOException {
+        try {
+            connections.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancelledException();
+        }
+        try {
+            fetchWithRetryLocked(state, segment, channel, listener);
+        } finally {
+            connections.release();
+        }
+    }
+
+    private void fetchWithRetryLocked(State state, Segment segment, FileChannel channel, Listener listener) throws IOException {
+        int attempt = 0;
+        while (true) {
+            if (isStopping()) throw new CancelledException();
+            long before = segment.downloaded;
+            try {
+                fetch(state, segment, channel, listener);
+                return;
+            } catch (HttpStatusException | StorageException | ResourceChangedException | CancelledException e) {
+                throw e;
+            } catch (IOException e) {
+                if (isStopping()) throw new CancelledException();
+                // 本次有进展则重置重试计数，只有连续失败才放弃（不支持 Range 时每次都从头开始，不算进展）
+                if (state.rangeSupported && segment.downloaded > before) attempt = 0;
+                if (++attempt > MAX_RETRIES) throw e;
+                try {
+                    Thread.sleep(RETRY_BASE_DELAY_MS << (attempt - 1));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new CancelledException();
+                }
+            }
+        }
+    }
+
+    private void fetch(State state, Segment segment, FileChannel channel, Listener listener) throws IOException {
+        if (!state.rangeSupported) segment.downloaded = 0; // 无法续传，只能从头写
+        long offset = segment.start + segment.downloaded;
+        Request.Builder builder = baseRequest.newBuilder();
+        boolean ranged = state.rangeSupported && (offset > 0 || segment.end >= 0);
+        if (ranged) {
+            builder.header("Range", "bytes=" + offset + "-" + (segment.end >= 0 ? segment.end : ""));
+            if (state.validator != null) builder.header("If-Range", state.validator);
+        }
+        // 请求在响应体读完并关闭前一直留在 activeCalls 中，取消与中止才能打断正在进行的读取
+        Call call = newCall(builder.build());
+        try (Response response = execute(call)) {
+            if (ranged && response.code() == 200) {
+                // If-Range 不匹配时服务器返回完整的新文件
+                throw new ResourceChangedException();
+            }
+            if (!response.isSuccessful()) throw new HttpStatusException(response.code());
+            if (ranged) {
+                Matcher m = CONTENT_RANGE.matcher(String.valueOf(response.header("Content-Range")));
+                if (!m.find() || Long.parseLong(m.group(1)) != offset) {
+                    throw new IOException("Unexpected Content-Range: " + response.header("Content-Range"));
+                }
+            }
+            ResponseBody body = response.body();
+            if (body == null) throw new IOException("Empty body");
+            copy(state, segment, body.byteStream(), channel, listener);
+        } finally {
+            activeCalls.remove(call);
+        }
+    }
+
+    private void copy(State state, Segment segment, InputStream in, FileChannel channel, Listener listener) throws IOException {
+        byte[] buffer = new byte[32768];
+        ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (isStopping()) throw new CancelledException();
+            long remaining = segment.end >= 0 ? segment.end - (segment.start + segment.downloaded) + 1 : Long.MAX_VALUE;
+            int len = (int) Math.min(read, remaining);
+            if (len <= 0) break;
+            wrapper.clear().limit(len);
+            long writeStart = segment.start + segment.downloaded;
+            long position = writeStart;
+            try {
+                while (wrapper.hasRemaining()) {
+                    position += channel.write(wrapper, position);
+                }
+                if (digest != null) digest.update(writeStart, buffer, 0, len, segment.start);
+            } catch (IOException e) {
+                throw new StorageException(e);
+            }
+            segment.downloaded += len;
+            throttle(len);
+            listener.onProgress(state.downloadedBytes(), state.totalBytes);
+            maybeCheckpoint(state, channel, listener);
+        }
+        if (segment.end >= 0 && !segment.isComplete()) {
+            throw new IOException("Connection closed early at " + (segment.start + segment.downloaded));
+        }
+    }
+
+    /** 按限速器给出的等待时间分片休眠，期间可响应取消 */
+    private void throttle(int bytes) throws IOException {
+        TokenBucket limiter = rateLimiter;
+        if (limiter == null) return;
+        long waitNanos = limiter.reserve(bytes);
+        while (waitNanos > 0) {
+            if (isStopping()) throw new CancelledException();
+            long slice = Math.min(waitNanos, TimeUnit.MILLISECONDS.toNanos(100));
+            try {
+                TimeUnit.NANOSECONDS.sleep(slice);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancelledException();
+            }
+            waitNanos -= slice;
+        }
+    }
+
+    private void maybeCheckpoint(State state, FileChannel channel, Listener listener) throws IOException {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (now - lastCheckpoint < CHECKPOINT_INTERVAL_MS) return;
+            lastCheckpoint = now;
+            // 先把数据刷到存储，再保存进度，保证记录的进度不会超前于磁盘上的数据
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                throw new StorageException(e);
+            }
+            listener.onCheckpoint(state);
+        }
+    }
+
+    /**
+     * 创建请求并登记到 activeCalls；调用方在响应体关闭后负责移除
+     */
+    private Call newCall(Request request) throws IOException {
+        if (isStopping()) throw new CancelledException();
+        Call call = client.newCall(request);
+        activeCalls.add(call);
+        // 登记前恰好发生的取消不会遍历到这个请求，这里补上
+        if (isStopping()) call.cancel();
+        return call;
+    }
+
+    private Response execute(Call call) throws IOException {
+        try {
+            return call.execute();
+        } catch (IOException e) {
+            throw isStopping() ? new CancelledException() : e;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * 下载内容的流式摘要计算器
+ *
+ * 在下载的拷贝循环中随写入增量计算 SHA-256（服务器给出 MD5 时同时计算 MD5），不需要下载完成后再读一遍文件。
+ * 分段下载时各段并行、乱序写入，而摘要必须按文件顺序计算，因此维护一个"已计入位置"前沿：
+ * 前沿所在分段的线程写入时直接用刚写入的缓冲区更新摘要；前沿推进到下一段时，由该段线程把本段此前已写入、
+ * 尚未计入的部分从文件补读（刚写入的数据通常仍在页缓存中），之后继续随写随算；
+ * 下载结束时再补读前沿之后剩余的部分（仅当后面的分段先于前面的分段完成，或从已保存的进度续传时发生）。
+ * 本类不依赖 Android API。
+ */
+package com.olsc.manorbrowser.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Locale;
+
+public class StreamingDigest {
+    /** 期望摘要的存储格式前缀，值为 Base64 */
+    public static final String ALGORITHM_SHA256 = "sha-256";
+    public static final String ALGORITHM_MD5 = "md5";
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel reader;
+    private final MessageDigest sha256;
+    private final MessageDigest md5;
+    /** 文件中 [0, hashedUpTo) 已计入摘要 */
+    private volatile long hashedUpTo;
+    private ByteBuffer readBuffer;
+    /** finish 时一次性算出的结果；digest() 会重置 MessageDigest，之后不能再次调用 */
+    private byte[] sha256Result;
+    private byte[] md5Result;
+
+    /**
+     * @param reader 可按位置读取输出文件的通道，用于补读前沿之后已写入的数据；纯顺序写入时可为 null
+     * @param md5    是否同时计算 MD5（服务器只提供 Content-MD5 或 Digest: MD5 时需要）
+     */
+    public StreamingDigest(FileChannel reader, boolean md5) {
+        this.reader = reader;
+        try {
+            this.sha256 = MessageDigest.getInstance("SHA-256");
+            this.md5 = md5 ? MessageDigest.getInstance("MD5") : null;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 根据期望摘要决定需要计算哪些算法
+     */
+    public static StreamingDigest forExpected(FileChannel reader, String expected) {
+        return new StreamingDigest(reader, expected != null && expected.startsWith(ALGORITHM_MD5 + "="));
+    }
+
+    /**
+     * 顺序写入时调用：data 紧接在已计入的数据之后
+     */
+    public synchronized void update(byte[] data, int off, int len) {
+        digest(data, off, len);
+        hashedUpTo += len;
+    }
+
+    /**
+     * 分段写入后调用：data 已写入文件的 [position, position + len)，该位置属于从 segmentStart 开始的分段。
+     * 前沿不在本段时直接返回，开销只是一次 volatile 读。
+     */
+    public void update(long position, byte[] data, int off, int len, long segmentStart) throws IOException {
+        long end = position + len;
+        long hashed = hashedUpTo;
+        if (hashed < segmentStart || hashed >= end) return;
+        synchronized (this) {
+            hashed = hashedUpTo;
+            if (hashed < segmentStart || hashed >= end) return;
+            if (hashed < position) {
+                catchUp(hashed, position);
+                hashed = position;
+            }
+            // 不支持 Range 的重试会从头重写，已计入的部分跳过（内容相同）
+            int skip = (int) (hashed - position);
+            digest(data, off + skip, len - skip);
+            hashedUpTo = end;
+        }
+    }
+
+    /**
+     * 所有数据写入完成后调用，补读尚未计入摘要的剩余部分
+     */
+    public synchronized void finish(long totalBytes) throws IOException {
+        if (hashedUpTo < totalBytes) {
+            catchUp(hashedUpTo, totalBytes);
+            hashedUpTo = totalBytes;
+        }
+        sha256Result = sha256.digest();
+        if (md5 != null) md5Result = md5.digest();
+    }
+
+    /**
+     * 丢弃已计入的内容（服务器文件变化、从头重新下载时调用）
+     */
+    public synchronized void reset() {
+        sha256.reset();
+        if (md5 != null) md5.reset();
+        hashedUpTo = 0;
+        sha256Result = null;
+        md5Result = null;
+    }
+
+    /**
+     * finish 之后可用：SHA-256 的十六进制小写形式
+     */
+    public synchronized String getSha256Hex() {
+        return sha256Result == null ? null : toHex(sha256Result);
+    }
+
+    /**
+     * finish 之后调用：与期望摘要比较，可重复调用；没有期望值或算法无法识别时视为通过
+     */
+    public synchronized boolean verify(String expected) {
+        if (expected == null || sha256Result == null) return true;
+        int eq = expected.indexOf('=');
+        if (eq <= 0) return true;
+        String algorithm = expected.substring(0, eq);
+        byte[] value;
+        try {
+            value = Base64.getDecoder().decode(expected.substring(eq + 1));
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+        if (ALGORITHM_SHA256.equals(algorithm)) return MessageDigest.isEqual(value, sha256Result);
+        if (ALGORITHM_MD5.equals(algorithm) && md5Result != null) return MessageDigest.isEqual(value, md5Result);
+        return true;
+    }
+
+    /**
+     * 从响应头中解析服务器声明的完整文件摘要，优先 SHA-256，统一为 "算法=Base64" 形式
+     *
+     * @param reprDigest  Repr-Digest 头（RFC 9530，形如 sha-256=:Base64:）
+     * @param digest      Digest 头（RFC 3230，形如 SHA-256=Base64, MD5=Base64）
+     * @param contentMd5  Content-MD5 头；仅当响应为完整文件（200）时才可传入
+     * @return 无可用摘要时返回 null
+     */
+    public static String parseExpected(String reprDigest, String digest, String contentMd5) {
+        String md5 = null;
+        for (String header : new String[]{reprDigest, digest}) {
+            if (header == null) continue;
+            for (String item : header.split(",")) {
+                int eq = item.indexOf('=');
+                if (eq <= 0) continue;
+                String algorithm = item.substring(0, eq).trim().toLowerCase(Locale.ROOT);
+                String value = item.substring(eq + 1).trim();
+                // Repr-Digest 的值是结构化字段的字节序列，两侧带冒号
+                if (value.length() >= 2 && value.startsWith(":") && value.endsWith(":")) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                if (!isBase64(value)) continue;
+                if (ALGORITHM_SHA256.equals(algorithm)) return ALGORITHM_SHA256 + "=" + value;
+                if (ALGORITHM_MD5.equals(algorithm) && md5 == null) md5 = value;
+            }
+        }
+        if (md5 == null && contentMd5 != null && isBase64(contentMd5.trim())) md5 = contentMd5.trim();
+        return md5 == null ? null : ALGORITHM_MD5 + "=" + md5;
+    }
+
+    /**
+     * 期望摘要中的 SHA-256（十六进制），用于下载前按内容查重；不是 SHA-256 时返回 null
+     */
+    public static String expectedSha256Hex(String expected) {
+        if (expected == null || !expected.startsWith(ALGORITHM_SHA256 + "=")) return null;
+        try {
+            byte[] value = Base64.getDecoder().decode(expected.substring(ALGORITHM_SHA256.length() + 1));
+            return value.length == 32 ? toHex(value) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void digest(byte[] data, int off, int len) {
+        if (len <= 0) return;
+        sha256.update(data, off, len);
+        if (md5 != null) md5.update(data, off, len);
+    }
+
+    /** 从文件补读 [from, to) 并计入摘要 */
+    private void catchUp(long from, long to) throws IOException {
+        if (reader == null) throw new IOException("No reader for digest catch-up");
+        if (readBuffer == null) readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        long position = from;
+        while (position < to) {
+            readBuffer.clear();
+            readBuffer.limit((int) Math.min(READ_BUFFER_SIZE, to - position));
+            int n = reader.read(readBuffer, position);
+            if (n < 0) throw new IOException("File shorter than expected at " + position);
+            digest(readBuffer.array(), 0, n);
+            position += n;
+        }
+    }
+
+    private static boolean isBase64(String value) {
+        if (value.isEmpty()) return false;
+        try {
+            Base64.getDecoder().decode(value);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) sb.append(String.format(Locale.ROOT, "%02x", b));
+        return sb.toString();
+    }
+}
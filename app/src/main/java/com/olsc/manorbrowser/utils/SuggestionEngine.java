@@ -0,0 +1,213 @@
+/**
+ * 地址栏建议引擎
+ *
+ * 每次按键先在主线程查询内存前缀树 (FrecencyTrie) 立即给出结果，
+ * 再经短暂防抖后在后台查询数据库全文索引，将两路结果合并后增量刷新。
+ * 每次按键生成一个取消令牌，新的输入会取消旧请求，过期结果不会覆盖较新的输入。
+ */
+package com.olsc.manorbrowser.utils;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.olsc.manorbrowser.data.BookmarkItem;
+import com.olsc.manorbrowser.data.BookmarkStorage;
+import com.olsc.manorbrowser.data.FrecencyTrie;
+import com.olsc.manorbrowser.data.HistoryStorage;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class SuggestionEngine {
+    /** 内存前缀树收录的条目上限 */
+    private static final int TRIE_CAPACITY = 2000;
+    /** 结果条数上限 */
+    private static final int RESULT_LIMIT = 20;
+    /** 数据库查询防抖时间，连续快速输入时只查最后一次 */
+    private static final long DB_DEBOUNCE_MS = 120;
+    /** 前缀树过期时间，超过后在下次获得焦点时重建 */
+    private static final long TRIE_MAX_AGE_MS = 30_000;
+
+    /** 建议结果回调（始终在主线程调用） */
+    public interface Callback {
+        /**
+         * @param items 当前可展示的建议
+         * @param complete false 表示仅为前缀树的即时结果，数据库结果稍后到达
+         */
+        void onSuggestions(List<HistoryStorage.HistoryItem> items, boolean complete);
+    }
+
+    /** 单次按键对应的取消令牌 */
+    private static class Request {
+        final String query;
+        volatile boolean cancelled;
+        Future<?> future;
+
+        Request(String query) {
+            this.query = query;
+        }
+    }
+
+    private final Context appContext;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private volatile FrecencyTrie trie;
+    private volatile long trieBuiltAt;
+    private boolean rebuilding;
+    private Request current;
+
+    public SuggestionEngine(Context context) {
+        this.appContext = context.getApplicationContext();
+    }
+
+    /**
+     * 若前缀树不存在或已过期则在后台重建（地址栏获得焦点时调用）
+     */
+    public void warmUp() {
+        if (rebuilding) return;
+        if (trie != null && System.currentTimeMillis() - trieBuiltAt < TRIE_MAX_AGE_MS) return;
+        rebuilding = true;
+        executor.execute(() -> {
+            FrecencyTrie built = null;
+            try {
+                built = buildTrie();
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                // 建树失败时保留旧的前缀树，下次 warmUp 重试
+                FrecencyTrie result = built;
+                mainHandler.post(() -> {
+                    if (result != null) {
+                        trie = result;
+                        trieBuiltAt = System.currentTimeMillis();
+                    }
+                    rebuilding = false;
+                });
+            }
+        });
+    }
+
+    /**
+     * 处理一次输入变化（主线程调用）
+     */
+    public void query(String text, Callback callback) {
+        cancel();
+        Request request = new Request(text);
+        current = request;
+
+        List<HistoryStorage.HistoryItem> instant = new ArrayList<>();
+        FrecencyTrie snapshot = trie;
+        if (snapshot != null) {
+            for (FrecencyTrie.Entry entry : snapshot.search(text, RESULT_LIMIT)) {
+                instant.add(toHistoryItem(entry));
+            }
+            callback.onSuggestions(instant, false);
+        }
+
+        request.future = executor.schedule(() -> {
+            if (request.cancelled) return;
+            List<HistoryStorage.HistoryItem> fromDb = HistoryStorage.getRecommendations(appContext, request.query, RESULT_LIMIT);
+            if (request.cancelled) return;
+            mainHandler.post(() -> {
+                if (request.cancelled || request != current) return;
+                callback.onSuggestions(merge(instant, fromDb), true);
+            });
+        }, DB_DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 取消尚未完成的请求（输入框失去焦点时调用）
+     */
+    public void cancel() {
+        if (current != null) {
+            current.cancelled = true;
+            if (current.future != null) current.future.cancel(false);
+            current = null;
+        }
+    }
+
+    /**
+     * 停止后台线程并丢弃尚未送达的结果（所属界面销毁时调用），之后不能再使用
+     */
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * 标记前缀树已过期（如清空历史后），下次 warmUp 时重建
+     */
+    public void invalidate() {
+        trieBuiltAt = 0;
+    }
+
+    /**
+     * 合并两路结果：前缀树结果在前保持稳定，数据库结果按 URL 去重后追加
+     */
+    private static List<HistoryStorage.HistoryItem> merge(List<HistoryStorage.HistoryItem> instant,
+                                                          List<HistoryStorage.HistoryItem> fromDb) {
+        List<HistoryStorage.HistoryItem> merged = new ArrayList<>(instant);
+        Set<String> seen = new HashSet<>();
+        for (HistoryStorage.HistoryItem item : instant) seen.add(item.url);
+        for (HistoryStorage.HistoryItem item : fromDb) {
+            if (merged.size() >= RESULT_LIMIT) break;
+            if (seen.add(item.url)) merged.add(item);
+        }
+        return merged;
+    }
+
+    private FrecencyTrie buildTrie() {
+        long now = System.currentTimeMillis();
+        List<FrecencyTrie.Entry> candidates = new ArrayList<>();
+        Set<String> bookmarkedUrls = new HashSet<>();
+        List<BookmarkItem> bookmarkLinks = new ArrayList<>();
+        try {
+            collectLinks(BookmarkStorage.loadBookmarks(appContext), bookmarkLinks);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        for (BookmarkItem link : bookmarkLinks) bookmarkedUrls.add(link.url);
+
+        Set<String> added = new HashSet<>();
+        // 访问次数多的与最近访问的各取一批作为候选，由 FrecencyTrie 按 frecency 排名后截取，
+        // 只按访问次数取会让最近才访问、次数还少的页面进不了前缀树
+        List<HistoryStorage.HistoryItem> history = new ArrayList<>(HistoryStorage.loadTopVisited(appContext, TRIE_CAPACITY));
+        history.addAll(HistoryStorage.loadRecentlyVisited(appContext, TRIE_CAPACITY));
+        for (HistoryStorage.HistoryItem item : history) {
+            if (!added.add(item.url)) continue;
+            boolean bookmarked = bookmarkedUrls.contains(item.url);
+            candidates.add(new FrecencyTrie.Entry(item.url, item.title, item.visitCount, item.timestamp, bookmarked,
+                    FrecencyTrie.frecency(item.visitCount, item.timestamp, now, bookmarked)));
+        }
+        // 从未访问过的书签也可以被地址栏补全
+        for (BookmarkItem link : bookmarkLinks) {
+            if (added.add(link.url)) {
+                candidates.add(new FrecencyTrie.Entry(link.url, link.title, 0, 0, true,
+                        FrecencyTrie.frecency(0, 0, now, true)));
+            }
+        }
+        return new FrecencyTrie(candidates, TRIE_CAPACITY);
+    }
+
+    private static void collectLinks(List<BookmarkItem> items, List<BookmarkItem> result) {
+        for (BookmarkItem item : items) {
+            if (item.type == BookmarkItem.Type.LINK && item.url != null) {
+                result.add(item);
+            } else if (item.children != null) {
+                collectLinks(item.children, result);
+            }
+        }
+    }
+
+    private static HistoryStorage.HistoryItem toHistoryItem(FrecencyTrie.Entry entry) {
+        return new HistoryStorage.HistoryItem(0, entry.title, entry.url, null, entry.lastVisit, entry.visitCount, null);
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * 令牌桶限速器
+ * 所有下载共享同一个桶，实现全局带宽上限。桶容量为一秒的配额，允许短时突发；
+ * 令牌不足时允许透支，由调用方按返回的等待时间自行休眠，后到的请求排在透支之后，保证整体速率不超过上限。
+ * 本类不依赖 Android API。
+ */
+package com.olsc.manorbrowser.utils;
+
+import java.util.function.LongSupplier;
+
+public class TokenBucket {
+    private final LongSupplier clock;
+    /** 每秒字节数，小于等于 0 表示不限速 */
+    private long rate;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(long bytesPerSecond) {
+        this(bytesPerSecond, System::nanoTime);
+    }
+
+    TokenBucket(long bytesPerSecond, LongSupplier nanoClock) {
+        this.clock = nanoClock;
+        this.lastRefill = nanoClock.getAsLong();
+        setRate(bytesPerSecond);
+    }
+
+    /**
+     * 修改限速，立即生效；桶内令牌重新装满
+     */
+    public synchronized void setRate(long bytesPerSecond) {
+        this.rate = Math.max(0, bytesPerSecond);
+        this.tokens = rate;
+        this.lastRefill = clock.getAsLong();
+    }
+
+    public synchronized long getRate() {
+        return rate;
+    }
+
+    /**
+     * 预约指定字节数的配额
+     *
+     * @return 调用方需要等待的纳秒数，0 表示可以立即继续
+     */
+    public synchronized long reserve(long bytes) {
+        if (rate <= 0) return 0;
+        long now = clock.getAsLong();
+        tokens = Math.min(rate, tokens + (now - lastRefill) * rate / 1e9);
+        lastRefill = now;
+        tokens -= bytes;
+        if (tokens >= 0) return 0;
+        return (long) (-tokens * 1e9 / rate);
+    }
+}
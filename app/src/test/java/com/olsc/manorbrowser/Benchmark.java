@@ -0,0 +1,9 @@
+/**
+ * 基准测试分类（JUnit Category）。
+ * 基准测试耗时长，测得的数字取决于机器负载，默认的单元测试不运行；
+ * 用 ./gradlew testDebugUnitTest -Pbenchmark 单独运行，结果经 BenchmarkReport 输出。
+ */
+package com.olsc.manorbrowser;
+
+public interface Benchmark {
+}
@@ -0,0 +1,32 @@
+/**
+ * 基准测试结果输出。
+ * 每条结果打印到标准输出（-Pbenchmark 运行时 Gradle 会显示），
+ * 并追加到 benchmark.reportDir 指定目录（build/reports/benchmarks）下以测试类命名的文本文件中，便于对比不同版本。
+ */
+package com.olsc.manorbrowser;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+public final class BenchmarkReport {
+    private BenchmarkReport() {
+    }
+
+    public static void record(Class<?> benchmark, String line) {
+        System.out.println(benchmark.getSimpleName() + ": " + line);
+        String dir = System.getProperty("benchmark.reportDir");
+        if (dir == null) return;
+        File file = new File(dir, benchmark.getSimpleName() + ".txt");
+        file.getParentFile().mkdirs();
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+            out.write(line);
+            out.write('\n');
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
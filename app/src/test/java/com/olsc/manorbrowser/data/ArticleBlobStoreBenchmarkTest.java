@@ -0,0 +1,48 @@
+/**
+ * 离线文章打开耗时基准测试。
+ * 统计在 JVM 上打开一篇约 5500 块的长文章（读取、解压、解析 JSON）的平均耗时，用于对比不同版本。
+ * 这只是存储与解析部分在开发机上的耗时，不包含设备上的渲染，不能代表设备上的首屏时间。
+ * 属于 Benchmark 分类，只在 -Pbenchmark 时运行；内容还原的正确性由 ArticleBlobStoreTest 检查。
+ */
+package com.olsc.manorbrowser.data;
+
+import com.olsc.manorbrowser.Benchmark;
+import com.olsc.manorbrowser.BenchmarkReport;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+@Category(Benchmark.class)
+public class ArticleBlobStoreBenchmarkTest {
+    @Test
+    public void longArticleOpenTime() throws Exception {
+        File dir = Files.createTempDirectory("blob-bench").toFile();
+        try {
+            ArticleBlobStore store = new ArticleBlobStore(dir);
+            ReaderArticle article = ArticleBlobStoreTest.longArticle(5000);
+            byte[] json = article.toJson().toString().getBytes(StandardCharsets.UTF_8);
+            String key = store.putCompressed(json);
+            // 预热，排除类加载与 JIT 的影响
+            for (int i = 0; i < 20; i++) ArticleBlobStoreTest.open(store, key);
+            int rounds = 20;
+            long start = System.nanoTime();
+            ReaderArticle opened = null;
+            for (int i = 0; i < rounds; i++) opened = ArticleBlobStoreTest.open(store, key);
+            double perOpenMs = (System.nanoTime() - start) / 1e6 / rounds;
+
+            BenchmarkReport.record(ArticleBlobStoreBenchmarkTest.class, String.format(Locale.US,
+                    "blocks=%d json=%dKB stored=%dKB open=%.1fms (JVM, read + gunzip + parse)",
+                    opened.blocks.size(), json.length / 1024, store.sizeOf(key) / 1024, perOpenMs));
+            assertEquals(article.blocks.size(), opened.blocks.size());
+        } finally {
+            ArticleBlobStoreTest.deleteRecursively(dir);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * 离线文章数据块存储测试。
+ * 检查内容寻址的去重、正文压缩存放与读取时的摘要校验、非法键的拒绝、未登记文件的清理，
+ * 以及长文章经压缩存放后完整还原。打开耗时见 ArticleBlobStoreBenchmarkTest。
+ */
+package com.olsc.manorbrowser.data;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ArticleBlobStoreTest {
+    private File dir;
+    private ArticleBlobStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("blob-store").toFile();
+        store = new ArticleBlobStore(dir);
+    }
+
+    @After
+    public void tearDown() {
+        deleteRecursively(dir);
+    }
+
+    @Test
+    public void identicalContentIsStoredOnce() throws Exception {
+        byte[] image = "fake image bytes".getBytes(StandardCharsets.UTF_8);
+        String first = store.put(image);
+        long modified = store.fileOf(first).lastModified();
+        String second = store.put(image.clone());
+        assertEquals(first, second);
+        assertEquals(modified, store.fileOf(second).lastModified());
+        assertEquals(1, countFiles(dir));
+        assertNotEquals(first, store.put("another image".getBytes(StandardCharsets.UTF_8)));
+        assertArrayEquals(image, store.get(first));
+    }
+
+    @Test
+    public void compressesArticleContent() throws Exception {
+        byte[] json = longArticle(2000).toJson().toString().getBytes(StandardCharsets.UTF_8);
+        String key = store.putCompressed(json);
+        assertTrue(key.endsWith(".gz"));
+        assertArrayEquals(json, store.get(key));
+        long size = store.sizeOf(key);
+        assertTrue("正文应被压缩：" + json.length / 1024 + "KB 压缩为 " + size / 1024 + "KB", size < json.length / 4);
+    }
+
+    @Test
+    public void rejectsCorruptedBlobsAndInvalidKeys() throws Exception {
+        String key = store.put("original".getBytes(StandardCharsets.UTF_8));
+        Files.write(store.fileOf(key).toPath(), "tampered".getBytes(StandardCharsets.UTF_8));
+        assertNull("内容与摘要不符时视为损坏", store.get(key));
+
+        assertNull(store.fileOf("../../shared_prefs/settings.xml"));
+        assertNull(store.fileOf(key.toUpperCase()));
+        assertNull(store.get(null));
+        assertNull(store.get(key.substring(1)));
+        assertEquals(0, store.sizeOf("missing"));
+    }
+
+    @Test
+    public void verifiesImageFilesHandedOutByPath() throws Exception {
+        byte[] image = "image".getBytes(StandardCharsets.UTF_8);
+        String key = store.put(image);
+        File file = store.fileOf(key);
+        assertTrue(ArticleBlobStore.isIntact(file.getName(), Files.readAllBytes(file.toPath())));
+        assertFalse(ArticleBlobStore.isIntact(file.getName(), "tampered".getBytes(StandardCharsets.UTF_8)));
+        assertFalse("不是数据块的文件无从校验", ArticleBlobStore.isIntact("photo.jpg", image));
+        assertFalse(ArticleBlobStore.isIntact(key, null));
+    }
+
+    @Test
+    public void retainOnlyRemovesUnrecordedFiles() throws Exception {
+        String kept = store.put("recorded".getBytes(StandardCharsets.UTF_8));
+        String stray = store.put("written before a crash".getBytes(StandardCharsets.UTF_8));
+        File temp = new File(store.fileOf(stray).getParentFile(), stray + ".tmp");
+        Files.write(temp.toPath(), new byte[]{1, 2, 3});
+
+        assertEquals(2, store.retainOnly(Collections.singleton(kept)));
+        assertArrayEquals("recorded".getBytes(StandardCharsets.UTF_8), store.get(kept));
+        assertNull(store.get(stray));
+        assertFalse(temp.exists());
+        assertEquals(1, countFiles(dir));
+    }
+
+    @Test
+    public void longArticleRoundTrips() throws Exception {
+        ReaderArticle article = longArticle(5000);
+        String key = store.putCompressed(article.toJson().toString().getBytes(StandardCharsets.UTF_8));
+        ReaderArticle opened = open(store, key);
+        assertEquals(article.url, opened.url);
+        assertEquals(article.title, opened.title);
+        assertEquals(article.blocks.size(), opened.blocks.size());
+        assertEquals(article.toPlainText(), opened.toPlainText());
+    }
+
+    /** 读取、解压并解析一篇保存的文章，与打开离线文章时的步骤相同 */
+    static ReaderArticle open(ArticleBlobStore store, String key) throws Exception {
+        return ReaderArticle.fromJson(new JSONObject(new String(store.get(key), StandardCharsets.UTF_8)));
+    }
+
+    static ReaderArticle longArticle(int paragraphs) {
+        List<ReaderArticle.Block> blocks = new ArrayList<>();
+        for (int i = 0; i < paragraphs; i++) {
+            if (i % 10 == 0) blocks.add(ReaderArticle.Block.heading(2, "Section " + i / 10));
+            if (i % 100 == 0) blocks.add(ReaderArticle.Block.image("blob:" + ArticleBlobStore.sha256(new byte[]{(byte) i}), "Figure " + i));
+            blocks.add(ReaderArticle.Block.paragraph("Paragraph " + i + " of the chapter, with enough words, commas, and clauses to look like "
+                    + "real prose; the reader mode has to keep every one of them, in order, without dropping any."));
+        }
+        return new ReaderArticle("https://site.example/long", "Long chapter", blocks);
+    }
+
+    private static int countFiles(File file) {
+        if (file.isFile()) return 1;
+        int count = 0;
+        File[] children = file.listFiles();
+        if (children != null) for (File child : children) count += countFiles(child);
+        return count;
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) for (File child : children) deleteRecursively(child);
+        file.delete();
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * AtomicFileStore 故障注入测试。
+ * 在随机字节偏移处中断写入（模拟进程被杀），验证目标文件始终是完整的旧版本或新版本，不会被截断。
+ */
+package com.olsc.manorbrowser.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AtomicFileStoreTest {
+    private File dir;
+
+    /** 模拟进程被杀：写到指定字节数后抛出异常，后续步骤都不会执行 */
+    private static class KilledException extends IOException {
+        KilledException() {
+            super("killed");
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("atomic-store").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        AtomicFileStore.hooks = null;
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void writeKilledAtRandomOffsetKeepsPreviousVersion() throws Exception {
+        File target = new File(dir, "tabs.json");
+        Random random = new Random(7);
+        byte[] current = payload(random, 4096);
+        AtomicFileStore.writeNow(target, current);
+
+        for (int round = 0; round < 200; round++) {
+            byte[] next = payload(random, 1 + random.nextInt(16 * 1024));
+            long killAt = random.nextInt(next.length);
+            AtomicFileStore.hooks = killAfter(killAt);
+            try {
+                AtomicFileStore.writeNow(target, next);
+                fail("write should have been killed at " + killAt);
+            } catch (KilledException expected) {
+                // 写入在 killAt 字节处中断
+            }
+            AtomicFileStore.hooks = null;
+
+            assertArrayEquals("round " + round + " killAt " + killAt, current, AtomicFileStore.read(target, data -> data));
+
+            // 偶尔让写入成功，确保新旧版本交替推进
+            if (random.nextBoolean()) {
+                AtomicFileStore.writeNow(target, next);
+                assertArrayEquals(next, AtomicFileStore.read(target, data -> data));
+                current = next;
+            }
+        }
+    }
+
+    @Test
+    public void killedBetweenBackupAndRenameFallsBackToBackup() throws Exception {
+        File target = new File(dir, "bookmarks.json");
+        byte[] good = "[{\"id\":1}]".getBytes(StandardCharsets.UTF_8);
+        AtomicFileStore.writeNow(target, good);
+
+        AtomicFileStore.hooks = new AtomicFileStore.Hooks() {
+            @Override
+            public OutputStream wrap(OutputStream out) {
+                return out;
+            }
+
+            @Override
+            public void afterBackup() throws IOException {
+                throw new KilledException();
+            }
+        };
+        try {
+            AtomicFileStore.writeNow(target, "[]".getBytes(StandardCharsets.UTF_8));
+            fail();
+        } catch (KilledException expected) {
+            // 旧文件已转为备份，新文件尚未就位
+        }
+        AtomicFileStore.hooks = null;
+
+        assertFalse(target.exists());
+        assertArrayEquals(good, AtomicFileStore.read(target, data -> data));
+    }
+
+    @Test
+    public void corruptTargetFallsBackToLastGoodBackup() throws Exception {
+        File target = new File(dir, "passwords.json");
+        AtomicFileStore.writeNow(target, "good".getBytes(StandardCharsets.UTF_8));
+        AtomicFileStore.writeNow(target, "bad!".getBytes(StandardCharsets.UTF_8));
+
+        String result = AtomicFileStore.read(target, data -> {
+            String s = new String(data, StandardCharsets.UTF_8);
+            if (!s.equals("good")) throw new IllegalStateException("corrupt");
+            return s;
+        });
+        assertEquals("good", result);
+    }
+
+    @Test
+    public void writeWithoutBackupLeavesNoOldContentOnDisk() throws Exception {
+        File target = new File(dir, "passwords.json");
+        // 旧版本写入留下的备份中仍有被删除的密码
+        AtomicFileStore.writeNow(target, "alice:secret".getBytes(StandardCharsets.UTF_8));
+        AtomicFileStore.writeNow(target, "alice:secret,bob:hunter2".getBytes(StandardCharsets.UTF_8));
+        assertTrue(AtomicFileStore.backupOf(target).exists());
+
+        AtomicFileStore.getInstance().write(target, () -> "bob:hunter2".getBytes(StandardCharsets.UTF_8), false);
+        AtomicFileStore.getInstance().flush();
+        assertFalse(AtomicFileStore.backupOf(target).exists());
+        assertEquals("bob:hunter2", new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8));
+
+        AtomicFileStore.writeNow(target, "[]".getBytes(StandardCharsets.UTF_8), false);
+        String[] names = dir.list();
+        assertArrayEquals("只剩目标文件，没有 .bak 或 .tmp", new String[]{"passwords.json"}, names);
+        assertEquals("[]", new String(AtomicFileStore.read(target, data -> data), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void burstOfAsyncWritesIsCoalesced() throws Exception {
+        File target = new File(dir, "coalesce.json");
+        AtomicFileStore store = AtomicFileStore.getInstance();
+        int[] serialized = new int[1];
+        // 先占住写线程，使后续请求排队
+        java.util.concurrent.CountDownLatch gate = new java.util.concurrent.CountDownLatch(1);
+        store.write(new File(dir, "gate.json"), () -> {
+            gate.await();
+            return new byte[0];
+        });
+        for (int i = 0; i < 50; i++) {
+            final int value = i;
+            store.write(target, () -> {
+                serialized[0]++;
+                return String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+            });
+        }
+        gate.countDown();
+        store.flush();
+
+        assertEquals(1, serialized[0]);
+        assertEquals("49", new String(AtomicFileStore.read(target, data -> data), StandardCharsets.UTF_8));
+    }
+
+    private static AtomicFileStore.Hooks killAfter(long limit) {
+        return new AtomicFileStore.Hooks() {
+            @Override
+            public OutputStream wrap(OutputStream out) {
+                return new FilterOutputStream(out) {
+                    long written;
+
+                    @Override
+                    public void write(int b) throws IOException {
+                        if (written >= limit) throw new KilledException();
+                        out.write(b);
+                        written++;
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        for (int i = 0; i < len; i++) write(b[off + i]);
+                    }
+                };
+            }
+
+            @Override
+            public void afterBackup() {
+            }
+        };
+    }
+
+    private static byte[] payload(Random random, int size) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * 书签日志持久化测试。
+ * 以 BookmarkStore 的组合方式（BookmarkTree + JsonJournal，写线程换成同步执行）检查：
+ * 修改经日志重放后还原、压缩为快照后的往返、重复 / 残缺 / 乱序记录的重放、
+ * 压缩后未截断日志时不重复应用、旧版数组快照的加载，以及 ID 冲突的新书签不会丢失。
+ */
+package com.olsc.manorbrowser.data;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BookmarkJournalTest {
+    private File dir;
+    private File snapshotFile;
+    private File journalFile;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("bookmark-journal").toFile();
+        snapshotFile = new File(dir, "bookmarks.json");
+        journalFile = new File(dir, "bookmarks.journal");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) for (File file : files) file.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void replaysMutationsAfterRestart() throws Exception {
+        BookmarkTree tree = new BookmarkTree();
+        JsonJournal journal = open(tree, 100);
+        BookmarkItem folder = new BookmarkItem("Folder");
+        BookmarkItem first = new BookmarkItem("First", "https://first.example/");
+        BookmarkItem second = new BookmarkItem("Second", "https://second.example/");
+        journal.append(tree.add(folder, -1));
+        journal.append(tree.add(first, folder.id));
+        journal.append(tree.add(second, -1));
+        journal.append(tree.update(second.id, "Second (renamed)", null));
+        journal.append(tree.move(second.id, folder.id));
+        journal.append(tree.remove(first.id));
+
+        BookmarkTree restored = reload();
+        assertEquals(tree.toJson().toString(), restored.toJson().toString());
+        assertEquals("Second (renamed)", restored.get(second.id).title);
+        assertEquals(folder.id, restored.get(second.id).parentId);
+        assertNull(restored.get(first.id));
+    }
+
+    @Test
+    public void compactionRoundTripsAndKeepsSequenceGoing() throws Exception {
+        BookmarkTree tree = new BookmarkTree();
+        JsonJournal journal = open(tree, 3);
+        BookmarkItem folder = new BookmarkItem("Folder");
+        journal.append(tree.add(folder, -1));
+        for (int i = 0; i < 4; i++) {
+            journal.append(tree.add(new BookmarkItem("Link " + i, "https://" + i + ".example/"), folder.id));
+        }
+
+        JSONObject snapshot = new JSONObject(read(snapshotFile));
+        assertEquals("第 3 条记录后压缩", 3, snapshot.getLong(JsonJournal.KEY_SEQ));
+        assertEquals(2, lines(journalFile).length);
+
+        BookmarkTree restored = new BookmarkTree();
+        JsonJournal reopened = open(restored, 100);
+        restored.load(reopened.readSnapshot());
+        reopened.replay(restored::apply);
+        assertEquals(tree.toJson().toString(), restored.toJson().toString());
+        assertEquals(4, restored.get(folder.id).children.size());
+
+        // 重启后新记录的序号接在已有序号之后，不会被下次重放当作重复记录跳过
+        reopened.append(restored.add(new BookmarkItem("After restart", "https://after.example/"), -1));
+        String[] lines = lines(journalFile);
+        assertEquals(6, new JSONObject(lines[lines.length - 1]).getLong(JsonJournal.KEY_SEQ));
+        assertEquals(2, reload().roots().size());
+    }
+
+    @Test
+    public void skipsDuplicateTornAndOutOfOrderRecords() throws Exception {
+        write(journalFile,
+                "{\"op\":\"add\",\"parent\":-1,\"item\":{\"id\":1,\"title\":\"Folder\",\"type\":\"FOLDER\",\"children\":[]},\"seq\":1}",
+                "{\"op\":\"move\",\"id\":2,\"parent\":1,\"seq\":3}",
+                "{\"op\":\"add\",\"parent\":-1,\"item\":{\"id\":2,\"title\":\"A\",\"type\":\"LINK\",\"url\":\"https://a.example/\"},\"seq\":2}",
+                "{\"op\":\"add\",\"parent\":-1,\"item\":{\"id\":2,\"title\":\"A\",\"type\":\"LINK\",\"url\":\"https://a.example/\"},\"seq\":2}",
+                "{\"op\":\"update\",\"id\":2,\"title\":\"A2\",\"seq\":4}",
+                "{\"op\":\"add\",\"parent\":-1,\"item\":{\"id\":3,\"tit");
+
+        BookmarkTree tree = reload();
+        assertEquals(1, tree.roots().size());
+        List<BookmarkItem> children = tree.get(1).children;
+        assertEquals("重复的记录只应用一次", 1, children.size());
+        assertEquals("乱序的移动在添加之后应用", 2, children.get(0).id);
+        assertEquals("A2", children.get(0).title);
+        assertNull("残缺的行被跳过", tree.get(3));
+    }
+
+    @Test
+    public void recordsAlreadyInSnapshotAreNotReappliedAfterCrash() throws Exception {
+        // 写完快照、截断日志之前被杀：日志中仍有快照已包含的记录
+        write(snapshotFile, "{\"seq\":2,\"items\":[{\"id\":1,\"title\":\"Folder\",\"type\":\"FOLDER\",\"children\":"
+                + "[{\"id\":2,\"title\":\"A\",\"type\":\"LINK\",\"url\":\"https://a.example/\"}]}]}");
+        write(journalFile,
+                "{\"op\":\"add\",\"parent\":-1,\"item\":{\"id\":1,\"title\":\"Folder\",\"type\":\"FOLDER\",\"children\":[]},\"seq\":1}",
+                "{\"op\":\"add\",\"parent\":1,\"item\":{\"id\":2,\"title\":\"A\",\"type\":\"LINK\",\"url\":\"https://a.example/\"},\"seq\":2}",
+                "{\"op\":\"add\",\"parent\":-1,\"item\":{\"id\":3,\"title\":\"B\",\"type\":\"LINK\",\"url\":\"https://b.example/\"},\"seq\":3}");
+
+        BookmarkTree tree = reload();
+        assertEquals(2, tree.roots().size());
+        assertEquals(1, tree.get(1).children.size());
+        assertEquals("B", tree.get(3).title);
+    }
+
+    @Test
+    public void loadsLegacyArraySnapshot() throws Exception {
+        write(snapshotFile, "[{\"id\":5,\"title\":\"Legacy\",\"type\":\"LINK\",\"url\":\"https://legacy.example/\"}]");
+        write(journalFile,
+                "{\"op\":\"add\",\"parent\":-1,\"item\":{\"id\":6,\"title\":\"New\",\"type\":\"LINK\",\"url\":\"https://new.example/\"},\"seq\":1}");
+
+        BookmarkTree tree = reload();
+        assertEquals("Legacy", tree.get(5).title);
+        assertEquals("New", tree.get(6).title);
+    }
+
+    @Test
+    public void newBookmarkWithCollidingIdIsKept() throws Exception {
+        BookmarkTree tree = new BookmarkTree();
+        JsonJournal journal = open(tree, 100);
+        BookmarkItem existing = new BookmarkItem("Existing", "https://existing.example/");
+        journal.append(tree.add(existing, -1));
+        BookmarkItem colliding = new BookmarkItem("Colliding", "https://colliding.example/");
+        colliding.id = existing.id;
+        journal.append(tree.add(colliding, -1));
+
+        assertNotEquals(existing.id, colliding.id);
+        BookmarkTree restored = reload();
+        assertEquals(2, restored.roots().size());
+        assertEquals("Existing", restored.get(existing.id).title);
+        assertEquals("Colliding", restored.get(colliding.id).title);
+        assertTrue("新分配的 ID 大于已有的 ID", new BookmarkItem("Next").id > colliding.id);
+    }
+
+    private JsonJournal open(BookmarkTree tree, int compactThreshold) {
+        return new JsonJournal(snapshotFile, journalFile, tree, Runnable::run, compactThreshold, tree::toJson);
+    }
+
+    /** 按 BookmarkStore 的加载顺序读取快照并重放日志 */
+    private BookmarkTree reload() throws Exception {
+        BookmarkTree tree = new BookmarkTree();
+        JsonJournal journal = open(tree, 100);
+        JSONArray items = journal.readSnapshot();
+        if (items != null) tree.load(items);
+        journal.replay(tree::apply);
+        return tree;
+    }
+
+    private static void write(File file, String... lines) throws IOException {
+        Files.write(file.toPath(), (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static String[] lines(File file) throws IOException {
+        String text = read(file).trim();
+        return text.isEmpty() ? new String[0] : text.split("\n");
+    }
+}
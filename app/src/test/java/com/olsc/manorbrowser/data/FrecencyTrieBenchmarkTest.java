@@ -0,0 +1,90 @@
+/**
+ * 地址栏前缀树单键延迟基准测试。
+ * 分别以 1k / 10k / 100k 条模拟历史记录建树，逐字符模拟输入并统计每次按键的查询耗时。
+ * 属于 Benchmark 分类，只在 -Pbenchmark 时运行。
+ */
+package com.olsc.manorbrowser.data;
+
+import com.olsc.manorbrowser.Benchmark;
+import com.olsc.manorbrowser.BenchmarkReport;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@Category(Benchmark.class)
+public class FrecencyTrieBenchmarkTest {
+    private static final String[] HOSTS = {
+            "github.com", "google.com", "wikipedia.org", "bilibili.com", "zhihu.com", "stackoverflow.com",
+            "youtube.com", "baidu.com", "reddit.com", "news.ycombinator.com", "developer.android.com", "mozilla.org"
+    };
+    private static final String[] WORDS = {
+            "android", "browser", "gecko", "release", "notes", "issue", "kotlin", "java", "performance",
+            "memory", "history", "search", "download", "manor", "video", "music", "news", "weather", "map", "docs"
+    };
+    private static final String[] TYPED = {
+            "https://github.com/mozilla", "wiki", "developer.android", "perf", "stackoverflow.com/questions", "zh"
+    };
+
+    @Test
+    public void prefixLookupLatency() {
+        for (int size : new int[]{1_000, 10_000, 100_000}) {
+            List<FrecencyTrie.Entry> history = generateHistory(size, 42);
+
+            long buildStart = System.nanoTime();
+            FrecencyTrie trie = new FrecencyTrie(history, 2000);
+            long buildNanos = System.nanoTime() - buildStart;
+
+            // 预热，排除 JIT 编译对测量的影响
+            for (int i = 0; i < 2000; i++) typeAll(trie, null);
+
+            List<Long> samples = new ArrayList<>();
+            for (int round = 0; round < 50; round++) typeAll(trie, samples);
+            long[] sorted = samples.stream().mapToLong(Long::longValue).sorted().toArray();
+            long p50 = sorted[sorted.length / 2];
+            long p99 = sorted[(int) (sorted.length * 0.99)];
+
+            BenchmarkReport.record(FrecencyTrieBenchmarkTest.class, String.format(Locale.US,
+                    "history=%d trie=%d nodes=%d build=%.1fms keystrokes=%d p50=%.2fus p99=%.2fus max=%.2fus",
+                    size, trie.size(), trie.getNodeCount(), buildNanos / 1e6, sorted.length,
+                    p50 / 1e3, p99 / 1e3, sorted[sorted.length - 1] / 1e3));
+            assertEquals(Math.min(size, 2000), trie.size());
+        }
+    }
+
+    private static void typeAll(FrecencyTrie trie, List<Long> samples) {
+        for (String text : TYPED) {
+            for (int i = 1; i <= text.length(); i++) {
+                String prefix = text.substring(0, i);
+                long start = System.nanoTime();
+                List<FrecencyTrie.Entry> result = trie.search(prefix, 20);
+                long elapsed = System.nanoTime() - start;
+                if (samples != null) samples.add(elapsed);
+                else if (result.size() > 20) throw new AssertionError();
+            }
+        }
+    }
+
+    private static List<FrecencyTrie.Entry> generateHistory(int size, long seed) {
+        Random random = new Random(seed);
+        long now = 1_700_000_000_000L;
+        List<FrecencyTrie.Entry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String host = HOSTS[random.nextInt(HOSTS.length)];
+            String path = WORDS[random.nextInt(WORDS.length)] + "/" + Integer.toHexString(random.nextInt());
+            String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            // 访问次数近似长尾分布
+            int visits = 1 + (int) Math.floor(Math.pow(random.nextDouble(), 4) * 200);
+            long lastVisit = now - (long) (random.nextDouble() * 90L * 86_400_000L);
+            entries.add(new FrecencyTrie.Entry("https://" + host + "/" + path, title, visits, lastVisit, false,
+                    FrecencyTrie.frecency(visits, lastVisit, now, false)));
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * 地址栏前缀树测试：网址去协议与 www. 后的前缀匹配、标题单词匹配与按 frecency 排序。
+ * 按键延迟的测量见 FrecencyTrieBenchmarkTest。
+ */
+package com.olsc.manorbrowser.data;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrecencyTrieTest {
+    @Test
+    public void prefixMatchesUrlWithoutSchemeAndTitleWords() {
+        long now = 1_700_000_000_000L;
+        List<FrecencyTrie.Entry> entries = Arrays.asList(
+                new FrecencyTrie.Entry("https://www.github.com/ZUXTUO", "ManorBrowser repo", 10, now, false,
+                        FrecencyTrie.frecency(10, now, now, false)),
+                new FrecencyTrie.Entry("https://gitlab.com/", "GitLab", 1, now, false,
+                        FrecencyTrie.frecency(1, now, now, false)));
+        FrecencyTrie trie = new FrecencyTrie(entries, 100);
+
+        List<FrecencyTrie.Entry> git = trie.search("git", 10);
+        assertEquals(2, git.size());
+        assertEquals("https://www.github.com/ZUXTUO", git.get(0).url);
+        assertEquals(1, trie.search("https://www.githu", 10).size());
+        assertEquals(1, trie.search("manor", 10).size());
+        assertTrue(trie.search("xyz", 10).isEmpty());
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * 历史建议查询方式的选择测试。
+ * 全文索引只能做词首匹配，中文子串与索引找不到的网址片段需要退回（限定范围的）LIKE 子串匹配；
+ * 这里检查 MATCH 表达式的构造与退回条件（JVM 测试中没有 SQLite）。
+ */
+package com.olsc.manorbrowser.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HistoryStorageTest {
+    @Test
+    public void buildsPrefixQueryForLatinWords() {
+        assertEquals("\"git\"* \"hub\"*", HistoryStorage.buildMatchQuery("Git hub"));
+        assertEquals("\"example\"* \"com\"*", HistoryStorage.buildMatchQuery("example.com"));
+        assertNull(HistoryStorage.buildMatchQuery("  ..  "));
+        assertNull(HistoryStorage.buildMatchQuery(null));
+    }
+
+    @Test
+    public void chineseSubstringUsesLikeSearch() {
+        // unicode61 把 "百度一下你就知道" 整段作为一个词，"知道" 只能靠子串匹配找到
+        assertTrue(HistoryStorage.containsCjk("知道"));
+        assertNull(HistoryStorage.buildMatchQuery("知道"));
+        assertNull(HistoryStorage.buildMatchQuery("baidu 知道"));
+        assertTrue(HistoryStorage.needsSubstringFallback("知道", 0));
+        assertTrue("中文查询不经过全文索引", HistoryStorage.needsSubstringFallback("知道", 5));
+        assertTrue(HistoryStorage.containsCjk("カタカナ"));
+        assertTrue(HistoryStorage.containsCjk("한국어"));
+        assertFalse(HistoryStorage.containsCjk("github.com"));
+    }
+
+    @Test
+    public void midWordUrlMatchFallsBackOnlyWhenIndexFindsNothing() {
+        // "hub" 不是 "github" 的词首，全文索引找不到时才用 LIKE 查找
+        assertTrue(HistoryStorage.needsSubstringFallback("hub", 0));
+        assertFalse("索引有结果时不再做子串扫描", HistoryStorage.needsSubstringFallback("hub", 1));
+        assertFalse(HistoryStorage.needsSubstringFallback("hub", 20));
+    }
+}
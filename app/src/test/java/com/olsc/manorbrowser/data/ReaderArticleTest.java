@@ -0,0 +1,39 @@
+/**
+ * 阅读模式文章的 JSON 往返转换测试（交接缓存与离线保存都依赖该格式）。
+ */
+package com.olsc.manorbrowser.data;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ReaderArticleTest {
+
+    @Test
+    public void jsonRoundTripKeepsAllBlocks() throws Exception {
+        ReaderArticle article = new ReaderArticle("https://example.com/a", "标题", Arrays.asList(
+                ReaderArticle.Block.heading(2, "小节"),
+                ReaderArticle.Block.paragraph("第一段\n换行"),
+                ReaderArticle.Block.image("https://example.com/a.png", ""),
+                ReaderArticle.Block.list(true, Arrays.asList("一", "二")),
+                new ReaderArticle.Block(ReaderArticle.BLOCK_CODE, "  code();", 0, null, null)));
+
+        ReaderArticle restored = ReaderArticle.fromJson(new JSONObject(article.toJson().toString()));
+        assertEquals(article.url, restored.url);
+        assertEquals(article.title, restored.title);
+        assertEquals(article.blocks.size(), restored.blocks.size());
+        for (int i = 0; i < article.blocks.size(); i++) {
+            ReaderArticle.Block expected = article.blocks.get(i);
+            ReaderArticle.Block actual = restored.blocks.get(i);
+            assertEquals(expected.type, actual.type);
+            assertEquals(expected.text, actual.text);
+            assertEquals(expected.level, actual.level);
+            assertEquals(expected.src, actual.src);
+            assertEquals(expected.items, actual.items);
+        }
+        assertEquals(article.toPlainText(), restored.toPlainText());
+    }
+}
@@ -0,0 +1,451 @@
+package com.olsc.manorbrowser.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * 用本地替身服务端验证命令通道的三种传输方式、断线重连与端到端命令时延
+ */
+public class AiCommandChannelTest {
+    private StubServer server;
+    private AiCommandChannel channel;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() throws Exception {
+        if (channel != null) channel.stop();
+        if (server != null) server.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void webSocketPushesCommandsAndCarriesResults() throws Exception {
+        server = new StubServer(true, true);
+        channel = startChannel();
+        awaitTransport(AiCommandChannel.TRANSPORT_WEBSOCKET);
+
+        long avg = measureAverageLatencyMillis(20);
+        assertTrue("websocket command round trip avg " + avg + " ms", avg < 200);
+        assertEquals(0, server.httpResults);
+
+        // 应用层心跳的 pong 给出往返时延
+        long deadline = System.currentTimeMillis() + 5000;
+        while (channel.getRttMillis() < 0 && System.currentTimeMillis() < deadline) Thread.sleep(20);
+        assertTrue(channel.getRttMillis() >= 0);
+        JSONObject stats = channel.getStats();
+        assertEquals("websocket", stats.getString("transport"));
+        assertTrue(stats.getLong("last_round_trip_ms") >= 0);
+    }
+
+    @Test
+    public void fallsBackToLongPollWhenWebSocketIsRejected() throws Exception {
+        server = new StubServer(false, true);
+        channel = startChannel();
+        awaitTransport(AiCommandChannel.TRANSPORT_LONG_POLL);
+
+        long avg = measureAverageLatencyMillis(10);
+        assertTrue("long poll command round trip avg " + avg + " ms", avg < 500);
+        assertEquals(10, server.httpResults);
+    }
+
+    @Test
+    public void legacyServerIsPolledAtFixedInterval() throws Exception {
+        server = new StubServer(false, false);
+        channel = startChannel();
+        awaitTransport(AiCommandChannel.TRANSPORT_POLL);
+
+        long avg = measureAverageLatencyMillis(3);
+        assertTrue("legacy poll command round trip avg " + avg + " ms", avg < AiCommandChannel.POLL_INTERVAL_MS + 1000);
+        assertTrue(channel.getRttMillis() >= 0);
+    }
+
+    @Test
+    public void reconnectsAfterWebSocketDrops() throws Exception {
+        server = new StubServer(true, true);
+        channel = startChannel();
+        awaitTransport(AiCommandChannel.TRANSPORT_WEBSOCKET);
+
+        server.dropWebSocket();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.webSocketConnections < 2 && System.currentTimeMillis() < deadline) Thread.sleep(20);
+        assertEquals(2, server.webSocketConnections);
+        awaitTransport(AiCommandChannel.TRANSPORT_WEBSOCKET);
+        assertTrue(measureAverageLatencyMillis(3) < 200);
+    }
+
+    @Test
+    public void backoffGrowsWithJitterUpToCap() {
+        Random random = new Random(42);
+        long previousCap = 0;
+        for (int attempt = 0; attempt < 20; attempt++) {
+            long cap = Math.min(AiCommandChannel.BACKOFF_MAX_MS, AiCommandChannel.BACKOFF_BASE_MS << attempt);
+            for (int i = 0; i < 100; i++) {
+                long delay = AiCommandChannel.backoffDelay(attempt, random);
+                assertTrue(delay >= cap / 2 && delay < cap);
+            }
+            assertTrue(cap >= previousCap);
+            previousCap = cap;
+        }
+        assertEquals(AiCommandChannel.BACKOFF_MAX_MS, previousCap);
+    }
+
+    @Test
+    public void largeResultsStreamCompressedAndRepeatAsHashReference() throws Exception {
+        server = new StubServer(true, true, "gzip, result-ref");
+        StringBuilder html = new StringBuilder("<html><body>");
+        for (int i = 0; i < 20000; i++) html.append("<div class=\"row\">行 ").append(i).append(" \"quoted\"\n</div>");
+        String page = html.append("</body></html>").toString();
+        channel = startChannel(command -> CommandResult.ofData(page));
+        awaitTransport(AiCommandChannel.TRANSPORT_WEBSOCKET);
+
+        for (int i = 0; i < 2; i++) {
+            server.sendCommand(new JSONObject().put("id", "src-" + i).put("action", "get_source"));
+            JSONObject message = server.results.poll(10, TimeUnit.SECONDS);
+            assertNotNull(message);
+            assertEquals("src-" + i, message.getString("id"));
+            JSONObject result = new JSONObject(message.getString("result"));
+            assertEquals(page, result.getString("data"));
+        }
+        // 第一次：分块 + gzip 完整上传；第二次：只发送哈希引用
+        assertTrue(server.sawChunkedGzip);
+        assertTrue("compressed " + server.largestUploadBytes + " of " + page.length(),
+                server.largestUploadBytes < page.length() / 5);
+        assertEquals(1, server.referenceHits);
+        assertEquals(1, channel.getStats().getLong("result_ref_hits"));
+
+        // 服务端缓存丢失时退回完整上传
+        server.resultCache.clear();
+        server.sendCommand(new JSONObject().put("id", "src-2").put("action", "get_source"));
+        JSONObject message = server.results.poll(10, TimeUnit.SECONDS);
+        assertNotNull(message);
+        assertEquals(page, new JSONObject(message.getString("result")).getString("data"));
+    }
+
+    private AiCommandChannel startChannel() throws Exception {
+        return startChannel(command -> CommandResult.ofJson("{\"status\":\"ok\",\"data\":\"pong\"}"));
+    }
+
+    private AiCommandChannel startChannel(java.util.function.Function<JSONObject, CommandResult> handler) throws Exception {
+        final AiCommandChannel[] holder = new AiCommandChannel[1];
+        AiCommandChannel c = new AiCommandChannel(new OkHttpClient(), server.baseUrl(),
+                new JSONObject().put("client", "test"),
+                command -> executor.execute(() -> holder[0].sendResult(command.optString("id"),
+                        command.optString("action"), handler.apply(command))));
+        holder[0] = c;
+        c.start();
+        return c;
+    }
+
+    private void awaitTransport(String transport) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!(channel.isConnected() && transport.equals(channel.getTransport()))
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(transport, channel.getTransport());
+        assertTrue(channel.isConnected());
+    }
+
+    /** 服务端下发命令到收到结果的平均耗时 */
+    private long measureAverageLatencyMillis(int count) throws Exception {
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            String id = "cmd-" + i;
+            long start = System.nanoTime();
+            server.sendCommand(new JSONObject().put("id", id).put("action", "ping").put("params", new JSONObject()));
+            JSONObject result = server.results.poll(5, TimeUnit.SECONDS);
+            assertNotNull("no result for " + id, result);
+            assertEquals(id, result.getString("id"));
+            total += System.nanoTime() - start;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(total / count);
+    }
+
+    /**
+     * 最小化的替身服务端：在同一端口上处理 HTTP 轮询/结果上报与 WebSocket 升级
+     */
+    private static final class StubServer {
+        private static final String WS_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+        final boolean webSocket;
+        final boolean longPoll;
+        final String features;
+        final BlockingQueue<JSONObject> results = new LinkedBlockingQueue<>();
+        final Map<String, String> resultCache = new java.util.concurrent.ConcurrentHashMap<>();
+        volatile boolean sawChunkedGzip;
+        volatile int largestUploadBytes;
+        volatile int referenceHits;
+        private final BlockingQueue<JSONObject> queued = new LinkedBlockingQueue<>();
+        private final ServerSocket serverSocket;
+        private final ExecutorService pool = Executors.newCachedThreadPool();
+        private volatile Socket wsSocket;
+        volatile int webSocketConnections;
+        volatile int httpResults;
+
+        StubServer(boolean webSocket, boolean longPoll) throws IOException {
+            this(webSocket, longPoll, null);
+        }
+
+        StubServer(boolean webSocket, boolean longPoll, String features) throws IOException {
+            this.webSocket = webSocket;
+            this.longPoll = longPoll;
+            this.features = features;
+            serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            pool.execute(() -> {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        Socket socket = serverSocket.accept();
+                        pool.execute(() -> handle(socket));
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+        }
+
+        String baseUrl() {
+            return "http://127.0.0.1:" + serverSocket.getLocalPort();
+        }
+
+        /** WebSocket 已连接时直接推送，否则排队等待下一次轮询 */
+        void sendCommand(JSONObject command) throws Exception {
+            Socket socket = wsSocket;
+            if (socket != null) {
+                writeFrame(socket, 0x1, new JSONObject().put("type", "command").put("command", command).toString());
+            } else {
+                queued.put(command);
+            }
+        }
+
+        /** 模拟网络中断：不发关闭帧直接断开 */
+        void dropWebSocket() throws IOException {
+            Socket socket = wsSocket;
+            wsSocket = null;
+            if (socket != null) socket.close();
+        }
+
+        void close() throws IOException {
+            serverSocket.close();
+            dropWebSocket();
+            pool.shutdownNow();
+        }
+
+        private void handle(Socket socket) {
+            try (Socket s = socket) {
+                InputStream in = s.getInputStream();
+                while (true) {
+                    String requestLine = readLine(in);
+                    if (requestLine == null || requestLine.isEmpty()) return;
+                    Map<String, String> headers = new HashMap<>();
+                    String line;
+                    while ((line = readLine(in)) != null && !line.isEmpty()) {
+                        int colon = line.indexOf(':');
+                        headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+                    }
+                    String path = requestLine.split(" ")[1];
+                    if (path.equals(AiCommandChannel.PATH_WEBSOCKET)) {
+                        if (!webSocket || !"websocket".equalsIgnoreCase(headers.get("upgrade"))) {
+                            respond(s, 404, "{\"status\":\"error\"}", false);
+                            continue;
+                        }
+                        serveWebSocket(s, in, headers.get("sec-websocket-key"));
+                        return;
+                    }
+                    byte[] body = readBody(in, headers);
+                    if (path.equals(AiCommandChannel.PATH_POLL)) {
+                        JSONObject command;
+                        if (longPoll) {
+                            long wait = Long.parseLong(headers.getOrDefault("x-poll-wait", "0"));
+                            command = queued.poll(wait, TimeUnit.MILLISECONDS);
+                        } else {
+                            command = queued.poll();
+                        }
+                        JSONObject resp = new JSONObject().put("status", "ok");
+                        if (command != null) resp.put("command", command);
+                        respond(s, 200, resp.toString(), longPoll);
+                    } else if (path.equals(AiCommandChannel.PATH_RESULT)) {
+                        JSONObject message = new JSONObject(new String(body, StandardCharsets.UTF_8));
+                        String ref = message.optString("result_ref", null);
+                        if (ref != null) {
+                            String cached = resultCache.get(ref);
+                            if (cached == null) {
+                                respond(s, 200, "{\"status\":\"miss\"}", false);
+                                continue;
+                            }
+                            referenceHits++;
+                            message.remove("result_ref");
+                            message.put("result", cached);
+                        }
+                        String hash = headers.get(AiCommandChannel.HEADER_RESULT_SHA256.toLowerCase(Locale.ROOT));
+                        if (hash != null) {
+                            assertEquals(hash, CommandResult.ofJson(message.getString("result")).sha256());
+                            resultCache.put(hash, message.getString("result"));
+                        }
+                        httpResults++;
+                        results.put(message);
+                        respond(s, 200, "{\"status\":\"ok\"}", false);
+                    } else {
+                        respond(s, 404, "{}", false);
+                    }
+                }
+            } catch (Exception ignored) {
+                // 连接被关闭
+            }
+        }
+
+        private void serveWebSocket(Socket socket, InputStream in, String key) throws Exception {
+            String accept = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-1")
+                    .digest((key + WS_GUID).getBytes(StandardCharsets.US_ASCII)));
+            // 先登记再发握手响应：客户端一收到 101 就可能被判为已连接，此时推送的命令必须走 WebSocket 而不是轮询队列；
+            // 握手写完之前，writeFrame 会在同一把锁上等待，不会插到响应前面
+            synchronized (socket) {
+                wsSocket = socket;
+                OutputStream out = socket.getOutputStream();
+                out.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                        + "Sec-WebSocket-Accept: " + accept + "\r\n"
+                        + (features != null ? AiCommandChannel.HEADER_FEATURES + ": " + features + "\r\n" : "")
+                        + "\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+            }
+            webSocketConnections++;
+            while (true) {
+                int b0 = in.read();
+                if (b0 < 0) return;
+                int opcode = b0 & 0x0f;
+                int b1 = in.read();
+                long length = b1 & 0x7f;
+                if (length == 126) {
+                    length = (in.read() << 8) | in.read();
+                } else if (length == 127) {
+                    length = 0;
+                    for (int i = 0; i < 8; i++) length = (length << 8) | in.read();
+                }
+                byte[] mask = (b1 & 0x80) != 0 ? in.readNBytes(4) : null;
+                byte[] payload = in.readNBytes((int) length);
+                if (mask != null) {
+                    for (int i = 0; i < payload.length; i++) payload[i] ^= mask[i % 4];
+                }
+                if (opcode == 0x8) {
+                    writeFrame(socket, 0x8, "");
+                    return;
+                } else if (opcode == 0x9) {
+                    writeFrame(socket, 0xA, new String(payload, StandardCharsets.UTF_8));
+                } else if (opcode == 0x1) {
+                    JSONObject message = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+                    String type = message.optString("type");
+                    if ("result".equals(type)) {
+                        results.put(message);
+                    } else if ("ping".equals(type)) {
+                        writeFrame(socket, 0x1, new JSONObject().put("type", "pong").put("t", message.get("t")).toString());
+                    }
+                }
+            }
+        }
+
+        private static void writeFrame(Socket socket, int opcode, String text) throws IOException {
+            byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream frame = new ByteArrayOutputStream();
+            frame.write(0x80 | opcode);
+            if (payload.length < 126) {
+                frame.write(payload.length);
+            } else if (payload.length < 65536) {
+                frame.write(126);
+                frame.write(payload.length >> 8);
+                frame.write(payload.length & 0xff);
+            } else {
+                frame.write(127);
+                for (int i = 7; i >= 0; i--) frame.write((int) ((long) payload.length >> (8 * i)) & 0xff);
+            }
+            frame.write(payload);
+            synchronized (socket) {
+                OutputStream out = socket.getOutputStream();
+                out.write(frame.toByteArray());
+                out.flush();
+            }
+        }
+
+        /** 读取请求体，支持分块传输与 gzip 内容编码 */
+        private byte[] readBody(InputStream in, Map<String, String> headers) throws IOException {
+            byte[] raw;
+            boolean chunked = "chunked".equalsIgnoreCase(headers.get("transfer-encoding"));
+            if (chunked) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                while (true) {
+                    int size = Integer.parseInt(readLine(in).trim(), 16);
+                    if (size == 0) {
+                        readLine(in);
+                        break;
+                    }
+                    buffer.write(in.readNBytes(size));
+                    readLine(in);
+                }
+                raw = buffer.toByteArray();
+            } else {
+                raw = in.readNBytes(Integer.parseInt(headers.getOrDefault("content-length", "0")));
+            }
+            largestUploadBytes = Math.max(largestUploadBytes, raw.length);
+            if ("gzip".equalsIgnoreCase(headers.get("content-encoding"))) {
+                if (chunked) sawChunkedGzip = true;
+                try (java.util.zip.GZIPInputStream gzip = new java.util.zip.GZIPInputStream(new java.io.ByteArrayInputStream(raw))) {
+                    return gzip.readAllBytes();
+                }
+            }
+            return raw;
+        }
+
+        private void respond(Socket socket, int code, String body, boolean longPoll) throws IOException {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            String head = "HTTP/1.1 " + code + (code == 200 ? " OK" : " Not Found") + "\r\n"
+                    + "Content-Type: application/json\r\n"
+                    + "Content-Length: " + bytes.length + "\r\n"
+                    + (longPoll ? AiCommandChannel.HEADER_LONG_POLL + ": 1\r\n" : "")
+                    + (features != null ? AiCommandChannel.HEADER_FEATURES + ": " + features + "\r\n" : "")
+                    + "\r\n";
+            OutputStream out = socket.getOutputStream();
+            out.write(head.getBytes(StandardCharsets.US_ASCII));
+            out.write(bytes);
+            out.flush();
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            int c;
+            while ((c = in.read()) >= 0) {
+                if (c == '\n') {
+                    int len = sb.length();
+                    if (len > 0 && sb.charAt(len - 1) == '\r') sb.setLength(len - 1);
+                    return sb.toString();
+                }
+                sb.append((char) c);
+            }
+            return sb.length() == 0 ? null : sb.toString();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * CommandResult 测试：流式转义的输出与 org.json 解析结果一致，嵌套转义可还原，
+ * 保存在文件中的结果与内存中的结果解析后相同。
+ */
+package com.olsc.manorbrowser.utils;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class CommandResultTest {
+    private static final String TRICKY = "<a href=\"x\">\\路径\n\t\r\b\f\u0001\u2028\u2029 😀 end";
+
+    @Test
+    public void dataResultIsValidJson() {
+        CommandResult result = CommandResult.ofData(TRICKY);
+        JSONObject parsed = new JSONObject(result.toJson());
+        assertEquals("ok", parsed.getString("status"));
+        assertEquals(TRICKY, parsed.getString("data"));
+    }
+
+    @Test
+    public void escapingWriterNestsResultAsString() throws Exception {
+        CommandResult result = CommandResult.ofData(TRICKY);
+        StringWriter out = new StringWriter();
+        out.write("{\"result\":\"");
+        result.writeJson(new CommandResult.EscapingWriter(out));
+        out.write("\"}");
+        String nested = new JSONObject(out.toString()).getString("result");
+        assertEquals(result.toJson(), nested);
+        assertEquals(TRICKY, new JSONObject(nested).getString("data"));
+    }
+
+    @Test
+    public void hashMatchesJsonTextRegardlessOfForm() {
+        CommandResult data = CommandResult.ofData(TRICKY);
+        CommandResult json = CommandResult.ofJson(data.toJson());
+        assertEquals(64, data.sha256().length());
+        assertEquals(data.sha256(), json.sha256());
+        assertNotEquals(data.sha256(), CommandResult.ofData(TRICKY + "!").sha256());
+    }
+
+    @Test
+    public void fileResultMatchesInMemoryResult() throws Exception {
+        // 执行桥回传的 JSON 字符串字面量原样作为 data；其余 JSON 值作为原始文本转义
+        File quoted = Files.createTempFile("result", ".json").toFile();
+        File raw = Files.createTempFile("result", ".json").toFile();
+        try {
+            Files.write(quoted.toPath(), JSONObject.quote(TRICKY).getBytes(StandardCharsets.UTF_8));
+            CommandResult fromJson = CommandResult.ofDataFile(quoted, true);
+            assertEquals(TRICKY, new JSONObject(fromJson.toJson()).getString("data"));
+            assertTrue(fromJson.length() >= TRICKY.length());
+
+            String array = "[{\"text\":\"a\\\"b\"}]";
+            Files.write(raw.toPath(), array.getBytes(StandardCharsets.UTF_8));
+            CommandResult fromText = CommandResult.ofDataFile(raw, false);
+            assertEquals(CommandResult.ofData(array).toJson(), fromText.toJson());
+            assertEquals(CommandResult.ofData(array).sha256(), fromText.sha256());
+
+            StringWriter out = new StringWriter();
+            out.write("{\"result\":\"");
+            fromJson.writeJson(new CommandResult.EscapingWriter(out));
+            out.write("\"}");
+            assertEquals(TRICKY, new JSONObject(new JSONObject(out.toString()).getString("result")).getString("data"));
+
+            fromJson.release();
+            assertFalse(quoted.exists());
+        } finally {
+            quoted.delete();
+            raw.delete();
+        }
+    }
+}
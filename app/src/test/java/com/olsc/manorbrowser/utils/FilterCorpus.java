@@ -0,0 +1,70 @@
+/**
+ * 与 EasyList 规模相当的模拟规则与请求 URL。
+ * 约 4 万条域名规则 + 6 千条路径模式 + 5 百条例外；URL 约一成请求规则中的域名，其余请求常见站点。
+ * 由 FilterEngineTest 与 FilterEngineBenchmarkTest 共用，相同的种子生成相同的数据。
+ */
+package com.olsc.manorbrowser.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+final class FilterCorpus {
+    private static final String[] WORDS = {
+            "ad", "ads", "banner", "track", "pixel", "promo", "sponsor", "popup", "metrics", "beacon", "stat",
+            "click", "media", "cdn", "static", "img", "video", "widget", "frame", "tag", "sync", "collect", "bid"
+    };
+    private static final String[] TLDS = {"com", "net", "org", "io", "cn", "ru", "co.uk", "de"};
+    private static final String[] SITES = {
+            "github.com", "www.google.com", "en.wikipedia.org", "www.bilibili.com", "www.zhihu.com", "stackoverflow.com",
+            "www.youtube.com", "news.ycombinator.com", "developer.android.com", "www.mozilla.org", "cdn.jsdelivr.net"
+    };
+
+    private final Random random;
+    private final List<String> hosts = new ArrayList<>();
+    final String rules;
+
+    FilterCorpus(long seed) {
+        random = new Random(seed);
+        StringBuilder rules = new StringBuilder("[Adblock Plus 2.0]\n");
+        for (int i = 0; i < 40_000; i++) {
+            String host = randomHost();
+            hosts.add(host);
+            rules.append("||").append(host).append(i % 10 == 0 ? "^$third-party" : "^").append('\n');
+        }
+        for (int i = 0; i < 6_000; i++) {
+            rules.append('/').append(word()).append(i).append(random.nextBoolean() ? "_" : "/")
+                    .append(word()).append(random.nextInt(4) == 0 ? "*." + word() : "")
+                    .append(i % 7 == 0 ? "$script" : "").append('\n');
+        }
+        for (int i = 0; i < 500; i++) {
+            rules.append("@@||").append(hosts.get(random.nextInt(hosts.size()))).append("/allowed/\n");
+        }
+        this.rules = rules.toString();
+    }
+
+    String[] urls(int count) {
+        String[] urls = new String[count];
+        for (int i = 0; i < count; i++) {
+            String host = random.nextInt(10) == 0 ? "cdn." + hosts.get(random.nextInt(hosts.size())) : SITES[random.nextInt(SITES.length)];
+            urls[i] = "https://" + host + "/" + word() + "/" + word() + random.nextInt(10_000)
+                    + "/" + word() + ".js?v=" + random.nextInt(1000) + "&ref=" + SITES[random.nextInt(SITES.length)];
+        }
+        return urls;
+    }
+
+    private String word() {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private String randomHost() {
+        StringBuilder host = new StringBuilder();
+        int labels = 1 + random.nextInt(2);
+        for (int l = 0; l < labels; l++) {
+            int length = 4 + random.nextInt(8);
+            for (int c = 0; c < length; c++) host.append((char) ('a' + random.nextInt(26)));
+            host.append('.');
+        }
+        return host.append(TLDS[random.nextInt(TLDS.length)]).toString();
+    }
+}
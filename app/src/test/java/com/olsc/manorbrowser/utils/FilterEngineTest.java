@@ -0,0 +1,224 @@
+/**
+ * 内容过滤引擎测试：规则语法、例外与选项、二进制缓存的内存映射读取、规则导出、内置规则文件的编译，
+ * 以及 EasyList 规模的规则在大量请求上的拦截结果。
+ */
+package com.olsc.manorbrowser.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class FilterEngineTest {
+    private static final String RULES = String.join("\n",
+            "[Adblock Plus 2.0]",
+            "! 注释",
+            "||ads.example.com^",
+            "||tracker.net^$third-party",
+            "||cdn.example.org/ads/",
+            "|https://start.example/",
+            "/banner/*/img^",
+            "-popunder.js|",
+            "||*.wild.example^",
+            "/promo.$domain=news.example|~sports.news.example",
+            "/Case.JS$match-case",
+            "/sponsor-$script",
+            "@@||ads.example.com/allowed/",
+            "example.com##.ad-banner",
+            "/^https?:\\/\\/regex/",
+            "||rewrite.example^$redirect=noop.js");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static FilterEngine compile(String rules) throws Exception {
+        return FilterEngine.compile(new StringReader(rules), 1);
+    }
+
+    @Test
+    public void matchesDomainAnchorsAndSubdomains() throws Exception {
+        FilterEngine engine = compile(RULES);
+        assertEquals(11, engine.getRuleCount());
+        assertEquals(3, engine.getSkippedCount());
+
+        assertTrue(block(engine, "https://ads.example.com/x.js"));
+        assertTrue(block(engine, "http://a.b.ads.example.com:8080/"));
+        assertTrue(block(engine, "https://ADS.Example.com"));
+        assertFalse(block(engine, "https://notads.example.com/"));
+        assertFalse(block(engine, "https://example.com/?u=ads.example.com"));
+        assertFalse(block(engine, "https://ads.example.com.evil.org/"));
+        // 例外规则优先
+        assertFalse(block(engine, "https://ads.example.com/allowed/1.png"));
+
+        assertTrue(block(engine, "https://cdn.example.org/ads/1.png"));
+        assertFalse(block(engine, "https://cdn.example.org/img/ads/1.png"));
+        assertTrue(block(engine, "https://x.wild.example/"));
+        assertFalse(block(engine, "https://wild.example.com/"));
+    }
+
+    @Test
+    public void matchesPatternsAndAnchors() throws Exception {
+        FilterEngine engine = compile(RULES);
+        assertTrue(block(engine, "https://start.example/page"));
+        assertFalse(block(engine, "https://site.example/?r=https://start.example/"));
+
+        assertTrue(block(engine, "https://img.site/banner/300x250/img?id=1"));
+        assertTrue(block(engine, "https://img.site/banner/a/b/img"));
+        assertFalse(block(engine, "https://img.site/banner/a/images"));
+
+        assertTrue(block(engine, "https://s.site/js/site-popunder.js"));
+        assertFalse(block(engine, "https://s.site/js/site-popunder.js?v=2"));
+
+        assertTrue(block(engine, "https://s.site/Case.JS"));
+        assertFalse(block(engine, "https://s.site/case.js"));
+        // 旧实现按子串 track / redirect 拦截，这里不应误伤
+        assertFalse(block(engine, "https://example.com/track/list?redirect=1"));
+    }
+
+    @Test
+    public void appliesOptions() throws Exception {
+        FilterEngine engine = compile(RULES);
+        assertTrue(engine.shouldBlock("https://tracker.net/p.gif", "news.example", FilterEngine.TYPE_IMAGE));
+        assertFalse(engine.shouldBlock("https://tracker.net/p.gif", "www.tracker.net", FilterEngine.TYPE_IMAGE));
+        // 来源未知时第三方规则不生效
+        assertFalse(engine.shouldBlock("https://tracker.net/p.gif", null, FilterEngine.TYPE_IMAGE));
+
+        assertTrue(engine.shouldBlock("https://cdn.site/promo.png", "www.news.example", FilterEngine.TYPE_IMAGE));
+        assertFalse(engine.shouldBlock("https://cdn.site/promo.png", "sports.news.example", FilterEngine.TYPE_IMAGE));
+        assertFalse(engine.shouldBlock("https://cdn.site/promo.png", "other.example", FilterEngine.TYPE_IMAGE));
+
+        assertTrue(engine.shouldBlock("https://cdn.site/sponsor-a.js", null, FilterEngine.TYPE_SCRIPT));
+        assertFalse(engine.shouldBlock("https://cdn.site/sponsor-a.js", null, FilterEngine.TYPE_DOCUMENT));
+        assertFalse(engine.shouldBlock("https://rewrite.example/", null, FilterEngine.TYPE_DOCUMENT));
+    }
+
+    @Test
+    public void compiledBinaryIsUsableMemoryMapped() throws Exception {
+        FilterEngine compiled = compile(RULES);
+        File cache = folder.newFile("filter.bin");
+        Files.write(cache.toPath(), compiled.toBytes());
+
+        ByteBuffer mapped;
+        try (RandomAccessFile file = new RandomAccessFile(cache, "r"); FileChannel channel = file.getChannel()) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        assertNull("来源标识不同应视为过期", FilterEngine.open(mapped, 2));
+        FilterEngine engine = FilterEngine.open(mapped, 1);
+        assertNotNull(engine);
+        assertEquals(compiled.getRuleCount(), engine.getRuleCount());
+        assertTrue(block(engine, "https://a.ads.example.com/"));
+        assertFalse(block(engine, "https://ads.example.com/allowed/"));
+        assertTrue(block(engine, "https://img.site/banner/x/img"));
+
+        assertNull(FilterEngine.open(ByteBuffer.wrap(new byte[]{1, 2, 3}), 1));
+        byte[] truncated = java.util.Arrays.copyOf(compiled.toBytes(), 200);
+        assertNull(FilterEngine.open(ByteBuffer.wrap(truncated), 1));
+    }
+
+    @Test
+    public void exportsRulesInCompileOrder() throws Exception {
+        FilterEngine compiled = compile(RULES);
+        java.util.List<FilterEngine.RuleInfo> exported = new java.util.ArrayList<>();
+        compiled.exportRules(exported::add);
+        assertEquals(compiled.getRuleCount(), exported.size());
+
+        FilterEngine.RuleInfo first = exported.get(0);
+        assertFalse(first.exception);
+        assertEquals("ads.example.com", first.host);
+        FilterEngine.RuleInfo tracker = exported.get(1);
+        assertEquals(1, tracker.party);
+        FilterEngine.RuleInfo promo = exported.get(7);
+        assertEquals(java.util.Arrays.asList("news.example"), promo.includeDomains);
+        assertEquals(java.util.Arrays.asList("sports.news.example"), promo.excludeDomains);
+        FilterEngine.RuleInfo matchCase = exported.get(8);
+        assertTrue(matchCase.matchCase);
+        FilterEngine.RuleInfo allowed = exported.get(10);
+        assertTrue(allowed.exception);
+        assertEquals("ads.example.com", allowed.host);
+        assertEquals("/allowed/", allowed.pattern);
+    }
+
+    @Test
+    public void partialHostRulesMatchAtAnyLabelBoundary() throws Exception {
+        FilterEngine engine = compile("||ads.\n||tracker.example\n||pixel.net^");
+        assertTrue(block(engine, "https://ads.site.example/x.js"));
+        assertTrue(block(engine, "https://cdn.ads.site.example/"));
+        assertFalse(block(engine, "https://loads.site.example/"));
+        // 不带 ^ 时域名可以更长
+        assertTrue(block(engine, "https://tracker.example/"));
+        assertTrue(block(engine, "https://tracker.example.com/"));
+        assertTrue(block(engine, "https://a.tracker.examples.net/"));
+        assertFalse(block(engine, "https://pixel.network/"));
+        assertTrue(block(engine, "https://img.pixel.net/1.gif"));
+
+        // 只有域名完整的规则进入域名表，其余按域名锚点导出
+        java.util.List<FilterEngine.RuleInfo> exported = new java.util.ArrayList<>();
+        engine.exportRules(exported::add);
+        assertNull(exported.get(0).host);
+        assertEquals(FilterEngine.RuleInfo.ANCHOR_HOST, exported.get(0).anchor);
+        assertNull(exported.get(1).host);
+        assertEquals("pixel.net", exported.get(2).host);
+    }
+
+    @Test
+    public void bundledListCompiles() throws Exception {
+        // src/main/assets 作为测试资源目录加入了类路径（见 build.gradle），与工作目录无关
+        InputStream asset = FilterEngineTest.class.getClassLoader().getResourceAsStream("filters/manor_filters.txt");
+        assertNotNull("filters/manor_filters.txt not on the test classpath", asset);
+        FilterEngine engine;
+        try (Reader reader = new InputStreamReader(asset, StandardCharsets.UTF_8)) {
+            engine = FilterEngine.compile(reader, 1);
+        }
+        assertEquals(0, engine.getSkippedCount());
+        assertTrue(engine.getRuleCount() > 100);
+        assertTrue(block(engine, "https://www.popads.net/pop.js"));
+        assertTrue(block(engine, "https://googleads.g.doubleclick.net/pagead/id"));
+        assertTrue(engine.shouldBlock("https://www.google-analytics.com/analytics.js", "example.com", FilterEngine.TYPE_SCRIPT));
+        assertFalse(engine.shouldBlock("https://www.google.com/recaptcha/api.js", "example.com", FilterEngine.TYPE_SCRIPT));
+        assertFalse(block(engine, "https://github.com/mozilla/gecko-dev/tracking-issues"));
+        assertFalse(block(engine, "https://www.wikipedia.org/wiki/Analytics"));
+    }
+
+    @Test
+    public void blocksLargeCorpusFromCachedBinary() throws Exception {
+        FilterCorpus corpus = new FilterCorpus(7);
+        FilterEngine compiled = FilterEngine.compile(new StringReader(corpus.rules), 1);
+        FilterEngine engine = FilterEngine.open(directCopy(compiled.toBytes()), 1);
+        assertNotNull(engine);
+        assertEquals(compiled.getRuleCount(), engine.getRuleCount());
+
+        String[] urls = corpus.urls(20_000);
+        int blocked = 0;
+        for (String url : urls) {
+            boolean block = engine.shouldBlock(url, "www.example.com", FilterEngine.TYPE_SCRIPT);
+            assertEquals(url, compiled.shouldBlock(url, "www.example.com", FilterEngine.TYPE_SCRIPT), block);
+            if (block) blocked++;
+        }
+        // 约一成请求命中规则中的域名
+        assertTrue("blocked " + blocked + " of " + urls.length, blocked > urls.length / 20);
+    }
+
+    /** 复制到直接缓冲区，模拟内存映射的缓存文件 */
+    static ByteBuffer directCopy(byte[] binary) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(binary.length);
+        buffer.put(binary);
+        buffer.rewind();
+        return buffer;
+    }
+
+    private static boolean block(FilterEngine engine, String url) {
+        return engine.shouldBlock(url, null, FilterEngine.TYPE_DOCUMENT);
+    }
+}
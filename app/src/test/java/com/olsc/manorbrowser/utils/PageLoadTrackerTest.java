@@ -0,0 +1,70 @@
+/**
+ * PageLoadTracker 测试：等待由加载事件唤醒，截止时间到达时返回超时状态。
+ */
+package com.olsc.manorbrowser.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PageLoadTrackerTest {
+    private final PageLoadTracker tracker = new PageLoadTracker();
+    private final Object session = new Object();
+    private final ScheduledExecutorService events = Executors.newSingleThreadScheduledExecutor();
+
+    @Test
+    public void awaitLoadWakesOnPageStopOfNewNavigation() throws Exception {
+        tracker.onPageStart(session, "https://a.example/");
+        tracker.onPageStop(session, true);
+        PageLoadTracker.Snapshot before = tracker.snapshot(session);
+
+        events.schedule(() -> tracker.onPageStart(session, "https://b.example/"), 50, TimeUnit.MILLISECONDS);
+        events.schedule(() -> tracker.onLocationChange(session, "https://b.example/final"), 80, TimeUnit.MILLISECONDS);
+        events.schedule(() -> tracker.onPageStop(session, true), 120, TimeUnit.MILLISECONDS);
+
+        long start = System.currentTimeMillis();
+        PageLoadTracker.Snapshot snap = tracker.awaitLoad(session, before.generation, before.url, 5000);
+        long waited = System.currentTimeMillis() - start;
+
+        assertEquals(PageLoadTracker.STATE_LOADED, snap.state());
+        assertEquals("https://b.example/final", snap.url);
+        assertTrue(snap.loadMillis >= 0);
+        // 由事件唤醒，而不是等到截止时间
+        assertTrue("waited " + waited, waited < 1000);
+        events.shutdownNow();
+    }
+
+    @Test
+    public void awaitLoadReportsFailureAndTimeout() throws Exception {
+        PageLoadTracker.Snapshot before = tracker.snapshot(session);
+        events.schedule(() -> tracker.onPageStart(session, "https://down.example/"), 20, TimeUnit.MILLISECONDS);
+        events.schedule(() -> tracker.onPageStop(session, false), 40, TimeUnit.MILLISECONDS);
+        assertEquals(PageLoadTracker.STATE_FAILED, tracker.awaitLoad(session, before.generation, before.url, 5000).state());
+
+        PageLoadTracker.Snapshot loaded = tracker.snapshot(session);
+        PageLoadTracker.Snapshot snap = tracker.awaitLoad(session, loaded.generation, loaded.url, 100);
+        assertTrue(snap.timedOut);
+        assertEquals(PageLoadTracker.STATE_TIMEOUT, snap.state());
+        events.shutdownNow();
+    }
+
+    @Test
+    public void sameDocumentNavigationCompletesOnUrlChange() throws Exception {
+        tracker.onPageStart(session, "https://a.example/");
+        tracker.onPageStop(session, true);
+        PageLoadTracker.Snapshot before = tracker.snapshot(session);
+
+        events.schedule(() -> tracker.onLocationChange(session, "https://a.example/#section"), 30, TimeUnit.MILLISECONDS);
+        PageLoadTracker.Snapshot snap = tracker.awaitLoad(session, before.generation, before.url, 5000);
+        assertFalse(snap.timedOut);
+        assertEquals("https://a.example/#section", snap.url);
+
+        // 没有在加载时立即返回
+        assertFalse(tracker.awaitIdle(session, 0).timedOut);
+        events.shutdownNow();
+    }
+}
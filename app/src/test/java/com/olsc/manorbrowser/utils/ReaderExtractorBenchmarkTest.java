@@ -0,0 +1,52 @@
+/**
+ * 阅读模式正文提取基准测试。
+ * 统计 ReaderExtractorTest 语料的平均提取耗时，以及约 1MB 长页面的提取与其中 HTML 解析的耗时。
+ * 属于 Benchmark 分类，只在 -Pbenchmark 时运行；提取结果的正确性由 ReaderExtractorTest 检查。
+ */
+package com.olsc.manorbrowser.utils;
+
+import com.olsc.manorbrowser.Benchmark;
+import com.olsc.manorbrowser.BenchmarkReport;
+import com.olsc.manorbrowser.data.ReaderArticle;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+@Category(Benchmark.class)
+public class ReaderExtractorBenchmarkTest {
+    @Test
+    public void extractionTime() throws Exception {
+        List<String> pages = new ArrayList<>();
+        for (String name : ReaderExtractorTest.CORPUS) pages.add(ReaderExtractorTest.load(name));
+        // 预热，排除类加载与 JIT 的影响
+        for (int i = 0; i < 50; i++) {
+            for (String html : pages) ReaderExtractor.extract(html, "https://site.example/", null);
+        }
+        int rounds = 200;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            for (String html : pages) ReaderExtractor.extract(html, "https://site.example/", null);
+        }
+        double perPageMs = (System.nanoTime() - start) / 1e6 / (rounds * pages.size());
+
+        String longPage = ReaderExtractorTest.longPage(5000);
+        ReaderExtractor.extract(longPage, "https://site.example/", null);
+        long longStart = System.nanoTime();
+        ReaderArticle longArticle = ReaderExtractor.extract(longPage, "https://site.example/", null);
+        double longMs = (System.nanoTime() - longStart) / 1e6;
+        long parseStart = System.nanoTime();
+        HtmlParser.parse(longPage);
+        double parseMs = (System.nanoTime() - parseStart) / 1e6;
+
+        BenchmarkReport.record(ReaderExtractorBenchmarkTest.class, String.format(Locale.US,
+                "corpus=%.3fms/page long=%dKB extract=%.1fms parse=%.1fms blocks=%d",
+                perPageMs, longPage.length() / 1024, longMs, parseMs, longArticle.blocks.size()));
+        assertEquals(5000 + 500, longArticle.blocks.size());
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * 阅读模式正文提取测试。
+ * 语料为保存下来的几类页面（src/test/resources/reader）：新闻文章、中文博客（div + br 排版）、文档页面、
+ * 标签不闭合的旧式页面，检查正文、标题、图片、列表等结构化块的提取结果与干扰内容的去除，
+ * 以及生成的超长页面不丢块。提取耗时见 ReaderExtractorBenchmarkTest。
+ */
+package com.olsc.manorbrowser.utils;
+
+import com.olsc.manorbrowser.data.ReaderArticle;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class ReaderExtractorTest {
+    static final String[] CORPUS = {"news_article.html", "blog_zh.html", "docs_page.html", "malformed.html"};
+
+    @Test
+    public void extractsNewsArticle() throws Exception {
+        ReaderArticle article = ReaderExtractor.extract(load("news_article.html"), "https://news.example.com/local/park", null);
+        assertEquals("City Council Approves New Riverside Park Plan", article.title);
+        String text = article.toPlainText();
+        assertTrue(text.startsWith("The former rail yard"));
+        assertTrue(text.contains("voted 7 to 2 on Tuesday night"));
+        assertTrue(text.contains("“This is the biggest investment"));
+        assertTrue(text.contains("the city website."));
+        // 导航、广告、评论、侧栏、相关文章、页脚都不应出现
+        for (String noise : Arrays.asList("Politics", "Advertisement", "Share on", "42 Comments", "Most Read",
+                "Council debates future", "All rights reserved", "We use cookies", "dataLayer")) {
+            assertFalse(noise, text.contains(noise));
+        }
+
+        ReaderArticle.Block image = article.blocks.get(0);
+        assertEquals(ReaderArticle.BLOCK_IMAGE, image.type);
+        assertEquals("懒加载图片取 data-src，并按 base 解析",
+                "https://news.example.com/local/images/riverside-park.jpg", image.src);
+        assertEquals("An aerial view of the riverside site", image.text);
+
+        ReaderArticle.Block list = find(article, ReaderArticle.BLOCK_LIST);
+        assertEquals(4, list.items.size());
+        assertEquals(0, list.level);
+        assertEquals("An amphitheater with seating for 1,500 people", list.items.get(2));
+        assertEquals(Arrays.asList("What the plan includes", "Opposition and next steps"), headings(article));
+        assertNotNull(find(article, ReaderArticle.BLOCK_QUOTE));
+    }
+
+    @Test
+    public void extractsChineseBlogWithLineBreaks() throws Exception {
+        ReaderArticle article = ReaderExtractor.extract(load("blog_zh.html"), "https://blog.example.cn/p/102.html", null);
+        assertEquals("在安卓上用 GeckoView 做一个浏览器：踩坑记录", article.title);
+        String text = article.toPlainText();
+        assertTrue(text.startsWith("去年年底开始"));
+        assertTrue(text.contains("后面有时间我会再写一篇关于扩展通信的文章。"));
+        for (String noise : Arrays.asList("最新文章", "归档", "分享到微博", "写得很好", "备案号", "阅读 3281", "_hmt")) {
+            assertFalse(noise, text.contains(noise));
+        }
+        assertEquals(Arrays.asList("一、运行时只能创建一个", "二、内置扩展的加载顺序", "三、下载需要自己处理"), headings(article));
+
+        ReaderArticle.Block withBreak = null;
+        for (ReaderArticle.Block block : article.blocks) {
+            if (block.text.startsWith("GeckoRuntime 在一个进程里")) withBreak = block;
+        }
+        assertNotNull(withBreak);
+        assertEquals("br 保留为段内换行", 2, withBreak.text.split("\n").length);
+
+        ReaderArticle.Block steps = find(article, ReaderArticle.BLOCK_LIST);
+        assertEquals(1, steps.level);
+        assertEquals(3, steps.items.size());
+        ReaderArticle.Block code = find(article, ReaderArticle.BLOCK_CODE);
+        assertTrue("代码块保留缩进与实体", code.text.contains("\n        .accept(ext -> {"));
+        ReaderArticle.Block image = find(article, ReaderArticle.BLOCK_IMAGE);
+        assertEquals("https://blog.example.cn/uploads/2025/01/download-flow.png", image.src);
+    }
+
+    @Test
+    public void extractsDocsPageWithTableAndCode() throws Exception {
+        ReaderArticle article = ReaderExtractor.extract(load("docs_page.html"), "https://docs.example.org/docs/caching", null);
+        assertEquals("Caching responses — HTTP Client Guide", article.title);
+        String text = article.toPlainText();
+        assertTrue(text.contains("=== Caching responses ==="));
+        assertTrue(text.contains("cacheMiss No usable cached response existed"));
+        assertTrue(text.contains("Note: the cache directory must not be shared"));
+        for (String noise : Arrays.asList("TLS configuration", "Search docs", "Edit this page", "← Interceptors")) {
+            assertFalse(noise, text.contains(noise));
+        }
+        assertTrue(find(article, ReaderArticle.BLOCK_CODE).text.startsWith("Cache cache = new Cache("));
+    }
+
+    @Test
+    public void toleratesMalformedMarkup() throws Exception {
+        ReaderArticle article = ReaderExtractor.extract(load("malformed.html"), "http://old.example/", null);
+        assertEquals("Unclosed & broken markup", article.title);
+        List<String> paragraphs = new ArrayList<>();
+        for (ReaderArticle.Block block : article.blocks) {
+            if (block.type == ReaderArticle.BLOCK_PARAGRAPH) paragraphs.add(block.text);
+        }
+        assertTrue(paragraphs.get(0).startsWith("The first paragraph"));
+        assertTrue(paragraphs.get(1).startsWith("The second paragraph"));
+        assertTrue(paragraphs.get(1).contains("a stray < sign like 3 < 5, and an entity — written as a number — or a name —"));
+        assertEquals("The third paragraph ends at the br", "Third paragraph, with a comment in the middle and a line",
+                paragraphs.get(2).split("\n")[0]);
+        assertTrue(paragraphs.contains("Cell one Cell two"));
+        assertEquals(Arrays.asList("First item", "Second item", "Third item"), find(article, ReaderArticle.BLOCK_LIST).items);
+        String text = article.toPlainText();
+        assertFalse(text.contains("not text"));
+        assertFalse(text.contains("script text"));
+    }
+
+    @Test
+    public void returnsEmptyArticleForPagesWithoutText() {
+        ReaderArticle article = ReaderExtractor.extract("<html><body><div><a href='/'>Home</a></div></body></html>", "https://x.example/", "Empty");
+        assertEquals("Empty", article.title);
+        // 没有候选段落时整个 body 作为正文，只剩下少量链接文字，由调用方判定为提取失败
+        assertTrue(article.textLength() < 25);
+        assertEquals(0, ReaderExtractor.extract("", null, null).blocks.size());
+    }
+
+    @Test
+    public void uppercaseMarkupParsesUnderTurkishLocale() throws Exception {
+        // 土耳其语环境下 "I".toLowerCase() 是无点的 ı，标签名与属性名必须按 Locale.ROOT 转换
+        Locale saved = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            String paragraph = "<P>Istanbul is a city of many bridges, ferries, and hills, and this paragraph is long enough to count as prose.</P>";
+            ReaderArticle article = ReaderExtractor.extract("<HTML><HEAD><TITLE>Istanbul</TITLE></HEAD><BODY><DIV>"
+                    + "<IMG SRC='/img/bridge.jpg' ALT='Bridge'>" + paragraph + paragraph + paragraph
+                    + "<UL><LI>Item one</LI><LI>Item two</LI></UL></DIV></BODY></HTML>", "https://site.example/", null);
+            assertEquals("Istanbul", article.title);
+            ReaderArticle.Block image = find(article, ReaderArticle.BLOCK_IMAGE);
+            assertEquals("https://site.example/img/bridge.jpg", image.src);
+            assertEquals(Arrays.asList("Item one", "Item two"), find(article, ReaderArticle.BLOCK_LIST).items);
+        } finally {
+            Locale.setDefault(saved);
+        }
+    }
+
+    @Test
+    public void extractsEveryBlockOfLongPage() {
+        ReaderArticle article = ReaderExtractor.extract(longPage(5000), "https://site.example/", null);
+        assertEquals(5000 + 500, article.blocks.size());
+        assertEquals("Section 0", article.blocks.get(0).text);
+        assertTrue(article.blocks.get(article.blocks.size() - 1).text.startsWith("Paragraph 4999 "));
+        String text = article.toPlainText();
+        assertFalse("隐藏元素应被去除", text.contains("hidden note"));
+        assertFalse("导航链接应被去除", text.contains("Link 1999"));
+    }
+
+    /** 约 1MB 的长页面：正文段落夹杂大量导航链接与隐藏元素 */
+    static String longPage(int paragraphs) {
+        StringBuilder sb = new StringBuilder("<html><head><title>Long chapter</title></head><body>");
+        sb.append("<div class='menu'>");
+        for (int i = 0; i < 2000; i++) sb.append("<a href='/n/").append(i).append("'>Link ").append(i).append("</a> ");
+        sb.append("</div><div class='chapter-content'>");
+        for (int i = 0; i < paragraphs; i++) {
+            if (i % 10 == 0) sb.append("<h2>Section ").append(i / 10).append("</h2>");
+            sb.append("<p>Paragraph ").append(i).append(" of the chapter, with enough words, commas, and clauses to look like ")
+                    .append("real prose; the reader mode has to keep every one of them, in order, without dropping any.</p>");
+            if (i % 50 == 0) sb.append("<span hidden>hidden note ").append(i).append("</span>");
+        }
+        sb.append("</div></body></html>");
+        return sb.toString();
+    }
+
+    private static List<String> headings(ReaderArticle article) {
+        List<String> headings = new ArrayList<>();
+        for (ReaderArticle.Block block : article.blocks) {
+            if (block.type == ReaderArticle.BLOCK_HEADING) headings.add(block.text);
+        }
+        return headings;
+    }
+
+    private static ReaderArticle.Block find(ReaderArticle article, int type) {
+        for (ReaderArticle.Block block : article.blocks) {
+            if (block.type == type) return block;
+        }
+        fail("没有类型为 " + type + " 的块");
+        return null;
+    }
+
+    static String load(String name) throws Exception {
+        try (InputStream in = ReaderExtractorTest.class.getClassLoader().getResourceAsStream("reader/" + name)) {
+            assertNotNull(name, in);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) out.write(buffer, 0, n);
+            return out.toString(StandardCharsets.UTF_8.name());
+        }
+    }
+}
@@ -0,0 +1,400 @@
+/**
+ * SegmentedDownloader 测试。
+ * 用 JDK 自带的 HttpServer 模拟支持 Range / ETag / If-Range 的下载服务器，
+ * 并可在响应中途断开连接、停顿、关闭 Range 支持或替换文件内容，验证分段、续传、重下与取消逻辑。
+ */
+package com.olsc.manorbrowser.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+import static org.junit.Assert.*;
+
+public class SegmentedDownloaderTest {
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+    /** 停顿时长，短于客户端读超时，保证读取只会被取消打断 */
+    private static final long STALL_MS = 3000;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private OkHttpClient client;
+    private File file;
+
+    /** 服务器当前提供的内容 */
+    private volatile byte[] content;
+    private volatile String etag = "\"v1\"";
+    private volatile boolean rangeSupported = true;
+    /** 非 null 时在响应中声明 Repr-Digest */
+    private volatile String reprDigest;
+    /** 大于 0 时，下一次响应只写出这么多字节就断开连接 */
+    private final AtomicInteger dropAfter = new AtomicInteger();
+    /** 大于 0 时，每个响应写出这么多字节后停顿，直到 resume 释放或超过 STALL_MS */
+    private volatile int stallAfter;
+    private final CountDownLatch resume = new CountDownLatch(1);
+    /** 不为 -1 时，从该偏移开始的 Range 请求返回 500 */
+    private volatile long failRangeStart = -1;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger fullResponses = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        content = payload(3 * 1024 * 1024 + 123, 1);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/file.bin", this::serve);
+        server.start();
+        executor = Executors.newCachedThreadPool();
+        client = new OkHttpClient.Builder().readTimeout(5, TimeUnit.SECONDS).build();
+        file = Files.createTempFile("segmented", ".bin").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        resume.countDown();
+        server.stop(0);
+        executor.shutdownNow();
+        file.delete();
+    }
+
+    @Test
+    public void largeFileIsSplitAndDownloadedInParallel() throws Exception {
+        SegmentedDownloader downloader = newDownloader();
+        SegmentedDownloader.State state = downloader.probe();
+
+        assertTrue(state.rangeSupported);
+        assertEquals(content.length, state.totalBytes);
+        assertEquals("\"v1\"", state.validator);
+        assertEquals(3, state.segments.size());
+
+        download(downloader, state);
+        assertArrayEquals(content, readFile());
+        assertEquals(content.length, state.downloadedBytes());
+    }
+
+    @Test
+    public void droppedConnectionResumesFromCurrentOffset() throws Exception {
+        SegmentedDownloader downloader = newDownloader();
+        SegmentedDownloader.State state = downloader.probe();
+        fullResponses.set(0);
+        dropAfter.set(200_000);
+
+        download(downloader, state);
+        assertArrayEquals(content, readFile());
+        // 断开的分段通过 Range 续传，不会触发整文件重下
+        assertEquals(0, fullResponses.get());
+    }
+
+    @Test
+    public void persistedPartialStateResumesAfterRestart() throws Exception {
+        SegmentedDownloader.State state = newDownloader().probe();
+        // 模拟进程被杀前已写入每段的前半部分并保存了进度
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            for (SegmentedDownloader.Segment s : state.segments) {
+                long half = (s.end - s.start + 1) / 2;
+                raf.seek(s.start);
+                raf.write(content, (int) s.start, (int) half);
+                s.downloaded = half;
+            }
+        }
+        String saved = state.encodeSegments();
+
+        SegmentedDownloader.State restored = new SegmentedDownloader.State();
+        restored.totalBytes = state.totalBytes;
+        restored.rangeSupported = true;
+        restored.validator = state.validator;
+        assertTrue(restored.decodeSegments(saved));
+        assertEquals(state.downloadedBytes(), restored.downloadedBytes());
+
+        requests.set(0);
+        download(newDownloader(), restored);
+        assertArrayEquals(content, readFile());
+        assertEquals(restored.segments.size(), requests.get());
+    }
+
+    @Test
+    public void serverWithoutRangeSupportFallsBackToSingleStream() throws Exception {
+        rangeSupported = false;
+        SegmentedDownloader downloader = newDownloader();
+        SegmentedDownloader.State state = downloader.probe();
+
+        assertFalse(state.rangeSupported);
+        assertEquals(1, state.segments.size());
+        dropAfter.set(100_000);
+
+        download(downloader, state);
+        assertArrayEquals(content, readFile());
+    }
+
+    @Test
+    public void changedResourceRestartsFromScratch() throws Exception {
+        SegmentedDownloader.State state = newDownloader().probe();
+        for (SegmentedDownloader.Segment s : state.segments) s.downloaded = 1000;
+
+        // 服务器上的文件在暂停期间被替换，If-Range 不再匹配
+        content = payload(2 * 1024 * 1024 + 7, 2);
+        etag = "\"v2\"";
+
+        download(newDownloader(), state);
+        assertEquals("\"v2\"", state.validator);
+        assertArrayEquals(content, readFile());
+    }
+
+    @Test
+    public void resumedSegmentsRespectConnectionCap() throws Exception {
+        SegmentedDownloader.State state = newDownloader().probe();
+        assertEquals(3, state.segments.size());
+
+        // 调度器只分配到 1 个连接：3 个分段依次下载
+        Request request = new Request.Builder()
+                .url("http://127.0.0.1:" + server.getAddress().getPort() + "/file.bin")
+                .build();
+        maxInFlight.set(0);
+        download(new SegmentedDownloader(client, request, executor, 1), state);
+        assertArrayEquals(content, readFile());
+        assertEquals(1, maxInFlight.get());
+    }
+
+    @Test
+    public void sharedRateLimiterCapsThroughput() throws Exception {
+        SegmentedDownloader downloader = newDownloader();
+        // 1 MB/s：首秒配额可突发，其余约 2 MB 需要约 2 秒
+        downloader.setRateLimiter(new TokenBucket(1024 * 1024));
+        SegmentedDownloader.State state = downloader.probe();
+
+        long start = System.nanoTime();
+        download(downloader, state);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertArrayEquals(content, readFile());
+        assertTrue("elapsed " + elapsedMs, elapsedMs >= 1800);
+    }
+
+    @Test
+    public void digestIsComputedWhileSegmentsWriteOutOfOrder() throws Exception {
+        reprDigest = "sha-256=:" + Base64.getEncoder().encodeToString(sha256(content)) + ":";
+        SegmentedDownloader downloader = newDownloader();
+        SegmentedDownloader.State state = downloader.probe();
+        assertNotNull(state.expectedDigest);
+
+        try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+            StreamingDigest digest = StreamingDigest.forExpected(channel, state.expectedDigest);
+            downloader.setDigest(digest);
+            downloader.run(state, channel, NO_OP);
+            assertEquals(toHex(sha256(content)), digest.getSha256Hex());
+        }
+    }
+
+    @Test(expected = SegmentedDownloader.IntegrityException.class)
+    public void digestMismatchFailsTheDownload() throws Exception {
+        reprDigest = "sha-256=:" + Base64.getEncoder().encodeToString(sha256(new byte[]{1})) + ":";
+        SegmentedDownloader downloader = newDownloader();
+        SegmentedDownloader.State state = downloader.probe();
+        try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+            downloader.setDigest(StreamingDigest.forExpected(channel, state.expectedDigest));
+            downloader.run(state, channel, NO_OP);
+        }
+    }
+
+    @Test
+    public void cancelInterruptsBodiesBeingRead() throws Exception {
+        SegmentedDownloader downloader = newDownloader();
+        SegmentedDownloader.State state = downloader.probe();
+        stallAfter = 64 * 1024;
+
+        Future<?> running = executor.submit(() -> {
+            download(downloader, state);
+            return null;
+        });
+        // 等到各分段都已收到响应头、正阻塞在响应体的读取上
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (state.downloadedBytes() < 3 * 64 * 1024 && System.nanoTime() < deadline) Thread.sleep(10);
+
+        long start = System.nanoTime();
+        downloader.cancel();
+        try {
+            running.get(STALL_MS / 2, TimeUnit.MILLISECONDS);
+            fail("cancelled download should not complete");
+        } catch (ExecutionException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof SegmentedDownloader.CancelledException);
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("cancel took " + elapsedMs + "ms", elapsedMs < STALL_MS / 2);
+        assertTrue(state.downloadedBytes() < content.length / 2);
+    }
+
+    @Test
+    public void failedSegmentStopsOtherSegmentsImmediately() throws Exception {
+        SegmentedDownloader downloader = newDownloader();
+        SegmentedDownloader.State state = downloader.probe();
+        assertEquals(3, state.segments.size());
+        // 最后一段立即失败，前两段停顿在响应体中
+        failRangeStart = state.segments.get(2).start;
+        stallAfter = 64 * 1024;
+
+        long start = System.nanoTime();
+        try {
+            download(downloader, state);
+            fail("download with a failed segment should not complete");
+        } catch (SegmentedDownloader.HttpStatusException e) {
+            assertEquals(500, e.code);
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("abort took " + elapsedMs + "ms", elapsedMs < STALL_MS / 2);
+        assertFalse(downloader.isCancelled());
+    }
+
+    @Test
+    public void segmentsRoundTripThroughEncoding() {
+        SegmentedDownloader.State state = new SegmentedDownloader.State();
+        assertFalse(state.decodeSegments("garbage"));
+        assertTrue(state.decodeSegments("0,99,50;100,199,100"));
+        assertEquals(2, state.segments.size());
+        assertFalse(state.segments.get(0).isComplete());
+        assertTrue(state.segments.get(1).isComplete());
+        assertEquals("0,99,50;100,199,100", state.encodeSegments());
+    }
+
+    private SegmentedDownloader newDownloader() {
+        Request request = new Request.Builder()
+                .url("http://127.0.0.1:" + server.getAddress().getPort() + "/file.bin")
+                .build();
+        return new SegmentedDownloader(client, request, executor, SegmentedDownloader.DEFAULT_SEGMENTS);
+    }
+
+    private static final SegmentedDownloader.Listener NO_OP = new SegmentedDownloader.Listener() {
+        @Override
+        public void onProgress(long downloadedBytes, long totalBytes) {
+        }
+
+        @Override
+        public void onCheckpoint(SegmentedDownloader.State s) {
+        }
+    };
+
+    private static byte[] sha256(byte[] data) throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(data);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    private void download(SegmentedDownloader downloader, SegmentedDownloader.State state) throws IOException {
+        try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+            downloader.run(state, channel, new SegmentedDownloader.Listener() {
+                @Override
+                public void onProgress(long downloadedBytes, long totalBytes) {
+                    assertTrue(downloadedBytes <= totalBytes);
+                }
+
+                @Override
+                public void onCheckpoint(SegmentedDownloader.State s) {
+                }
+            });
+        }
+    }
+
+    private byte[] readFile() throws IOException {
+        return Files.readAllBytes(file.toPath());
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            respond(exchange);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        byte[] body = content;
+        int start = 0;
+        int end = body.length - 1;
+        int code = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        if (rangeSupported && range != null && (ifRange == null || ifRange.equals(etag))) {
+            Matcher m = RANGE.matcher(range);
+            if (m.matches()) {
+                start = Integer.parseInt(m.group(1));
+                if (start == failRangeStart) {
+                    exchange.sendResponseHeaders(500, -1);
+                    exchange.close();
+                    return;
+                }
+                if (!m.group(2).isEmpty()) end = Math.min(end, Integer.parseInt(m.group(2)));
+                code = 206;
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + body.length);
+            }
+        }
+        if (code == 200) fullResponses.incrementAndGet();
+        if (rangeSupported) exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (reprDigest != null) exchange.getResponseHeaders().set("Repr-Digest", reprDigest);
+        int length = end - start + 1;
+        exchange.sendResponseHeaders(code, length);
+        int limit = dropAfter.getAndSet(0);
+        try (OutputStream os = exchange.getResponseBody()) {
+            if (limit > 0 && limit < length) {
+                os.write(body, start, limit);
+                os.flush();
+                // 不写完就关闭连接，模拟网络中断
+                throw new IOException("simulated drop");
+            }
+            int stall = stallAfter;
+            if (stall > 0 && stall < length) {
+                os.write(body, start, stall);
+                os.flush();
+                try {
+                    resume.await(STALL_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                os.write(body, start + stall, length - stall);
+            } else {
+                os.write(body, start, length);
+            }
+        } catch (IOException e) {
+            exchange.close();
+        }
+    }
+
+    private static byte[] payload(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * 流式摘要开销基准测试。
+ * 以与下载器相同的 32 KB 缓冲区把内存数据拷贝到临时文件，分别测量纯拷贝与拷贝时同步计算 SHA-256 的吞吐量。
+ * 属于 Benchmark 分类，只在 -Pbenchmark 时运行。
+ */
+package com.olsc.manorbrowser.utils;
+
+import com.olsc.manorbrowser.Benchmark;
+import com.olsc.manorbrowser.BenchmarkReport;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@Category(Benchmark.class)
+public class StreamingDigestBenchmarkTest {
+    private static final int SIZE = 64 * 1024 * 1024;
+
+    @Test
+    public void hashingOverheadAgainstRawCopy() throws Exception {
+        byte[] data = new byte[SIZE];
+        new Random(1).nextBytes(data);
+        File file = Files.createTempFile("digest-bench", ".bin").toFile();
+        try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+            // 预热
+            for (int i = 0; i < 2; i++) {
+                copy(data, channel, null);
+                copy(data, channel, new StreamingDigest(channel, false));
+            }
+            long raw = Long.MAX_VALUE, hashed = Long.MAX_VALUE, hashedMd5 = Long.MAX_VALUE;
+            for (int i = 0; i < 3; i++) {
+                raw = Math.min(raw, copy(data, channel, null));
+                hashed = Math.min(hashed, copy(data, channel, new StreamingDigest(channel, false)));
+                hashedMd5 = Math.min(hashedMd5, copy(data, channel, new StreamingDigest(channel, true)));
+            }
+            BenchmarkReport.record(StreamingDigestBenchmarkTest.class, String.format(Locale.US,
+                    "size=%dMB raw=%.0fMB/s sha256=%.0fMB/s sha256+md5=%.0fMB/s overhead=%.1f%% / %.1f%%",
+                    SIZE >> 20, mbps(raw), mbps(hashed), mbps(hashedMd5),
+                    (hashed - raw) * 100.0 / raw, (hashedMd5 - raw) * 100.0 / raw));
+
+            StreamingDigest check = new StreamingDigest(channel, false);
+            copy(data, channel, check);
+            assertEquals(StreamingDigestTest.hex(StreamingDigestTest.sha256(data)), check.getSha256Hex());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /** 与 SegmentedDownloader.copy 相同的拷贝循环，返回耗时纳秒 */
+    private static long copy(byte[] data, FileChannel channel, StreamingDigest digest) throws Exception {
+        InputStream in = new ByteArrayInputStream(data);
+        byte[] buffer = new byte[32768];
+        ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+        long start = System.nanoTime();
+        long position = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            wrapper.clear().limit(read);
+            long writeStart = position;
+            while (wrapper.hasRemaining()) position += channel.write(wrapper, position);
+            if (digest != null) digest.update(writeStart, buffer, 0, read, 0);
+        }
+        if (digest != null) digest.finish(position);
+        return System.nanoTime() - start;
+    }
+
+    private static double mbps(long nanos) {
+        return SIZE / 1048576.0 / (nanos / 1e9);
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * TokenBucket 测试：使用可控时钟验证突发配额、透支排队与不限速行为。
+ */
+package com.olsc.manorbrowser.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TokenBucketTest {
+    private long now;
+
+    @Test
+    public void burstUpToOneSecondIsFree() {
+        TokenBucket bucket = new TokenBucket(1000, () -> now);
+        assertEquals(0, bucket.reserve(600));
+        assertEquals(0, bucket.reserve(400));
+    }
+
+    @Test
+    public void overdraftIsPaidBackAtConfiguredRate() {
+        TokenBucket bucket = new TokenBucket(1000, () -> now);
+        bucket.reserve(1000);
+        // 桶已空，再要 500 字节需等待 0.5 秒
+        assertEquals(500_000_000L, bucket.reserve(500));
+        // 后来者排在透支之后
+        assertEquals(1_000_000_000L, bucket.reserve(500));
+
+        now += 1_000_000_000L;
+        assertEquals(0, bucket.reserve(0));
+    }
+
+    @Test
+    public void tokensNeverExceedCapacity() {
+        TokenBucket bucket = new TokenBucket(1000, () -> now);
+        now += 60_000_000_000L;
+        assertEquals(0, bucket.reserve(1000));
+        assertTrue(bucket.reserve(1) > 0);
+    }
+
+    @Test
+    public void zeroRateMeansUnlimited() {
+        TokenBucket bucket = new TokenBucket(0, () -> now);
+        assertEquals(0, bucket.reserve(Long.MAX_VALUE / 2));
+        bucket.setRate(100);
+        assertEquals(0, bucket.reserve(100));
+        assertTrue(bucket.reserve(100) > 0);
+    }
+}